@@ -0,0 +1,84 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import com.megafarad.seshandler.handler.ses.SendEmailSESNotificationHandler;
+import com.megafarad.seshandler.handler.sns.SNSMessageHandler;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SNSMessageHandler#handleRequest} end to end: parsing, template context building,
+ * rendering with the bundled templates, and sending through a {@link NoOpEmailSender}.
+ * <p>
+ * Each invocation handles an SNS batch of {@code batchSize} records drawn in turn from the
+ * fixtures, with records processed {@code maxConcurrency} at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final String[] FIXTURES = {"bounce_with_dsn.json", "bounce_without_dsn.json",
+            "complaint_with_feedback.json", "complaint_without_feedback.json", "delivery.json"};
+
+    @Param({"1", "10"})
+    public int batchSize;
+
+    @Param({"1", "4"})
+    public int maxConcurrency;
+
+    private SNSMessageHandler handler;
+    private SNSEvent event;
+    private Context context;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        SendEmailSESNotificationHandler sesHandler = new SendEmailSESNotificationHandler(
+                new NoOpEmailSender(blackhole),
+                new ProductionRenderingService(),
+                Templates.body("html-bounce-notification"),
+                Templates.body("text-bounce-notification"),
+                Templates.body("html-complaint-notification"),
+                Templates.body("text-complaint-notification"),
+                Templates.body("html-delivery-notification"),
+                Templates.body("text-delivery-notification"),
+                Templates.subject("Bounce Email Notification"),
+                Templates.subject("Complaint Email Notification"),
+                Templates.subject("Delivery Email Notification"),
+                "sender@example.com",
+                "recipient@example.com");
+        handler = new SNSMessageHandler(sesHandler, maxConcurrency, 0);
+
+        List<SNSEvent.SNSRecord> records = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            records.add(new SNSEvent.SNSRecord()
+                    .withSns(new SNSEvent.SNS().withMessage(Fixtures.json(FIXTURES[i % FIXTURES.length]))));
+        }
+        event = new SNSEvent().withRecords(records);
+        context = new NoOpContext();
+    }
+
+    @Benchmark
+    public void handleRequest() {
+        handler.handleRequest(event, context);
+    }
+}
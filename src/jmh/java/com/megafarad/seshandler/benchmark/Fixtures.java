@@ -0,0 +1,52 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megafarad.seshandler.model.SESNotification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads the SES notification fixtures that the benchmark profile copies from
+ * {@code src/test/resources} onto the classpath under {@code fixtures/}.
+ */
+public final class Fixtures {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    /**
+     * Reads a fixture as a string.
+     *
+     * @param name The file name of the fixture (e.g., {@code bounce_with_dsn.json}).
+     * @return The JSON document of the fixture.
+     */
+    public static String json(String name) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream("fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Fixture not found: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a fixture as a notification.
+     *
+     * @param name The file name of the fixture (e.g., {@code bounce_with_dsn.json}).
+     * @return The parsed notification.
+     */
+    public static SESNotification notification(String name) {
+        try {
+            return MAPPER.readValue(json(name), SESNotification.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
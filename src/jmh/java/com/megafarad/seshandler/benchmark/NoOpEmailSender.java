@@ -0,0 +1,29 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.megafarad.seshandler.sender.EmailSender;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * An {@link EmailSender} for benchmarks that hands every email to a {@link Blackhole} instead of
+ * sending it, so that rendering cannot be optimized away.
+ */
+public final class NoOpEmailSender implements EmailSender {
+
+    private final Blackhole blackhole;
+
+    /**
+     * Constructs a NoOpEmailSender.
+     *
+     * @param blackhole The Blackhole that consumes the emails.
+     */
+    public NoOpEmailSender(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody) {
+        blackhole.consume(subject);
+        blackhole.consume(htmlBody);
+        blackhole.consume(textBody);
+    }
+}
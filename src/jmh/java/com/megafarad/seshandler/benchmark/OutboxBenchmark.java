@@ -0,0 +1,80 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.megafarad.seshandler.outbox.WriteAheadLog;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures appends per second to the {@link WriteAheadLog} of the outbox, from four threads, for
+ * a notification email of about {@code bodySize} bytes per body, with and without forcing every
+ * record to the storage device.
+ * <p>
+ * Each appended email is completed right away, as the drainer does once it has been sent, so the
+ * log rolls over to new segments and deletes the completed ones while it is measured, instead of
+ * filling the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class OutboxBenchmark {
+
+    @Param({"2048"})
+    public int bodySize;
+
+    @Param({"false", "true"})
+    public boolean sync;
+
+    private Path directory;
+    private WriteAheadLog log;
+    private RenderedEmail email;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("outbox");
+        log = WriteAheadLog.open(directory, 16 << 20, sync);
+        String body = "x".repeat(bodySize);
+        email = new RenderedEmail("Bounce notification for jane@example.com", body, body);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        long sequence = log.append("notifications@example.com", "ops@example.com", email, List.of());
+        log.complete(sequence);
+        return sequence;
+    }
+}
@@ -0,0 +1,69 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.model.SESNotificationReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing an SES notification from the JSON delivered in an SNS message.
+ * <p>
+ * - {@code objectMapper} binds the whole document with a precompiled {@link ObjectReader}.
+ * - {@code streamingReader} uses {@link SESNotificationReader} with mail headers retained.
+ * - {@code streamingReaderWithoutHeaders} uses {@link SESNotificationReader} with mail headers skipped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"bounce_with_dsn.json", "bounce_without_dsn.json", "complaint_with_feedback.json",
+            "complaint_without_feedback.json", "delivery.json"})
+    public String fixture;
+
+    private String json;
+    private ObjectReader objectReader;
+    private SESNotificationReader reader;
+    private SESNotificationReader readerWithoutHeaders;
+
+    @Setup
+    public void setUp() {
+        json = Fixtures.json(fixture);
+        ObjectMapper mapper = new ObjectMapper();
+        objectReader = mapper.readerFor(SESNotification.class);
+        reader = new SESNotificationReader(mapper, true);
+        readerWithoutHeaders = new SESNotificationReader(mapper, false);
+    }
+
+    @Benchmark
+    public SESNotification objectMapper() throws IOException {
+        return objectReader.readValue(json);
+    }
+
+    @Benchmark
+    public SESNotification streamingReader() throws IOException {
+        return reader.read(json);
+    }
+
+    @Benchmark
+    public SESNotification streamingReaderWithoutHeaders() throws IOException {
+        return readerWithoutHeaders.read(json);
+    }
+}
@@ -0,0 +1,87 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.rendering.CachingRenderingService;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.rendering.RecordMapView;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import com.megafarad.seshandler.rendering.RenderingService;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ProductionRenderingService#generateEmail} rendering the bundled subject, HTML,
+ * and text templates of a notification type with a prebuilt template context.
+ * <p>
+ * {@code parallelGenerateEmail} renders the three templates concurrently, and
+ * {@code cachedGenerateEmail} renders the same email through a warm {@link CachingRenderingService},
+ * i.e., the cost of fingerprinting the context and looking up the rendered output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"bounce_with_dsn.json", "complaint_with_feedback.json", "delivery.json"})
+    public String fixture;
+
+    private RenderingService renderingService;
+    private RenderingService parallelRenderingService;
+    private RenderingService cachingRenderingService;
+    private PebbleTemplate subjectTemplate;
+    private PebbleTemplate htmlBodyTemplate;
+    private PebbleTemplate textBodyTemplate;
+    private Map<String, Object> templateContext;
+
+    @Setup
+    public void setUp() {
+        SESNotification notification = Fixtures.notification(fixture);
+        String type = notification.notificationType().toLowerCase(Locale.ROOT);
+        renderingService = new ProductionRenderingService();
+        parallelRenderingService = new ProductionRenderingService(true);
+        cachingRenderingService = new CachingRenderingService(renderingService, 16 * 1024 * 1024, 10_000);
+        subjectTemplate = Templates.subject(notification.notificationType() + " Email Notification");
+        htmlBodyTemplate = Templates.body("html-" + type + "-notification");
+        textBodyTemplate = Templates.body("text-" + type + "-notification");
+        Record event = switch (notification.notificationType()) {
+            case "Bounce" -> notification.bounce();
+            case "Complaint" -> notification.complaint();
+            default -> notification.delivery();
+        };
+        templateContext = Map.of(type, RecordMapView.of(event), "mail", RecordMapView.of(notification.mail()));
+    }
+
+    @Benchmark
+    public RenderedEmail generateEmail() {
+        return renderingService.generateEmail(subjectTemplate, htmlBodyTemplate, textBodyTemplate, templateContext);
+    }
+
+    @Benchmark
+    public RenderedEmail parallelGenerateEmail() {
+        return parallelRenderingService.generateEmail(subjectTemplate, htmlBodyTemplate, textBodyTemplate,
+                templateContext);
+    }
+
+    @Benchmark
+    public RenderedEmail cachedGenerateEmail() {
+        return cachingRenderingService.generateEmail(subjectTemplate, htmlBodyTemplate, textBodyTemplate,
+                templateContext);
+    }
+}
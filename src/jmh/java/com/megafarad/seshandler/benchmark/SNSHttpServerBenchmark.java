@@ -0,0 +1,117 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megafarad.seshandler.handler.ses.SendEmailSESNotificationHandler;
+import com.megafarad.seshandler.handler.sns.SNSMessageHandler;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.server.SNSHttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load test of {@link SNSHttpServer}: 16 client threads post SNS `Notification` messages
+ * carrying the bounce fixture over keep-alive connections, and each post waits for its
+ * notification to be parsed, rendered with the bundled templates, and sent through a
+ * {@link NoOpEmailSender}.
+ * <p>
+ * Notifications are handled in batches of up to {@code maxBatchSize}, {@code maxConcurrency} at a
+ * time. The queue holds up to {@code queueCapacity} notifications; posts that find it full are
+ * answered with `503` at once instead of waiting, which a capacity below the number of client
+ * threads makes visible in the sampled latencies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class SNSHttpServerBenchmark {
+
+    @Param({"1", "10"})
+    public int maxBatchSize;
+
+    @Param({"1", "4"})
+    public int maxConcurrency;
+
+    @Param({"1000"})
+    public int queueCapacity;
+
+    private SNSHttpServer server;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) throws IOException {
+        SendEmailSESNotificationHandler sesHandler = new SendEmailSESNotificationHandler(
+                new NoOpEmailSender(blackhole),
+                new ProductionRenderingService(),
+                Templates.body("html-bounce-notification"),
+                Templates.body("text-bounce-notification"),
+                Templates.body("html-complaint-notification"),
+                Templates.body("text-complaint-notification"),
+                Templates.body("html-delivery-notification"),
+                Templates.body("text-delivery-notification"),
+                Templates.subject("Bounce Email Notification"),
+                Templates.subject("Complaint Email Notification"),
+                Templates.subject("Delivery Email Notification"),
+                "sender@example.com",
+                "recipient@example.com");
+        server = new SNSHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), "/",
+                new SNSMessageHandler(sesHandler, maxConcurrency, 0),
+                requestId -> new NoOpContext(),
+                url -> { },
+                null,
+                Set.of(),
+                queueCapacity,
+                maxBatchSize,
+                Duration.ofSeconds(30));
+        server.start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + "/"))
+                .POST(HttpRequest.BodyPublishers.ofString(envelope(Fixtures.json("bounce_with_dsn.json"))))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public int postNotification() throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static String envelope(String message) throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(Map.of("Type", "Notification",
+                "MessageId", "benchmark", "TopicArn", "arn:aws:sns:us-east-1:123456789012:benchmark",
+                "Message", message));
+    }
+}
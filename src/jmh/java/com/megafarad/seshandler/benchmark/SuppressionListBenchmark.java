@@ -0,0 +1,85 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.megafarad.seshandler.suppression.Suppression;
+import com.megafarad.seshandler.suppression.SuppressionList;
+import com.megafarad.seshandler.suppression.SuppressionReason;
+import com.megafarad.seshandler.suppression.SuppressionSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SuppressionList}: opening a memory-mapped snapshot of {@code size} addresses, as
+ * on a cold start, and looking up a suppressed address, an address suppressed through its parent
+ * domain, and an address that is not suppressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuppressionListBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private Path path;
+    private SuppressionList list;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = Files.createTempFile("suppression", ".snapshot");
+        List<Suppression> suppressions = new ArrayList<>(size + 1);
+        for (int i = 0; i < size; i++) {
+            suppressions.add(new Suppression("user" + i + "@example.com", SuppressionReason.BOUNCE,
+                    Suppression.NEVER));
+        }
+        suppressions.add(new Suppression("@example.org", SuppressionReason.MANUAL, Suppression.NEVER));
+        SuppressionSnapshot.write(path, suppressions, System.currentTimeMillis());
+        list = SuppressionList.load(path, Clock.systemUTC());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public SuppressionSnapshot open() {
+        return SuppressionSnapshot.open(path);
+    }
+
+    @Benchmark
+    public boolean lookupSuppressedAddress() {
+        return list.isSuppressed("user" + (size / 2) + "@example.com");
+    }
+
+    @Benchmark
+    public boolean lookupSuppressedDomain() {
+        return list.isSuppressed("jane@mail.example.org");
+    }
+
+    @Benchmark
+    public boolean lookupUnsuppressedAddress() {
+        return list.isSuppressed("jane@mail.example.net");
+    }
+}
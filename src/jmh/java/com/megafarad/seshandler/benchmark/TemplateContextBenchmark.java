@@ -0,0 +1,143 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.BouncedRecipient;
+import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.rendering.RecordMapView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares building the template context of a bounce notification by copying every field into
+ * {@link HashMap}s, as {@code SendEmailSESNotificationHandler} used to, against exposing the
+ * records through {@link RecordMapView}.
+ * <p>
+ * The {@code build*} benchmarks measure the cost of creating the context alone. The
+ * {@code resolve*} benchmarks also read the keys that the bundled bounce templates read, which is
+ * the work a render pays for. Run with {@code -prof gc} to compare allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateContextBenchmark {
+
+    private Mail mail;
+    private Bounce bounce;
+
+    @Setup
+    public void setUp() {
+        SESNotification notification = Fixtures.notification("bounce_with_dsn.json");
+        mail = notification.mail();
+        bounce = notification.bounce();
+    }
+
+    @Benchmark
+    public Map<String, Object> buildCopiedContext() {
+        return copiedContext(mail, bounce);
+    }
+
+    @Benchmark
+    public Map<String, Object> buildViewContext() {
+        return Map.of("bounce", RecordMapView.of(bounce), "mail", RecordMapView.of(mail));
+    }
+
+    @Benchmark
+    public void resolveCopiedContext(Blackhole blackhole) {
+        resolve(copiedContext(mail, bounce), blackhole);
+    }
+
+    @Benchmark
+    public void resolveViewContext(Blackhole blackhole) {
+        resolve(Map.of("bounce", RecordMapView.of(bounce), "mail", RecordMapView.of(mail)), blackhole);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void resolve(Map<String, Object> context, Blackhole blackhole) {
+        Map<String, Object> bounceContext = (Map<String, Object>) context.get("bounce");
+        Map<String, Object> mailContext = (Map<String, Object>) context.get("mail");
+        blackhole.consume(bounceContext.get("bounceType"));
+        blackhole.consume(bounceContext.get("bounceSubType"));
+        blackhole.consume(bounceContext.get("timestamp"));
+        blackhole.consume(bounceContext.get("feedbackId"));
+        blackhole.consume(bounceContext.get("reportingMTA"));
+        for (Object recipient : (List<Object>) bounceContext.get("bouncedRecipients")) {
+            Map<String, Object> recipientContext = (Map<String, Object>) recipient;
+            blackhole.consume(recipientContext.get("emailAddress"));
+            blackhole.consume(recipientContext.get("status"));
+            blackhole.consume(recipientContext.get("diagnosticCode"));
+        }
+        blackhole.consume(mailContext.get("messageId"));
+        blackhole.consume(mailContext.get("source"));
+        blackhole.consume(((Map<String, Object>) mailContext.get("commonHeaders")).get("subject"));
+    }
+
+    /**
+     * Builds the context the way {@code SendEmailSESNotificationHandler} did before it used
+     * {@link RecordMapView}.
+     */
+    private static Map<String, Object> copiedContext(Mail mail, Bounce bounce) {
+        Map<String, Object> bounceContext = new HashMap<>();
+        bounceContext.put("bounceType", bounce.bounceType());
+        bounceContext.put("bounceSubType", bounce.bounceSubType());
+        bounceContext.put("bouncedRecipients", bounce.bouncedRecipients().stream()
+                .map(TemplateContextBenchmark::copiedRecipient)
+                .collect(Collectors.toList()));
+        bounceContext.put("timestamp", bounce.timestamp());
+        bounceContext.put("feedbackId", bounce.feedbackId());
+        bounceContext.put("remoteMtaIp", bounce.remoteMtaIp());
+        bounceContext.put("reportingMTA", bounce.reportingMTA());
+
+        Map<String, Object> commonHeaders = new HashMap<>();
+        commonHeaders.put("from", mail.commonHeaders().from());
+        commonHeaders.put("to", mail.commonHeaders().to());
+        commonHeaders.put("date", mail.commonHeaders().date());
+        commonHeaders.put("messageId", mail.commonHeaders().messageId());
+        commonHeaders.put("subject", mail.commonHeaders().subject());
+
+        Map<String, Object> mailContext = new HashMap<>();
+        mailContext.put("timestamp", mail.timestamp());
+        mailContext.put("messageId", mail.messageId());
+        mailContext.put("source", mail.source());
+        mailContext.put("sourceArn", mail.sourceArn());
+        mailContext.put("sourceIp", mail.sourceIp());
+        mailContext.put("sendingAccountId", mail.sendingAccountId());
+        mailContext.put("callerIdentity", mail.callerIdentity());
+        mailContext.put("destination", mail.destination());
+        mailContext.put("headersTruncated", mail.headersTruncated());
+        mailContext.put("headers", mail.headers() == null ? Map.of() : mail.headers().asMap());
+        mailContext.put("commonHeaders", commonHeaders);
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("bounce", bounceContext);
+        context.put("mail", mailContext);
+        return context;
+    }
+
+    private static Map<String, Object> copiedRecipient(BouncedRecipient recipient) {
+        Map<String, Object> recipientContext = new HashMap<>();
+        recipientContext.put("emailAddress", recipient.emailAddress());
+        recipientContext.put("action", recipient.action());
+        recipientContext.put("status", recipient.status());
+        recipientContext.put("diagnosticCode", recipient.diagnosticCode());
+        return recipientContext;
+    }
+}
@@ -0,0 +1,96 @@
+package com.megafarad.seshandler.benchmark;
+
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.rendering.RecordMapView;
+import com.megafarad.seshandler.rendering.RenderingService;
+import com.megafarad.seshandler.templates.FileSystemTemplateSource;
+import com.megafarad.seshandler.templates.TemplateStore;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@link TemplateStore}: rendering the bundled HTML bounce template read from a template
+ * directory, compared with the same template compiled once, and a revalidation of the templates
+ * of the store when none of them changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateStoreBenchmark {
+
+    private static final String TEMPLATE = "templates/html-bounce-notification.peb";
+
+    private Path directory;
+    private TemplateStore store;
+    private RenderingService renderingService;
+    private PebbleTemplate compiledTemplate;
+    private PebbleTemplate storedTemplate;
+    private Map<String, Object> templateContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("templates");
+        Path file = directory.resolve(TEMPLATE);
+        Files.createDirectories(file.getParent());
+        try (InputStream template = getClass().getClassLoader().getResourceAsStream(TEMPLATE)) {
+            Files.copy(template, file);
+        }
+        store = new TemplateStore(new FileSystemTemplateSource(directory), 100, Duration.ZERO);
+        renderingService = new ProductionRenderingService();
+        compiledTemplate = Templates.body("html-bounce-notification");
+        storedTemplate = store.get(TEMPLATE);
+        SESNotification notification = Fixtures.notification("bounce_with_dsn.json");
+        templateContext = Map.of("bounce", RecordMapView.of(notification.bounce()),
+                "mail", RecordMapView.of(notification.mail()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public String renderCompiled() {
+        return renderingService.render(compiledTemplate, templateContext);
+    }
+
+    @Benchmark
+    public String renderStored() {
+        return renderingService.render(storedTemplate, templateContext);
+    }
+
+    @Benchmark
+    public boolean revalidate() {
+        return store.revalidate();
+    }
+}
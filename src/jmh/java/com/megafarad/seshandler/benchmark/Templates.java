@@ -0,0 +1,37 @@
+package com.megafarad.seshandler.benchmark;
+
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+/**
+ * The bundled templates, compiled the way {@code SendEmailSESNotificationHandler} compiles them.
+ */
+public final class Templates {
+
+    private static final PebbleEngine BODY_ENGINE = new PebbleEngine.Builder().autoEscaping(true).build();
+    private static final PebbleEngine SUBJECT_ENGINE = new PebbleEngine.Builder().loader(new StringLoader()).build();
+
+    private Templates() {
+    }
+
+    /**
+     * Compiles a bundled body template.
+     *
+     * @param name The name of the template (e.g., {@code html-bounce-notification}).
+     * @return The compiled template.
+     */
+    public static PebbleTemplate body(String name) {
+        return BODY_ENGINE.getTemplate("templates/" + name + ".peb");
+    }
+
+    /**
+     * Compiles a subject template.
+     *
+     * @param subject The template source of the subject.
+     * @return The compiled template.
+     */
+    public static PebbleTemplate subject(String subject) {
+        return SUBJECT_ENGINE.getTemplate(subject);
+    }
+}
@@ -0,0 +1,53 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.megafarad.seshandler.benchmark.Fixtures;
+import com.megafarad.seshandler.model.SESNotification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link SendEmailSESNotificationHandler} builds the template context of a
+ * notification. The benchmark lives in the handler's package to call its package-private builders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateContextBuildBenchmark {
+
+    @Param({"bounce_with_dsn.json", "complaint_with_feedback.json", "delivery.json"})
+    public String fixture;
+
+    private SESNotification notification;
+
+    @Setup
+    public void setUp() {
+        notification = Fixtures.notification(fixture);
+    }
+
+    @Benchmark
+    public Map<String, Object> buildTemplateContext() {
+        return switch (notification.notificationType()) {
+            case "Bounce" -> SendEmailSESNotificationHandler.buildBounceTemplateContext(notification.mail(),
+                    notification.bounce());
+            case "Complaint" -> SendEmailSESNotificationHandler.buildComplaintTemplateContext(notification.mail(),
+                    notification.complaint());
+            default -> SendEmailSESNotificationHandler.buildDeliveryTemplateContext(notification.mail(),
+                    notification.delivery());
+        };
+    }
+}
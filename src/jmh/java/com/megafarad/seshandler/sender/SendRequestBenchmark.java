@@ -0,0 +1,81 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.benchmark.Fixtures;
+import com.megafarad.seshandler.benchmark.Templates;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.rendering.RecordMapView;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ses.SesClient;
+import software.amazon.awssdk.services.ses.model.SendEmailRequest;
+import software.amazon.awssdk.services.ses.model.SendRawEmailRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the local part of sending a notification email for the rendered bounce fixture:
+ * building the {@link SendEmailRequest} that {@link ProductionEmailSender} and
+ * {@link AsyncEmailSender} hand to SES, compared with writing the MIME message of the
+ * {@link SendRawEmailRequest} that {@link RawEmailSender} hands to SES, without and with the
+ * notification attached. The network call itself is not measured. The benchmark lives in the
+ * sender package to call the package-private request builders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendRequestBenchmark {
+
+    private String subject;
+    private String htmlBody;
+    private String textBody;
+    private List<EmailAttachment> attachments;
+    private final RawEmailSender rawEmailSender = new RawEmailSender((SesClient) null);
+
+    @Setup
+    public void setUp() {
+        SESNotification notification = Fixtures.notification("bounce_with_dsn.json");
+        RenderedEmail email = new ProductionRenderingService().generateEmail(
+                Templates.subject("Bounce Email Notification"),
+                Templates.body("html-bounce-notification"),
+                Templates.body("text-bounce-notification"),
+                Map.of("bounce", RecordMapView.of(notification.bounce()),
+                        "mail", RecordMapView.of(notification.mail())));
+        subject = email.subject();
+        htmlBody = email.htmlBody();
+        textBody = email.textBody();
+        attachments = NotificationAttachment.JSON.attachmentsFor(notification);
+    }
+
+    @Benchmark
+    public SendEmailRequest buildRequest() {
+        return ProductionEmailSender.buildRequest("sender@example.com", "recipient@example.com", subject,
+                htmlBody, textBody);
+    }
+
+    @Benchmark
+    public SendRawEmailRequest buildRawRequest() {
+        return rawEmailSender.buildRequest("sender@example.com", "recipient@example.com", subject, htmlBody,
+                textBody, List.of());
+    }
+
+    @Benchmark
+    public SendRawEmailRequest buildRawRequestWithAttachment() {
+        return rawEmailSender.buildRequest("sender@example.com", "recipient@example.com", subject, htmlBody,
+                textBody, attachments);
+    }
+}
@@ -0,0 +1,44 @@
+package com.megafarad.seshandler.aggregation;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The AggregationStore interface defines a contract for retaining notification summaries
+ * across invocations until the aggregation window they belong to closes.
+ * <p>
+ * A window opens when the first summary is appended to an empty store and closes when every
+ * summary has been removed. Implementations must be safe for use by multiple threads.
+ */
+public interface AggregationStore {
+
+    /**
+     * Appends a summary to the currently open window, opening a new window if the store is empty.
+     *
+     * @param summary The summary to retain.
+     */
+    void append(NotificationSummary summary);
+
+    /**
+     * Returns the window that is currently open.
+     *
+     * @return The open window, or an empty Optional if the store holds no summaries.
+     */
+    Optional<AggregationWindow> window();
+
+    /**
+     * Returns every summary in the store without removing it.
+     *
+     * @return The summaries in the order they were appended.
+     */
+    List<NotificationSummary> summaries();
+
+    /**
+     * Removes the summaries that were appended first, such as those returned by an earlier call
+     * to {@link #summaries()} once they have been reported. Summaries appended since then are
+     * kept, and the window is closed if none is left.
+     *
+     * @param count The number of summaries to remove.
+     */
+    void remove(int count);
+}
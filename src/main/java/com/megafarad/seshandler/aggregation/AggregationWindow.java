@@ -0,0 +1,11 @@
+package com.megafarad.seshandler.aggregation;
+
+import java.time.Instant;
+
+/**
+ * Describes the aggregation window that is currently open in an {@link AggregationStore}.
+ *
+ * @param start The time at which the earliest summary in the window was added.
+ * @param count The number of summaries in the window.
+ */
+public record AggregationWindow(Instant start, int count) { }
@@ -0,0 +1,137 @@
+package com.megafarad.seshandler.aggregation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An AggregationStore that appends summaries as JSON lines to a local file, so that an
+ * aggregation window survives restarts of the process. The file can be placed in the Lambda
+ * `/tmp` directory, which belongs to a single execution environment, or in a local directory
+ * during testing.
+ * <p>
+ * The window start and size are read from the file once, when the store is created, and
+ * maintained in memory afterwards, and removing summaries replaces the whole file. The file
+ * must therefore be used by one process only: it must not be placed on storage shared by
+ * several execution environments, such as an EFS volume, whose appends and replacements would
+ * interleave with each other.
+ */
+public class FileAggregationStore implements AggregationStore {
+
+    private final Path path;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private long windowStart;
+    private int count;
+
+    /**
+     * Constructs a FileAggregationStore backed by the specified file, loading the window that
+     * is already recorded in it, if any.
+     *
+     * @param path The file in which summaries are stored. It is created on the first append.
+     */
+    public FileAggregationStore(Path path) {
+        this.path = path;
+        open(read());
+    }
+
+    @Override
+    public synchronized void append(NotificationSummary summary) {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(mapper.writeValueAsString(summary));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new RuntimeException("Appending to aggregation store failed: " + path, e);
+        }
+        if (count == 0 || summary.receivedAt() < windowStart) {
+            windowStart = summary.receivedAt();
+        }
+        count++;
+    }
+
+    @Override
+    public synchronized Optional<AggregationWindow> window() {
+        if (count == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new AggregationWindow(Instant.ofEpochMilli(windowStart), count));
+    }
+
+    @Override
+    public synchronized List<NotificationSummary> summaries() {
+        return read();
+    }
+
+    /**
+     * Removes the summaries that were appended first by rewriting the file with the others, which
+     * replaces the file atomically, or by deleting the file if no summary is left.
+     *
+     * @param count The number of summaries to remove.
+     */
+    @Override
+    public synchronized void remove(int count) {
+        List<NotificationSummary> summaries = read();
+        List<NotificationSummary> remaining = summaries.subList(Math.min(count, summaries.size()), summaries.size());
+        try {
+            if (remaining.isEmpty()) {
+                Files.deleteIfExists(path);
+            } else {
+                Path rewritten = path.resolveSibling(path.getFileName() + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(rewritten, StandardCharsets.UTF_8)) {
+                    for (NotificationSummary summary : remaining) {
+                        writer.write(mapper.writeValueAsString(summary));
+                        writer.newLine();
+                    }
+                }
+                Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Clearing aggregation store failed: " + path, e);
+        }
+        open(remaining);
+    }
+
+    private void open(List<NotificationSummary> summaries) {
+        count = 0;
+        for (NotificationSummary summary : summaries) {
+            if (count == 0 || summary.receivedAt() < windowStart) {
+                windowStart = summary.receivedAt();
+            }
+            count++;
+        }
+    }
+
+    private List<NotificationSummary> read() {
+        List<NotificationSummary> summaries = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return summaries;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    summaries.add(parse(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Reading aggregation store failed: " + path, e);
+        }
+        return summaries;
+    }
+
+    private NotificationSummary parse(String line) throws JsonProcessingException {
+        return mapper.readValue(line, NotificationSummary.class);
+    }
+}
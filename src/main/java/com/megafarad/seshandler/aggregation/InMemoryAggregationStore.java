@@ -0,0 +1,44 @@
+package com.megafarad.seshandler.aggregation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An AggregationStore that keeps summaries in memory. Summaries survive across invocations
+ * served by the same Lambda execution environment, but are lost when the environment is
+ * recycled.
+ */
+public class InMemoryAggregationStore implements AggregationStore {
+
+    private final List<NotificationSummary> summaries = new ArrayList<>();
+    private long windowStart;
+
+    @Override
+    public synchronized void append(NotificationSummary summary) {
+        if (summaries.isEmpty() || summary.receivedAt() < windowStart) {
+            windowStart = summary.receivedAt();
+        }
+        summaries.add(summary);
+    }
+
+    @Override
+    public synchronized Optional<AggregationWindow> window() {
+        if (summaries.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new AggregationWindow(Instant.ofEpochMilli(windowStart), summaries.size()));
+    }
+
+    @Override
+    public synchronized List<NotificationSummary> summaries() {
+        return new ArrayList<>(summaries);
+    }
+
+    @Override
+    public synchronized void remove(int count) {
+        summaries.subList(0, Math.min(count, summaries.size())).clear();
+        windowStart = summaries.stream().mapToLong(NotificationSummary::receivedAt).min().orElse(0);
+    }
+}
@@ -0,0 +1,28 @@
+package com.megafarad.seshandler.aggregation;
+
+import java.util.List;
+
+/**
+ * A compact summary of a single SES notification, retained in an {@link AggregationStore}
+ * until the aggregation window it belongs to closes.
+ *
+ * @param notificationType The type of the notification (e.g., Bounce, Complaint, Delivery).
+ * @param bounceType       The bounce type, or {@code null} if the notification is not a bounce.
+ * @param sendingDomain    The domain of the address the original email was sent from.
+ * @param messageId        The SES message ID of the original email.
+ * @param timestamp        The time at which the bounce, complaint, or delivery occurred.
+ * @param recipients       The recipients affected by the notification.
+ * @param detail           A short type-specific detail, such as the bounce sub-type, the complaint
+ *                         feedback type, or the SMTP response of a delivery.
+ * @param receivedAt       The time, in epoch milliseconds, at which the notification was added to the store.
+ */
+public record NotificationSummary(
+        String notificationType,
+        String bounceType,
+        String sendingDomain,
+        String messageId,
+        String timestamp,
+        List<String> recipients,
+        String detail,
+        long receivedAt
+) { }
@@ -0,0 +1,35 @@
+package com.megafarad.seshandler.dedup;
+
+import java.util.Collection;
+
+/**
+ * The DeduplicationStore interface defines a contract for remembering which notifications have
+ * already been handled, beyond the lifetime of a single process.
+ * <p>
+ * A {@link Deduplicator} consults its store only for keys it has not seen recently itself, so
+ * the store is off the path of most duplicates, and records keys in it only once their
+ * notifications have been handled and flushed. Implementations must be safe for use by multiple
+ * threads.
+ */
+public interface DeduplicationStore {
+
+    /**
+     * Indicates whether a key is recorded and has not expired.
+     *
+     * @param key       The deduplication key of a notification.
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     * @return {@code true} if the notification identified by the key has already been handled.
+     */
+    boolean contains(String key, long nowMillis);
+
+    /**
+     * Records keys of notifications that have been handled, replacing the expiry time of keys
+     * that are already recorded.
+     *
+     * @param keys            The deduplication keys of the notifications.
+     * @param expiresAtMillis The time, in milliseconds since the epoch, after which the keys are
+     *                        no longer recognized.
+     * @param nowMillis       The current time, in milliseconds since the epoch.
+     */
+    void record(Collection<String> keys, long expiresAtMillis, long nowMillis);
+}
@@ -0,0 +1,160 @@
+package com.megafarad.seshandler.dedup;
+
+import com.megafarad.seshandler.model.SESNotification;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recognizes notifications that have already been handled, so that duplicate deliveries of the
+ * same notification by SNS or SQS can be dropped.
+ * <p>
+ * A notification is identified by its deduplication key (see {@link #keyOf(SESNotification)}),
+ * and a key is remembered for a fixed time to live. Keys are looked up in two tiers:
+ * - An in-process cache of the most recently acquired keys, bounded by a maximum number of keys
+ *   and evicting the oldest key first. Most duplicates are delivered shortly after the original,
+ *   to the same warm execution environment, and are recognized here without any I/O. The cache
+ *   holds exact keys rather than a probabilistic summary, so a notification is never dropped
+ *   because of a false positive.
+ * - An optional {@link DeduplicationStore}, consulted for keys that are not in the cache, which
+ *   recognizes duplicates delivered after the process restarts.
+ * <p>
+ * An acquired key is pending until it is committed: it is held by the cache only, and recorded in
+ * the store by {@link #commit(Collection)} once the notification it identifies has been handled.
+ * A notification whose handling is interrupted, e.g. by a crash or a timeout, is therefore
+ * handled again when it is redelivered after a restart.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public class Deduplicator {
+
+    private final long ttlMillis;
+    private final int maxCachedKeys;
+    private final DeduplicationStore store;
+    private final Clock clock;
+    private final LinkedHashMap<String, Long> cache = new LinkedHashMap<>();
+
+    /**
+     * Constructs a Deduplicator.
+     *
+     * @param ttl           How long a key is remembered after it has been acquired.
+     * @param maxCachedKeys The maximum number of keys held by the in-process cache.
+     * @param store         The persistent tier, or {@code null} to rely on the in-process cache only.
+     * @param clock         The clock against which keys expire.
+     */
+    public Deduplicator(Duration ttl, int maxCachedKeys, DeduplicationStore store, Clock clock) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxCachedKeys = maxCachedKeys;
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the deduplication key of a notification: its type and the message ID of the email it
+     * is about, combined with the feedback ID of a bounce or complaint, with the timestamp of a
+     * delivery, delivery delay, open, or subscription event, or with the timestamp and link of a
+     * click event. Send, reject, and rendering failure events occur at most once per email, so
+     * their type and message ID identify them.
+     *
+     * @param notification The notification.
+     * @return The key, or {@code null} if the notification lacks the fields that identify it.
+     */
+    public static String keyOf(SESNotification notification) {
+        if (notification.mail() == null || notification.mail().messageId() == null) {
+            return null;
+        }
+        String discriminator = switch (String.valueOf(notification.notificationType())) {
+            case "Bounce" -> notification.bounce() == null ? null : notification.bounce().feedbackId();
+            case "Complaint" -> notification.complaint() == null ? null : notification.complaint().feedbackId();
+            case "Delivery" -> notification.delivery() == null ? null : notification.delivery().timestamp();
+            case "DeliveryDelay" -> notification.deliveryDelay() == null ? null
+                    : notification.deliveryDelay().timestamp();
+            case "Open" -> notification.open() == null ? null : notification.open().timestamp();
+            case "Click" -> notification.click() == null || notification.click().timestamp() == null ? null
+                    : notification.click().timestamp() + "/" + notification.click().link();
+            case "Subscription" -> notification.subscription() == null ? null
+                    : notification.subscription().timestamp();
+            case "Send", "Reject", "Rendering Failure" -> "";
+            default -> null;
+        };
+        if (discriminator == null) {
+            return null;
+        }
+        return notification.notificationType() + "/" + notification.mail().messageId() + "/" + discriminator;
+    }
+
+    /**
+     * Acquires a key unless it has been acquired before and has not expired or been released.
+     *
+     * @param key The deduplication key of a notification.
+     * @return {@code true} if the key was acquired, i.e. the notification is seen for the first
+     *         time, or {@code false} if the notification is a duplicate.
+     */
+    public boolean tryAcquire(String key) {
+        long now = clock.millis();
+        long expiresAt = now + ttlMillis;
+        synchronized (cache) {
+            Long cached = cache.get(key);
+            if (cached != null && cached > now) {
+                return false;
+            }
+        }
+        if (store != null && store.contains(key, now)) {
+            cache(key, expiresAt, now);
+            return false;
+        }
+        synchronized (cache) {
+            Long cached = cache.get(key);
+            if (cached != null && cached > now) {
+                return false;
+            }
+            cache(key, expiresAt, now);
+        }
+        return true;
+    }
+
+    /**
+     * Releases a pending key, so that the notification it identifies is handled again when it is
+     * redelivered. Used when handling the notification failed.
+     *
+     * @param key The deduplication key of a notification.
+     */
+    public void release(String key) {
+        synchronized (cache) {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * Commits pending keys by recording them in the store, so that the notifications they
+     * identify are recognized as duplicates after a restart as well. Used once the notifications
+     * have been handled and any deferred work has completed.
+     *
+     * @param keys The deduplication keys of the notifications.
+     */
+    public void commit(Collection<String> keys) {
+        if (store != null && !keys.isEmpty()) {
+            long now = clock.millis();
+            store.record(keys, now + ttlMillis, now);
+        }
+    }
+
+    private void cache(String key, long expiresAt, long now) {
+        synchronized (cache) {
+            cache.remove(key);
+            cache.put(key, expiresAt);
+            Iterator<Map.Entry<String, Long>> oldest = cache.entrySet().iterator();
+            while (oldest.hasNext()) {
+                Map.Entry<String, Long> entry = oldest.next();
+                if (cache.size() <= maxCachedKeys && entry.getValue() > now) {
+                    break;
+                }
+                oldest.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.megafarad.seshandler.dedup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DeduplicationStore that records keys in a local append-only file, so that they survive
+ * restarts of the process. The file can be placed in the Lambda `/tmp` directory, which belongs
+ * to a single execution environment, on the volume of a container running the local server, or
+ * in a local directory during testing.
+ * <p>
+ * Each line of the file holds the expiry time of a key and the key, separated by a tab. The file
+ * is read once, when the store is created, and the keys are maintained in memory afterwards. Once
+ * the file holds more than twice as many lines as there were live keys after it was last
+ * compacted, it is compacted by rewriting only the live keys to a temporary file that then
+ * replaces it, which also drops the expired keys from memory.
+ * <p>
+ * The file must be used by one process only. Keys recorded by another process after this one
+ * has read the file would not be seen, their appends could interleave, and a compaction would
+ * replace them, so the file must not be placed on storage shared by several execution
+ * environments, such as an EFS volume.
+ */
+public class FileDeduplicationStore implements DeduplicationStore {
+
+    private static final int MIN_COMPACTION_LINES = 1024;
+
+    private final Path path;
+    private final Map<String, Long> keys = new HashMap<>();
+    private int lines;
+    private int compactionLines;
+
+    /**
+     * Constructs a FileDeduplicationStore backed by the specified file, loading the keys that are
+     * already recorded in it, if any.
+     *
+     * @param path The file in which keys are recorded. It is created on the first record.
+     */
+    public FileDeduplicationStore(Path path) {
+        this.path = path;
+        load(System.currentTimeMillis());
+        compactionLines = Math.max(MIN_COMPACTION_LINES, 2 * keys.size());
+    }
+
+    @Override
+    public synchronized boolean contains(String key, long nowMillis) {
+        Long expiresAt = keys.get(key);
+        return expiresAt != null && expiresAt > nowMillis;
+    }
+
+    @Override
+    public synchronized void record(Collection<String> recorded, long expiresAtMillis, long nowMillis) {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String key : recorded) {
+                writer.write(Long.toString(expiresAtMillis));
+                writer.write('\t');
+                writer.write(key);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Appending to deduplication store failed: " + path, e);
+        }
+        for (String key : recorded) {
+            keys.put(key, expiresAtMillis);
+        }
+        lines += recorded.size();
+        if (lines > compactionLines) {
+            compact(nowMillis);
+        }
+    }
+
+    /**
+     * Returns the number of keys held, including expired keys that have not been compacted yet.
+     *
+     * @return The number of keys.
+     */
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    private void load(long nowMillis) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                lines++;
+                long expiresAt = Long.parseLong(line, 0, tab, 10);
+                String key = line.substring(tab + 1);
+                if (expiresAt > nowMillis) {
+                    keys.put(key, expiresAt);
+                } else {
+                    keys.remove(key);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new RuntimeException("Reading deduplication store failed: " + path, e);
+        }
+    }
+
+    private void compact(long nowMillis) {
+        keys.values().removeIf(expiresAt -> expiresAt <= nowMillis);
+        Path temporary = path.resolveSibling(path.getFileName() + ".compacting");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : keys.entrySet()) {
+                writer.write(Long.toString(entry.getValue()));
+                writer.write('\t');
+                writer.write(entry.getKey());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Compacting deduplication store failed: " + path, e);
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Compacting deduplication store failed: " + path, e);
+        }
+        lines = keys.size();
+        compactionLines = Math.max(MIN_COMPACTION_LINES, 2 * lines);
+    }
+}
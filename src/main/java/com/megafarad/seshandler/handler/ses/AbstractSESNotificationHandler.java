@@ -1,6 +1,7 @@
 package com.megafarad.seshandler.handler.ses;
 
 import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.metrics.Metrics;
 import com.megafarad.seshandler.model.*;
 
 /**
@@ -11,9 +12,38 @@ import com.megafarad.seshandler.model.*;
  * the processing to specialized methods based on the notification type. Subclasses can override
  * these specialized methods to provide custom handling logic for each type of notification.
  * <p>
- * Notification types supported include Bounce, Complaint, and Delivery notifications.
+ * Notification types supported include Bounce, Complaint, and Delivery notifications, and the
+ * Send, Reject, Open, Click, DeliveryDelay, Rendering Failure, and Subscription events published
+ * for configuration sets. Notifications of any other type are passed to {@link #handleOther},
+ * which logs them.
+ * <p>
+ * Subclasses that act only on some types should also override {@link #ignores(String)}, so that
+ * notifications of the other types are skipped before they are parsed.
+ * <p>
+ * Every dispatched notification is counted by type in {@link Metrics}.
  */
 public abstract class AbstractSESNotificationHandler implements SESNotificationHandler {
+
+    private final Metrics metrics;
+
+    /**
+     * Constructs an AbstractSESNotificationHandler that records metrics in the Metrics instance
+     * configured through environment variables (see {@link Metrics#fromEnv()}).
+     */
+    protected AbstractSESNotificationHandler() {
+        this(Metrics.fromEnv());
+    }
+
+    /**
+     * Constructs an AbstractSESNotificationHandler that records metrics in the specified Metrics
+     * instance.
+     *
+     * @param metrics The Metrics in which dispatched notifications are counted.
+     */
+    protected AbstractSESNotificationHandler(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Handles an Amazon Simple Email Service (SES) notification by determining its type
      * and delegating the processing to specific methods for each notification type.
@@ -27,11 +57,49 @@ public abstract class AbstractSESNotificationHandler implements SESNotificationH
      */
     @Override
     public void handleNotification(SESNotification notification, Context context) {
+        metrics.recordNotification(notification.notificationType());
         switch (notification.notificationType()) {
             case "Bounce" -> handleBounce(notification.mail(), notification.bounce(), context);
             case "Complaint" -> handleComplaint(notification.mail(), notification.complaint(), context);
             case "Delivery" -> handleDelivery(notification.mail(), notification.delivery(), context);
+            case "Send" -> handleSend(notification.mail(), notification.send(), context);
+            case "Reject" -> handleReject(notification.mail(), notification.reject(), context);
+            case "Open" -> handleOpen(notification.mail(), notification.open(), context);
+            case "Click" -> handleClick(notification.mail(), notification.click(), context);
+            case "DeliveryDelay" -> handleDeliveryDelay(notification.mail(), notification.deliveryDelay(), context);
+            case "Rendering Failure" -> handleRenderingFailure(notification.mail(), notification.renderingFailure(),
+                    context);
+            case "Subscription" -> handleSubscription(notification.mail(), notification.subscription(), context);
+            default -> handleOther(notification, context);
+        }
+    }
+
+    /**
+     * Indicates whether a notification type is Bounce, Complaint, or Delivery, the only types that
+     * handlers reporting on the delivery of emails act on.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code true} for `Bounce`, `Complaint`, and `Delivery`.
+     */
+    protected static boolean isBounceComplaintOrDelivery(String notificationType) {
+        return "Bounce".equals(notificationType) || "Complaint".equals(notificationType)
+                || "Delivery".equals(notificationType);
+    }
+
+    /**
+     * Records a failure of a flush that carries on after it, so that the flush can throw once it
+     * is done.
+     *
+     * @param failure The first failure of the flush so far, or {@code null} if there is none.
+     * @param e       The new failure.
+     * @return The first failure, to which later failures are added as suppressed exceptions.
+     */
+    protected static RuntimeException addFailure(RuntimeException failure, RuntimeException e) {
+        if (failure == null) {
+            return e;
         }
+        failure.addSuppressed(e);
+        return failure;
     }
 
     /**
@@ -85,4 +153,109 @@ public abstract class AbstractSESNotificationHandler implements SESNotificationH
     protected void handleDelivery(Mail mail, Delivery delivery, Context context) {
 
     }
+
+    /**
+     * Handles a send event, published when SES accepted a send request and will attempt delivery.
+     *
+     * @param mail    An object containing details of the email that was sent.
+     * @param send    The details of the send event, of which SES reports none.
+     * @param context The AWS Lambda execution context, providing runtime metadata and
+     *                logging utilities for the current invocation.
+     */
+    protected void handleSend(Mail mail, Send send, Context context) {
+
+    }
+
+    /**
+     * Handles a reject event, published when SES rejected an email before attempting delivery,
+     * e.g. because it contained a virus.
+     *
+     * @param mail    An object containing details of the email that was rejected.
+     * @param reject  An object containing the reason the email was rejected.
+     * @param context The AWS Lambda execution context, providing runtime metadata and
+     *                logging utilities for the current invocation.
+     */
+    protected void handleReject(Mail mail, Reject reject, Context context) {
+
+    }
+
+    /**
+     * Handles an open event, published when a recipient opened an email.
+     *
+     * @param mail    An object containing details of the email that was opened.
+     * @param open    An object containing details about the open event, such as the IP address
+     *                and user agent of the recipient.
+     * @param context The AWS Lambda execution context, providing runtime metadata and
+     *                logging utilities for the current invocation.
+     */
+    protected void handleOpen(Mail mail, Open open, Context context) {
+
+    }
+
+    /**
+     * Handles a click event, published when a recipient clicked a link in an email.
+     *
+     * @param mail    An object containing details of the email whose link was clicked.
+     * @param click   An object containing details about the click event, such as the link and
+     *                its tags.
+     * @param context The AWS Lambda execution context, providing runtime metadata and
+     *                logging utilities for the current invocation.
+     */
+    protected void handleClick(Mail mail, Click click, Context context) {
+
+    }
+
+    /**
+     * Handles a delivery delay event, published when an email could not be delivered yet because
+     * of a temporary issue.
+     *
+     * @param mail          An object containing details of the email that was delayed.
+     * @param deliveryDelay An object containing details about the delay, such as its type and the
+     *                      delayed recipients.
+     * @param context       The AWS Lambda execution context, providing runtime metadata and
+     *                      logging utilities for the current invocation.
+     */
+    protected void handleDeliveryDelay(Mail mail, DeliveryDelay deliveryDelay, Context context) {
+
+    }
+
+    /**
+     * Handles a rendering failure event, published when an email sent with a template could not
+     * be rendered.
+     *
+     * @param mail             An object containing details of the email that could not be rendered.
+     * @param renderingFailure An object containing the template name and the error message.
+     * @param context          The AWS Lambda execution context, providing runtime metadata and
+     *                         logging utilities for the current invocation.
+     */
+    protected void handleRenderingFailure(Mail mail, RenderingFailure renderingFailure, Context context) {
+
+    }
+
+    /**
+     * Handles a subscription event, published when a contact updated their subscriptions through
+     * the unsubscribe link of an email.
+     *
+     * @param mail         An object containing details of the email whose link was used.
+     * @param subscription An object containing the contact list and the topic preferences before
+     *                     and after the update.
+     * @param context      The AWS Lambda execution context, providing runtime metadata and
+     *                     logging utilities for the current invocation.
+     */
+    protected void handleSubscription(Mail mail, Subscription subscription, Context context) {
+
+    }
+
+    /**
+     * Handles a notification of a type that is not supported. Logs the type and message ID of the
+     * notification, so that notifications of unknown types are not dropped unnoticed.
+     *
+     * @param notification The notification.
+     * @param context      The AWS Lambda execution context, providing runtime metadata and
+     *                     logging utilities for the current invocation.
+     */
+    protected void handleOther(SESNotification notification, Context context) {
+        context.getLogger().log("Unhandled notification type " + notification.notificationType() + ": "
+                + (notification.mail() == null ? null : notification.mail().messageId()));
+    }
 }
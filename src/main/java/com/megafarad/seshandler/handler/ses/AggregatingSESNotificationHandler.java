@@ -0,0 +1,331 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.aggregation.AggregationStore;
+import com.megafarad.seshandler.aggregation.AggregationWindow;
+import com.megafarad.seshandler.aggregation.FileAggregationStore;
+import com.megafarad.seshandler.aggregation.InMemoryAggregationStore;
+import com.megafarad.seshandler.aggregation.NotificationSummary;
+import com.megafarad.seshandler.model.*;
+import com.megafarad.seshandler.rendering.RenderingServices;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import com.megafarad.seshandler.rendering.RenderingService;
+import com.megafarad.seshandler.sender.EmailSender;
+import com.megafarad.seshandler.sender.EmailSenders;
+import com.megafarad.seshandler.templates.TemplateStores;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * A handler that accumulates summaries of Amazon SES notifications across invocations and
+ * sends a single report email when the aggregation window closes.
+ * <p>
+ * Each bounce, complaint, and delivery dispatched by {@link AbstractSESNotificationHandler}
+ * is reduced to a {@link NotificationSummary} and appended to an {@link AggregationStore}.
+ * When an invocation is flushed, the window is closed if it has been open for at least the
+ * configured duration or holds at least the configured number of summaries. Closing the
+ * window sends one report of the summaries in the store, grouped by notification type, bounce
+ * type, and sending domain, and removes them from the store once it has been sent. If the
+ * report cannot be sent, the summaries stay in the store and the report is attempted again on
+ * the next flush.
+ */
+public class AggregatingSESNotificationHandler extends AbstractSESNotificationHandler {
+
+    private final AggregationStore store;
+    private final Duration windowDuration;
+    private final int maxEvents;
+    private final Clock clock;
+    private final EmailSender emailSender;
+    private final RenderingService renderingService;
+    private final PebbleTemplate reportSubjectTemplate;
+    private final PebbleTemplate htmlReportBodyTemplate;
+    private final PebbleTemplate textReportBodyTemplate;
+    private final String senderEmail;
+    private final String recipientEmail;
+
+    /**
+     * Constructs an AggregatingSESNotificationHandler configured from environment variables.
+     * <p>
+     * The window closes after `AGGREGATION_WINDOW_SECONDS` seconds (300 by default) or once it
+     * holds `AGGREGATION_MAX_EVENTS` summaries (1000 by default). Summaries are kept in a file at
+     * `AGGREGATION_STORE_PATH` when that variable is set, and in memory otherwise. The report
+     * templates are read from `HTML_AGGREGATE_REPORT_TEMPLATE`, `TEXT_AGGREGATE_REPORT_TEMPLATE`,
+     * and `AGGREGATE_REPORT_SUBJECT`, falling back to the bundled report templates. The body
+     * templates are loaded through {@link TemplateStores#fromEnv()}.
+     *
+     * @throws IllegalStateException If the `SENDER_EMAIL` or `RECIPIENT_EMAIL` environment
+     *                               variable is missing.
+     */
+    public AggregatingSESNotificationHandler() {
+        Function<String, PebbleTemplate> bodyTemplates = TemplateStores.fromEnv();
+        PebbleEngine subjectEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
+        String storePath = getEnvVar("AGGREGATION_STORE_PATH", "");
+        this.store = storePath.isEmpty() ? new InMemoryAggregationStore() : new FileAggregationStore(Path.of(storePath));
+        this.windowDuration = Duration.ofSeconds(Long.parseLong(getEnvVar("AGGREGATION_WINDOW_SECONDS", "300")));
+        this.maxEvents = Integer.parseInt(getEnvVar("AGGREGATION_MAX_EVENTS", "1000"));
+        this.clock = Clock.systemUTC();
+        this.emailSender = EmailSenders.fromEnv();
+        this.renderingService = RenderingServices.fromEnv();
+        this.reportSubjectTemplate = subjectEngine.getTemplate(getEnvVar("AGGREGATE_REPORT_SUBJECT",
+                "SES Notification Report: {{ report.count }} notification(s)"));
+        this.htmlReportBodyTemplate = bodyTemplates.apply(getEnvVar("HTML_AGGREGATE_REPORT_TEMPLATE",
+                "templates/html-aggregate-report.peb"));
+        this.textReportBodyTemplate = bodyTemplates.apply(getEnvVar("TEXT_AGGREGATE_REPORT_TEMPLATE",
+                "templates/text-aggregate-report.peb"));
+        this.senderEmail = getEnvVar("SENDER_EMAIL");
+        this.recipientEmail = getEnvVar("RECIPIENT_EMAIL");
+    }
+
+    /**
+     * Constructs an AggregatingSESNotificationHandler with the specified store, window limits,
+     * collaborators, and templates.
+     *
+     * @param store                  The store in which summaries are retained between invocations.
+     * @param windowDuration         The maximum time a window stays open.
+     * @param maxEvents              The number of summaries at which a window closes early.
+     * @param clock                  The clock used to determine whether a window has expired.
+     * @param emailSender            An instance of EmailSender to send the report emails.
+     * @param renderingService       A RenderingService responsible for generating the report content.
+     * @param reportSubjectTemplate  The Pebble template for the subject line of report emails.
+     * @param htmlReportBodyTemplate The Pebble template used for the HTML body of report emails.
+     * @param textReportBodyTemplate The Pebble template used for the plain text body of report emails.
+     * @param senderEmail            The sender email address used for the report emails.
+     * @param recipientEmail         The recipient email address used for the report emails.
+     */
+    public AggregatingSESNotificationHandler(AggregationStore store,
+                                             Duration windowDuration,
+                                             int maxEvents,
+                                             Clock clock,
+                                             EmailSender emailSender,
+                                             RenderingService renderingService,
+                                             PebbleTemplate reportSubjectTemplate,
+                                             PebbleTemplate htmlReportBodyTemplate,
+                                             PebbleTemplate textReportBodyTemplate,
+                                             String senderEmail,
+                                             String recipientEmail) {
+        this.store = store;
+        this.windowDuration = windowDuration;
+        this.maxEvents = maxEvents;
+        this.clock = clock;
+        this.emailSender = emailSender;
+        this.renderingService = renderingService;
+        this.reportSubjectTemplate = reportSubjectTemplate;
+        this.htmlReportBodyTemplate = htmlReportBodyTemplate;
+        this.textReportBodyTemplate = textReportBodyTemplate;
+        this.senderEmail = senderEmail;
+        this.recipientEmail = recipientEmail;
+    }
+
+    /**
+     * Reports only cover bounces, complaints, and deliveries, so other notifications are ignored.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code false} for `Bounce`, `Complaint`, and `Delivery`; otherwise {@code true}.
+     */
+    @Override
+    public boolean ignores(String notificationType) {
+        return !isBounceComplaintOrDelivery(notificationType);
+    }
+
+    /**
+     * Summaries do not include mail headers, so they do not need to be parsed.
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean requiresMailHeaders() {
+        return false;
+    }
+
+    /**
+     * Appends a summary of a bounce notification to the aggregation store.
+     *
+     * @param mail    The mail object containing details of the original email.
+     * @param bounce  The bounce object containing details about the bounce event.
+     * @param context The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleBounce(Mail mail, Bounce bounce, Context context) {
+        super.handleBounce(mail, bounce, context);
+        store.append(summarize(mail, bounce));
+    }
+
+    /**
+     * Appends a summary of a complaint notification to the aggregation store.
+     *
+     * @param mail      The mail object containing details of the original email.
+     * @param complaint The complaint object containing details about the complaint event.
+     * @param context   The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleComplaint(Mail mail, Complaint complaint, Context context) {
+        super.handleComplaint(mail, complaint, context);
+        store.append(summarize(mail, complaint));
+    }
+
+    /**
+     * Appends a summary of a delivery notification to the aggregation store.
+     *
+     * @param mail     The mail object containing details of the original email.
+     * @param delivery The delivery object containing details about the delivery event.
+     * @param context  The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleDelivery(Mail mail, Delivery delivery, Context context) {
+        super.handleDelivery(mail, delivery, context);
+        store.append(summarize(mail, delivery));
+    }
+
+    /**
+     * Closes the aggregation window and sends the report if the window has expired or is full.
+     * <p>
+     * The summaries are removed from the store only once the report has been sent. If it cannot
+     * be rendered or sent, the failure is logged and the summaries are left in the store, so that
+     * the report is attempted again by the next flush. The
+     * invocation does not fail in that case: its notifications are already held by the store, and
+     * failing it would have them redelivered and counted twice.
+     *
+     * @param context The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    public void flush(Context context) {
+        super.flush(context);
+        Optional<AggregationWindow> window = store.window();
+        if (window.isEmpty() || !isClosed(window.get())) {
+            return;
+        }
+
+        List<NotificationSummary> summaries = store.summaries();
+        if (summaries.isEmpty()) {
+            return;
+        }
+        try {
+            RenderedEmail email = renderingService.generateEmail(reportSubjectTemplate, htmlReportBodyTemplate,
+                    textReportBodyTemplate, buildReportTemplateContext(window.get(), summaries));
+            emailSender.send(senderEmail, recipientEmail, email.subject(), email.htmlBody(), email.textBody());
+            emailSender.flush();
+        } catch (RuntimeException e) {
+            context.getLogger().log("Failed to send aggregate report of " + summaries.size()
+                    + " notification(s), retrying on the next flush: " + e.getMessage());
+            return;
+        }
+        store.remove(summaries.size());
+        context.getLogger().log("Sent aggregate report of " + summaries.size() + " notification(s)");
+    }
+
+    /**
+     * Renders a report of the specified notification without storing or sending it.
+     *
+     * @param notification A representative bounce, complaint, or delivery notification.
+     */
+    @Override
+    public void prime(SESNotification notification) {
+        NotificationSummary summary = switch (notification.notificationType()) {
+            case "Bounce" -> summarize(notification.mail(), notification.bounce());
+            case "Complaint" -> summarize(notification.mail(), notification.complaint());
+            case "Delivery" -> summarize(notification.mail(), notification.delivery());
+            default -> null;
+        };
+        if (summary != null) {
+            renderingService.generateEmail(reportSubjectTemplate, htmlReportBodyTemplate, textReportBodyTemplate,
+                    buildReportTemplateContext(new AggregationWindow(clock.instant(), 1), List.of(summary)));
+        }
+    }
+
+    /**
+     * Closes the connections of the email sender before a SnapStart snapshot is taken.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        emailSender.beforeCheckpoint();
+    }
+
+    /**
+     * Rebuilds the client of the email sender after a SnapStart snapshot has been restored.
+     */
+    @Override
+    public void afterRestore() {
+        emailSender.afterRestore();
+    }
+
+    private NotificationSummary summarize(Mail mail, Bounce bounce) {
+        return new NotificationSummary("Bounce", bounce.bounceType(), DigestKey.sendingDomain(mail),
+                mail.messageId(), bounce.timestamp(),
+                addresses(bounce.bouncedRecipients(), BouncedRecipient::emailAddress),
+                bounce.bounceSubType(), clock.millis());
+    }
+
+    private NotificationSummary summarize(Mail mail, Complaint complaint) {
+        return new NotificationSummary("Complaint", null, DigestKey.sendingDomain(mail),
+                mail.messageId(), complaint.timestamp(),
+                addresses(complaint.complainedRecipients(), ComplainedRecipient::emailAddress),
+                complaint.complaintFeedbackType(), clock.millis());
+    }
+
+    private NotificationSummary summarize(Mail mail, Delivery delivery) {
+        return new NotificationSummary("Delivery", null, DigestKey.sendingDomain(mail),
+                mail.messageId(), delivery.timestamp(), delivery.recipients(), delivery.smtpResponse(),
+                clock.millis());
+    }
+
+    private static <T> List<String> addresses(List<T> recipients, Function<T, String> address) {
+        return recipients == null ? List.of() : recipients.stream().map(address).collect(Collectors.toList());
+    }
+
+    private boolean isClosed(AggregationWindow window) {
+        return window.count() >= maxEvents || !clock.instant().isBefore(window.start().plus(windowDuration));
+    }
+
+    private Map<String, Object> buildReportTemplateContext(AggregationWindow window,
+                                                           List<NotificationSummary> summaries) {
+        Map<DigestKey, List<NotificationSummary>> grouped = new LinkedHashMap<>();
+        for (NotificationSummary summary : summaries) {
+            grouped.computeIfAbsent(new DigestKey(summary.notificationType(), summary.bounceType(),
+                    summary.sendingDomain()), key -> new ArrayList<>()).add(summary);
+        }
+
+        List<ReportGroup> groups = grouped.entrySet().stream()
+                .map(entry -> new ReportGroup(entry.getKey().notificationType(), entry.getKey().bounceType(),
+                        entry.getKey().sendingDomain(), entry.getValue().size(), entry.getValue()))
+                .collect(Collectors.toList());
+
+        Map<String, Object> reportContext = new HashMap<>();
+        reportContext.put("windowStart", window.start().toString());
+        reportContext.put("windowEnd", Instant.now(clock).toString());
+        reportContext.put("count", summaries.size());
+        reportContext.put("groups", groups);
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("report", reportContext);
+
+        return context;
+    }
+
+    /**
+     * A group of summaries listed together in an aggregate report.
+     *
+     * @param notificationType The notification type shared by the summaries.
+     * @param bounceType       The bounce type shared by the summaries, or {@code null} for non-bounces.
+     * @param sendingDomain    The sending domain shared by the summaries.
+     * @param count            The number of summaries in the group.
+     * @param summaries        The summaries in the group.
+     */
+    public record ReportGroup(String notificationType, String bounceType, String sendingDomain, int count,
+                              List<NotificationSummary> summaries) { }
+}
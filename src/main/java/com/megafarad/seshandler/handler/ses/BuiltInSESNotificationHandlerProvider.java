@@ -0,0 +1,32 @@
+package com.megafarad.seshandler.handler.ses;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Provides the SESNotificationHandler implementations bundled with this project:
+ * - {@link LoggingSESNotificationHandler}
+ * - {@link SendEmailSESNotificationHandler}
+ * - {@link DigestSESNotificationHandler}
+ * - {@link AggregatingSESNotificationHandler}
+ * - {@link RoutingSESNotificationHandler}
+ * - {@link SuppressionSESNotificationHandler}
+ * - {@link TenantSESNotificationHandler}
+ * <p>
+ * Each handler is created through its no-argument constructor, so it is configured through
+ * environment variables.
+ */
+public class BuiltInSESNotificationHandlerProvider implements SESNotificationHandlerProvider {
+
+    @Override
+    public Map<String, Supplier<? extends SESNotificationHandler>> handlers() {
+        return Map.of(
+                LoggingSESNotificationHandler.class.getName(), LoggingSESNotificationHandler::new,
+                SendEmailSESNotificationHandler.class.getName(), SendEmailSESNotificationHandler::new,
+                DigestSESNotificationHandler.class.getName(), DigestSESNotificationHandler::new,
+                AggregatingSESNotificationHandler.class.getName(), AggregatingSESNotificationHandler::new,
+                RoutingSESNotificationHandler.class.getName(), RoutingSESNotificationHandler::new,
+                SuppressionSESNotificationHandler.class.getName(), SuppressionSESNotificationHandler::new,
+                TenantSESNotificationHandler.class.getName(), TenantSESNotificationHandler::new);
+    }
+}
@@ -0,0 +1,119 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.dedup.Deduplicator;
+import com.megafarad.seshandler.model.SESNotification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An SESNotificationHandler decorator that drops duplicate deliveries of a notification before
+ * they reach the decorated handler, so that no template is rendered and no email is sent twice
+ * for the same notification.
+ * <p>
+ * Duplicates are recognized by a {@link Deduplicator}. A notification whose key cannot be
+ * determined is always handled. The keys of the notifications handled since the previous flush
+ * are committed to the store of the Deduplicator only once the decorated handler has been
+ * flushed, so a notification is not recorded as handled while its deferred work, such as
+ * sending an email, may still be lost to a crash or a timeout. Acquired keys are released again
+ * when the notification could not be handled, so that a redelivery is not mistaken for a
+ * duplicate:
+ * - When the decorated handler throws from {@link #handleNotification}, the key of that
+ *   notification is released.
+ * - When the decorated handler throws from {@link #flush}, the keys of every notification handled
+ *   since the previous flush are released, because their deferred work may not have completed.
+ */
+public class DeduplicatingSESNotificationHandler implements SESNotificationHandler {
+
+    private final SESNotificationHandler delegate;
+    private final Deduplicator deduplicator;
+    private final Queue<String> unflushedKeys = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a DeduplicatingSESNotificationHandler.
+     *
+     * @param delegate     The SESNotificationHandler that handles the notifications that are not
+     *                     duplicates.
+     * @param deduplicator The Deduplicator that recognizes duplicates.
+     */
+    public DeduplicatingSESNotificationHandler(SESNotificationHandler delegate, Deduplicator deduplicator) {
+        this.delegate = delegate;
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Hands a notification to the decorated handler, unless it is a duplicate of a notification
+     * that has already been handled, in which case it is logged and dropped.
+     *
+     * @param notification The notification to handle.
+     * @param context      The AWS Lambda execution context.
+     */
+    @Override
+    public void handleNotification(SESNotification notification, Context context) {
+        String key = Deduplicator.keyOf(notification);
+        if (key == null) {
+            delegate.handleNotification(notification, context);
+            return;
+        }
+        if (!deduplicator.tryAcquire(key)) {
+            context.getLogger().log("Dropped duplicate notification: " + key);
+            return;
+        }
+        try {
+            delegate.handleNotification(notification, context);
+        } catch (RuntimeException e) {
+            deduplicator.release(key);
+            throw e;
+        }
+        unflushedKeys.add(key);
+    }
+
+    @Override
+    public boolean ignores(String notificationType) {
+        return delegate.ignores(notificationType);
+    }
+
+    @Override
+    public boolean requiresMailHeaders() {
+        return delegate.requiresMailHeaders();
+    }
+
+    @Override
+    public void flush(Context context) {
+        List<String> keys = new ArrayList<>();
+        String key;
+        while ((key = unflushedKeys.poll()) != null) {
+            keys.add(key);
+        }
+        try {
+            delegate.flush(context);
+        } catch (RuntimeException e) {
+            keys.forEach(deduplicator::release);
+            throw e;
+        }
+        try {
+            deduplicator.commit(keys);
+        } catch (RuntimeException e) {
+            context.getLogger().log("Failed to record " + keys.size()
+                    + " handled notification(s) for deduplication: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void prime(SESNotification notification) {
+        delegate.prime(notification);
+    }
+
+    @Override
+    public void beforeCheckpoint() {
+        delegate.beforeCheckpoint();
+    }
+
+    @Override
+    public void afterRestore() {
+        delegate.afterRestore();
+    }
+}
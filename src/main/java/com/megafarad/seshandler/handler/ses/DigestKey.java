@@ -0,0 +1,41 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.megafarad.seshandler.model.Mail;
+
+import java.util.Locale;
+
+/**
+ * Identifies a group of SES notifications that are summarized together in a single
+ * digest email.
+ *
+ * @param notificationType The type of the grouped notifications (e.g., Bounce, Complaint, Delivery).
+ * @param bounceType       The bounce type of the grouped notifications, or {@code null} for
+ *                         notifications that are not bounces.
+ * @param sendingDomain    The domain of the address the original emails were sent from.
+ */
+public record DigestKey(
+        String notificationType,
+        String bounceType,
+        String sendingDomain
+) {
+
+    /**
+     * Extracts the sending domain from the source address of the specified mail.
+     *
+     * @param mail The mail whose source address is examined.
+     * @return The lower-cased domain of the source address, or {@code "unknown"} if the
+     *         source address is missing or has no domain.
+     */
+    public static String sendingDomain(Mail mail) {
+        String source = mail == null ? null : mail.source();
+        if (source == null) {
+            return "unknown";
+        }
+        int at = source.lastIndexOf('@');
+        if (at < 0 || at == source.length() - 1) {
+            return "unknown";
+        }
+        int end = source.endsWith(">") ? source.length() - 1 : source.length();
+        return source.substring(at + 1, end).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,258 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.Complaint;
+import com.megafarad.seshandler.model.Delivery;
+import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.rendering.RenderingServices;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import com.megafarad.seshandler.rendering.RenderingService;
+import com.megafarad.seshandler.sender.EmailSender;
+import com.megafarad.seshandler.sender.EmailSenders;
+import com.megafarad.seshandler.templates.TemplateStores;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * A handler that summarizes Amazon SES notifications into digest emails instead of
+ * sending one email per notification.
+ * <p>
+ * Notifications handed to this handler during an invocation are grouped by notification
+ * type, bounce type, and sending domain (see {@link DigestKey}). When the invocation is
+ * flushed, one digest email is rendered and sent for each group, listing every notification
+ * in that group. This reduces the number of SES sends and template evaluations from one per
+ * notification to one per group.
+ * <p>
+ * This handler is safe to use when records are processed concurrently.
+ */
+public class DigestSESNotificationHandler extends AbstractSESNotificationHandler {
+
+    private final EmailSender emailSender;
+    private final RenderingService renderingService;
+    private final PebbleTemplate digestSubjectTemplate;
+    private final PebbleTemplate htmlDigestBodyTemplate;
+    private final PebbleTemplate textDigestBodyTemplate;
+    private final String senderEmail;
+    private final String recipientEmail;
+    private final Map<DigestKey, Queue<DigestEntry>> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a DigestSESNotificationHandler using the email sender configured by the
+     * environment, the production rendering service, and templates whose locations are read
+     * from the `HTML_DIGEST_TEMPLATE`, `TEXT_DIGEST_TEMPLATE`, and `DIGEST_SUBJECT` environment
+     * variables, falling back to the bundled digest templates. The body templates are loaded
+     * through {@link TemplateStores#fromEnv()}.
+     *
+     * @throws IllegalStateException If the `SENDER_EMAIL` or `RECIPIENT_EMAIL` environment
+     *                               variable is missing.
+     */
+    public DigestSESNotificationHandler() {
+        Function<String, PebbleTemplate> bodyTemplates = TemplateStores.fromEnv();
+        PebbleEngine subjectEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
+        this.emailSender = EmailSenders.fromEnv();
+        this.renderingService = RenderingServices.fromEnv();
+        this.digestSubjectTemplate = subjectEngine.getTemplate(getEnvVar("DIGEST_SUBJECT",
+                "{{ digest.notificationType }} Digest: {{ digest.count }} notification(s) for {{ digest.sendingDomain }}"));
+        this.htmlDigestBodyTemplate = bodyTemplates.apply(getEnvVar("HTML_DIGEST_TEMPLATE",
+                "templates/html-digest-notification.peb"));
+        this.textDigestBodyTemplate = bodyTemplates.apply(getEnvVar("TEXT_DIGEST_TEMPLATE",
+                "templates/text-digest-notification.peb"));
+        this.senderEmail = getEnvVar("SENDER_EMAIL");
+        this.recipientEmail = getEnvVar("RECIPIENT_EMAIL");
+    }
+
+    /**
+     * Constructs a DigestSESNotificationHandler with the specified collaborators and templates.
+     *
+     * @param emailSender            An instance of EmailSender to send the digest emails.
+     * @param renderingService       A RenderingService responsible for generating the digest content.
+     * @param digestSubjectTemplate  The Pebble template for the subject line of digest emails.
+     * @param htmlDigestBodyTemplate The Pebble template used for the HTML body of digest emails.
+     * @param textDigestBodyTemplate The Pebble template used for the plain text body of digest emails.
+     * @param senderEmail            The sender email address used for the digest emails.
+     * @param recipientEmail         The recipient email address used for the digest emails.
+     */
+    public DigestSESNotificationHandler(EmailSender emailSender,
+                                        RenderingService renderingService,
+                                        PebbleTemplate digestSubjectTemplate,
+                                        PebbleTemplate htmlDigestBodyTemplate,
+                                        PebbleTemplate textDigestBodyTemplate,
+                                        String senderEmail,
+                                        String recipientEmail) {
+        this.emailSender = emailSender;
+        this.renderingService = renderingService;
+        this.digestSubjectTemplate = digestSubjectTemplate;
+        this.htmlDigestBodyTemplate = htmlDigestBodyTemplate;
+        this.textDigestBodyTemplate = textDigestBodyTemplate;
+        this.senderEmail = senderEmail;
+        this.recipientEmail = recipientEmail;
+    }
+
+    /**
+     * Digests only cover bounces, complaints, and deliveries, so other notifications are ignored.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code false} for `Bounce`, `Complaint`, and `Delivery`; otherwise {@code true}.
+     */
+    @Override
+    public boolean ignores(String notificationType) {
+        return !isBounceComplaintOrDelivery(notificationType);
+    }
+
+    /**
+     * Adds a bounce notification to the digest group for its bounce type and sending domain.
+     *
+     * @param mail    The mail object containing details of the original email.
+     * @param bounce  The bounce object containing details about the bounce event.
+     * @param context The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleBounce(Mail mail, Bounce bounce, Context context) {
+        super.handleBounce(mail, bounce, context);
+        add(new DigestKey("Bounce", bounce.bounceType(), DigestKey.sendingDomain(mail)),
+                new DigestEntry(mail, bounce, null, null));
+    }
+
+    /**
+     * Adds a complaint notification to the digest group for its sending domain.
+     *
+     * @param mail      The mail object containing details of the original email.
+     * @param complaint The complaint object containing details about the complaint event.
+     * @param context   The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleComplaint(Mail mail, Complaint complaint, Context context) {
+        super.handleComplaint(mail, complaint, context);
+        add(new DigestKey("Complaint", null, DigestKey.sendingDomain(mail)),
+                new DigestEntry(mail, null, complaint, null));
+    }
+
+    /**
+     * Adds a delivery notification to the digest group for its sending domain.
+     *
+     * @param mail     The mail object containing details of the original email.
+     * @param delivery The delivery object containing details about the delivery event.
+     * @param context  The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleDelivery(Mail mail, Delivery delivery, Context context) {
+        super.handleDelivery(mail, delivery, context);
+        add(new DigestKey("Delivery", null, DigestKey.sendingDomain(mail)),
+                new DigestEntry(mail, null, null, delivery));
+    }
+
+    /**
+     * Renders and sends one digest email for each group of notifications collected during
+     * the current invocation, then waits for the sends to complete. A group whose digest
+     * cannot be rendered or sent is logged and does not prevent the other groups from
+     * being sent, but fails the flush once every group has been tried, so that its
+     * notifications are redelivered.
+     *
+     * @param context The AWS Lambda execution context for the current invocation.
+     * @throws RuntimeException If a digest could not be rendered or sent. The first failure is
+     *                          thrown; the remaining failures are suppressed.
+     */
+    @Override
+    public void flush(Context context) {
+        super.flush(context);
+        RuntimeException failure = null;
+        for (DigestKey key : new ArrayList<>(groups.keySet())) {
+            Queue<DigestEntry> entries = groups.remove(key);
+            if (entries == null || entries.isEmpty()) {
+                continue;
+            }
+            try {
+                RenderedEmail email = renderingService.generateEmail(digestSubjectTemplate, htmlDigestBodyTemplate,
+                        textDigestBodyTemplate, buildDigestTemplateContext(key, new ArrayList<>(entries)));
+                emailSender.send(senderEmail, recipientEmail, email.subject(), email.htmlBody(), email.textBody());
+            } catch (RuntimeException e) {
+                context.getLogger().log("Failed to send digest for " + key + ": " + e.getMessage());
+                failure = addFailure(failure, e);
+            }
+        }
+        try {
+            emailSender.flush();
+        } catch (RuntimeException e) {
+            failure = addFailure(failure, e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Renders a digest of the specified notification without sending it.
+     *
+     * @param notification A representative bounce, complaint, or delivery notification.
+     */
+    @Override
+    public void prime(SESNotification notification) {
+        Mail mail = notification.mail();
+        DigestKey key = new DigestKey(notification.notificationType(),
+                notification.bounce() == null ? null : notification.bounce().bounceType(),
+                DigestKey.sendingDomain(mail));
+        DigestEntry entry = new DigestEntry(mail, notification.bounce(), notification.complaint(),
+                notification.delivery());
+        renderingService.generateEmail(digestSubjectTemplate, htmlDigestBodyTemplate, textDigestBodyTemplate,
+                buildDigestTemplateContext(key, List.of(entry)));
+    }
+
+    /**
+     * Closes the connections of the email sender before a SnapStart snapshot is taken.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        emailSender.beforeCheckpoint();
+    }
+
+    /**
+     * Rebuilds the client of the email sender after a SnapStart snapshot has been restored.
+     */
+    @Override
+    public void afterRestore() {
+        emailSender.afterRestore();
+    }
+
+    private void add(DigestKey key, DigestEntry entry) {
+        groups.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>()).add(entry);
+    }
+
+    private Map<String, Object> buildDigestTemplateContext(DigestKey key, List<DigestEntry> entries) {
+        Map<String, Object> digestContext = new HashMap<>();
+        digestContext.put("notificationType", key.notificationType());
+        digestContext.put("bounceType", key.bounceType());
+        digestContext.put("sendingDomain", key.sendingDomain());
+        digestContext.put("count", entries.size());
+        digestContext.put("entries", entries);
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("digest", digestContext);
+
+        return context;
+    }
+
+    /**
+     * A single notification listed in a digest. Exactly one of bounce, complaint, and
+     * delivery is set, matching the notification type of the digest.
+     *
+     * @param mail      Metadata and information about the original email message.
+     * @param bounce    Details about the bounce, if the entry is a bounce.
+     * @param complaint Details about the complaint, if the entry is a complaint.
+     * @param delivery  Details about the delivery, if the entry is a delivery.
+     */
+    public record DigestEntry(Mail mail, Bounce bounce, Complaint complaint, Delivery delivery) { }
+}
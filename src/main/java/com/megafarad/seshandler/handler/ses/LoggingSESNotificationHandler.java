@@ -2,9 +2,16 @@ package com.megafarad.seshandler.handler.ses;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.Click;
 import com.megafarad.seshandler.model.Complaint;
 import com.megafarad.seshandler.model.Delivery;
+import com.megafarad.seshandler.model.DeliveryDelay;
 import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.model.Open;
+import com.megafarad.seshandler.model.Reject;
+import com.megafarad.seshandler.model.RenderingFailure;
+import com.megafarad.seshandler.model.Send;
+import com.megafarad.seshandler.model.Subscription;
 
 /**
  * LoggingSESNotificationHandler extends AbstractSESNotificationHandler and provides
@@ -17,12 +24,25 @@ import com.megafarad.seshandler.model.Mail;
  * - Bounce notifications are logged with details about the bounce event.
  * - Complaint notifications are logged with details about the complaint event.
  * - Delivery notifications are logged with details about the delivery event.
+ * - The events published for configuration sets (send, reject, open, click, delivery delay,
+ *   rendering failure, and subscription) are logged with their details and the message ID of the
+ *   email they are about.
  * <p>
  * The logging can be useful for debugging, monitoring, or storing metrics regarding
  * the SES notifications received.
  */
 public class LoggingSESNotificationHandler extends AbstractSESNotificationHandler {
 
+    /**
+     * Mail headers are never logged, so they do not need to be parsed.
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean requiresMailHeaders() {
+        return false;
+    }
+
     /**
      * Processes a bounce notification received from Amazon Simple Email Service (SES).
      * This method is invoked to handle events when an email cannot be successfully delivered
@@ -77,4 +97,43 @@ public class LoggingSESNotificationHandler extends AbstractSESNotificationHandle
         super.handleDelivery(mail, delivery, context);
         context.getLogger().log("Delivery made: " + delivery);
     }
+
+    @Override
+    protected void handleSend(Mail mail, Send send, Context context) {
+        context.getLogger().log("Send event: " + messageId(mail));
+    }
+
+    @Override
+    protected void handleReject(Mail mail, Reject reject, Context context) {
+        context.getLogger().log("Reject event: " + messageId(mail) + " " + reject);
+    }
+
+    @Override
+    protected void handleOpen(Mail mail, Open open, Context context) {
+        context.getLogger().log("Open event: " + messageId(mail) + " " + open);
+    }
+
+    @Override
+    protected void handleClick(Mail mail, Click click, Context context) {
+        context.getLogger().log("Click event: " + messageId(mail) + " " + click);
+    }
+
+    @Override
+    protected void handleDeliveryDelay(Mail mail, DeliveryDelay deliveryDelay, Context context) {
+        context.getLogger().log("DeliveryDelay event: " + messageId(mail) + " " + deliveryDelay);
+    }
+
+    @Override
+    protected void handleRenderingFailure(Mail mail, RenderingFailure renderingFailure, Context context) {
+        context.getLogger().log("Rendering Failure event: " + messageId(mail) + " " + renderingFailure);
+    }
+
+    @Override
+    protected void handleSubscription(Mail mail, Subscription subscription, Context context) {
+        context.getLogger().log("Subscription event: " + messageId(mail) + " " + subscription);
+    }
+
+    private static String messageId(Mail mail) {
+        return mail == null ? null : mail.messageId();
+    }
 }
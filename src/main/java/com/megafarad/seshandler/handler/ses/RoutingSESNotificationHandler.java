@@ -0,0 +1,217 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.routing.RouteDefinition;
+import com.megafarad.seshandler.routing.RouteTable;
+import com.megafarad.seshandler.routing.RoutingConfig;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * An SESNotificationHandler that routes each notification to a chain of handlers chosen by a
+ * declarative {@link RoutingConfig}, so that different kinds of notifications can be handled
+ * differently by a single function.
+ * <p>
+ * Routes match notifications by notification type, bounce type, recipient domain, and mail header
+ * values. They are compiled once, when the handler is constructed, into a {@link RouteTable}, so
+ * finding the route of a notification takes a few lookups regardless of the number of routes.
+ * <p>
+ * Each route lists the actions taken, in order, for the notifications it matches:
+ * - `log`: logs the notification ({@link LoggingSESNotificationHandler}).
+ * - `email`: sends an email about the notification ({@link SendEmailSESNotificationHandler}).
+ * - `digest`: adds the notification to the digest of the batch ({@link DigestSESNotificationHandler}).
+ * - `aggregate`: adds the notification to the aggregation window ({@link AggregatingSESNotificationHandler}).
+ * - `suppress`: adds the recipients of permanent bounces and complaints to the suppression list
+ *   ({@link SuppressionSESNotificationHandler}).
+ * - `tenants`: sends the notification to the recipients of its tenants, once per tenant and batch
+ *   ({@link TenantSESNotificationHandler}).
+ * - `forward:<address>`: sends an email about the notification to the specified address instead
+ *   of the one in `RECIPIENT_EMAIL`.
+ * - `drop`: takes no action; it must be the only action of its route, and drops the notifications
+ *   that the route matches.
+ * - Any fully qualified class name: hands the notification to that SESNotificationHandler, created
+ *   as described in {@link SESNotificationHandlers#create(String)}.
+ * <p>
+ * Each action is created once and shared by every route that lists it. Notifications that match
+ * no route are handed to the default actions of the configuration, or logged if there are none,
+ * so that notification types no route expects are not dropped unnoticed. Without default actions,
+ * notifications of a type that no route can match, such as `Open` or `Click` events, are skipped
+ * before they are parsed (see {@link #ignores(String)}).
+ */
+public class RoutingSESNotificationHandler implements SESNotificationHandler {
+
+    private static final String DROP = "drop";
+    private static final String FORWARD = "forward:";
+
+    private final RouteTable table;
+    private final SESNotificationHandler[][] chains;
+    private final SESNotificationHandler[] defaultChain;
+    private final List<SESNotificationHandler> handlers;
+
+    /**
+     * Constructs a RoutingSESNotificationHandler from the routing configuration in the
+     * `ROUTING_CONFIG` environment variable, which holds either the configuration as JSON or the
+     * path of a file holding it. The handlers of the actions are configured through their own
+     * environment variables.
+     *
+     * @throws IllegalStateException    If `ROUTING_CONFIG` is not set.
+     * @throws IllegalArgumentException If the configuration is invalid or names an unknown action.
+     */
+    public RoutingSESNotificationHandler() {
+        this(RoutingConfig.load(getEnvVar("ROUTING_CONFIG")), RoutingSESNotificationHandler::createAction);
+    }
+
+    /**
+     * Constructs a RoutingSESNotificationHandler.
+     *
+     * @param config  The routing configuration.
+     * @param actions Creates the handler of an action from its name; invoked once per distinct action.
+     * @throws IllegalArgumentException If `drop` is combined with other actions.
+     */
+    public RoutingSESNotificationHandler(RoutingConfig config, Function<String, SESNotificationHandler> actions) {
+        Map<String, SESNotificationHandler> created = new LinkedHashMap<>();
+        this.table = RouteTable.compile(config.routes());
+        this.chains = new SESNotificationHandler[config.routes().size()][];
+        for (int i = 0; i < chains.length; i++) {
+            RouteDefinition route = config.routes().get(i);
+            chains[i] = chain(route.name(), route.actions(), created, actions);
+        }
+        this.defaultChain = config.defaultActions().isEmpty() ? null
+                : chain("default", config.defaultActions(), created, actions);
+        this.handlers = List.copyOf(created.values());
+    }
+
+    /**
+     * Hands the notification to each handler of the first route it matches, or of the default
+     * actions if it matches none.
+     *
+     * @param notification The notification to handle.
+     * @param context      The AWS Lambda execution context.
+     */
+    @Override
+    public void handleNotification(SESNotification notification, Context context) {
+        int route = table.match(notification);
+        SESNotificationHandler[] chain = route < 0 ? defaultChain : chains[route];
+        if (chain == null) {
+            context.getLogger().log("Unrouted notification " + notification.notificationType() + ": "
+                    + (notification.mail() == null ? null : notification.mail().messageId()));
+            return;
+        }
+        for (SESNotificationHandler handler : chain) {
+            handler.handleNotification(notification, context);
+        }
+    }
+
+    /**
+     * Indicates whether notifications of the specified type can match no route while there are no
+     * default actions.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code true} if notifications of this type would not be routed to any action.
+     */
+    @Override
+    public boolean ignores(String notificationType) {
+        return defaultChain == null && !table.mayMatch(notificationType);
+    }
+
+    /**
+     * Indicates whether any route matches mail headers or any action reads them.
+     *
+     * @return {@code true} if mail headers must be parsed.
+     */
+    @Override
+    public boolean requiresMailHeaders() {
+        return table.matchesHeaders() || handlers.stream().anyMatch(SESNotificationHandler::requiresMailHeaders);
+    }
+
+    /**
+     * Flushes every action, even when flushing one of them fails.
+     *
+     * @param context The AWS Lambda execution context for the current invocation.
+     * @throws RuntimeException The failure of the first action that could not be flushed, with the
+     *                          failures of the others suppressed.
+     */
+    @Override
+    public void flush(Context context) {
+        RuntimeException failure = null;
+        for (SESNotificationHandler handler : handlers) {
+            try {
+                handler.flush(context);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void prime(SESNotification notification) {
+        handlers.forEach(handler -> handler.prime(notification));
+    }
+
+    @Override
+    public void beforeCheckpoint() {
+        handlers.forEach(SESNotificationHandler::beforeCheckpoint);
+    }
+
+    @Override
+    public void afterRestore() {
+        handlers.forEach(SESNotificationHandler::afterRestore);
+    }
+
+    /**
+     * Creates the handler of a built-in action, a `forward:` action, or a handler class.
+     *
+     * @param action The name of the action.
+     * @return The handler of the action.
+     * @throws IllegalArgumentException If the action is unknown.
+     */
+    static SESNotificationHandler createAction(String action) {
+        return switch (action) {
+            case "log" -> new LoggingSESNotificationHandler();
+            case "email" -> new SendEmailSESNotificationHandler();
+            case "digest" -> new DigestSESNotificationHandler();
+            case "aggregate" -> new AggregatingSESNotificationHandler();
+            case "suppress" -> new SuppressionSESNotificationHandler();
+            case "tenants" -> new TenantSESNotificationHandler();
+            default -> {
+                if (action.startsWith(FORWARD) && action.length() > FORWARD.length()) {
+                    yield new SendEmailSESNotificationHandler(action.substring(FORWARD.length()));
+                }
+                if (action.indexOf('.') > 0) {
+                    yield SESNotificationHandlers.create(action);
+                }
+                throw new IllegalArgumentException("Unknown routing action: " + action);
+            }
+        };
+    }
+
+    private static SESNotificationHandler[] chain(String route, List<String> names,
+                                                  Map<String, SESNotificationHandler> created,
+                                                  Function<String, SESNotificationHandler> actions) {
+        if (names.contains(DROP)) {
+            if (names.size() > 1) {
+                throw new IllegalArgumentException("Route " + route + " combines drop with other actions");
+            }
+            return new SESNotificationHandler[0];
+        }
+        List<SESNotificationHandler> chain = new ArrayList<>(names.size());
+        for (String name : names) {
+            chain.add(created.computeIfAbsent(name.strip(), actions));
+        }
+        return chain.toArray(SESNotificationHandler[]::new);
+    }
+}
@@ -31,4 +31,67 @@ public interface SESNotificationHandler {
      *                     such as remaining execution time and logging utilities.
      */
     void handleNotification(SESNotification notification, Context context);
+
+    /**
+     * Indicates whether this handler takes no action on notifications of the specified type.
+     * Notifications of an ignored type are skipped before they are parsed, which saves the cost of
+     * parsing high-volume events such as `Open` and `Click` when nothing acts on them.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code true} if notifications of this type need not be passed to
+     *         {@link #handleNotification}; {@code false} by default.
+     */
+    default boolean ignores(String notificationType) {
+        return false;
+    }
+
+    /**
+     * Indicates whether this handler reads {@link com.megafarad.seshandler.model.Mail#headers()}.
+     * Handlers that return {@code false} receive notifications whose mail headers were skipped
+     * while parsing, which avoids materializing potentially hundreds of headers per notification.
+     *
+     * @return {@code true} if mail headers must be parsed for this handler; {@code true} by default.
+     */
+    default boolean requiresMailHeaders() {
+        return true;
+    }
+
+    /**
+     * Completes any work deferred while handling the notifications of the current invocation,
+     * such as waiting for asynchronous email sends. This method is invoked once after all
+     * notifications of an invocation have been handed to {@link #handleNotification}.
+     *
+     * @param context The AWS Lambda execution context, providing runtime information
+     *                such as remaining execution time and logging utilities.
+     */
+    default void flush(Context context) {
+
+    }
+
+    /**
+     * Exercises the code used to handle the specified notification without any side effect, such
+     * as sending an email, so that it is loaded and compiled before a SnapStart snapshot is taken.
+     * Does nothing by default.
+     *
+     * @param notification A representative notification.
+     */
+    default void prime(SESNotification notification) {
+
+    }
+
+    /**
+     * Releases resources that must not be captured in a SnapStart snapshot, such as open network
+     * connections. Does nothing by default.
+     */
+    default void beforeCheckpoint() {
+
+    }
+
+    /**
+     * Rebuilds the resources released by {@link #beforeCheckpoint()} after a SnapStart snapshot has
+     * been restored. Does nothing by default.
+     */
+    default void afterRestore() {
+
+    }
 }
@@ -0,0 +1,30 @@
+package com.megafarad.seshandler.handler.ses;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The SESNotificationHandlerProvider interface is a service provider interface through which
+ * SESNotificationHandler implementations are made available to {@link SESNotificationHandlers},
+ * without the handler classes having to be instantiated reflectively.
+ * <p>
+ * Providers are discovered with {@link java.util.ServiceLoader}, so a provider is registered by
+ * listing its fully qualified class name in a
+ * `META-INF/services/com.megafarad.seshandler.handler.ses.SESNotificationHandlerProvider` file.
+ * The handlers bundled with this project are provided by {@link BuiltInSESNotificationHandlerProvider};
+ * custom handlers can be made available the same way by a provider of their own.
+ * <p>
+ * Service providers are resolved at build time by GraalVM native-image, which makes this the way
+ * to wire handlers into a native executable.
+ */
+public interface SESNotificationHandlerProvider {
+
+    /**
+     * Returns the handlers made available by this provider.
+     *
+     * @return A map from the fully qualified class name of each handler, as it is specified in
+     *         the `SES_NOTIFICATION_HANDLER_CLASS` environment variable, to a supplier that
+     *         creates the handler.
+     */
+    Map<String, Supplier<? extends SESNotificationHandler>> handlers();
+}
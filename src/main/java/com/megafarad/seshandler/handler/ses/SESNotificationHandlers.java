@@ -0,0 +1,93 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.megafarad.seshandler.dedup.Deduplicator;
+import com.megafarad.seshandler.dedup.FileDeduplicationStore;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.function.Supplier;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * The SESNotificationHandlers class provides factory methods that create the
+ * SESNotificationHandler selected by its class name.
+ * <p>
+ * Handlers are looked up among those made available by the {@link SESNotificationHandlerProvider}
+ * services on the class path, so they are created without reflection, which keeps the lookup
+ * working in a GraalVM native executable. A class name that no provider makes available is
+ * instantiated reflectively through its public no-argument constructor instead; this keeps custom
+ * handlers without a provider working on the JVM, but requires reflection metadata for the class
+ * in a native executable.
+ */
+public class SESNotificationHandlers {
+
+    /**
+     * Creates the SESNotificationHandler selected by the `SES_NOTIFICATION_HANDLER_CLASS`
+     * environment variable. If the variable is not set or is blank, a
+     * {@link LoggingSESNotificationHandler} is created.
+     * <p>
+     * Unless the `DEDUP_TTL_SECONDS` environment variable is `0`, the handler is wrapped in a
+     * {@link DeduplicatingSESNotificationHandler} that drops duplicate notifications for that many
+     * seconds (86400 by default). The most recent `DEDUP_MAX_KEYS` keys (10000 by default) are
+     * held in memory; when `DEDUP_STORE_PATH` is set, keys are also recorded in a
+     * {@link FileDeduplicationStore} at that path.
+     *
+     * @return The configured SESNotificationHandler.
+     */
+    public static SESNotificationHandler fromEnv() {
+        String handlerClassName = getEnvVar("SES_NOTIFICATION_HANDLER_CLASS", "");
+        SESNotificationHandler handler = handlerClassName.isBlank()
+                ? new LoggingSESNotificationHandler()
+                : create(handlerClassName);
+
+        long ttlSeconds = Long.parseLong(getEnvVar("DEDUP_TTL_SECONDS", "86400"));
+        if (ttlSeconds <= 0) {
+            return handler;
+        }
+        String storePath = getEnvVar("DEDUP_STORE_PATH", "");
+        Deduplicator deduplicator = new Deduplicator(Duration.ofSeconds(ttlSeconds),
+                Integer.parseInt(getEnvVar("DEDUP_MAX_KEYS", "10000")),
+                storePath.isBlank() ? null : new FileDeduplicationStore(Path.of(storePath)),
+                Clock.systemUTC());
+        return new DeduplicatingSESNotificationHandler(handler, deduplicator);
+    }
+
+    /**
+     * Creates the SESNotificationHandler with the specified class name.
+     *
+     * @param handlerClassName The fully qualified class name of the handler.
+     * @return A new instance of the handler.
+     * @throws RuntimeException If the handler could not be created, e.g. because the class does
+     *                          not implement SESNotificationHandler.
+     */
+    public static SESNotificationHandler create(String handlerClassName) {
+        for (SESNotificationHandlerProvider provider : ServiceLoader.load(SESNotificationHandlerProvider.class)) {
+            Map<String, Supplier<? extends SESNotificationHandler>> handlers = provider.handlers();
+            Supplier<? extends SESNotificationHandler> supplier = handlers.get(handlerClassName);
+            if (supplier != null) {
+                return supplier.get();
+            }
+        }
+        return instantiate(handlerClassName);
+    }
+
+    private static SESNotificationHandler instantiate(String handlerClassName) {
+        try {
+            Class<?> clazz = Class.forName(handlerClassName);
+            Object instance = clazz.getDeclaredConstructor().newInstance();
+
+            if (!(instance instanceof SESNotificationHandler handler)) {
+                throw new IllegalArgumentException("Class does not implement SESNotificationHandler: " + handlerClassName);
+            }
+
+            return handler;
+
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load handler class: " + handlerClassName, e);
+        }
+    }
+}
@@ -3,18 +3,20 @@ package com.megafarad.seshandler.handler.ses;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.megafarad.seshandler.model.*;
 import static com.megafarad.seshandler.utils.EnvVar.*;
-import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.rendering.RenderingServices;
+import com.megafarad.seshandler.rendering.RecordMapView;
 import com.megafarad.seshandler.rendering.RenderedEmail;
 import com.megafarad.seshandler.rendering.RenderingService;
 import com.megafarad.seshandler.sender.EmailSender;
-import com.megafarad.seshandler.sender.ProductionEmailSender;
+import com.megafarad.seshandler.sender.EmailSenders;
+import com.megafarad.seshandler.sender.NotificationAttachment;
+import com.megafarad.seshandler.templates.TemplateStores;
 import io.pebbletemplates.pebble.PebbleEngine;
 import io.pebbletemplates.pebble.loader.StringLoader;
 import io.pebbletemplates.pebble.template.PebbleTemplate;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  * A handler for processing Amazon SES notifications such as bounce, complaint,
@@ -24,7 +26,8 @@ import java.util.stream.Collectors;
  * This class extends {@link AbstractSESNotificationHandler}, overriding methods
  * to handle specific SES notification types: bounce, complaint, and delivery.
  * Emails are rendered using templates managed by the {@link PebbleEngine} and
- * sent via an {@link EmailSender}.
+ * sent via an {@link EmailSender}. The template context exposes the notification's
+ * records through {@link RecordMapView}s, so no per-event copy of the data is made.
  */
 public class SendEmailSESNotificationHandler extends AbstractSESNotificationHandler {
 
@@ -41,7 +44,8 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
     private final PebbleTemplate deliverySubjectTemplate;
     private final String senderEmail;
     private final String recipientEmail;
-
+    private final boolean requiresMailHeaders;
+    private final NotificationAttachment attachment;
 
     /**
      * Constructs a SendEmailSESNotificationHandler instance and initializes its internal
@@ -49,14 +53,23 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
      * various email events such as bounces, complaints, and deliveries.
      * <p>
      * This constructor performs the following actions:
-     * - Configures an email sender instance using a production-ready implementation.
+     * - Configures an email sender instance using a production-ready implementation. When the
+     *   `ASYNC_EMAIL_SENDER` environment variable is `true`, emails are sent asynchronously and
+     *   awaited when the invocation's notifications are flushed.
      * - Sets up a rendering service for processing email templates.
      * - Loads and prepares templates for both HTML and plain text emails for
      *   bounce, complaint, and delivery event notifications, using environment
-     *   variables for template paths or default values if not provided.
+     *   variables for template paths or default values if not provided. Templates are loaded
+     *   through {@link TemplateStores#fromEnv()}, so they are reloaded from `TEMPLATE_DIR` when
+     *   that environment variable is set.
      * - Initializes subject templates for the different types of email notifications.
      * - Retrieves sender and recipient email addresses from mandatory environment
      *   variables.
+     * - Reads the `TEMPLATES_USE_MAIL_HEADERS` environment variable (`true` by default). Setting it
+     *   to `false` lets mail headers be skipped while parsing when no template reads them, unless
+     *   the notification is attached as JSON.
+     * - Reads the `ATTACH_NOTIFICATION` environment variable (`none` by default), which selects the
+     *   {@link NotificationAttachment} added to each email: `json` or `dsn`.
      * <p>
      * The templates and email addresses are utilized during the processing of
      * SES (Simple Email Service) notifications to compose and send appropriate
@@ -66,21 +79,35 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
      *                               recipient email) is missing or invalid.
      */
     public SendEmailSESNotificationHandler() {
-        this.emailSender = new ProductionEmailSender();
-        this.renderingService = new ProductionRenderingService();
-        PebbleEngine bodyEngine = new PebbleEngine.Builder().autoEscaping(true).build();
+        this(getEnvVar("RECIPIENT_EMAIL"));
+    }
+
+    /**
+     * Constructs a SendEmailSESNotificationHandler that is configured through the same environment
+     * variables as {@link #SendEmailSESNotificationHandler()}, except that it sends its emails to the
+     * specified recipient instead of the one in `RECIPIENT_EMAIL`. This lets routes forward
+     * notifications to recipients of their own.
+     *
+     * @param recipientEmail The recipient email address used for the outgoing SES notifications.
+     * @throws IllegalStateException If any required environment variable (e.g., sender email) is
+     *                               missing or invalid.
+     */
+    public SendEmailSESNotificationHandler(String recipientEmail) {
+        this.emailSender = EmailSenders.fromEnv();
+        this.renderingService = RenderingServices.fromEnv();
+        Function<String, PebbleTemplate> bodyTemplates = TemplateStores.fromEnv();
         PebbleEngine subjectEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
-        this.htmlBounceBodyTemplate = bodyEngine.getTemplate(getEnvVar("HTML_BOUNCE_TEMPLATE",
+        this.htmlBounceBodyTemplate = bodyTemplates.apply(getEnvVar("HTML_BOUNCE_TEMPLATE",
                 "templates/html-bounce-notification.peb"));
-        this.htmlComplaintBodyTemplate = bodyEngine.getTemplate(getEnvVar("HTML_COMPLAINT_TEMPLATE",
+        this.htmlComplaintBodyTemplate = bodyTemplates.apply(getEnvVar("HTML_COMPLAINT_TEMPLATE",
                 "templates/html-complaint-notification.peb"));
-        this.htmlDeliveryBodyTemplate = bodyEngine.getTemplate(getEnvVar("HTML_DELIVERY_TEMPLATE",
+        this.htmlDeliveryBodyTemplate = bodyTemplates.apply(getEnvVar("HTML_DELIVERY_TEMPLATE",
                 "templates/html-delivery-notification.peb"));
-        this.textBounceBodyTemplate = bodyEngine.getTemplate(getEnvVar("TEXT_BOUNCE_TEMPLATE",
+        this.textBounceBodyTemplate = bodyTemplates.apply(getEnvVar("TEXT_BOUNCE_TEMPLATE",
                 "templates/text-bounce-notification.peb"));
-        this.textComplaintBodyTemplate = bodyEngine.getTemplate(getEnvVar("TEXT_COMPLAINT_TEMPLATE",
+        this.textComplaintBodyTemplate = bodyTemplates.apply(getEnvVar("TEXT_COMPLAINT_TEMPLATE",
                 "templates/text-complaint-notification.peb"));
-        this.textDeliveryBodyTemplate = bodyEngine.getTemplate(getEnvVar("TEXT_DELIVERY_TEMPLATE",
+        this.textDeliveryBodyTemplate = bodyTemplates.apply(getEnvVar("TEXT_DELIVERY_TEMPLATE",
                 "templates/text-delivery-notification.peb"));
         this.bounceSubjectTemplate = subjectEngine.getTemplate(getEnvVar("BOUNCE_SUBJECT",
                 "Bounce Email Notification"));
@@ -89,7 +116,10 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
         this.deliverySubjectTemplate = subjectEngine.getTemplate(getEnvVar("DELIVERY_SUBJECT",
                 "Delivery Email Notification"));
         this.senderEmail = getEnvVar("SENDER_EMAIL");
-        this.recipientEmail = getEnvVar("RECIPIENT_EMAIL");
+        this.recipientEmail = recipientEmail;
+        this.attachment = NotificationAttachment.of(getEnvVar("ATTACH_NOTIFICATION", "none"));
+        this.requiresMailHeaders = Boolean.parseBoolean(getEnvVar("TEMPLATES_USE_MAIL_HEADERS", "true"))
+                || attachment == NotificationAttachment.JSON;
     }
 
     /**
@@ -125,6 +155,46 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
                                            PebbleTemplate deliverySubjectTemplate,
                                            String senderEmail,
                                            String recipientEmail) {
+        this(emailSender, renderingService, htmlBounceBodyTemplate, textBounceBodyTemplate,
+                htmlComplaintBodyTemplate, textComplaintBodyTemplate, htmlDeliveryBodyTemplate,
+                textDeliveryBodyTemplate, bounceSubjectTemplate, complaintSubjectTemplate, deliverySubjectTemplate,
+                senderEmail, recipientEmail, NotificationAttachment.NONE);
+    }
+
+    /**
+     * Constructs a SendEmailSESNotificationHandler instance that attaches the specified file to
+     * each email it sends.
+     *
+     * @param emailSender                 An instance of EmailSender to send the composed emails.
+     * @param renderingService            A RenderingService responsible for generating email content
+     *                                    from templates and context data.
+     * @param htmlBounceBodyTemplate      The Pebble template used for the HTML body of bounce emails.
+     * @param textBounceBodyTemplate      The Pebble template used for the plain text body of bounce emails.
+     * @param htmlComplaintBodyTemplate   The Pebble template used for the HTML body of complaint emails.
+     * @param textComplaintBodyTemplate   The Pebble template used for the plain text body of complaint emails.
+     * @param htmlDeliveryBodyTemplate    The Pebble template used for the HTML body of delivery emails.
+     * @param textDeliveryBodyTemplate    The Pebble template used for the plain text body of delivery emails.
+     * @param bounceSubjectTemplate       The Pebble template for the subject line of bounce emails.
+     * @param complaintSubjectTemplate    The Pebble template for the subject line of complaint emails.
+     * @param deliverySubjectTemplate     The Pebble template for the subject line of delivery emails.
+     * @param senderEmail                 The sender email address used for the outgoing SES notifications.
+     * @param recipientEmail              The recipient email address used for the outgoing SES notifications.
+     * @param attachment                  The file attached to each email, such as the notification itself.
+     */
+    public SendEmailSESNotificationHandler(EmailSender emailSender,
+                                           RenderingService renderingService,
+                                           PebbleTemplate htmlBounceBodyTemplate,
+                                           PebbleTemplate textBounceBodyTemplate,
+                                           PebbleTemplate htmlComplaintBodyTemplate,
+                                           PebbleTemplate textComplaintBodyTemplate,
+                                           PebbleTemplate htmlDeliveryBodyTemplate,
+                                           PebbleTemplate textDeliveryBodyTemplate,
+                                           PebbleTemplate bounceSubjectTemplate,
+                                           PebbleTemplate complaintSubjectTemplate,
+                                           PebbleTemplate deliverySubjectTemplate,
+                                           String senderEmail,
+                                           String recipientEmail,
+                                           NotificationAttachment attachment) {
         this.emailSender = emailSender;
         this.renderingService = renderingService;
         this.htmlBounceBodyTemplate = htmlBounceBodyTemplate;
@@ -138,6 +208,30 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
         this.deliverySubjectTemplate = deliverySubjectTemplate;
         this.senderEmail = senderEmail;
         this.recipientEmail = recipientEmail;
+        this.requiresMailHeaders = true;
+        this.attachment = attachment;
+    }
+
+    /**
+     * Emails are only sent about bounces, complaints, and deliveries, so other notifications are ignored.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code false} for `Bounce`, `Complaint`, and `Delivery`; otherwise {@code true}.
+     */
+    @Override
+    public boolean ignores(String notificationType) {
+        return !isBounceComplaintOrDelivery(notificationType);
+    }
+
+    /**
+     * Indicates whether the configured templates or the attached notification may read mail headers.
+     *
+     * @return {@code false} if the `TEMPLATES_USE_MAIL_HEADERS` environment variable is `false` and
+     *         the notification is not attached as JSON; otherwise {@code true}.
+     */
+    @Override
+    public boolean requiresMailHeaders() {
+        return requiresMailHeaders;
     }
 
 
@@ -164,7 +258,7 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
         RenderedEmail email = renderingService.generateEmail(bounceSubjectTemplate, htmlBounceBodyTemplate,
                 textBounceBodyTemplate, templateContext);
 
-        emailSender.send(senderEmail, recipientEmail, email.subject(), email.htmlBody(), email.textBody());
+        send(email, new SESNotification("Bounce", mail, bounce, null, null));
     }
 
     /**
@@ -190,7 +284,7 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
         RenderedEmail email = renderingService.generateEmail(complaintSubjectTemplate, htmlComplaintBodyTemplate,
                 textComplaintBodyTemplate, templateContext);
 
-        emailSender.send(senderEmail, recipientEmail, email.subject(), email.htmlBody(), email.textBody());
+        send(email, new SESNotification("Complaint", mail, null, complaint, null));
     }
 
     /**
@@ -214,117 +308,74 @@ public class SendEmailSESNotificationHandler extends AbstractSESNotificationHand
         RenderedEmail email = renderingService.generateEmail(deliverySubjectTemplate, htmlDeliveryBodyTemplate,
                 textDeliveryBodyTemplate, templateContext);
 
-        emailSender.send(senderEmail, recipientEmail, email.subject(), email.htmlBody(), email.textBody());
+        send(email, new SESNotification("Delivery", mail, null, null, delivery));
     }
 
-
-    private Map<String, Object> buildMailTemplateContext(Mail mail) {
-        Map<String, Object> context = new HashMap<>();
-        context.put("timestamp", mail.timestamp());
-        context.put("messageId", mail.messageId());
-        context.put("source", mail.source());
-        context.put("sourceArn", mail.sourceArn());
-        context.put("sourceIp", mail.sourceIp());
-        context.put("sendingAccountId", mail.sendingAccountId());
-        context.put("callerIdentity", mail.callerIdentity());
-        context.put("destination", mail.destination());
-        context.put("headersTruncated", mail.headersTruncated());
-
-        Map<String, Object> headersContext = new HashMap<>();
-        mail.headers().forEach(header -> headersContext.put(header.name(), header.value()));
-        context.put("headers", headersContext);
-
-        Map<String, Object> commonHeadersContext = new HashMap<>();
-        commonHeadersContext.put("from", mail.commonHeaders().from());
-        commonHeadersContext.put("to", mail.commonHeaders().to());
-        commonHeadersContext.put("date", mail.commonHeaders().date());
-        commonHeadersContext.put("messageId", mail.commonHeaders().messageId());
-        commonHeadersContext.put("subject", mail.commonHeaders().subject());
-        context.put("commonHeaders", commonHeadersContext);
-
-        return context;
+    /**
+     * Waits for every notification email sent during the current invocation to be delivered to SES.
+     *
+     * @param context The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    public void flush(Context context) {
+        super.flush(context);
+        emailSender.flush();
     }
 
-    private Map<String, Object> buildBounceTemplateContext(Mail mail, Bounce bounce) {
-        Map<String, Object> bounceContext = new HashMap<>();
-        bounceContext.put("bounceType", bounce.bounceType());
-        bounceContext.put("bounceSubType", bounce.bounceSubType());
-
-        bounceContext.put("bouncedRecipients",
-                bounce.bouncedRecipients()
-                        .stream()
-                        .map(this::buildBouncedRecipientContext)
-                        .collect(Collectors.toList()));
-
-        bounceContext.put("timestamp", bounce.timestamp());
-        bounceContext.put("feedbackId", bounce.feedbackId());
-        bounceContext.put("remoteMtaIp", bounce.remoteMtaIp());
-        bounceContext.put("reportingMTA", bounce.reportingMTA());
-
-        Map<String, Object> context = new HashMap<>();
-
-        context.put("bounce", bounceContext);
-        context.put("mail", buildMailTemplateContext(mail));
-
-        return context;
+    /**
+     * Renders the email for the specified notification without sending it.
+     *
+     * @param notification A representative bounce, complaint, or delivery notification.
+     */
+    @Override
+    public void prime(SESNotification notification) {
+        Mail mail = notification.mail();
+        switch (notification.notificationType()) {
+            case "Bounce" -> renderingService.generateEmail(bounceSubjectTemplate, htmlBounceBodyTemplate,
+                    textBounceBodyTemplate, buildBounceTemplateContext(mail, notification.bounce()));
+            case "Complaint" -> renderingService.generateEmail(complaintSubjectTemplate, htmlComplaintBodyTemplate,
+                    textComplaintBodyTemplate, buildComplaintTemplateContext(mail, notification.complaint()));
+            case "Delivery" -> renderingService.generateEmail(deliverySubjectTemplate, htmlDeliveryBodyTemplate,
+                    textDeliveryBodyTemplate, buildDeliveryTemplateContext(mail, notification.delivery()));
+            default -> { }
+        }
     }
 
-    private Map<String, Object> buildBouncedRecipientContext(BouncedRecipient bouncedRecipient) {
-        Map<String, Object> context = new HashMap<>();
-
-        context.put("emailAddress", bouncedRecipient.emailAddress());
-        context.put("action", bouncedRecipient.action());
-        context.put("status", bouncedRecipient.status());
-        context.put("diagnosticCode", bouncedRecipient.diagnosticCode());
-
-        return context;
+    /**
+     * Closes the connections of the email sender before a SnapStart snapshot is taken.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        emailSender.beforeCheckpoint();
     }
 
-    private Map<String, Object> buildComplaintTemplateContext(Mail mail, Complaint complaint) {
-        Map<String, Object> complaintContext = new HashMap<>();
-
-        complaintContext.put("complainedRecipients", complaint.complainedRecipients()
-                .stream()
-                .map(this::buildComplainedRecipientContext)
-                .collect(Collectors.toList()));
-
-        complaintContext.put("timestamp", complaint.timestamp());
-        complaintContext.put("complaintSubType", complaint.complaintSubType());
-        complaintContext.put("feedbackId", complaint.feedbackId());
-        complaintContext.put("userAgent", complaint.userAgent());
-        complaintContext.put("complaintFeedbackType", complaint.complaintFeedbackType());
-        complaintContext.put("arrivalDate", complaint.arrivalDate());
-
-        Map<String, Object> context = new HashMap<>();
-        context.put("complaint", complaintContext);
-        context.put("mail", buildMailTemplateContext(mail));
-
-        return context;
+    /**
+     * Rebuilds the client of the email sender after a SnapStart snapshot has been restored.
+     */
+    @Override
+    public void afterRestore() {
+        emailSender.afterRestore();
     }
 
-    private Map<String, Object> buildComplainedRecipientContext(ComplainedRecipient complainedRecipient) {
-        Map<String, Object> context = new HashMap<>();
-
-        context.put("emailAddress", complainedRecipient.emailAddress());
-
-        return context;
+    private void send(RenderedEmail email, SESNotification notification) {
+        if (attachment == NotificationAttachment.NONE) {
+            emailSender.send(senderEmail, recipientEmail, email.subject(), email.htmlBody(), email.textBody());
+        } else {
+            emailSender.send(senderEmail, recipientEmail, email.subject(), email.htmlBody(), email.textBody(),
+                    attachment.attachmentsFor(notification));
+        }
     }
 
-    private Map<String, Object> buildDeliveryTemplateContext(Mail mail, Delivery delivery) {
-        Map<String, Object> deliveryContext = new HashMap<>();
-
-        deliveryContext.put("timestamp", delivery.timestamp());
-        deliveryContext.put("processingTimeMillis", delivery.processingTimeMillis());
-        deliveryContext.put("recipients", delivery.recipients());
-        deliveryContext.put("smtpResponse", delivery.smtpResponse());
-        deliveryContext.put("reportingMTA", delivery.reportingMTA());
-        deliveryContext.put("remoteMtaIp", delivery.remoteMtaIp());
+    static Map<String, Object> buildBounceTemplateContext(Mail mail, Bounce bounce) {
+        return Map.of("bounce", RecordMapView.of(bounce), "mail", RecordMapView.of(mail));
+    }
 
-        Map<String, Object> context = new HashMap<>();
-        context.put("delivery", deliveryContext);
-        context.put("mail", buildMailTemplateContext(mail));
+    static Map<String, Object> buildComplaintTemplateContext(Mail mail, Complaint complaint) {
+        return Map.of("complaint", RecordMapView.of(complaint), "mail", RecordMapView.of(mail));
+    }
 
-        return context;
+    static Map<String, Object> buildDeliveryTemplateContext(Mail mail, Delivery delivery) {
+        return Map.of("delivery", RecordMapView.of(delivery), "mail", RecordMapView.of(mail));
     }
 
 }
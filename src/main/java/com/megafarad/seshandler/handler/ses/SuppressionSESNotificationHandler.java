@@ -0,0 +1,161 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.BouncedRecipient;
+import com.megafarad.seshandler.model.ComplainedRecipient;
+import com.megafarad.seshandler.model.Complaint;
+import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.suppression.SuppressionList;
+import com.megafarad.seshandler.suppression.SuppressionReason;
+import com.megafarad.seshandler.suppression.SuppressionSnapshot;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * A handler that maintains a local {@link SuppressionList} of the recipients that bounced
+ * permanently or complained, so that senders can stop emailing them before SES has to reject or
+ * bounce the messages again.
+ * <p>
+ * Every recipient of a `Permanent` bounce is suppressed for the bounce TTL, and every recipient of
+ * a complaint is suppressed for the complaint TTL, except for complaints whose feedback type is
+ * `not-spam`. A recipient that is already suppressed for longer keeps its suppression.
+ * <p>
+ * When a snapshot path is configured, the list is loaded from that file when the handler is
+ * created and saved to it as a {@link SuppressionSnapshot} when an invocation that changed the
+ * list is flushed. The file can be exported to senders, which query it in place.
+ * <p>
+ * This handler is safe to use when records are processed concurrently.
+ */
+public class SuppressionSESNotificationHandler extends AbstractSESNotificationHandler {
+
+    private final SuppressionList suppressionList;
+    private final Path snapshotPath;
+    private final Duration bounceTtl;
+    private final Duration complaintTtl;
+
+    /**
+     * Constructs a SuppressionSESNotificationHandler configured from environment variables.
+     * <p>
+     * The list is kept in the snapshot file at `SUPPRESSION_LIST_PATH` when that variable is set,
+     * and in memory otherwise. Bounced recipients are suppressed for `SUPPRESSION_BOUNCE_TTL_DAYS`
+     * days (30 by default) and complaining recipients for `SUPPRESSION_COMPLAINT_TTL_DAYS` days
+     * (0 by default); 0 suppresses a recipient until it is removed.
+     */
+    public SuppressionSESNotificationHandler() {
+        String path = getEnvVar("SUPPRESSION_LIST_PATH", "");
+        this.snapshotPath = path.isEmpty() ? null : Path.of(path);
+        this.suppressionList = snapshotPath == null ? new SuppressionList(Clock.systemUTC())
+                : SuppressionList.load(snapshotPath, Clock.systemUTC());
+        this.bounceTtl = days(getEnvVar("SUPPRESSION_BOUNCE_TTL_DAYS", "30"));
+        this.complaintTtl = days(getEnvVar("SUPPRESSION_COMPLAINT_TTL_DAYS", "0"));
+    }
+
+    /**
+     * Constructs a SuppressionSESNotificationHandler with the specified list and settings.
+     *
+     * @param suppressionList The list to which recipients are added.
+     * @param snapshotPath    The snapshot file to which the list is saved on flush, or {@code null}
+     *                        to keep it in memory only.
+     * @param bounceTtl       How long bounced recipients are suppressed, or {@code null} for no expiry.
+     * @param complaintTtl    How long complaining recipients are suppressed, or {@code null} for no
+     *                        expiry.
+     */
+    public SuppressionSESNotificationHandler(SuppressionList suppressionList, Path snapshotPath,
+                                             Duration bounceTtl, Duration complaintTtl) {
+        this.suppressionList = suppressionList;
+        this.snapshotPath = snapshotPath;
+        this.bounceTtl = bounceTtl;
+        this.complaintTtl = complaintTtl;
+    }
+
+    /**
+     * Returns the list maintained by this handler.
+     *
+     * @return The suppression list.
+     */
+    public SuppressionList suppressionList() {
+        return suppressionList;
+    }
+
+    /**
+     * Only bounces and complaints change the list, so other notifications are ignored.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code false} for `Bounce` and `Complaint`; otherwise {@code true}.
+     */
+    @Override
+    public boolean ignores(String notificationType) {
+        return !"Bounce".equals(notificationType) && !"Complaint".equals(notificationType);
+    }
+
+    /**
+     * Only recipient addresses are read, so mail headers do not need to be parsed.
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean requiresMailHeaders() {
+        return false;
+    }
+
+    /**
+     * Suppresses the recipients of a permanent bounce.
+     *
+     * @param mail    The mail object containing details of the original email.
+     * @param bounce  The bounce object containing details about the bounce event.
+     * @param context The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleBounce(Mail mail, Bounce bounce, Context context) {
+        if (!"Permanent".equals(bounce.bounceType()) || bounce.bouncedRecipients() == null) {
+            return;
+        }
+        for (BouncedRecipient recipient : bounce.bouncedRecipients()) {
+            if (recipient.emailAddress() != null) {
+                suppressionList.suppressAddress(recipient.emailAddress(), SuppressionReason.BOUNCE, bounceTtl);
+            }
+        }
+    }
+
+    /**
+     * Suppresses the recipients of a complaint, unless it reports the message as not spam.
+     *
+     * @param mail      The mail object containing details of the original email.
+     * @param complaint The complaint object containing details about the complaint event.
+     * @param context   The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    protected void handleComplaint(Mail mail, Complaint complaint, Context context) {
+        if ("not-spam".equals(complaint.complaintFeedbackType()) || complaint.complainedRecipients() == null) {
+            return;
+        }
+        for (ComplainedRecipient recipient : complaint.complainedRecipients()) {
+            if (recipient.emailAddress() != null) {
+                suppressionList.suppressAddress(recipient.emailAddress(), SuppressionReason.COMPLAINT,
+                        complaintTtl);
+            }
+        }
+    }
+
+    /**
+     * Saves the list to the snapshot file if it changed.
+     *
+     * @param context The AWS Lambda execution context for the current invocation.
+     */
+    @Override
+    public void flush(Context context) {
+        if (snapshotPath != null && suppressionList.hasChanges()) {
+            suppressionList.save(snapshotPath);
+        }
+    }
+
+    private static Duration days(String value) {
+        long days = Long.parseLong(value);
+        return days == 0 ? null : Duration.ofDays(days);
+    }
+}
@@ -0,0 +1,278 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.handler.ses.DigestSESNotificationHandler.DigestEntry;
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.Complaint;
+import com.megafarad.seshandler.model.Delivery;
+import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import com.megafarad.seshandler.rendering.RenderingService;
+import com.megafarad.seshandler.rendering.RenderingServices;
+import com.megafarad.seshandler.routing.TenantConfig;
+import com.megafarad.seshandler.routing.TenantDefinition;
+import com.megafarad.seshandler.routing.TenantIndex;
+import com.megafarad.seshandler.sender.EmailSender;
+import com.megafarad.seshandler.sender.EmailSenders;
+import com.megafarad.seshandler.templates.TemplateStores;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * A handler that sends the notifications of each tenant, such as a team owning some of the
+ * sending identities or accounts, to the tenant's own recipients, rendered with the tenant's own
+ * templates.
+ * <p>
+ * The tenants of a notification are found by its mail's source ARN, sending account ID, source
+ * domain, mail headers, and message tags, through a {@link TenantIndex} compiled once from the
+ * {@link TenantConfig}. A notification that belongs to several tenants is fanned out to each of
+ * them; one that belongs to none goes to the default recipients of the configuration, or is
+ * logged if there are none.
+ * <p>
+ * Notifications handed to this handler during an invocation are collected per tenant. When the
+ * invocation is flushed, one email listing the tenant's notifications is rendered per tenant and
+ * sent to each of its recipients, so a recipient receives one email, and costs one SES send, per
+ * tenant and batch rather than per notification. A tenant whose email cannot be rendered or sent
+ * is logged and does not prevent the other tenants from being notified, but fails the flush once
+ * every tenant has been tried, so that the notifications are redelivered.
+ * <p>
+ * This handler is safe to use when records are processed concurrently.
+ */
+public class TenantSESNotificationHandler extends AbstractSESNotificationHandler {
+
+    private static final String DEFAULT_SUBJECT = "{{ tenant.count }} SES notification(s) for {{ tenant.name }}";
+    private static final String DEFAULT_HTML_TEMPLATE = "templates/html-tenant-notification.peb";
+    private static final String DEFAULT_TEXT_TEMPLATE = "templates/text-tenant-notification.peb";
+
+    private final EmailSender emailSender;
+    private final RenderingService renderingService;
+    private final TenantIndex index;
+    private final Tenant[] tenants;
+    private final String senderEmail;
+    private final boolean requiresMailHeaders;
+    private final Map<Integer, Queue<DigestEntry>> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a TenantSESNotificationHandler from the tenant configuration in the
+     * `TENANT_CONFIG` environment variable, which holds either the configuration as JSON or the
+     * path of a file holding it.
+     * <p>
+     * The templates of the tenants that do not specify their own are read from the
+     * `TENANT_SUBJECT`, `HTML_TENANT_TEMPLATE`, and `TEXT_TENANT_TEMPLATE` environment variables,
+     * falling back to the bundled tenant templates, and the body templates are loaded through
+     * {@link TemplateStores#fromEnv()}. Emails are sent from `SENDER_EMAIL` through the
+     * email sender configured by the environment. Setting `TEMPLATES_USE_MAIL_HEADERS` to `false`
+     * lets mail headers be skipped while parsing when neither a tenant nor a template reads them.
+     *
+     * @throws IllegalStateException    If `TENANT_CONFIG` or `SENDER_EMAIL` is not set.
+     * @throws IllegalArgumentException If the configuration is invalid.
+     */
+    public TenantSESNotificationHandler() {
+        this(TenantConfig.load(getEnvVar("TENANT_CONFIG")), EmailSenders.fromEnv(), RenderingServices.fromEnv(),
+                TemplateStores.fromEnv(),
+                new PebbleEngine.Builder().loader(new StringLoader()).build(),
+                getEnvVar("TENANT_SUBJECT", DEFAULT_SUBJECT),
+                getEnvVar("HTML_TENANT_TEMPLATE", DEFAULT_HTML_TEMPLATE),
+                getEnvVar("TEXT_TENANT_TEMPLATE", DEFAULT_TEXT_TEMPLATE),
+                getEnvVar("SENDER_EMAIL"),
+                Boolean.parseBoolean(getEnvVar("TEMPLATES_USE_MAIL_HEADERS", "true")));
+    }
+
+    /**
+     * Constructs a TenantSESNotificationHandler.
+     *
+     * @param config              The tenant configuration.
+     * @param emailSender         An instance of EmailSender to send the emails.
+     * @param renderingService    A RenderingService responsible for generating the email content.
+     * @param bodyTemplates       The function that loads the body templates by name.
+     * @param subjectEngine       The Pebble engine that compiles subject templates from strings.
+     * @param defaultSubject      The subject template of the tenants that do not specify their own.
+     * @param defaultHtmlTemplate The HTML body template of the tenants that do not specify their own.
+     * @param defaultTextTemplate The text body template of the tenants that do not specify their own.
+     * @param senderEmail         The sender email address used for the emails.
+     * @param requiresMailHeaders Whether the templates may read mail headers.
+     */
+    public TenantSESNotificationHandler(TenantConfig config,
+                                        EmailSender emailSender,
+                                        RenderingService renderingService,
+                                        Function<String, PebbleTemplate> bodyTemplates,
+                                        PebbleEngine subjectEngine,
+                                        String defaultSubject,
+                                        String defaultHtmlTemplate,
+                                        String defaultTextTemplate,
+                                        String senderEmail,
+                                        boolean requiresMailHeaders) {
+        this.emailSender = emailSender;
+        this.renderingService = renderingService;
+        this.index = TenantIndex.compile(config.tenants());
+        this.tenants = new Tenant[config.tenants().size() + 1];
+        for (int i = 0; i < config.tenants().size(); i++) {
+            TenantDefinition tenant = config.tenants().get(i);
+            tenants[i] = new Tenant(tenant.name(), List.copyOf(new LinkedHashSet<>(tenant.recipients())),
+                    subjectEngine.getTemplate(tenant.subjectTemplate() == null ? defaultSubject
+                            : tenant.subjectTemplate()),
+                    bodyTemplates.apply(tenant.htmlTemplate() == null ? defaultHtmlTemplate
+                            : tenant.htmlTemplate()),
+                    bodyTemplates.apply(tenant.textTemplate() == null ? defaultTextTemplate
+                            : tenant.textTemplate()));
+        }
+        tenants[config.tenants().size()] = new Tenant("default",
+                List.copyOf(new LinkedHashSet<>(config.defaultRecipients())), subjectEngine.getTemplate(defaultSubject),
+                bodyTemplates.apply(defaultHtmlTemplate), bodyTemplates.apply(defaultTextTemplate));
+        this.senderEmail = senderEmail;
+        this.requiresMailHeaders = requiresMailHeaders || index.matchesHeaders();
+    }
+
+    /**
+     * Emails are only sent about bounces, complaints, and deliveries, so other notifications are ignored.
+     *
+     * @param notificationType The `notificationType` or `eventType` of a notification.
+     * @return {@code false} for `Bounce`, `Complaint`, and `Delivery`; otherwise {@code true}.
+     */
+    @Override
+    public boolean ignores(String notificationType) {
+        return !isBounceComplaintOrDelivery(notificationType);
+    }
+
+    /**
+     * Indicates whether a tenant matches mail headers or the templates may read them.
+     *
+     * @return {@code true} if mail headers must be parsed.
+     */
+    @Override
+    public boolean requiresMailHeaders() {
+        return requiresMailHeaders;
+    }
+
+    @Override
+    protected void handleBounce(Mail mail, Bounce bounce, Context context) {
+        super.handleBounce(mail, bounce, context);
+        add(new DigestEntry(mail, bounce, null, null), context);
+    }
+
+    @Override
+    protected void handleComplaint(Mail mail, Complaint complaint, Context context) {
+        super.handleComplaint(mail, complaint, context);
+        add(new DigestEntry(mail, null, complaint, null), context);
+    }
+
+    @Override
+    protected void handleDelivery(Mail mail, Delivery delivery, Context context) {
+        super.handleDelivery(mail, delivery, context);
+        add(new DigestEntry(mail, null, null, delivery), context);
+    }
+
+    /**
+     * Renders one email per tenant with notifications collected during the current invocation,
+     * sends it to each recipient of the tenant, and waits for the sends to complete.
+     *
+     * @param context The AWS Lambda execution context for the current invocation.
+     * @throws RuntimeException If the email of a tenant could not be rendered or sent. The first
+     *                          failure is thrown; the remaining failures are suppressed.
+     */
+    @Override
+    public void flush(Context context) {
+        super.flush(context);
+        RuntimeException failure = null;
+        for (Integer position : new ArrayList<>(groups.keySet())) {
+            Queue<DigestEntry> entries = groups.remove(position);
+            if (entries == null || entries.isEmpty()) {
+                continue;
+            }
+            Tenant tenant = tenants[position];
+            try {
+                RenderedEmail email = render(tenant, new ArrayList<>(entries));
+                for (String recipient : tenant.recipients()) {
+                    emailSender.send(senderEmail, recipient, email.subject(), email.htmlBody(), email.textBody());
+                }
+            } catch (RuntimeException e) {
+                context.getLogger().log("Failed to send notifications of tenant " + tenant.name() + ": "
+                        + e.getMessage());
+                failure = addFailure(failure, e);
+            }
+        }
+        try {
+            emailSender.flush();
+        } catch (RuntimeException e) {
+            failure = addFailure(failure, e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Renders the email of every tenant for the specified notification without sending it.
+     *
+     * @param notification A representative bounce, complaint, or delivery notification.
+     */
+    @Override
+    public void prime(SESNotification notification) {
+        List<DigestEntry> entries = List.of(new DigestEntry(notification.mail(), notification.bounce(),
+                notification.complaint(), notification.delivery()));
+        for (Tenant tenant : tenants) {
+            render(tenant, entries);
+        }
+    }
+
+    /**
+     * Closes the connections of the email sender before a SnapStart snapshot is taken.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        emailSender.beforeCheckpoint();
+    }
+
+    /**
+     * Rebuilds the client of the email sender after a SnapStart snapshot has been restored.
+     */
+    @Override
+    public void afterRestore() {
+        emailSender.afterRestore();
+    }
+
+    private void add(DigestEntry entry, Context context) {
+        int[] matched = index.match(entry.mail());
+        if (matched.length == 0) {
+            if (tenants[tenants.length - 1].recipients().isEmpty()) {
+                context.getLogger().log("Notification of no tenant: "
+                        + (entry.mail() == null ? null : entry.mail().messageId()));
+                return;
+            }
+            matched = new int[]{tenants.length - 1};
+        }
+        for (int position : matched) {
+            groups.computeIfAbsent(position, k -> new ConcurrentLinkedQueue<>()).add(entry);
+        }
+    }
+
+    private RenderedEmail render(Tenant tenant, List<DigestEntry> entries) {
+        Map<String, Object> tenantContext = new HashMap<>();
+        tenantContext.put("name", tenant.name());
+        tenantContext.put("count", entries.size());
+        tenantContext.put("entries", entries);
+        return renderingService.generateEmail(tenant.subject(), tenant.html(), tenant.text(),
+                Map.of("tenant", tenantContext));
+    }
+
+    /**
+     * A tenant, or the notifications of no tenant, with its recipients and compiled templates.
+     */
+    private record Tenant(String name, List<String> recipients, PebbleTemplate subject, PebbleTemplate html,
+                          PebbleTemplate text) {
+    }
+}
@@ -3,10 +3,28 @@ package com.megafarad.seshandler.handler.sns;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SNSEvent;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.megafarad.seshandler.handler.ses.LoggingSESNotificationHandler;
 import com.megafarad.seshandler.handler.ses.SESNotificationHandler;
+import com.megafarad.seshandler.handler.ses.SESNotificationHandlers;
+import com.megafarad.seshandler.metrics.Metrics;
 import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.model.SESNotificationReader;
+import org.crac.Core;
+import org.crac.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
 
 /**
  * The SNSMessageHandler class is an implementation of the AWS Lambda
@@ -16,19 +34,52 @@ import com.megafarad.seshandler.model.SESNotification;
  * interface.
  * <p>
  * The handler:
- * - Deserializes SNS messages into SESNotification objects using Jackson ObjectMapper.
+ * - Reads the type of each SES notification first, and skips notifications of a type the
+ *   SESNotificationHandler does not act on (see {@link SESNotificationHandler#ignores(String)})
+ *   without parsing them any further, counting them in {@link Metrics}.
+ * - Deserializes SNS messages into SESNotification objects using a streaming SESNotificationReader,
+ *   skipping mail headers when the SESNotificationHandler does not require them.
  * - Dispatches the SESNotification objects to an SESNotificationHandler for processing.
  * - Handles errors during message processing and logs failure details.
  * <p>
  * This class is configured at runtime to use a specific SESNotificationHandler
  * implementation. The implementation is determined by the environment variable
  * `SES_NOTIFICATION_HANDLER_CLASS`. If the variable is not set or is blank,
- * a default handler (LoggingSESNotificationHandler) is used.
+ * a default handler (LoggingSESNotificationHandler) is used. Handlers are created through
+ * {@link SESNotificationHandlers}, without reflection for the handlers that a
+ * {@link com.megafarad.seshandler.handler.ses.SESNotificationHandlerProvider} makes available.
+ * <p>
+ * Records are processed sequentially by default. Setting the `MAX_CONCURRENCY` environment
+ * variable to a value greater than one processes up to that many records at the same time on
+ * virtual threads. In either mode, no new records are started once the remaining execution time
+ * drops below `REMAINING_TIME_SAFETY_MARGIN_MILLIS` (1000 ms by default).
+ * <p>
+ * The time taken to parse and to dispatch each record, and the failures of either, are recorded
+ * in {@link Metrics}, which are flushed once at the end of each invocation, after the
+ * SESNotificationHandler has been flushed.
+ * <p>
+ * The handler is a CRaC {@link Resource}, so it takes part in Lambda SnapStart:
+ * - Before the snapshot is taken, the pipeline is primed by parsing the bundled priming
+ *   notifications and handing them to {@link SESNotificationHandler#prime}, which loads and
+ *   compiles the classes on the path of a real invocation without sending any email. The
+ *   SESNotificationHandler then releases its network connections.
+ * - After the snapshot is restored, the SESNotificationHandler rebuilds its clients. The time
+ *   taken to do so, and the delay between the restore and the first invocation, are logged by
+ *   the first invocation after the restore.
  */
-public class SNSMessageHandler implements RequestHandler<SNSEvent, Void> {
+public final class SNSMessageHandler implements RequestHandler<SNSEvent, Void>, Resource {
+
+    private static final List<String> PRIMING_NOTIFICATIONS = List.of("priming/bounce.json",
+            "priming/complaint.json", "priming/delivery.json");
 
     private final SESNotificationHandler sesHandler;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final SESNotificationReader reader;
+    private final int maxConcurrency;
+    private final long safetyMarginMillis;
+    private final Metrics metrics;
+    private final AtomicBoolean restoreReportPending = new AtomicBoolean();
+    private volatile long restoredAtNanos;
+    private volatile long restoreHooksNanos;
 
     /**
      * Constructs an instance of SNSMessageHandler and initializes the SESNotificationHandler
@@ -42,10 +93,50 @@ public class SNSMessageHandler implements RequestHandler<SNSEvent, Void> {
      * complaint, and delivery events.
      * <p>
      * The constructor encapsulates the loading and instantiation logic of the handler to ensure
-     * flexibility and configurability during runtime.
+     * flexibility and configurability during runtime. The instance is registered with the global
+     * CRaC context, so that it is primed before a SnapStart snapshot and restored afterwards.
      */
     public SNSMessageHandler() {
-        sesHandler = loadHandlerFromEnv();
+        this(SESNotificationHandlers.fromEnv(),
+                Integer.parseInt(getEnvVar("MAX_CONCURRENCY", "1")),
+                Long.parseLong(getEnvVar("REMAINING_TIME_SAFETY_MARGIN_MILLIS", "1000")),
+                Metrics.fromEnv());
+        Core.getGlobalContext().register(this);
+    }
+
+    /**
+     * Constructs an instance of SNSMessageHandler with an explicit SESNotificationHandler and
+     * concurrency settings.
+     *
+     * @param sesHandler         The SESNotificationHandler that processes each deserialized notification.
+     * @param maxConcurrency     The maximum number of records processed at the same time. Values of one
+     *                           or less process records sequentially on the invoking thread.
+     * @param safetyMarginMillis The minimum remaining execution time, in milliseconds, required to start
+     *                           processing another record.
+     */
+    public SNSMessageHandler(SESNotificationHandler sesHandler, int maxConcurrency, long safetyMarginMillis) {
+        this(sesHandler, maxConcurrency, safetyMarginMillis, Metrics.disabled());
+    }
+
+    /**
+     * Constructs an instance of SNSMessageHandler with an explicit SESNotificationHandler, concurrency
+     * settings, and Metrics.
+     *
+     * @param sesHandler         The SESNotificationHandler that processes each deserialized notification.
+     * @param maxConcurrency     The maximum number of records processed at the same time. Values of one
+     *                           or less process records sequentially on the invoking thread.
+     * @param safetyMarginMillis The minimum remaining execution time, in milliseconds, required to start
+     *                           processing another record.
+     * @param metrics            The Metrics in which parsing and dispatching are recorded, and which are
+     *                           flushed at the end of each invocation.
+     */
+    public SNSMessageHandler(SESNotificationHandler sesHandler, int maxConcurrency, long safetyMarginMillis,
+                             Metrics metrics) {
+        this.sesHandler = sesHandler;
+        this.reader = new SESNotificationReader(sesHandler.requiresMailHeaders());
+        this.maxConcurrency = maxConcurrency;
+        this.safetyMarginMillis = safetyMarginMillis;
+        this.metrics = metrics;
     }
 
 
@@ -55,6 +146,10 @@ public class SNSMessageHandler implements RequestHandler<SNSEvent, Void> {
      * and passing it to the specified {@link SESNotificationHandler} implementation for further processing.
      * This method is responsible for handling SES notifications such as bounce, complaint, and delivery events.
      * If deserialization or processing fails for any record, an error message is logged using the Lambda execution context.
+     * Records that have not been started when the remaining execution time drops below the safety margin are skipped
+     * and logged. Once every record has been handed off, the handler is flushed so that deferred work, such as
+     * asynchronous email sends, completes before the invocation returns. Finally, the metrics recorded during the
+     * invocation are published.
      *
      * @param snsEvent The SNS event containing one or more SNS records. Each record represents a single
      *                 notification sent via Amazon Simple Notification Service (SNS) and needs to be processed.
@@ -64,36 +159,188 @@ public class SNSMessageHandler implements RequestHandler<SNSEvent, Void> {
      */
     @Override
     public Void handleRequest(SNSEvent snsEvent, Context context) {
-        for (SNSEvent.SNSRecord record : snsEvent.getRecords()) {
-            try {
-                SESNotification notification = mapper.readValue(record.getSNS().getMessage(), SESNotification.class);
-                sesHandler.handleNotification(notification, context);
-            } catch (Exception e) {
-                context.getLogger().log("Failed to handle message: " + e.getMessage());
+        handleMessages(snsEvent.getRecords().stream().map(SNSMessageHandler::message).toList(), context);
+        return null;
+    }
+
+    /**
+     * Handles a batch of SNS messages, each containing an SES notification, the way
+     * {@link #handleRequest} handles the messages of an SNS event, and reports which of them were
+     * not handled successfully.
+     * <p>
+     * A message is reported when it could not be parsed, when the SESNotificationHandler threw
+     * while handling it, or when it was skipped because the remaining execution time dropped below
+     * the safety margin. The outcome of deferred work is not known per message, so every message
+     * is reported when flushing the SESNotificationHandler fails.
+     *
+     * @param messages The SNS messages, i.e. the JSON documents of the SES notifications.
+     * @param context  The AWS Lambda execution context.
+     * @return The indexes of the messages that were not handled successfully, in ascending order.
+     */
+    public List<Integer> handleMessages(List<String> messages, Context context) {
+        if (restoreReportPending.compareAndSet(true, false)) {
+            context.getLogger().log("Restored from snapshot: restore hooks took "
+                    + TimeUnit.NANOSECONDS.toMillis(restoreHooksNanos) + " ms, first invocation started "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restoredAtNanos) + " ms after restore");
+        }
+        boolean[] failed = new boolean[messages.size()];
+        if (maxConcurrency > 1) {
+            handleMessagesConcurrently(messages, failed, context);
+        } else {
+            handleMessagesSequentially(messages, failed, context);
+        }
+        try {
+            sesHandler.flush(context);
+        } catch (Exception e) {
+            context.getLogger().log("Failed to flush handler: " + e.getMessage());
+            Arrays.fill(failed, true);
+        }
+        try {
+            metrics.flush(context.getFunctionName());
+        } catch (Exception e) {
+            context.getLogger().log("Failed to publish metrics: " + e.getMessage());
+        }
+
+        List<Integer> failures = new ArrayList<>();
+        for (int i = 0; i < failed.length; i++) {
+            if (failed[i]) {
+                failures.add(i);
             }
         }
-        return null;
+        return failures;
     }
 
-    private SESNotificationHandler loadHandlerFromEnv() {
-        String handlerClassName = System.getenv("SES_NOTIFICATION_HANDLER_CLASS");
-        if (handlerClassName == null || handlerClassName.isBlank()) {
-            return new LoggingSESNotificationHandler();
+    /**
+     * Primes the pipeline before a checkpoint, then lets the SESNotificationHandler release the
+     * resources that must not be captured in the snapshot.
+     *
+     * @param context The CRaC context that is being checkpointed.
+     * @throws IOException If a priming notification could not be parsed.
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) throws IOException {
+        prime();
+        sesHandler.beforeCheckpoint();
+    }
+
+    /**
+     * Lets the SESNotificationHandler rebuild the resources released before the checkpoint, and
+     * records how long it took.
+     *
+     * @param context The CRaC context that has been restored.
+     */
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        long start = System.nanoTime();
+        sesHandler.afterRestore();
+        restoredAtNanos = System.nanoTime();
+        restoreHooksNanos = restoredAtNanos - start;
+        restoreReportPending.set(true);
+    }
+
+    /**
+     * Parses each bundled priming notification and hands it to
+     * {@link SESNotificationHandler#prime}, exercising the parsing, dispatching, template context
+     * building, and rendering code without sending any email.
+     *
+     * @throws IOException If a priming notification could not be parsed.
+     */
+    public void prime() throws IOException {
+        for (String resource : PRIMING_NOTIFICATIONS) {
+            sesHandler.prime(reader.read(readResource(resource)));
         }
+    }
 
-        try {
-            Class<?> clazz = Class.forName(handlerClassName);
-            Object instance = clazz.getDeclaredConstructor().newInstance();
+    private static String readResource(String path) {
+        try (InputStream in = SNSMessageHandler.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalStateException("Priming notification not found: " + path);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading priming notification failed: " + path, e);
+        }
+    }
 
-            if (!(instance instanceof SESNotificationHandler handler)) {
-                throw new IllegalArgumentException("Class does not implement SESNotificationHandler: " + handlerClassName);
+    private void handleMessagesSequentially(List<String> messages, boolean[] failed, Context context) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (isOutOfTime(context)) {
+                skip(failed, i, context);
+                return;
             }
+            failed[i] = !handleMessage(messages.get(i), context);
+        }
+    }
 
-            return handler;
+    private void handleMessagesConcurrently(List<String> messages, boolean[] failed, Context context) {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < messages.size(); i++) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    skip(failed, i, context);
+                    return;
+                }
+                if (isOutOfTime(context)) {
+                    permits.release();
+                    skip(failed, i, context);
+                    return;
+                }
+                String message = messages.get(i);
+                int index = i;
+                executor.execute(() -> {
+                    try {
+                        failed[index] = !handleMessage(message, context);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+    }
 
+    private boolean handleMessage(String message, Context context) {
+        long start = System.nanoTime();
+        SESNotification notification;
+        try {
+            String type = reader.peekType(message);
+            if (type != null && sesHandler.ignores(type)) {
+                metrics.recordSkipped();
+                return true;
+            }
+            notification = reader.read(message);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to load handler class: " + handlerClassName, e);
+            metrics.recordFailure(Metrics.Stage.PARSE);
+            context.getLogger().log("Failed to handle message: " + e.getMessage());
+            return false;
         }
+        long parsed = System.nanoTime();
+        metrics.recordLatency(Metrics.Stage.PARSE, parsed - start);
+        try {
+            sesHandler.handleNotification(notification, context);
+            metrics.recordLatency(Metrics.Stage.DISPATCH, System.nanoTime() - parsed);
+            return true;
+        } catch (Exception e) {
+            metrics.recordFailure(Metrics.Stage.DISPATCH);
+            context.getLogger().log("Failed to handle message: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static String message(SNSEvent.SNSRecord record) {
+        return record.getSNS() == null ? null : record.getSNS().getMessage();
+    }
+
+    private boolean isOutOfTime(Context context) {
+        return context.getRemainingTimeInMillis() < safetyMarginMillis;
+    }
+
+    private static void skip(boolean[] failed, int from, Context context) {
+        Arrays.fill(failed, from, failed.length, true);
+        context.getLogger().log("Remaining time below safety margin, skipping " + (failed.length - from)
+                + " record(s)");
     }
 
 }
@@ -0,0 +1,119 @@
+package com.megafarad.seshandler.handler.sqs;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.megafarad.seshandler.handler.sns.SNSMessageHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SQSMessageHandler class is an implementation of the AWS Lambda RequestHandler interface
+ * that processes Amazon Simple Queue Service (SQS) events whose messages carry Amazon Simple
+ * Email Service (SES) notifications published to an SNS topic that the queue is subscribed to.
+ * <p>
+ * The handler:
+ * - Unwraps the SNS envelope in the body of each SQS message to obtain the SES notification. With
+ *   raw message delivery enabled on the subscription, the body is the notification itself and is
+ *   used as is.
+ * - Hands the notifications to an {@link SNSMessageHandler}, so they are parsed, dispatched to the
+ *   configured SESNotificationHandler, and flushed exactly as notifications received from SNS.
+ * - Returns an {@link SQSBatchResponse} listing only the messages that were not handled
+ *   successfully, so that SQS redelivers just those messages. This requires the
+ *   `ReportBatchItemFailures` function response type on the event source mapping.
+ * <p>
+ * A message is reported as failed when it cannot be parsed, when its handling throws, or when it
+ * was skipped because the invocation ran out of time. Because the outcome of deferred work, such
+ * as asynchronous sends or digests, is not known per message, every message of the batch is
+ * reported as failed when flushing the SESNotificationHandler fails; such messages may be
+ * delivered again after part of their work has completed.
+ */
+public class SQSMessageHandler implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final SNSMessageHandler snsMessageHandler;
+
+    /**
+     * Constructs an instance of SQSMessageHandler that handles notifications with an
+     * SNSMessageHandler configured through environment variables, including its
+     * SESNotificationHandler and its participation in SnapStart.
+     */
+    public SQSMessageHandler() {
+        this(new SNSMessageHandler());
+    }
+
+    /**
+     * Constructs an instance of SQSMessageHandler that handles notifications with the specified
+     * SNSMessageHandler.
+     *
+     * @param snsMessageHandler The SNSMessageHandler that handles the unwrapped notifications.
+     */
+    public SQSMessageHandler(SNSMessageHandler snsMessageHandler) {
+        this.snsMessageHandler = snsMessageHandler;
+    }
+
+    /**
+     * Handles an AWS Lambda function invocation triggered by an Amazon SQS event.
+     *
+     * @param sqsEvent The SQS event containing one or more messages.
+     * @param context  The AWS Lambda execution context.
+     * @return The response listing the IDs of the messages that were not handled successfully.
+     */
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent sqsEvent, Context context) {
+        List<SQSEvent.SQSMessage> records = sqsEvent.getRecords();
+        List<String> messages = new ArrayList<>(records.size());
+        for (SQSEvent.SQSMessage record : records) {
+            messages.add(unwrap(record.getBody()));
+        }
+
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        for (int index : snsMessageHandler.handleMessages(messages, context)) {
+            failures.add(new SQSBatchResponse.BatchItemFailure(records.get(index).getMessageId()));
+        }
+        return new SQSBatchResponse(failures);
+    }
+
+    /**
+     * Extracts the message from an SNS notification envelope.
+     * <p>
+     * Only the top level of the body is scanned; nested objects, including the notification
+     * itself when raw message delivery is enabled, are skipped without being parsed.
+     *
+     * @param body The body of an SQS message.
+     * @return The `Message` of the envelope if the body is an SNS notification, otherwise the body.
+     */
+    static String unwrap(String body) {
+        if (body == null) {
+            return null;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return body;
+            }
+            String type = null;
+            String message = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("Type".equals(field) && value == JsonToken.VALUE_STRING) {
+                    type = parser.getText();
+                } else if ("Message".equals(field) && value == JsonToken.VALUE_STRING) {
+                    message = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return "Notification".equals(type) && message != null ? message : body;
+        } catch (IOException e) {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.megafarad.seshandler.metrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A {@link MetricsSink} that writes metrics as CloudWatch Embedded Metric Format (EMF) documents,
+ * one JSON document per line.
+ * <p>
+ * Lambda forwards standard output to CloudWatch Logs, which extracts the metrics from the EMF
+ * documents asynchronously, so publishing costs no API call. Each flush writes:
+ * - One document with the latency and size distributions and the failure counters, dimensioned
+ *   by `FunctionName`. Distributions are written as `Values` and `Counts` arrays together with
+ *   their exact `Min`, `Max`, `Sum`, and `Count`.
+ * - One document per notification type with the `Notifications` count, dimensioned by
+ *   `FunctionName` and `NotificationType`.
+ * <p>
+ * When the function name is unknown, the documents are written without the `FunctionName`
+ * dimension.
+ */
+public class EmfMetricsSink implements MetricsSink {
+
+    private static final String FUNCTION_NAME = "FunctionName";
+    private static final String NOTIFICATION_TYPE = "NotificationType";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String namespace;
+    private final Consumer<String> output;
+
+    /**
+     * Constructs an EmfMetricsSink that writes to standard output.
+     *
+     * @param namespace The CloudWatch namespace of the metrics.
+     */
+    public EmfMetricsSink(String namespace) {
+        this(namespace, line -> {
+            System.out.println(line);
+            System.out.flush();
+        });
+    }
+
+    /**
+     * Constructs an EmfMetricsSink that hands each document to the specified consumer.
+     *
+     * @param namespace The CloudWatch namespace of the metrics.
+     * @param output    The consumer of the documents, one line each.
+     */
+    public EmfMetricsSink(String namespace, Consumer<String> output) {
+        this.namespace = namespace;
+        this.output = output;
+    }
+
+    @Override
+    public void publish(MetricsSnapshot snapshot) {
+        for (String document : format(snapshot)) {
+            output.accept(document);
+        }
+    }
+
+    /**
+     * Formats a snapshot as EMF documents.
+     *
+     * @param snapshot The recorded metrics.
+     * @return The documents, one JSON object each.
+     */
+    public List<String> format(MetricsSnapshot snapshot) {
+        List<String> documents = new ArrayList<>();
+
+        ObjectNode stages = document(snapshot, List.of());
+        ArrayNode metrics = definitions(stages);
+        for (Map.Entry<String, MetricsSnapshot.Distribution> entry : snapshot.distributions().entrySet()) {
+            MetricsSnapshot.Distribution distribution = entry.getValue();
+            metrics.addObject().put("Name", entry.getKey()).put("Unit", distribution.unit());
+            ObjectNode value = stages.putObject(entry.getKey());
+            ArrayNode values = value.putArray("Values");
+            distribution.values().forEach(values::add);
+            ArrayNode counts = value.putArray("Counts");
+            distribution.counts().forEach(counts::add);
+            value.put("Min", distribution.min())
+                    .put("Max", distribution.max())
+                    .put("Sum", distribution.sum())
+                    .put("Count", distribution.count());
+        }
+        for (Map.Entry<String, Long> entry : snapshot.counters().entrySet()) {
+            metrics.addObject().put("Name", entry.getKey()).put("Unit", "Count");
+            stages.put(entry.getKey(), entry.getValue());
+        }
+        if (!metrics.isEmpty()) {
+            documents.add(write(stages));
+        }
+
+        for (Map.Entry<String, Long> entry : snapshot.notificationTypes().entrySet()) {
+            ObjectNode notifications = document(snapshot, List.of(NOTIFICATION_TYPE));
+            definitions(notifications).addObject().put("Name", "Notifications").put("Unit", "Count");
+            notifications.put(NOTIFICATION_TYPE, entry.getKey());
+            notifications.put("Notifications", entry.getValue());
+            documents.add(write(notifications));
+        }
+        return documents;
+    }
+
+    private ObjectNode document(MetricsSnapshot snapshot, List<String> dimensions) {
+        ObjectNode document = mapper.createObjectNode();
+        ObjectNode aws = document.putObject("_aws");
+        aws.put("Timestamp", snapshot.timestamp());
+        ObjectNode directive = aws.putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", namespace);
+        ArrayNode dimensionSet = directive.putArray("Dimensions").addArray();
+        if (snapshot.functionName() != null) {
+            dimensionSet.add(FUNCTION_NAME);
+            document.put(FUNCTION_NAME, snapshot.functionName());
+        }
+        dimensions.forEach(dimensionSet::add);
+        directive.putArray("Metrics");
+        return document;
+    }
+
+    private static ArrayNode definitions(ObjectNode document) {
+        return (ArrayNode) document.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics");
+    }
+
+    private String write(ObjectNode document) {
+        try {
+            return mapper.writeValueAsString(document);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Writing metrics failed", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.megafarad.seshandler.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summarizes recorded values into exponentially sized buckets.
+ * <p>
+ * Each bucket is 20% wider than the previous one, starting at a base value below which values
+ * are not distinguished, so a value is represented by its bucket with a relative error of at
+ * most 20%. The number of buckets is limited to 100, the maximum number of distinct values
+ * CloudWatch accepts for a metric in a single Embedded Metric Format document; values beyond the
+ * last bucket are counted in it. The minimum, maximum, and sum are kept exactly.
+ */
+final class Histogram {
+
+    private static final int BUCKETS = 100;
+    private static final double GROWTH = 1.2;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+
+    private final String unit;
+    private final double base;
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+
+    /**
+     * Creates a Histogram.
+     *
+     * @param unit The CloudWatch unit of the recorded values.
+     * @param base The upper bound of the first bucket.
+     */
+    Histogram(String unit, double base) {
+        this.unit = unit;
+        this.base = base;
+    }
+
+    synchronized void record(double value) {
+        counts[bucket(value)]++;
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        count++;
+        sum += value;
+    }
+
+    /**
+     * Returns the values recorded since the previous call, and resets the histogram.
+     *
+     * @return The recorded distribution, or {@code null} if no value was recorded.
+     */
+    synchronized MetricsSnapshot.Distribution snapshotAndReset() {
+        if (count == 0) {
+            return null;
+        }
+        List<Double> values = new ArrayList<>();
+        List<Long> bucketCounts = new ArrayList<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                values.add(base * Math.pow(GROWTH, i));
+                bucketCounts.add(counts[i]);
+                counts[i] = 0;
+            }
+        }
+        MetricsSnapshot.Distribution distribution = new MetricsSnapshot.Distribution(unit, List.copyOf(values),
+                List.copyOf(bucketCounts), min, max, sum, count);
+        count = 0;
+        sum = 0;
+        return distribution;
+    }
+
+    private int bucket(double value) {
+        if (!(value > base)) {
+            return 0;
+        }
+        return (int) Math.min(BUCKETS - 1, Math.ceil(Math.log(value / base) / LOG_GROWTH));
+    }
+}
@@ -0,0 +1,302 @@
+package com.megafarad.seshandler.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * Records metrics about each stage of the notification pipeline and publishes them to a
+ * {@link MetricsSink} once per invocation.
+ * <p>
+ * The following metrics are recorded:
+ * - `ParseLatency`, `DispatchLatency`, `RenderLatency`, and `SendLatency`: the time taken by each
+ *   {@link Stage}, in milliseconds, as histograms.
+ * - `ParseFailures`, `DispatchFailures`, `RenderFailures`, and `SendFailures`: the number of
+ *   failures of each stage.
+ * - `RenderedBytes`: the size of each rendered email, in UTF-8 bytes, as a histogram.
+ * - `Notifications`: the number of notifications handled, per notification type.
+ * - `SendWaitTime`: the time each send waited for the send rate limit, in milliseconds, as a
+ *   histogram.
+ * - `SendRetryQueueDepth`: the number of throttled sends waiting to be retried, sampled whenever
+ *   a send is queued for a retry, as a histogram.
+ * - `SendThrottles`: the number of sends rejected by SES because the maximum send rate was
+ *   exceeded. Only published when a send was throttled.
+ * <p>
+ * Recording is cheap and safe for use by multiple threads; nothing is published until
+ * {@link #flush(String)} is called, which hands everything recorded since the previous flush to
+ * the sink and starts over.
+ * <p>
+ * The instance returned by {@link #fromEnv()} is shared by every component created from the
+ * environment, so that the metrics of one invocation are published together.
+ */
+public final class Metrics {
+
+    /**
+     * The stages of the notification pipeline.
+     */
+    public enum Stage {
+        /**
+         * Parsing an SNS message into an SESNotification.
+         */
+        PARSE("Parse"),
+        /**
+         * Handling an SESNotification, including rendering and sending any email.
+         */
+        DISPATCH("Dispatch"),
+        /**
+         * Rendering the templates of an email.
+         */
+        RENDER("Render"),
+        /**
+         * Sending an email, until the delivery mechanism accepts it.
+         */
+        SEND("Send");
+
+        private final String metricPrefix;
+
+        Stage(String metricPrefix) {
+            this.metricPrefix = metricPrefix;
+        }
+    }
+
+    private static final Metrics DISABLED = new Metrics(null);
+    private static final double LATENCY_BASE_MILLIS = 0.001;
+    private static final double SIZE_BASE_BYTES = 1;
+    private static final double SIZE_BASE_COUNT = 1;
+
+    private final MetricsSink sink;
+    private final Histogram[] latencies = new Histogram[Stage.values().length];
+    private final LongAdder[] failures = new LongAdder[Stage.values().length];
+    private final Histogram renderedBytes = new Histogram("Bytes", SIZE_BASE_BYTES);
+    private final Histogram sendWait = new Histogram("Milliseconds", LATENCY_BASE_MILLIS);
+    private final Histogram retryQueueDepth = new Histogram("Count", SIZE_BASE_COUNT);
+    private final LongAdder throttles = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final Map<String, LongAdder> notificationTypes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a Metrics instance that publishes to the specified sink.
+     *
+     * @param sink The sink to which metrics are published, or {@code null} to record nothing.
+     */
+    public Metrics(MetricsSink sink) {
+        this.sink = sink;
+        for (Stage stage : Stage.values()) {
+            latencies[stage.ordinal()] = new Histogram("Milliseconds", LATENCY_BASE_MILLIS);
+            failures[stage.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns a Metrics instance that records nothing.
+     *
+     * @return The disabled Metrics instance.
+     */
+    public static Metrics disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Returns the Metrics instance configured through environment variables.
+     * <p>
+     * Metrics are recorded when the `METRICS_ENABLED` environment variable is `true`, and are
+     * published as CloudWatch Embedded Metric Format documents in the namespace given by the
+     * `METRICS_NAMESPACE` environment variable (`SESNotificationHandler` by default). Otherwise
+     * the disabled instance is returned.
+     *
+     * @return The shared Metrics instance.
+     */
+    public static Metrics fromEnv() {
+        return EnvHolder.INSTANCE;
+    }
+
+    /**
+     * Returns whether this instance records metrics.
+     *
+     * @return {@code true} if metrics are recorded and published.
+     */
+    public boolean isEnabled() {
+        return sink != null;
+    }
+
+    /**
+     * Records the time taken by a stage.
+     *
+     * @param stage The stage.
+     * @param nanos The time taken, in nanoseconds.
+     */
+    public void recordLatency(Stage stage, long nanos) {
+        if (sink != null) {
+            latencies[stage.ordinal()].record(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Records a failure of a stage.
+     *
+     * @param stage The stage that failed.
+     */
+    public void recordFailure(Stage stage) {
+        if (sink != null) {
+            failures[stage.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Records a handled notification.
+     *
+     * @param notificationType The type of the notification, e.g. {@code Bounce}.
+     */
+    public void recordNotification(String notificationType) {
+        if (sink != null) {
+            notificationTypes.computeIfAbsent(String.valueOf(notificationType), type -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Records a notification that was skipped without being parsed, because the handler does not
+     * act on its type.
+     */
+    public void recordSkipped() {
+        if (sink != null) {
+            skipped.increment();
+        }
+    }
+
+    /**
+     * Records the size of a rendered email.
+     *
+     * @param bytes The size, in bytes.
+     */
+    public void recordRenderedBytes(long bytes) {
+        if (sink != null) {
+            renderedBytes.record(bytes);
+        }
+    }
+
+    /**
+     * Records the time a send waited for the send rate limit.
+     *
+     * @param nanos The time waited, in nanoseconds.
+     */
+    public void recordSendWait(long nanos) {
+        if (sink != null) {
+            sendWait.record(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Records a send rejected because the maximum send rate was exceeded, together with the
+     * number of sends waiting to be retried once it has been queued for a retry.
+     *
+     * @param queueDepth The number of queued retries, or {@code 0} if the send was not retried.
+     */
+    public void recordThrottle(int queueDepth) {
+        if (sink != null) {
+            throttles.increment();
+            if (queueDepth > 0) {
+                retryQueueDepth.record(queueDepth);
+            }
+        }
+    }
+
+    /**
+     * Publishes the metrics recorded since the previous flush to the sink, and starts over.
+     * Nothing is published if nothing was recorded.
+     *
+     * @param functionName The name of the Lambda function, or {@code null} if it is unknown.
+     */
+    public void flush(String functionName) {
+        if (sink == null) {
+            return;
+        }
+        boolean recorded = false;
+        Map<String, MetricsSnapshot.Distribution> distributions = new LinkedHashMap<>();
+        Map<String, Long> counters = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            MetricsSnapshot.Distribution latency = latencies[stage.ordinal()].snapshotAndReset();
+            if (latency != null) {
+                distributions.put(stage.metricPrefix + "Latency", latency);
+                recorded = true;
+            }
+            long failureCount = failures[stage.ordinal()].sumThenReset();
+            counters.put(stage.metricPrefix + "Failures", failureCount);
+            recorded |= failureCount > 0;
+        }
+        MetricsSnapshot.Distribution sizes = renderedBytes.snapshotAndReset();
+        if (sizes != null) {
+            distributions.put("RenderedBytes", sizes);
+            recorded = true;
+        }
+        MetricsSnapshot.Distribution waits = sendWait.snapshotAndReset();
+        if (waits != null) {
+            distributions.put("SendWaitTime", waits);
+            recorded = true;
+        }
+        MetricsSnapshot.Distribution depths = retryQueueDepth.snapshotAndReset();
+        if (depths != null) {
+            distributions.put("SendRetryQueueDepth", depths);
+        }
+        long throttleCount = throttles.sumThenReset();
+        if (throttleCount > 0) {
+            counters.put("SendThrottles", throttleCount);
+            recorded = true;
+        }
+        long skippedCount = skipped.sumThenReset();
+        if (skippedCount > 0) {
+            counters.put("SkippedNotifications", skippedCount);
+            recorded = true;
+        }
+        Map<String, Long> notifications = new LinkedHashMap<>();
+        notificationTypes.forEach((type, count) -> {
+            long sum = count.sumThenReset();
+            if (sum > 0) {
+                notifications.put(type, sum);
+            }
+        });
+        recorded |= !notifications.isEmpty();
+
+        if (recorded) {
+            sink.publish(new MetricsSnapshot(System.currentTimeMillis(), functionName, distributions, counters,
+                    notifications));
+        }
+    }
+
+    /**
+     * Computes the size of a string encoded as UTF-8 without encoding it.
+     *
+     * @param value The string, or {@code null}.
+     * @return The number of bytes; zero for {@code null}.
+     */
+    public static long utf8Length(CharSequence value) {
+        if (value == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static final class EnvHolder {
+        private static final Metrics INSTANCE = Boolean.parseBoolean(getEnvVar("METRICS_ENABLED", "false"))
+                ? new Metrics(new EmfMetricsSink(getEnvVar("METRICS_NAMESPACE", "SESNotificationHandler")))
+                : DISABLED;
+    }
+}
@@ -0,0 +1,20 @@
+package com.megafarad.seshandler.metrics;
+
+/**
+ * The MetricsSink interface defines where the metrics recorded by {@link Metrics} are published
+ * once per invocation.
+ * <p>
+ * The sink used in production is {@link EmfMetricsSink}, which writes CloudWatch Embedded Metric
+ * Format documents to standard output. Tests can supply a sink of their own to assert on the
+ * recorded metrics without any output.
+ */
+public interface MetricsSink {
+
+    /**
+     * Publishes the metrics recorded since the previous flush. Implementations must not make
+     * synchronous calls to remote services, as they are called on the invocation's critical path.
+     *
+     * @param snapshot The recorded metrics.
+     */
+    void publish(MetricsSnapshot snapshot);
+}
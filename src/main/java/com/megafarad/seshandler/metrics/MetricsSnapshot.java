@@ -0,0 +1,33 @@
+package com.megafarad.seshandler.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The metrics recorded by {@link Metrics} between two flushes.
+ *
+ * @param timestamp         The time of the flush, in milliseconds since the epoch.
+ * @param functionName      The name of the Lambda function that recorded the metrics, or {@code null}
+ *                          if it is unknown.
+ * @param distributions     The recorded distributions, such as latencies, keyed by metric name.
+ *                          Only metrics with at least one recorded value are included.
+ * @param counters          The recorded failure counters, keyed by metric name.
+ * @param notificationTypes The number of notifications handled, keyed by notification type.
+ */
+public record MetricsSnapshot(long timestamp, String functionName, Map<String, Distribution> distributions,
+                              Map<String, Long> counters, Map<String, Long> notificationTypes) {
+
+    /**
+     * A distribution of recorded values, summarized as a histogram.
+     *
+     * @param unit   The CloudWatch unit of the values, e.g. {@code Milliseconds} or {@code Bytes}.
+     * @param values The upper bound of each non-empty histogram bucket, in ascending order.
+     * @param counts The number of values recorded in each bucket, in the same order as {@code values}.
+     * @param min    The smallest recorded value.
+     * @param max    The largest recorded value.
+     * @param sum    The sum of the recorded values.
+     * @param count  The number of recorded values.
+     */
+    public record Distribution(String unit, List<Double> values, List<Long> counts, double min, double max,
+                               double sum, long count) { }
+}
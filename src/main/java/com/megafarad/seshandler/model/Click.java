@@ -0,0 +1,21 @@
+package com.megafarad.seshandler.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a click event from SES, published when a recipient clicked a link in an email.
+ *
+ * @param ipAddress The IP address of the recipient.
+ * @param timestamp Timestamp of the click event
+ * @param userAgent The user agent of the client that the recipient clicked the link in.
+ * @param link The URL of the link that was clicked.
+ * @param linkTags The tags added to the link, by tag name.
+ */
+public record Click(
+        String ipAddress,
+        String timestamp,
+        String userAgent,
+        String link,
+        Map<String, List<String>> linkTags
+) { }
@@ -0,0 +1,14 @@
+package com.megafarad.seshandler.model;
+
+/**
+ * Represents a recipient whose delivery was delayed.
+ *
+ * @param emailAddress The email address of the recipient.
+ * @param status The SMTP status code of the delay, e.g. {@code 4.4.1}.
+ * @param diagnosticCode The diagnostic code reported by the receiving mail server.
+ */
+public record DelayedRecipient(
+        String emailAddress,
+        String status,
+        String diagnosticCode
+) { }
@@ -0,0 +1,21 @@
+package com.megafarad.seshandler.model;
+
+import java.util.List;
+
+/**
+ * Represents a delivery delay event from SES, published when an email could not be delivered
+ * yet because of a temporary issue, such as a full mailbox or an unavailable mail server.
+ *
+ * @param timestamp Timestamp of the delivery delay event
+ * @param delayType The type of delay, e.g. {@code MailboxFull} or {@code TransientCommunicationFailure}.
+ * @param expirationTime The time at which SES stops trying to deliver the email.
+ * @param delayedRecipients The recipients whose delivery was delayed.
+ * @param reportingMTA The IP address of the mail transfer agent that reported the delay.
+ */
+public record DeliveryDelay(
+        String timestamp,
+        String delayType,
+        String expirationTime,
+        List<DelayedRecipient> delayedRecipients,
+        String reportingMTA
+) { }
@@ -1,6 +1,9 @@
 package com.megafarad.seshandler.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents metadata and information about an email message processed by Amazon SES (Simple Email Service).
@@ -16,8 +19,11 @@ import java.util.List;
  * @param callerIdentity The AWS account ID that called the SES API.
  * @param destination A list of email addresses to which the email was sent.
  * @param headersTruncated Indicates whether the headers were truncated due to size limitations.
- * @param headers A list of headers associated with the email message.
+ * @param headers The headers associated with the email message, parsed on first access and
+ *                indexed for case-insensitive lookup by name.
  * @param commonHeaders Common headers associated with the email message.
+ * @param tags The tags of the email, by tag name, including those SES adds such as
+ *             {@code ses:configuration-set}; only published with the events of a configuration set.
  */
 public record Mail(
         String timestamp,
@@ -29,7 +35,37 @@ public record Mail(
         String callerIdentity,
         List<String> destination,
         Boolean headersTruncated,
-        List<MailHeader> headers,
-        CommonHeaders commonHeaders
+        MailHeaders headers,
+        CommonHeaders commonHeaders,
+        Map<String, List<String>> tags
 )
-{ }
+{
+
+    /**
+     * The canonical constructor, used by Jackson.
+     */
+    @JsonCreator
+    public Mail { }
+
+    /**
+     * Constructs the metadata of an email message from a list of headers, without tags.
+     *
+     * @param timestamp The timestamp of the email message.
+     * @param messageId The unique identifier of the email message.
+     * @param source The email address of the sender.
+     * @param sourceArn The Amazon Resource Name (ARN) of the sender.
+     * @param sourceIp The IP address of the sender.
+     * @param sendingAccountId The AWS account ID that sent the email.
+     * @param callerIdentity The AWS account ID that called the SES API.
+     * @param destination A list of email addresses to which the email was sent.
+     * @param headersTruncated Indicates whether the headers were truncated due to size limitations.
+     * @param headers The headers associated with the email message, or {@code null} if absent.
+     * @param commonHeaders Common headers associated with the email message.
+     */
+    public Mail(String timestamp, String messageId, String source, String sourceArn, String sourceIp,
+                String sendingAccountId, String callerIdentity, List<String> destination, Boolean headersTruncated,
+                List<MailHeader> headers, CommonHeaders commonHeaders) {
+        this(timestamp, messageId, source, sourceArn, sourceIp, sendingAccountId, callerIdentity, destination,
+                headersTruncated, headers == null ? null : MailHeaders.of(headers), commonHeaders, null);
+    }
+}
@@ -0,0 +1,248 @@
+package com.megafarad.seshandler.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * The headers of an email message, as reported in the {@code mail.headers} array of an SES
+ * notification.
+ * <p>
+ * When read from a notification, the headers are not bound up front. Instead, the JSON text of
+ * the {@code headers} array is retained, and the array is parsed the first time a header is
+ * accessed. Notifications whose headers are never read therefore never allocate a
+ * {@link MailHeader}, nor a string per header name and value. {@link SESNotificationReader}
+ * retains the array as it appears in the notification; other Jackson readers retain a copy of it
+ * written from their tokens.
+ * <p>
+ * Headers can be read positionally, as a {@code List<MailHeader>}, or by name. Lookups by name
+ * are case-insensitive and take constant time. When a header occurs more than once, such as
+ * {@code Received}, lookups by name return its last occurrence and {@link #values(String)}
+ * returns every occurrence.
+ * <p>
+ * Instances are immutable and safe for use by multiple threads.
+ */
+@JsonDeserialize(using = MailHeaders.Deserializer.class)
+public final class MailHeaders extends AbstractList<MailHeader> implements RandomAccess {
+
+    private static final MailHeaders EMPTY = new MailHeaders(List.of());
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private String json;
+    private volatile Index index;
+
+    private MailHeaders(String json) {
+        this.json = json;
+    }
+
+    private MailHeaders(List<MailHeader> headers) {
+        this.index = new Index(headers.toArray(MailHeader[]::new));
+    }
+
+    /**
+     * Creates a MailHeaders instance holding the specified headers.
+     *
+     * @param headers The headers, in the order they appear in the message.
+     * @return A MailHeaders instance holding a copy of the headers.
+     */
+    public static MailHeaders of(List<MailHeader> headers) {
+        return headers.isEmpty() ? EMPTY : new MailHeaders(headers);
+    }
+
+    /**
+     * Creates a MailHeaders instance holding the headers of a JSON array, which is only parsed
+     * when a header is accessed.
+     *
+     * @param json The JSON text of the {@code mail.headers} array.
+     * @return A MailHeaders instance backed by the JSON text.
+     */
+    static MailHeaders ofJson(String json) {
+        return new MailHeaders(json);
+    }
+
+    /**
+     * Returns a MailHeaders instance that holds no headers.
+     *
+     * @return An empty MailHeaders instance.
+     */
+    public static MailHeaders empty() {
+        return EMPTY;
+    }
+
+    @Override
+    public MailHeader get(int index) {
+        return index().headers[index];
+    }
+
+    @Override
+    public int size() {
+        return index().headers.length;
+    }
+
+    /**
+     * Returns the value of the header with the specified name, ignoring case.
+     *
+     * @param name The name of the header (e.g., {@code X-Campaign-Id}).
+     * @return The value of the last occurrence of the header, or {@code null} if the header is absent.
+     */
+    public String value(String name) {
+        Index index = index();
+        Integer position = index.lastPositions.get(name.toLowerCase(Locale.ROOT));
+        return position == null ? null : index.headers[position].value();
+    }
+
+    /**
+     * Returns the values of every occurrence of the header with the specified name, ignoring case.
+     *
+     * @param name The name of the header (e.g., {@code Received}).
+     * @return The values in the order they appear in the message; empty if the header is absent.
+     */
+    public List<String> values(String name) {
+        Index index = index();
+        if (!index.lastPositions.containsKey(name.toLowerCase(Locale.ROOT))) {
+            return List.of();
+        }
+        List<String> values = new ArrayList<>();
+        for (MailHeader header : index.headers) {
+            if (header.name() != null && header.name().equalsIgnoreCase(name)) {
+                values.add(header.value());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns a read-only view of the headers as a map from header name to value. Lookups through
+     * {@link Map#get(Object)} and {@link Map#containsKey(Object)} are case-insensitive and take
+     * constant time; no copy of the headers is made for them.
+     *
+     * @return A map view of the headers.
+     */
+    public Map<String, String> asMap() {
+        return new MapView();
+    }
+
+    private Index index() {
+        Index current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = new Index(parse(json));
+                    index = current;
+                    json = null;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static MailHeader[] parse(String json) {
+        List<MailHeader> headers = new ArrayList<>();
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String name = null;
+                String value = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "name" -> name = parser.getValueAsString();
+                        case "value" -> value = parser.getValueAsString();
+                        default -> parser.skipChildren();
+                    }
+                }
+                headers.add(new MailHeader(name, value));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Parsing mail headers failed", e);
+        }
+        return headers.toArray(MailHeader[]::new);
+    }
+
+    private static final class Index {
+        private final MailHeader[] headers;
+        private final Map<String, Integer> lastPositions;
+
+        private Index(MailHeader[] headers) {
+            this.headers = headers;
+            this.lastPositions = new HashMap<>(Math.max(16, headers.length * 2));
+            for (int i = 0; i < headers.length; i++) {
+                if (headers[i].name() != null) {
+                    lastPositions.put(headers[i].name().toLowerCase(Locale.ROOT), i);
+                }
+            }
+        }
+    }
+
+    private final class MapView extends AbstractMap<String, String> {
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String name ? value(name) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String name && index().lastPositions.containsKey(name.toLowerCase(Locale.ROOT));
+        }
+
+        @Override
+        public int size() {
+            return index().lastPositions.size();
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            Map<String, String> entries = new LinkedHashMap<>();
+            Index index = index();
+            for (int i = 0; i < index.headers.length; i++) {
+                MailHeader header = index.headers[i];
+                if (header.name() != null
+                        && index.lastPositions.get(header.name().toLowerCase(Locale.ROOT)) == i) {
+                    entries.put(header.name(), header.value());
+                }
+            }
+            return Collections.unmodifiableMap(entries).entrySet();
+        }
+    }
+
+    /**
+     * Deserializes the {@code mail.headers} array by retaining a copy of its JSON text for later
+     * parsing.
+     */
+    public static class Deserializer extends JsonDeserializer<MailHeaders> {
+
+        @Override
+        public MailHeaders deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() != JsonToken.START_ARRAY) {
+                return (MailHeaders) context.handleUnexpectedToken(MailHeaders.class, parser);
+            }
+            StringWriter json = new StringWriter();
+            try (JsonGenerator generator = FACTORY.createGenerator(json)) {
+                generator.copyCurrentStructure(parser);
+            }
+            return new MailHeaders(json.toString());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.megafarad.seshandler.model;
+
+/**
+ * Represents an open event from SES, published when a recipient opened an email.
+ *
+ * @param ipAddress The IP address of the recipient.
+ * @param timestamp Timestamp of the open event
+ * @param userAgent The user agent of the device or email client that opened the email.
+ */
+public record Open(
+        String ipAddress,
+        String timestamp,
+        String userAgent
+) { }
@@ -0,0 +1,11 @@
+package com.megafarad.seshandler.model;
+
+/**
+ * Represents a reject event from SES, published when SES accepted an email but rejected it
+ * before attempting delivery, e.g. because it contained a virus.
+ *
+ * @param reason The reason the email was rejected, e.g. {@code Bad content}.
+ */
+public record Reject(
+        String reason
+) { }
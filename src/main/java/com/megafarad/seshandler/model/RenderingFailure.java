@@ -0,0 +1,13 @@
+package com.megafarad.seshandler.model;
+
+/**
+ * Represents a rendering failure event from SES, published when an email sent with a template
+ * could not be rendered, e.g. because template data was missing.
+ *
+ * @param errorMessage The reason the template could not be rendered.
+ * @param templateName The name of the template.
+ */
+public record RenderingFailure(
+        String errorMessage,
+        String templateName
+) { }
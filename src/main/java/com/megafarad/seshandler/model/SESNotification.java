@@ -1,5 +1,8 @@
 package com.megafarad.seshandler.model;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * Represents a notification received from Amazon SES (Simple Email Service).
@@ -7,6 +10,12 @@ package com.megafarad.seshandler.model;
  * complaint, and delivery notifications, as well as metadata about the original
  * email message.
  * <p>
+ * Besides the notifications of an identity, which name their type in `notificationType`, SES
+ * publishes the events of a configuration set, which name their type in `eventType`. Both are
+ * read into {@link #notificationType()}. Events add the types `Send`, `Reject`, `Open`, `Click`,
+ * `DeliveryDelay`, `Rendering Failure`, and `Subscription`, whose details are held in the
+ * component of the same name; the details of a rendering failure are published as `failure`.
+ * <p>
  * The record encapsulates the following components:
  *
  * @param notificationType  The type of notification (e.g., bounce, complaint, delivery).
@@ -14,11 +23,46 @@ package com.megafarad.seshandler.model;
  * @param bounce Details about the bounce notification, if applicable.
  * @param complaint Details about the complaint notification, if applicable.
  * @param delivery Details about the delivery notification, if applicable.
+ * @param send Details about the send event, if applicable.
+ * @param reject Details about the reject event, if applicable.
+ * @param open Details about the open event, if applicable.
+ * @param click Details about the click event, if applicable.
+ * @param deliveryDelay Details about the delivery delay event, if applicable.
+ * @param renderingFailure Details about the rendering failure event, if applicable.
+ * @param subscription Details about the subscription event, if applicable.
  */
 public record SESNotification(
-    String notificationType,
+    @JsonAlias("eventType") String notificationType,
     Mail mail,
     Bounce bounce,
     Complaint complaint,
-    Delivery delivery
-) { }
+    Delivery delivery,
+    Send send,
+    Reject reject,
+    Open open,
+    Click click,
+    DeliveryDelay deliveryDelay,
+    @JsonProperty("failure") RenderingFailure renderingFailure,
+    Subscription subscription
+) {
+
+    /**
+     * The canonical constructor, used by Jackson.
+     */
+    @JsonCreator
+    public SESNotification { }
+
+    /**
+     * Constructs a bounce, complaint, or delivery notification.
+     *
+     * @param notificationType The type of notification (e.g., bounce, complaint, delivery).
+     * @param mail Metadata and information about the original email message.
+     * @param bounce Details about the bounce notification, if applicable.
+     * @param complaint Details about the complaint notification, if applicable.
+     * @param delivery Details about the delivery notification, if applicable.
+     */
+    public SESNotification(String notificationType, Mail mail, Bounce bounce, Complaint complaint,
+                           Delivery delivery) {
+        this(notificationType, mail, bounce, complaint, delivery, null, null, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,226 @@
+package com.megafarad.seshandler.model;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads SES notifications from JSON using a streaming parser and precompiled readers.
+ * <p>
+ * Unlike binding the whole document with {@code ObjectMapper.readValue}, this reader walks the
+ * top-level and {@code mail} objects token by token and only materializes the parts the
+ * configured handler needs. In particular, when mail headers are not required, the
+ * {@code mail.headers} array, which can hold hundreds of entries, is skipped entirely;
+ * {@link Mail#headers()} is {@code null} in that case. Otherwise the text of the array is cut out
+ * of the document as it is and retained as a {@link MailHeaders} view that is only parsed when a
+ * header is accessed. The remaining nested
+ * objects are bound with {@link ObjectReader}s that are created once and reused for every
+ * notification.
+ * <p>
+ * Both the notifications of an identity, which name their type in {@code notificationType}, and
+ * the events of a configuration set, which name it in {@code eventType}, are read. Since SES
+ * writes the type first, {@link #peekType(String)} can read it without parsing the rest of the
+ * document, so that notifications of a type no handler acts on are skipped before they are read.
+ * <p>
+ * Instances are immutable and safe for use by multiple threads.
+ */
+public class SESNotificationReader {
+
+    private final ObjectMapper mapper;
+    private final boolean includeMailHeaders;
+    private final ObjectReader bounceReader;
+    private final ObjectReader complaintReader;
+    private final ObjectReader deliveryReader;
+    private final ObjectReader sendReader;
+    private final ObjectReader rejectReader;
+    private final ObjectReader openReader;
+    private final ObjectReader clickReader;
+    private final ObjectReader deliveryDelayReader;
+    private final ObjectReader renderingFailureReader;
+    private final ObjectReader subscriptionReader;
+    private final ObjectReader commonHeadersReader;
+    private final ObjectReader headersReader;
+    private final ObjectReader stringListReader;
+    private final ObjectReader tagsReader;
+
+    /**
+     * Constructs an SESNotificationReader.
+     *
+     * @param includeMailHeaders Whether {@code mail.headers} should be materialized. When
+     *                           {@code false}, the headers are skipped while parsing.
+     */
+    public SESNotificationReader(boolean includeMailHeaders) {
+        this(new ObjectMapper(), includeMailHeaders);
+    }
+
+    /**
+     * Constructs an SESNotificationReader that binds nested objects with the specified mapper.
+     *
+     * @param mapper             The ObjectMapper whose configuration is used for nested objects.
+     * @param includeMailHeaders Whether {@code mail.headers} should be materialized.
+     */
+    public SESNotificationReader(ObjectMapper mapper, boolean includeMailHeaders) {
+        this.mapper = mapper;
+        this.includeMailHeaders = includeMailHeaders;
+        this.bounceReader = mapper.readerFor(Bounce.class);
+        this.complaintReader = mapper.readerFor(Complaint.class);
+        this.deliveryReader = mapper.readerFor(Delivery.class);
+        this.sendReader = mapper.readerFor(Send.class);
+        this.rejectReader = mapper.readerFor(Reject.class);
+        this.openReader = mapper.readerFor(Open.class);
+        this.clickReader = mapper.readerFor(Click.class);
+        this.deliveryDelayReader = mapper.readerFor(DeliveryDelay.class);
+        this.renderingFailureReader = mapper.readerFor(RenderingFailure.class);
+        this.subscriptionReader = mapper.readerFor(Subscription.class);
+        this.commonHeadersReader = mapper.readerFor(CommonHeaders.class);
+        this.headersReader = mapper.readerFor(MailHeaders.class);
+        this.stringListReader = mapper.readerFor(new TypeReference<List<String>>() { });
+        this.tagsReader = mapper.readerFor(new TypeReference<Map<String, List<String>>>() { });
+    }
+
+    /**
+     * Reads an SES notification from the specified JSON document.
+     *
+     * @param json The JSON document of the notification, as published by SES.
+     * @return The parsed notification.
+     * @throws IOException If the document is not valid JSON or does not describe a notification.
+     */
+    public SESNotification read(String json) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+
+            String notificationType = null;
+            Mail mail = null;
+            Bounce bounce = null;
+            Complaint complaint = null;
+            Delivery delivery = null;
+            Send send = null;
+            Reject reject = null;
+            Open open = null;
+            Click click = null;
+            DeliveryDelay deliveryDelay = null;
+            RenderingFailure renderingFailure = null;
+            Subscription subscription = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "notificationType", "eventType" -> notificationType = parser.getValueAsString();
+                    case "mail" -> mail = value == JsonToken.VALUE_NULL ? null : readMail(parser, json);
+                    case "bounce" -> bounce = bounceReader.readValue(parser);
+                    case "complaint" -> complaint = complaintReader.readValue(parser);
+                    case "delivery" -> delivery = deliveryReader.readValue(parser);
+                    case "send" -> send = sendReader.readValue(parser);
+                    case "reject" -> reject = rejectReader.readValue(parser);
+                    case "open" -> open = openReader.readValue(parser);
+                    case "click" -> click = clickReader.readValue(parser);
+                    case "deliveryDelay" -> deliveryDelay = deliveryDelayReader.readValue(parser);
+                    case "failure" -> renderingFailure = renderingFailureReader.readValue(parser);
+                    case "subscription" -> subscription = subscriptionReader.readValue(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+
+            return new SESNotification(notificationType, mail, bounce, complaint, delivery, send, reject, open,
+                    click, deliveryDelay, renderingFailure, subscription);
+        }
+    }
+
+    /**
+     * Reads the type of an SES notification without reading the rest of the document. Top-level
+     * fields preceding the type are skipped without being bound, and reading stops at the type.
+     *
+     * @param json The JSON document of the notification, as published by SES.
+     * @return The value of {@code notificationType} or {@code eventType}, or {@code null} if the
+     *         document names no type.
+     * @throws IOException If the document is not valid JSON.
+     */
+    public String peekType(String json) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT, parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (field.equals("notificationType") || field.equals("eventType")) {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    private Mail readMail(JsonParser parser, String json) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_OBJECT, parser);
+
+        String timestamp = null;
+        String messageId = null;
+        String source = null;
+        String sourceArn = null;
+        String sourceIp = null;
+        String sendingAccountId = null;
+        String callerIdentity = null;
+        List<String> destination = null;
+        Boolean headersTruncated = null;
+        MailHeaders headers = null;
+        CommonHeaders commonHeaders = null;
+        Map<String, List<String>> tags = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "timestamp" -> timestamp = parser.getValueAsString();
+                case "messageId" -> messageId = parser.getValueAsString();
+                case "source" -> source = parser.getValueAsString();
+                case "sourceArn" -> sourceArn = parser.getValueAsString();
+                case "sourceIp" -> sourceIp = parser.getValueAsString();
+                case "sendingAccountId" -> sendingAccountId = parser.getValueAsString();
+                case "callerIdentity" -> callerIdentity = parser.getValueAsString();
+                case "destination" -> destination = stringListReader.readValue(parser);
+                case "headersTruncated" -> headersTruncated = value == JsonToken.VALUE_NULL ? null
+                        : parser.getValueAsBoolean();
+                case "headers" -> {
+                    if (includeMailHeaders && value == JsonToken.START_ARRAY) {
+                        headers = readHeaders(parser, json);
+                    } else if (includeMailHeaders) {
+                        headers = headersReader.readValue(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "commonHeaders" -> commonHeaders = commonHeadersReader.readValue(parser);
+                case "tags" -> tags = tagsReader.readValue(parser);
+                default -> parser.skipChildren();
+            }
+        }
+
+        return new Mail(timestamp, messageId, source, sourceArn, sourceIp, sendingAccountId, callerIdentity,
+                destination, headersTruncated, headers, commonHeaders, tags);
+    }
+
+    /**
+     * Skips the {@code mail.headers} array and returns a view of its text, which spans from the
+     * opening to the closing bracket of the array in the document.
+     */
+    private static MailHeaders readHeaders(JsonParser parser, String json) throws IOException {
+        int start = (int) parser.currentTokenLocation().getCharOffset();
+        parser.skipChildren();
+        int end = (int) parser.currentLocation().getCharOffset();
+        return MailHeaders.ofJson(json.substring(start, end));
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected, JsonParser parser) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+}
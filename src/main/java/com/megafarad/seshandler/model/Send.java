@@ -0,0 +1,7 @@
+package com.megafarad.seshandler.model;
+
+/**
+ * Represents a send event from SES, published when a send request was accepted and SES will
+ * attempt to deliver the message. SES reports no details beyond the mail itself.
+ */
+public record Send() { }
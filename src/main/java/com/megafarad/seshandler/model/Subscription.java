@@ -0,0 +1,19 @@
+package com.megafarad.seshandler.model;
+
+/**
+ * Represents a subscription event from SES, published when a contact updated their
+ * subscriptions through the unsubscribe link of an email.
+ *
+ * @param contactList The name of the contact list.
+ * @param timestamp Timestamp of the subscription event
+ * @param source The email address of the contact.
+ * @param newTopicPreferences The topic preferences of the contact after the update.
+ * @param oldTopicPreferences The topic preferences of the contact before the update.
+ */
+public record Subscription(
+        String contactList,
+        String timestamp,
+        String source,
+        TopicPreferences newTopicPreferences,
+        TopicPreferences oldTopicPreferences
+) { }
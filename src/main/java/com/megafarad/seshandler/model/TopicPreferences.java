@@ -0,0 +1,14 @@
+package com.megafarad.seshandler.model;
+
+import java.util.List;
+
+/**
+ * Represents the topic preferences of a contact.
+ *
+ * @param unsubscribeAll Whether the contact unsubscribed from every topic of the contact list.
+ * @param topicSubscriptionStatus The subscription status of each topic.
+ */
+public record TopicPreferences(
+        Boolean unsubscribeAll,
+        List<TopicSubscriptionStatus> topicSubscriptionStatus
+) { }
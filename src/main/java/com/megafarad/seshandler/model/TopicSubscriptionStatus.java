@@ -0,0 +1,12 @@
+package com.megafarad.seshandler.model;
+
+/**
+ * Represents the subscription of a contact to a topic of a contact list.
+ *
+ * @param topicName The name of the topic.
+ * @param subscriptionStatus Whether the contact is subscribed: {@code OptIn} or {@code OptOut}.
+ */
+public record TopicSubscriptionStatus(
+        String topicName,
+        String subscriptionStatus
+) { }
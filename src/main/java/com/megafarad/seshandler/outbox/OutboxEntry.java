@@ -0,0 +1,18 @@
+package com.megafarad.seshandler.outbox;
+
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import com.megafarad.seshandler.sender.EmailAttachment;
+
+import java.util.List;
+
+/**
+ * An email that was appended to a {@link WriteAheadLog} and has not been completed yet.
+ *
+ * @param sequence    the position of the entry in the log, which identifies it when it is completed
+ * @param from        the email address of the sender
+ * @param to          the email address of the recipient
+ * @param email       the rendered subject and bodies of the email
+ * @param attachments the files attached to the email; may be empty
+ */
+public record OutboxEntry(long sequence, String from, String to, RenderedEmail email,
+                          List<EmailAttachment> attachments) { }
@@ -0,0 +1,452 @@
+package com.megafarad.seshandler.outbox;
+
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import com.megafarad.seshandler.sender.EmailAttachment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A durable log of the emails waiting to be sent, kept in a directory of memory-mapped segment
+ * files.
+ * <p>
+ * Each email is appended as a record to the active segment and identified by its sequence
+ * number. Once it has been sent, or given up on, it is completed by appending a completion record
+ * for its sequence number. A segment is deleted as soon as it and every older segment hold no
+ * entry that is still pending, so the log only grows while emails cannot be sent.
+ * <p>
+ * The files are laid out as follows:
+ * - Segments are numbered in the order in which they are created, e.g. `00000000000000000042.wal`.
+ *   Each starts with the magic number `OUT1`, four reserved bytes, and the next sequence number
+ *   at the time it was created.
+ * - Each record consists of the length of its body, the CRC-32 of its body, and the body: the
+ *   record type (1 for an email, 2 for a completion), the sequence number, and, for an email, the
+ *   sender, recipient, subject, HTML body, and text body as length-prefixed UTF-8 strings followed
+ *   by the attachments.
+ * - The rest of a segment is zero, so a record length of zero marks the end of the segment.
+ * <p>
+ * Records are written to the mapped pages, so an appended email survives a crash of the process
+ * as soon as {@link #append} returns. With `sync` enabled, every record is also forced to the
+ * storage device before {@link #append} returns, so that it survives a crash of the host.
+ * <p>
+ * When the log is opened, its segments are read in order and the emails that were appended but
+ * not completed are available from {@link #recovered()}. Reading a segment stops at the first
+ * record that is incomplete or fails its checksum, such as one that was being written during a
+ * crash, and new records are appended in its place.
+ * <p>
+ * A log holds an exclusive lock on the file `outbox.lock` in its directory until it is closed, so
+ * that no other log, in this process or another one, recovers the same entries or writes to the
+ * same segments.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public final class WriteAheadLog implements AutoCloseable {
+
+    private static final int MAGIC = 0x4F555431;
+    private static final int SEGMENT_HEADER_BYTES = 16;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final byte APPEND = 1;
+    private static final byte COMPLETE = 2;
+    private static final String SUFFIX = ".wal";
+    private static final String LOCK_FILE = "outbox.lock";
+
+    private final Path directory;
+    private final FileLock lock;
+    private final int segmentSize;
+    private final boolean sync;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<Long, Segment> pending = new HashMap<>();
+    private final List<OutboxEntry> recovered;
+    private final CRC32 crc = new CRC32();
+    private long nextSequence;
+    private long nextSegment;
+
+    private WriteAheadLog(Path directory, FileLock lock, int segmentSize, boolean sync) throws IOException {
+        this.directory = directory;
+        this.lock = lock;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        this.recovered = recover();
+    }
+
+    /**
+     * Opens the log in a directory, creating the directory if it does not exist, and recovers the
+     * emails that are still pending.
+     *
+     * @param directory   The directory holding the segment files.
+     * @param segmentSize The size of each segment in bytes. A segment is made larger when a single
+     *                    email does not fit.
+     * @param sync        Whether every record is forced to the storage device before it is
+     *                    acknowledged.
+     * @return The log.
+     * @throws IllegalStateException If another log holds the directory open.
+     * @throws RuntimeException      If the directory cannot be read or holds a file that is not a
+     *                               segment.
+     */
+    public static WriteAheadLog open(Path directory, int segmentSize, boolean sync) {
+        if (segmentSize < SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        FileLock lock = null;
+        try {
+            Files.createDirectories(directory);
+            lock = lock(directory);
+            return new WriteAheadLog(directory, lock, segmentSize, sync);
+        } catch (IOException e) {
+            release(lock);
+            throw new RuntimeException("Opening outbox failed: " + directory, e);
+        } catch (RuntimeException e) {
+            release(lock);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends an email to the log.
+     *
+     * @param from        The email address of the sender.
+     * @param to          The email address of the recipient.
+     * @param email       The rendered subject and bodies of the email.
+     * @param attachments The files attached to the email; may be empty.
+     * @return The sequence number of the entry, with which it is completed.
+     * @throws RuntimeException If a new segment cannot be created.
+     */
+    public long append(String from, String to, RenderedEmail email, List<EmailAttachment> attachments) {
+        byte[] record = encode(from, to, email, attachments);
+        synchronized (this) {
+            long sequence = nextSequence++;
+            Segment segment = write(record, APPEND, sequence);
+            segment.pending++;
+            pending.put(sequence, segment);
+            return sequence;
+        }
+    }
+
+    /**
+     * Completes an entry, so that it is not recovered again, and deletes the segments that no
+     * longer hold pending entries. Completing an entry that is not pending does nothing.
+     *
+     * @param sequence The sequence number of the entry.
+     * @throws RuntimeException If a new segment cannot be created, in which case the entry stays
+     *                          pending.
+     */
+    public synchronized void complete(long sequence) {
+        Segment segment = pending.get(sequence);
+        if (segment == null) {
+            return;
+        }
+        byte[] record = new byte[RECORD_HEADER_BYTES + 9];
+        write(record, COMPLETE, sequence);
+        pending.remove(sequence);
+        segment.pending--;
+        while (segments.size() > 1 && segments.getFirst().pending == 0) {
+            Segment compacted = segments.removeFirst();
+            try {
+                Files.deleteIfExists(compacted.path);
+            } catch (IOException e) {
+                throw new RuntimeException("Deleting outbox segment failed: " + compacted.path, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the entries that were pending when the log was opened, in the order in which they
+     * were appended.
+     *
+     * @return The recovered entries.
+     */
+    public List<OutboxEntry> recovered() {
+        return recovered;
+    }
+
+    /**
+     * Returns the number of entries that have been appended or recovered and not completed yet.
+     *
+     * @return The number of pending entries.
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of segment files of the log.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Forces the active segment to the storage device and releases the lock on the directory. The
+     * pending entries are recovered when the log is opened again.
+     */
+    @Override
+    public synchronized void close() {
+        segments.getLast().buffer.force();
+        release(lock);
+    }
+
+    private static FileLock lock(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("Outbox is already open: " + directory);
+        }
+        return lock;
+    }
+
+    private static void release(FileLock lock) {
+        if (lock != null) {
+            try {
+                lock.channel().close();
+            } catch (IOException e) {
+                // The lock is released with the channel, or at the latest when the process exits.
+            }
+        }
+    }
+
+    private Segment write(byte[] record, byte type, long sequence) {
+        ByteBuffer body = ByteBuffer.wrap(record);
+        body.putInt(0, record.length - RECORD_HEADER_BYTES);
+        body.put(RECORD_HEADER_BYTES, type);
+        body.putLong(RECORD_HEADER_BYTES + 1, sequence);
+        crc.reset();
+        crc.update(record, RECORD_HEADER_BYTES, record.length - RECORD_HEADER_BYTES);
+        body.putInt(4, (int) crc.getValue());
+
+        Segment segment = segments.getLast();
+        // Leave room for the zero length that marks the end of the segment.
+        if (segment.position + record.length + 4 > segment.buffer.capacity()) {
+            segment = createSegment(Math.max(segmentSize, SEGMENT_HEADER_BYTES + record.length + 4));
+        }
+        segment.buffer.put(segment.position, record);
+        if (sync) {
+            segment.buffer.force(segment.position, record.length);
+        }
+        segment.position += record.length;
+        return segment;
+    }
+
+    private Segment createSegment(int size) {
+        Path path = directory.resolve(String.format("%020d", nextSegment++) + SUFFIX);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(8, nextSequence);
+            if (sync) {
+                buffer.force();
+            }
+            Segment segment = new Segment(path, buffer, SEGMENT_HEADER_BYTES);
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new RuntimeException("Creating outbox segment failed: " + path, e);
+        }
+    }
+
+    private List<OutboxEntry> recover() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        Map<Long, OutboxEntry> entries = new LinkedHashMap<>();
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            long number = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            nextSegment = Math.max(nextSegment, number + 1);
+            Segment segment = openSegment(path);
+            nextSequence = Math.max(nextSequence, segment.buffer.getLong(8));
+            segment.position = read(segment, entries);
+            segments.addLast(segment);
+        }
+
+        if (segments.isEmpty()) {
+            createSegment(segmentSize);
+        } else {
+            // Clear whatever follows the last complete record, so that it cannot be mistaken for a
+            // record once new records are appended in front of it.
+            MappedByteBuffer buffer = segments.getLast().buffer;
+            for (int i = segments.getLast().position; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        while (segments.size() > 1 && segments.getFirst().pending == 0) {
+            Files.deleteIfExists(segments.removeFirst().path);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    private static Segment openSegment(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < SEGMENT_HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid segment length " + size + ": " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int magic = buffer.getInt(0);
+            if (magic == 0) {
+                // The segment was created, but its header was not written before a crash.
+                buffer.putInt(0, MAGIC);
+            } else if (magic != MAGIC) {
+                throw new IOException("Not an outbox segment: " + path);
+            }
+            return new Segment(path, buffer, SEGMENT_HEADER_BYTES);
+        }
+    }
+
+    /**
+     * Reads the records of a segment, adding the emails to the entries and removing the completed
+     * ones.
+     *
+     * @return The position after the last complete record.
+     */
+    private int read(Segment segment, Map<Long, OutboxEntry> entries) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+        while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < 9 || length > buffer.capacity() - position - RECORD_HEADER_BYTES) {
+                break;
+            }
+            ByteBuffer body = buffer.slice(position + RECORD_HEADER_BYTES, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            byte type = body.get();
+            long sequence = body.getLong();
+            if (type == APPEND) {
+                entries.put(sequence, decode(sequence, body));
+                pending.put(sequence, segment);
+                segment.pending++;
+            } else if (type == COMPLETE) {
+                entries.remove(sequence);
+                Segment appendedTo = pending.remove(sequence);
+                if (appendedTo != null) {
+                    appendedTo.pending--;
+                }
+            } else {
+                break;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static byte[] encode(String from, String to, RenderedEmail email, List<EmailAttachment> attachments) {
+        byte[][] strings = new byte[5 + attachments.size() * 2][];
+        strings[0] = utf8(from);
+        strings[1] = utf8(to);
+        strings[2] = utf8(email.subject());
+        strings[3] = utf8(email.htmlBody());
+        strings[4] = utf8(email.textBody());
+        for (int i = 0; i < attachments.size(); i++) {
+            strings[5 + i * 2] = utf8(attachments.get(i).filename());
+            strings[6 + i * 2] = utf8(attachments.get(i).contentType());
+        }
+        int length = RECORD_HEADER_BYTES + 9 + 4;
+        for (byte[] string : strings) {
+            length += 4 + (string == null ? 0 : string.length);
+        }
+        for (EmailAttachment attachment : attachments) {
+            length += 4 + attachment.content().length;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length).position(RECORD_HEADER_BYTES + 9);
+        for (int i = 0; i < 5; i++) {
+            putBytes(record, strings[i]);
+        }
+        record.putInt(attachments.size());
+        for (int i = 0; i < attachments.size(); i++) {
+            putBytes(record, strings[5 + i * 2]);
+            putBytes(record, strings[6 + i * 2]);
+            putBytes(record, attachments.get(i).content());
+        }
+        return record.array();
+    }
+
+    private static OutboxEntry decode(long sequence, ByteBuffer body) {
+        String from = getString(body);
+        String to = getString(body);
+        RenderedEmail email = new RenderedEmail(getString(body), getString(body), getString(body));
+        int count = body.getInt();
+        List<EmailAttachment> attachments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            attachments.add(new EmailAttachment(getString(body), getString(body), getBytes(body)));
+        }
+        return new OutboxEntry(sequence, from, to, email, List.copyOf(attachments));
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = getBytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int pending;
+
+        private Segment(Path path, MappedByteBuffer buffer, int position) {
+            this.path = path;
+            this.buffer = buffer;
+            this.position = position;
+        }
+    }
+}
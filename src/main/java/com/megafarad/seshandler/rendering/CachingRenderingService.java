@@ -0,0 +1,263 @@
+package com.megafarad.seshandler.rendering;
+
+import com.megafarad.seshandler.templates.ReloadableTemplate;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link RenderingService} decorator that caches the output of each template and reuses it
+ * for later contexts that the template would render identically.
+ * <p>
+ * Notification templates typically read a small part of their context, and many notifications
+ * share the values of that part; a subject reading only the bounce type, for example, renders
+ * one of a handful of strings. To take advantage of that, the subject, HTML body, and text body
+ * are cached separately, each keyed by a fingerprint of the context:
+ * - When a template is rendered on a cache miss, the context is exposed to it through views
+ *   that record which values it reads (see {@link ContextTrace}). The recorded reads are kept as
+ *   one of the template's read sets, and the values they returned form the fingerprint.
+ * - On later renders, each read set of the template is evaluated against the new context, and
+ *   the resulting fingerprint is looked up in the cache.
+ * <p>
+ * The cache assumes that templates are deterministic, i.e., that their output depends only on
+ * the values they read from the context, and that contexts are not modified once rendered.
+ * Maps and lists in the context are exposed to templates only through the {@link Map} and
+ * {@link List} interfaces while a template is traced; records and other values are compared
+ * with {@code equals}. Output of a {@link ReloadableTemplate} is cached per compiled version, so
+ * output rendered before the template was reloaded is not reused. The read sets of a template are
+ * held weakly by the template, so those of a version that has been replaced are dropped once its
+ * last cache entry has been evicted.
+ * <p>
+ * The cache is bounded by the approximate number of bytes held by its entries and by its number
+ * of entries; the least recently used entries are evicted first. The numbers of hits, misses,
+ * and evictions are counted. Instances are safe for use by multiple threads.
+ * <p>
+ * When parallel rendering is enabled, the HTML and text bodies of an email are looked up, and
+ * rendered on a miss, on virtual threads while the subject is handled on the calling thread, as
+ * {@link ProductionRenderingService} does.
+ */
+public class CachingRenderingService implements RenderingService {
+
+    private static final int MAX_READ_SETS_PER_TEMPLATE = 8;
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    private final RenderingService delegate;
+    private final long maxWeightBytes;
+    private final int maxEntries;
+    private final boolean parallel;
+    private final Map<PebbleTemplate, List<List<ContextTrace.Read>>> readSets =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long weightBytes;
+
+    /**
+     * Constructs a CachingRenderingService that handles the templates of an email one after
+     * another.
+     *
+     * @param delegate       The RenderingService that renders templates on cache misses.
+     * @param maxWeightBytes The approximate maximum number of bytes held by cached entries.
+     * @param maxEntries     The maximum number of cached entries.
+     */
+    public CachingRenderingService(RenderingService delegate, long maxWeightBytes, int maxEntries) {
+        this(delegate, maxWeightBytes, maxEntries, false);
+    }
+
+    /**
+     * Constructs a CachingRenderingService.
+     *
+     * @param delegate       The RenderingService that renders templates on cache misses.
+     * @param maxWeightBytes The approximate maximum number of bytes held by cached entries.
+     * @param maxEntries     The maximum number of cached entries.
+     * @param parallel       Whether the subject, HTML body, and text body of an email are handled
+     *                       concurrently.
+     */
+    public CachingRenderingService(RenderingService delegate, long maxWeightBytes, int maxEntries,
+                                   boolean parallel) {
+        this.delegate = delegate;
+        this.maxWeightBytes = maxWeightBytes;
+        this.maxEntries = maxEntries;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Generates an email by rendering the provided templates (subject, HTML body,
+     * and text body) using the specified context, reusing cached output where possible.
+     *
+     * @param subjectTemplate the template used to generate the email's subject
+     * @param htmlBodyTemplate the template used to generate the HTML version of the email body
+     * @param textBodyTemplate the template used to generate the plain text version of the email body
+     * @param context a map containing the variables to be used during the rendering of the templates
+     * @return a RenderedEmail object containing the generated subject, HTML body, and text body of the email
+     */
+    @Override
+    public RenderedEmail generateEmail(PebbleTemplate subjectTemplate, PebbleTemplate htmlBodyTemplate,
+                                       PebbleTemplate textBodyTemplate, Map<String, Object> context) {
+        if (parallel) {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                Future<String> html = executor.submit(() -> render(htmlBodyTemplate, context));
+                Future<String> text = executor.submit(() -> render(textBodyTemplate, context));
+                String subject = render(subjectTemplate, context);
+                return new RenderedEmail(subject, ProductionRenderingService.join(html),
+                        ProductionRenderingService.join(text));
+            }
+        }
+        return new RenderedEmail(render(subjectTemplate, context), render(htmlBodyTemplate, context),
+                render(textBodyTemplate, context));
+    }
+
+    /**
+     * Renders a single template with the specified context, reusing cached output where possible.
+     *
+     * @param template the template to render
+     * @param context a map containing the variables to be used during the rendering of the template
+     * @return the rendered output
+     */
+    @Override
+    public String render(PebbleTemplate template, Map<String, Object> context) {
+        if (template instanceof ReloadableTemplate reloadable) {
+            template = reloadable.current();
+        }
+        List<List<ContextTrace.Read>> templateReadSets = readSets.computeIfAbsent(template,
+                key -> new CopyOnWriteArrayList<>());
+        for (List<ContextTrace.Read> reads : templateReadSets) {
+            String output = lookup(new Key(template, reads, ContextTrace.replay(reads, context)));
+            if (output != null) {
+                hits.increment();
+                return output;
+            }
+        }
+        misses.increment();
+
+        ContextTrace trace = new ContextTrace();
+        String output = delegate.render(template, trace.track(context));
+        List<ContextTrace.Read> reads = internReadSet(templateReadSets, trace.reads());
+        if (reads != null) {
+            store(new Key(template, reads, trace.results()), output);
+        }
+        return output;
+    }
+
+    /**
+     * Returns the number of templates whose output was served from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of templates that had to be rendered.
+     *
+     * @return The number of cache misses.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to keep the cache within its bounds.
+     *
+     * @return The number of evictions.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of templates whose read sets are held.
+     *
+     * @return The number of templates.
+     */
+    int templateCount() {
+        return readSets.size();
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized String lookup(Key key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.output();
+    }
+
+    private synchronized void store(Key key, String output) {
+        long weight = weigh(key, output);
+        if (weight > maxWeightBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(output, weight));
+        weightBytes += weight - (previous == null ? 0 : previous.weight());
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((weightBytes > maxWeightBytes || entries.size() > maxEntries) && eldest.hasNext()) {
+            weightBytes -= eldest.next().weight();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static List<ContextTrace.Read> internReadSet(List<List<ContextTrace.Read>> templateReadSets,
+                                                         List<ContextTrace.Read> reads) {
+        synchronized (templateReadSets) {
+            for (List<ContextTrace.Read> existing : templateReadSets) {
+                if (existing.equals(reads)) {
+                    return existing;
+                }
+            }
+            if (templateReadSets.size() >= MAX_READ_SETS_PER_TEMPLATE) {
+                return null;
+            }
+            templateReadSets.add(reads);
+            return reads;
+        }
+    }
+
+    private static long weigh(Key key, String output) {
+        long chars = output.length();
+        for (Object value : key.values()) {
+            if (value instanceof CharSequence sequence) {
+                chars += sequence.length();
+            }
+        }
+        return ENTRY_OVERHEAD_BYTES * (1 + key.values().size()) + 2 * chars;
+    }
+
+    /**
+     * A cache key. Read sets are interned per template, so they are compared by identity.
+     */
+    private record Key(PebbleTemplate template, List<ContextTrace.Read> reads, List<Object> values) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && template == other.template && reads == other.reads
+                    && values.equals(other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(reads) + values.hashCode();
+        }
+    }
+
+    private record Entry(String output, long weight) { }
+}
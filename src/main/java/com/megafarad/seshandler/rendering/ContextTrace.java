@@ -0,0 +1,256 @@
+package com.megafarad.seshandler.rendering;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which parts of a template context a template reads while it is rendered.
+ * <p>
+ * The context is exposed to the template through {@link #track(Map)}, which wraps every map and
+ * list in the context in a view that records each read made through it. A read is identified by
+ * a {@link Read}, the path to the map or list and the operation applied to it, and its result is
+ * recorded alongside it. Maps and lists are recorded as {@link Kind} markers, because the reads
+ * made inside them are recorded separately; every other value, including records, is recorded
+ * as is and later compared with {@link Object#equals(Object)}.
+ * <p>
+ * Rendering a template is deterministic in the values it reads, so a template renders the same
+ * output for any context in which its recorded reads, as returned by {@link #reads()}, yield the
+ * results returned by {@link #results()}. {@link #replay(List, Map)} evaluates the reads against
+ * another context to find out whether that is the case.
+ * <p>
+ * Instances are safe for use by multiple threads, so templates that render in parallel can be
+ * traced.
+ */
+final class ContextTrace {
+
+    /**
+     * The result recorded for a read that yields a map or a list.
+     */
+    enum Kind { MAP, LIST }
+
+    /**
+     * The operations recorded on maps and lists.
+     */
+    enum Op { GET, CONTAINS, SIZE, KEYS }
+
+    /**
+     * A read of a template context.
+     *
+     * @param path The keys of the maps and indexes of the lists leading to the map or list read.
+     * @param op   The operation applied to the map or list.
+     * @param arg  The key or index the operation was applied to, or {@code null} for
+     *             {@link Op#SIZE} and {@link Op#KEYS}.
+     */
+    record Read(List<Object> path, Op op, Object arg) { }
+
+    private static final Object MISSING = new Object();
+
+    private final Map<Read, Object> results = new LinkedHashMap<>();
+
+    /**
+     * Wraps a template context so that the reads made through it are recorded in this trace.
+     *
+     * @param context The template context.
+     * @return A view of the context that records reads.
+     */
+    Map<String, Object> track(Map<String, Object> context) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> tracked = (Map<String, Object>) (Map<?, ?>) new TrackingMap(context, List.of());
+        return tracked;
+    }
+
+    /**
+     * Returns the distinct reads recorded so far, in the order they were first made.
+     *
+     * @return The recorded reads.
+     */
+    synchronized List<Read> reads() {
+        return List.copyOf(results.keySet());
+    }
+
+    /**
+     * Returns the results of the reads returned by {@link #reads()}, in the same order.
+     *
+     * @return The recorded results; may contain {@code null}.
+     */
+    synchronized List<Object> results() {
+        return Arrays.asList(results.values().toArray());
+    }
+
+    /**
+     * Evaluates reads against a template context without recording them.
+     *
+     * @param reads   The reads to evaluate.
+     * @param context The template context.
+     * @return The result of each read, in the same order; may contain {@code null}.
+     */
+    static List<Object> replay(List<Read> reads, Map<String, Object> context) {
+        Object[] values = new Object[reads.size()];
+        for (int i = 0; i < values.length; i++) {
+            Read read = reads.get(i);
+            values[i] = evaluate(navigate(context, read.path()), read.op(), read.arg());
+        }
+        return Arrays.asList(values);
+    }
+
+    private static Object navigate(Object node, List<Object> path) {
+        for (Object step : path) {
+            if (node instanceof Map<?, ?> map) {
+                node = map.get(step);
+            } else if (node instanceof List<?> list && step instanceof Integer index
+                    && index >= 0 && index < list.size()) {
+                node = list.get(index);
+            } else {
+                return MISSING;
+            }
+        }
+        return node;
+    }
+
+    private static Object evaluate(Object node, Op op, Object arg) {
+        if (node instanceof Map<?, ?> map) {
+            return switch (op) {
+                case GET -> result(map.get(arg));
+                case CONTAINS -> map.containsKey(arg);
+                case SIZE -> map.size();
+                case KEYS -> new ArrayList<>(map.keySet());
+            };
+        }
+        if (node instanceof List<?> list) {
+            return switch (op) {
+                case GET -> arg instanceof Integer index && index >= 0 && index < list.size()
+                        ? result(list.get(index)) : MISSING;
+                case SIZE -> list.size();
+                default -> MISSING;
+            };
+        }
+        return MISSING;
+    }
+
+    private static Object result(Object value) {
+        if (value instanceof Map<?, ?>) {
+            return Kind.MAP;
+        }
+        if (value instanceof List<?>) {
+            return Kind.LIST;
+        }
+        return value;
+    }
+
+    private synchronized void record(List<Object> path, Op op, Object arg, Object result) {
+        results.putIfAbsent(new Read(path, op, arg), result);
+    }
+
+    private Object wrap(Object value, List<Object> path) {
+        if (value instanceof Map<?, ?> map) {
+            return new TrackingMap(map, path);
+        }
+        if (value instanceof List<?> list) {
+            return new TrackingList(list, path);
+        }
+        return value;
+    }
+
+    private static List<Object> append(List<Object> path, Object step) {
+        Object[] steps = path.toArray(new Object[path.size() + 1]);
+        steps[path.size()] = step;
+        return List.of(steps);
+    }
+
+    private final class TrackingMap extends AbstractMap<Object, Object> {
+        private final Map<?, ?> map;
+        private final List<Object> path;
+
+        private TrackingMap(Map<?, ?> map, List<Object> path) {
+            this.map = map;
+            this.path = path;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Object value = map.get(key);
+            record(path, Op.GET, key, result(value));
+            return wrap(value, append(path, key));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            boolean contains = map.containsKey(key);
+            record(path, Op.CONTAINS, key, contains);
+            return contains;
+        }
+
+        @Override
+        public int size() {
+            int size = map.size();
+            record(path, Op.SIZE, null, size);
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            List<Object> keys = new ArrayList<>(map.keySet());
+            record(path, Op.KEYS, null, keys);
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    Iterator<Object> iterator = keys.iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Object, Object> next() {
+                            Object key = iterator.next();
+                            return new SimpleImmutableEntry<>(key, get(key));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+            };
+        }
+    }
+
+    private final class TrackingList extends AbstractList<Object> {
+        private final List<?> list;
+        private final List<Object> path;
+
+        private TrackingList(List<?> list, List<Object> path) {
+            this.list = list;
+            this.path = path;
+        }
+
+        @Override
+        public Object get(int index) {
+            Object value = list.get(index);
+            record(path, Op.GET, index, result(value));
+            return wrap(value, append(path, index));
+        }
+
+        @Override
+        public int size() {
+            int size = list.size();
+            record(path, Op.SIZE, null, size);
+            return size;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.megafarad.seshandler.rendering;
+
+import com.megafarad.seshandler.metrics.Metrics;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.util.Map;
+
+/**
+ * A {@link RenderingService} decorator that records the latency, failures, and output size of
+ * each rendering in {@link Metrics}, as the {@link Metrics.Stage#RENDER} stage.
+ * <p>
+ * An email is recorded as a single rendering, whose size is the sum of the UTF-8 sizes of its
+ * subject, HTML body, and text body.
+ */
+public class MeteredRenderingService implements RenderingService {
+
+    private final RenderingService delegate;
+    private final Metrics metrics;
+
+    /**
+     * Constructs a MeteredRenderingService.
+     *
+     * @param delegate The RenderingService that renders the templates.
+     * @param metrics  The Metrics in which renderings are recorded.
+     */
+    public MeteredRenderingService(RenderingService delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public RenderedEmail generateEmail(PebbleTemplate subjectTemplate, PebbleTemplate htmlBodyTemplate,
+                                       PebbleTemplate textBodyTemplate, Map<String, Object> context) {
+        long start = System.nanoTime();
+        RenderedEmail email;
+        try {
+            email = delegate.generateEmail(subjectTemplate, htmlBodyTemplate, textBodyTemplate, context);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(Metrics.Stage.RENDER);
+            throw e;
+        }
+        metrics.recordLatency(Metrics.Stage.RENDER, System.nanoTime() - start);
+        metrics.recordRenderedBytes(Metrics.utf8Length(email.subject()) + Metrics.utf8Length(email.htmlBody())
+                + Metrics.utf8Length(email.textBody()));
+        return email;
+    }
+
+    @Override
+    public String render(PebbleTemplate template, Map<String, Object> context) {
+        long start = System.nanoTime();
+        String output;
+        try {
+            output = delegate.render(template, context);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(Metrics.Stage.RENDER);
+            throw e;
+        }
+        metrics.recordLatency(Metrics.Stage.RENDER, System.nanoTime() - start);
+        metrics.recordRenderedBytes(Metrics.utf8Length(output));
+        return output;
+    }
+}
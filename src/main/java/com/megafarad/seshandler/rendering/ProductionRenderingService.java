@@ -3,19 +3,50 @@ package com.megafarad.seshandler.rendering;
 import io.pebbletemplates.pebble.template.PebbleTemplate;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Service for rendering emails from templates and context data.
  * This implementation generates emails by applying the provided templates and context data.
  * It uses the PebbleTemplate engine for rendering the templates.
+ * <p>
+ * Templates are rendered into pooled buffers that are pre-sized from the output previously
+ * observed for each template. When parallel rendering is enabled, the HTML and text bodies are
+ * rendered on virtual threads while the subject is rendered on the calling thread, so the time
+ * to generate an email approaches that of its largest template. The context must then be safe
+ * to read from multiple threads, which is the case for the contexts built by the bundled
+ * handlers.
  *
  * @see RenderingService
  * @see PebbleTemplate
  */
 public class ProductionRenderingService implements RenderingService {
 
+    private final boolean parallel;
+    private final RenderBuffers buffers = new RenderBuffers();
+
+    /**
+     * Constructs a ProductionRenderingService that renders the templates of an email one after
+     * another.
+     */
+    public ProductionRenderingService() {
+        this(false);
+    }
+
+    /**
+     * Constructs a ProductionRenderingService.
+     *
+     * @param parallel Whether the subject, HTML body, and text body of an email are rendered
+     *                 concurrently.
+     */
+    public ProductionRenderingService(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * Generates an email by rendering the provided templates (subject, HTML body,
      * and text body) using the specified context.
@@ -29,20 +60,62 @@ public class ProductionRenderingService implements RenderingService {
     @Override
     public RenderedEmail generateEmail(PebbleTemplate subjectTemplate, PebbleTemplate htmlBodyTemplate,
                                        PebbleTemplate textBodyTemplate, Map<String, Object> context) {
+        if (parallel) {
+            return generateEmailConcurrently(subjectTemplate, htmlBodyTemplate, textBodyTemplate, context);
+        }
 
-        String subject = renderTemplate(subjectTemplate, context);
-        String html = renderTemplate(htmlBodyTemplate, context);
-        String text = renderTemplate(textBodyTemplate, context);
+        String subject = render(subjectTemplate, context);
+        String html = render(htmlBodyTemplate, context);
+        String text = render(textBodyTemplate, context);
 
         return new RenderedEmail(subject, html, text);
     }
 
-    private String renderTemplate(PebbleTemplate template, Map<String, Object> context) {
-        try (StringWriter writer = new StringWriter()){
-            template.evaluate(writer, context);
-            return writer.toString();
+    /**
+     * Renders a single template into a pooled buffer using the specified context.
+     *
+     * @param template the template to render
+     * @param context a map containing the variables to be used during the rendering of the template
+     * @return the rendered output
+     * @throws RuntimeException if the template could not be rendered
+     */
+    @Override
+    public String render(PebbleTemplate template, Map<String, Object> context) {
+        try {
+            return buffers.render(template, context);
         } catch (IOException e) {
             throw new RuntimeException("Rendering template failed", e);
         }
     }
+
+    private RenderedEmail generateEmailConcurrently(PebbleTemplate subjectTemplate, PebbleTemplate htmlBodyTemplate,
+                                                    PebbleTemplate textBodyTemplate, Map<String, Object> context) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> html = executor.submit(() -> render(htmlBodyTemplate, context));
+            Future<String> text = executor.submit(() -> render(textBodyTemplate, context));
+            String subject = render(subjectTemplate, context);
+            return new RenderedEmail(subject, join(html), join(text));
+        }
+    }
+
+    /**
+     * Waits for a template rendered on another thread.
+     *
+     * @param future The future of the rendered output.
+     * @return The rendered output.
+     * @throws RuntimeException If rendering the template failed or the wait was interrupted.
+     */
+    static String join(Future<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Rendering template was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Rendering template failed", e.getCause());
+        }
+    }
 }
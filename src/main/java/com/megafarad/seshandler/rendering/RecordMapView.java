@@ -0,0 +1,178 @@
+package com.megafarad.seshandler.rendering;
+
+import com.megafarad.seshandler.model.MailHeaders;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only {@link Map} view of a record, used as template context without copying the
+ * record's data.
+ * <p>
+ * Each key of the view is the name of a record component, and each value is the result of the
+ * component's accessor. Accessors are resolved once per record class into an accessor table of
+ * method handles and shared by every view of that class, so creating a view allocates a single
+ * small object regardless of the number of components.
+ * <p>
+ * Values are exposed the way templates expect them:
+ * - Nested records are exposed as RecordMapViews.
+ * - Lists are exposed as read-only views whose record elements are exposed as RecordMapViews.
+ * - {@link MailHeaders} are exposed through {@link MailHeaders#asMap()}, keyed by header name.
+ * <p>
+ * Because records are shallowly immutable, a view is safe for use by multiple threads as long
+ * as the lists it exposes are not modified.
+ */
+public final class RecordMapView extends AbstractMap<String, Object> {
+
+    private static final ClassValue<AccessorTable> ACCESSOR_TABLES = new ClassValue<>() {
+        @Override
+        protected AccessorTable computeValue(Class<?> type) {
+            return new AccessorTable(type);
+        }
+    };
+
+    private final Record record;
+    private final AccessorTable table;
+
+    private RecordMapView(Record record) {
+        this.record = record;
+        this.table = ACCESSOR_TABLES.get(record.getClass());
+    }
+
+    /**
+     * Creates a map view of the specified record.
+     *
+     * @param record The record to expose.
+     * @return A read-only map view of the record's components.
+     */
+    public static Map<String, Object> of(Record record) {
+        return new RecordMapView(record);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer index = table.indexes.get(key);
+        return index == null ? null : value(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return table.indexes.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return table.names.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < table.names.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next++;
+                        return new SimpleImmutableEntry<>(table.names[index], value(index));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return table.names.length;
+            }
+        };
+    }
+
+    private Object value(int index) {
+        try {
+            return wrap(table.accessors[index].invokeExact(record));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Reading record component failed: " + table.names[index], e);
+        }
+    }
+
+    private static Object wrap(Object value) {
+        if (value instanceof MailHeaders headers) {
+            return headers.asMap();
+        }
+        if (value instanceof Record nested) {
+            return new RecordMapView(nested);
+        }
+        if (value instanceof List<?> list) {
+            return new ListView(list);
+        }
+        return value;
+    }
+
+    private static final class ListView extends AbstractList<Object> {
+        private final List<?> list;
+
+        private ListView(List<?> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object get(int index) {
+            return wrap(list.get(index));
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+    }
+
+    private static final class AccessorTable {
+        private final String[] names;
+        private final MethodHandle[] accessors;
+        private final Map<String, Integer> indexes;
+
+        private AccessorTable(Class<?> type) {
+            RecordComponent[] components = type.getRecordComponents();
+            if (components == null) {
+                throw new IllegalArgumentException("Not a record: " + type.getName());
+            }
+            this.names = new String[components.length];
+            this.accessors = new MethodHandle[components.length];
+            this.indexes = new HashMap<>();
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            for (int i = 0; i < components.length; i++) {
+                names[i] = components[i].getName();
+                indexes.put(names[i], i);
+                try {
+                    accessors[i] = lookup.unreflect(components[i].getAccessor())
+                            .asType(MethodType.methodType(Object.class, Record.class));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException("Record component is not accessible: "
+                            + type.getName() + "." + names[i], e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.megafarad.seshandler.rendering;
+
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of the buffers that templates are rendered into, sized from the output observed for
+ * each template.
+ * <p>
+ * Rendering into a default {@link java.io.StringWriter} starts from a 16-character buffer that is
+ * grown, and copied, repeatedly for a typical HTML body, and every write goes through the
+ * writer's lock. Buffers from this pool are unsynchronized, are reused across renders, and are
+ * grown up front to the capacity expected for the template being rendered. The expected
+ * capacity follows the output size of each template: it rises immediately to a larger output
+ * and decays slowly towards smaller ones.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+final class RenderBuffers {
+
+    static final int MIN_CAPACITY = 256;
+    static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 32;
+
+    private final ConcurrentLinkedQueue<BufferWriter> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+    private final Map<String, AtomicInteger> sizeHints = new ConcurrentHashMap<>();
+
+    /**
+     * Renders a template into a pooled buffer.
+     *
+     * @param template The template to render.
+     * @param context  The template context.
+     * @return The rendered output.
+     * @throws IOException If the template could not be evaluated.
+     */
+    String render(PebbleTemplate template, Map<String, Object> context) throws IOException {
+        AtomicInteger sizeHint = sizeHints.computeIfAbsent(template.getName(), name -> new AtomicInteger());
+        BufferWriter writer = acquire(capacityFor(sizeHint.get()));
+        try {
+            template.evaluate(writer, context);
+            String output = writer.builder.toString();
+            adapt(sizeHint, output.length());
+            return output;
+        } finally {
+            release(writer);
+        }
+    }
+
+    /**
+     * Returns the capacity a buffer is given when the specified template is rendered.
+     *
+     * @param template The template.
+     * @return The expected capacity, in characters.
+     */
+    int capacityHint(PebbleTemplate template) {
+        AtomicInteger sizeHint = sizeHints.get(template.getName());
+        return capacityFor(sizeHint == null ? 0 : sizeHint.get());
+    }
+
+    private static int capacityFor(int sizeHint) {
+        return Math.max(MIN_CAPACITY, sizeHint + sizeHint / 8);
+    }
+
+    private static void adapt(AtomicInteger sizeHint, int length) {
+        int hint = sizeHint.get();
+        sizeHint.set(length >= hint ? length : hint - (hint - length) / 8);
+    }
+
+    private BufferWriter acquire(int capacity) {
+        BufferWriter writer = pool.poll();
+        if (writer == null) {
+            return new BufferWriter(capacity);
+        }
+        pooledBuffers.decrementAndGet();
+        writer.builder.ensureCapacity(capacity);
+        return writer;
+    }
+
+    private void release(BufferWriter writer) {
+        if (writer.builder.capacity() > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        writer.builder.setLength(0);
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            pool.offer(writer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+
+    /**
+     * A {@link Writer} over an unsynchronized {@link StringBuilder}.
+     */
+    private static final class BufferWriter extends Writer {
+        private final StringBuilder builder;
+
+        private BufferWriter(int capacity) {
+            this.builder = new StringBuilder(capacity);
+        }
+
+        @Override
+        public void write(int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            builder.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String string) {
+            builder.append(string);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            builder.append(string, offset, offset + length);
+        }
+
+        @Override
+        public Writer append(CharSequence sequence) {
+            builder.append(sequence);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
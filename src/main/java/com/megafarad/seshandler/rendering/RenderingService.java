@@ -2,6 +2,8 @@ package com.megafarad.seshandler.rendering;
 
 import io.pebbletemplates.pebble.template.PebbleTemplate;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Map;
 
 /**
@@ -25,4 +27,21 @@ public interface RenderingService {
      */
     RenderedEmail generateEmail(PebbleTemplate subjectTemplate, PebbleTemplate htmlBodyTemplate,
                                        PebbleTemplate textBodyTemplate, Map<String, Object> context);
+
+    /**
+     * Renders a single template using the specified context.
+     *
+     * @param template the template to render
+     * @param context a map containing the variables to be used during the rendering of the template
+     * @return the rendered output
+     * @throws RuntimeException if the template could not be rendered
+     */
+    default String render(PebbleTemplate template, Map<String, Object> context) {
+        try (StringWriter writer = new StringWriter()) {
+            template.evaluate(writer, context);
+            return writer.toString();
+        } catch (IOException e) {
+            throw new RuntimeException("Rendering template failed", e);
+        }
+    }
 }
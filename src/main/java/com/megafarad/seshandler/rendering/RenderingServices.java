@@ -0,0 +1,39 @@
+package com.megafarad.seshandler.rendering;
+
+import com.megafarad.seshandler.metrics.Metrics;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * The RenderingServices class provides a factory method that builds the RenderingService
+ * configured through environment variables, so that every notification handler renders its
+ * emails the same way.
+ */
+public class RenderingServices {
+
+    /**
+     * Creates the RenderingService selected by the environment.
+     * <p>
+     * A {@link ProductionRenderingService} is created that renders the templates of an email
+     * concurrently when the `PARALLEL_RENDERING` environment variable is `true`. When the
+     * `RENDER_CACHE_MAX_BYTES` environment variable is greater than zero, it is wrapped in a
+     * {@link CachingRenderingService} of that size, holding at most `RENDER_CACHE_MAX_ENTRIES`
+     * entries (10000 by default), which then handles the templates of an email concurrently
+     * itself. When metrics are enabled (see {@link Metrics#fromEnv()}), the
+     * result is wrapped in a {@link MeteredRenderingService}, so cache hits are measured too.
+     *
+     * @return The configured RenderingService.
+     */
+    public static RenderingService fromEnv() {
+        boolean parallel = Boolean.parseBoolean(getEnvVar("PARALLEL_RENDERING", "false"));
+        ProductionRenderingService renderingService = new ProductionRenderingService(parallel);
+        RenderingService service = renderingService;
+        long maxBytes = Long.parseLong(getEnvVar("RENDER_CACHE_MAX_BYTES", "0"));
+        if (maxBytes > 0) {
+            service = new CachingRenderingService(renderingService, maxBytes,
+                    Integer.parseInt(getEnvVar("RENDER_CACHE_MAX_ENTRIES", "10000")), parallel);
+        }
+        Metrics metrics = Metrics.fromEnv();
+        return metrics.isEnabled() ? new MeteredRenderingService(service, metrics) : service;
+    }
+}
@@ -0,0 +1,260 @@
+package com.megafarad.seshandler.routing;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The index of one condition of a list of entries, such as routes or tenants: the set of entries
+ * naming each value of the condition, and the set of entries that do not constrain it.
+ * <p>
+ * Entries are numbered in the order they are listed, and each set of entries is a bit set with one
+ * bit per entry, held as an array of words of 64 entries. The static methods combine such sets, a
+ * word at a time, and collect the names of the conditions that are keyed by name, such as headers
+ * and tags.
+ * <p>
+ * Instances are immutable and safe for use by multiple threads.
+ */
+final class BitSetIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final Map<String, long[]> values;
+    private final long[] unconstrained;
+    private final boolean ignoreCase;
+
+    private BitSetIndex(Map<String, long[]> values, long[] unconstrained, boolean ignoreCase) {
+        this.values = values;
+        this.unconstrained = unconstrained;
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Builds the index of a condition.
+     *
+     * @param entries              The entries, in order.
+     * @param condition            The values of the condition that an entry names; {@code null} or
+     *                             empty if the entry does not constrain the condition.
+     * @param ignoreCase           Whether values are compared ignoring case.
+     * @param includeUnconstrained Whether the set of every value also holds the entries that do not
+     *                             constrain the condition, which then match any value.
+     * @param <T>                  The type of the entries.
+     * @return The index.
+     */
+    static <T> BitSetIndex build(List<T> entries, Function<T, Collection<String>> condition, boolean ignoreCase,
+                                 boolean includeUnconstrained) {
+        int words = words(entries.size());
+        long[] unconstrained = new long[words];
+        Map<String, long[]> values = new HashMap<>();
+        for (int entry = 0; entry < entries.size(); entry++) {
+            Collection<String> matched = condition.apply(entries.get(entry));
+            if (matched == null || matched.isEmpty()) {
+                unconstrained[entry / 64] |= 1L << entry;
+                continue;
+            }
+            for (String value : matched) {
+                String key = ignoreCase ? value.toLowerCase(Locale.ROOT) : value;
+                values.computeIfAbsent(key, ignored -> new long[words])[entry / 64] |= 1L << entry;
+            }
+        }
+        if (includeUnconstrained) {
+            for (long[] matching : values.values()) {
+                or(matching, unconstrained);
+            }
+        }
+        return new BitSetIndex(values, unconstrained, ignoreCase);
+    }
+
+    /**
+     * Returns the number of words of a bit set holding the specified number of entries.
+     *
+     * @param entries The number of entries.
+     * @return The number of words; at least one.
+     */
+    static int words(int entries) {
+        return Math.max(1, (entries + 63) / 64);
+    }
+
+    /**
+     * Indicates whether any entry constrains the condition.
+     *
+     * @return {@code true} if at least one entry names a value.
+     */
+    boolean constrained() {
+        return !values.isEmpty();
+    }
+
+    /**
+     * Returns the entries that do not constrain the condition.
+     *
+     * @return The set of entries, which must not be modified.
+     */
+    long[] unconstrained() {
+        return unconstrained;
+    }
+
+    /**
+     * Returns the entries matching a value: those naming it or, if none does, those that do not
+     * constrain the condition. The entries naming the value include the unconstrained entries if
+     * the index was built to include them.
+     *
+     * @param value The value; may be {@code null}.
+     * @return The set of entries, which must not be modified.
+     */
+    long[] lookup(String value) {
+        long[] matching = exact(value);
+        return matching == null ? unconstrained : matching;
+    }
+
+    /**
+     * Returns the entries naming a value.
+     *
+     * @param value The value; may be {@code null}.
+     * @return The set of entries, which must not be modified, or {@code null} if no entry names
+     *         the value.
+     */
+    long[] exact(String value) {
+        return value == null ? null : values.get(ignoreCase ? value.toLowerCase(Locale.ROOT) : value);
+    }
+
+    /**
+     * Adds the entries naming a domain or any of its parent domains, e.g. `mail.example.com`,
+     * `example.com`, and `com`, so that a domain named by an entry also matches its subdomains.
+     *
+     * @param matched The set to which the entries are added.
+     * @param domain  The lower-cased domain; may be {@code null}.
+     */
+    void orDomain(long[] matched, String domain) {
+        while (domain != null) {
+            or(matched, values.get(domain));
+            int dot = domain.indexOf('.');
+            domain = dot < 0 ? null : domain.substring(dot + 1);
+        }
+    }
+
+    /**
+     * Adds a set of entries to another.
+     *
+     * @param matched The set to which the entries are added.
+     * @param entries The entries to add; may be {@code null}.
+     */
+    static void or(long[] matched, long[] entries) {
+        if (entries != null) {
+            for (int word = 0; word < matched.length; word++) {
+                matched[word] |= entries[word];
+            }
+        }
+    }
+
+    /**
+     * Intersects a set of candidates with a set of entries.
+     *
+     * @param candidates The set of candidates, which is modified.
+     * @param entries    The entries.
+     * @return {@code false} if no candidate is left.
+     */
+    static boolean and(long[] candidates, long[] entries) {
+        long remaining = 0;
+        for (int word = 0; word < candidates.length; word++) {
+            candidates[word] &= entries[word];
+            remaining |= candidates[word];
+        }
+        return remaining != 0;
+    }
+
+    /**
+     * Returns the first entry of a set.
+     *
+     * @param entries The set of entries.
+     * @return The position of the entry listed first, or {@code -1} if the set is empty.
+     */
+    static int first(long[] entries) {
+        for (int word = 0; word < entries.length; word++) {
+            if (entries[word] != 0) {
+                return word * 64 + Long.numberOfTrailingZeros(entries[word]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns every entry of a set.
+     *
+     * @param entries The set of entries.
+     * @return The positions of the entries, in ascending order.
+     */
+    static int[] positions(long[] entries) {
+        int count = 0;
+        for (long word : entries) {
+            count += Long.bitCount(word);
+        }
+        if (count == 0) {
+            return NONE;
+        }
+        int[] positions = new int[count];
+        int next = 0;
+        for (int word = 0; word < entries.length; word++) {
+            for (long bits = entries[word]; bits != 0; bits &= bits - 1) {
+                positions[next++] = word * 64 + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the lower-cased domain of an address such as `Jane <jane@example.com>`.
+     *
+     * @param address The address.
+     * @return The domain, or {@code null} if the address has none.
+     */
+    static String domain(String address) {
+        int at = address.lastIndexOf('@');
+        int end = address.endsWith(">") ? address.length() - 1 : address.length();
+        return at < 0 || at + 1 >= end ? null : address.substring(at + 1, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Collects the names of a condition keyed by name, such as headers or tags, across entries.
+     *
+     * @param entries    The entries.
+     * @param condition  The values an entry names, by name; may return {@code null}.
+     * @param ignoreCase Whether names are compared ignoring case, in which case they are lower-cased.
+     * @param <T>        The type of the entries.
+     * @return The distinct names, in the order they are first named.
+     */
+    static <T> String[] names(List<T> entries, Function<T, Map<String, Set<String>>> condition, boolean ignoreCase) {
+        Set<String> names = new LinkedHashSet<>();
+        for (T entry : entries) {
+            Map<String, Set<String>> values = condition.apply(entry);
+            if (values != null) {
+                values.keySet().forEach(name -> names.add(ignoreCase ? name.toLowerCase(Locale.ROOT) : name));
+            }
+        }
+        return names.toArray(String[]::new);
+    }
+
+    /**
+     * Returns the values that a condition keyed by name names for one name.
+     *
+     * @param condition  The values, by name; may be {@code null}.
+     * @param name       The name.
+     * @param ignoreCase Whether names are compared ignoring case.
+     * @return The values, or {@code null} if the name is not named.
+     */
+    static Collection<String> values(Map<String, Set<String>> condition, String name, boolean ignoreCase) {
+        if (condition == null) {
+            return null;
+        }
+        for (Map.Entry<String, Set<String>> entry : condition.entrySet()) {
+            if (ignoreCase ? entry.getKey().equalsIgnoreCase(name) : entry.getKey().equals(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.megafarad.seshandler.routing;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A route of the routing configuration: the conditions a notification must meet and the actions
+ * taken for the notifications that meet them.
+ * <p>
+ * A notification meets a route when it meets every condition of the route. A condition that is
+ * {@code null} or empty is met by every notification. Within a condition, a notification needs to
+ * match only one of the listed values.
+ *
+ * @param name              The name of the route, used in log messages.
+ * @param notificationTypes The notification types matched, e.g. `Bounce` or `Complaint`.
+ * @param bounceTypes       The bounce types matched, e.g. `Permanent`. Notifications other than
+ *                          bounces never meet this condition.
+ * @param recipientDomains  The recipient domains matched, ignoring case. A domain also matches its
+ *                          subdomains. The recipients are those the notification is about, such as
+ *                          the bounced recipients of a bounce, or the destination of the mail for
+ *                          notification types that list none.
+ * @param headers           The mail headers matched, by header name (ignoring case) and the values
+ *                          matched for that header. When a header occurs more than once, its last
+ *                          occurrence is matched.
+ * @param actions           The actions taken, in order, for the notifications that meet the route.
+ */
+public record RouteDefinition(
+        String name,
+        Set<String> notificationTypes,
+        Set<String> bounceTypes,
+        Set<String> recipientDomains,
+        Map<String, Set<String>> headers,
+        List<String> actions
+) {
+
+    /**
+     * Validates that the route takes at least one action.
+     *
+     * @throws IllegalArgumentException If no action is listed.
+     */
+    public RouteDefinition {
+        if (actions == null || actions.isEmpty()) {
+            throw new IllegalArgumentException("Route " + name + " has no actions");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.megafarad.seshandler.routing;
+
+import com.megafarad.seshandler.model.BouncedRecipient;
+import com.megafarad.seshandler.model.ComplainedRecipient;
+import com.megafarad.seshandler.model.MailHeaders;
+import com.megafarad.seshandler.model.SESNotification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The routes of a routing configuration, compiled into indexes that find the first route a
+ * notification meets without evaluating the routes one by one.
+ * <p>
+ * Routes are numbered in order of precedence, and each set of routes is a bit set with one bit per
+ * route. For each condition, such as the notification type, a {@link BitSetIndex} maps every value
+ * named by a route to the set of routes that match that value, which includes the routes that do
+ * not constrain the condition. Matching a notification therefore takes:
+ * - One hash lookup per condition that any route constrains, plus one per label of each recipient
+ *   domain when routes constrain recipient domains, and one per header named by a route.
+ * - A bitwise AND of the resulting sets, a word of 64 routes at a time, stopping as soon as no
+ *   route is left.
+ * - Finding the lowest remaining bit, which is the route listed first.
+ * <p>
+ * The cost is independent of the number of routes, up to the size of the bit sets.
+ * <p>
+ * Instances are immutable and safe for use by multiple threads.
+ */
+public final class RouteTable {
+
+    private final BitSetIndex types;
+    private final BitSetIndex bounceTypes;
+    private final BitSetIndex domains;
+    private final String[] headerNames;
+    private final BitSetIndex[] headers;
+
+    private RouteTable(BitSetIndex types, BitSetIndex bounceTypes, BitSetIndex domains, String[] headerNames,
+                       BitSetIndex[] headers) {
+        this.types = types;
+        this.bounceTypes = bounceTypes;
+        this.domains = domains;
+        this.headerNames = headerNames;
+        this.headers = headers;
+    }
+
+    /**
+     * Compiles routes into a RouteTable.
+     *
+     * @param routes The routes, in order of precedence.
+     * @return The compiled table.
+     */
+    public static RouteTable compile(List<RouteDefinition> routes) {
+        BitSetIndex types = BitSetIndex.build(routes, RouteDefinition::notificationTypes, false, true);
+        BitSetIndex bounceTypes = BitSetIndex.build(routes, RouteDefinition::bounceTypes, false, true);
+        // A recipient is looked up once per parent domain, so the domains exclude unconstrained routes.
+        BitSetIndex domains = BitSetIndex.build(routes, RouteDefinition::recipientDomains, true, false);
+
+        String[] headerNames = BitSetIndex.names(routes, RouteDefinition::headers, true);
+        BitSetIndex[] headers = new BitSetIndex[headerNames.length];
+        for (int i = 0; i < headerNames.length; i++) {
+            String headerName = headerNames[i];
+            headers[i] = BitSetIndex.build(routes, route -> BitSetIndex.values(route.headers(), headerName, true),
+                    false, true);
+        }
+        return new RouteTable(types, bounceTypes, domains, headerNames, headers);
+    }
+
+    /**
+     * Indicates whether any route matches mail headers, which must then be parsed.
+     *
+     * @return {@code true} if at least one route has a header condition.
+     */
+    public boolean matchesHeaders() {
+        return headerNames.length > 0;
+    }
+
+    /**
+     * Indicates whether any route may match notifications of the specified type, i.e. whether a
+     * route lists the type or matches every type.
+     *
+     * @param notificationType The notification type.
+     * @return {@code false} if no notification of this type can meet any route.
+     */
+    public boolean mayMatch(String notificationType) {
+        return BitSetIndex.first(types.lookup(notificationType)) >= 0;
+    }
+
+    /**
+     * Finds the first route that the specified notification meets.
+     *
+     * @param notification The notification.
+     * @return The position of the route in the list the table was compiled from, or {@code -1} if
+     *         the notification meets no route.
+     */
+    public int match(SESNotification notification) {
+        long[] candidates = types.lookup(notification.notificationType()).clone();
+        if (bounceTypes.constrained()
+                && !BitSetIndex.and(candidates, bounceTypes.lookup(notification.bounce() == null ? null
+                : notification.bounce().bounceType()))) {
+            return -1;
+        }
+        if (domains.constrained() && !BitSetIndex.and(candidates, recipientDomains(notification))) {
+            return -1;
+        }
+        if (headerNames.length > 0) {
+            MailHeaders mailHeaders = notification.mail() == null ? null : notification.mail().headers();
+            for (int i = 0; i < headerNames.length; i++) {
+                String value = mailHeaders == null ? null : mailHeaders.value(headerNames[i]);
+                if (!BitSetIndex.and(candidates, headers[i].lookup(value))) {
+                    return -1;
+                }
+            }
+        }
+        return BitSetIndex.first(candidates);
+    }
+
+    /**
+     * Returns the routes that match any of the recipient domains of the notification: for each
+     * recipient, the domain and each of its parent domains are looked up.
+     */
+    private long[] recipientDomains(SESNotification notification) {
+        long[] matched = domains.unconstrained().clone();
+        for (String recipient : recipients(notification)) {
+            domains.orDomain(matched, BitSetIndex.domain(recipient));
+        }
+        return matched;
+    }
+
+    private static List<String> recipients(SESNotification notification) {
+        List<String> recipients = new ArrayList<>();
+        if (notification.bounce() != null && notification.bounce().bouncedRecipients() != null) {
+            for (BouncedRecipient recipient : notification.bounce().bouncedRecipients()) {
+                recipients.add(recipient.emailAddress());
+            }
+        } else if (notification.complaint() != null && notification.complaint().complainedRecipients() != null) {
+            for (ComplainedRecipient recipient : notification.complaint().complainedRecipients()) {
+                recipients.add(recipient.emailAddress());
+            }
+        } else if (notification.delivery() != null && notification.delivery().recipients() != null) {
+            recipients.addAll(notification.delivery().recipients());
+        } else if (notification.mail() != null && notification.mail().destination() != null) {
+            recipients.addAll(notification.mail().destination());
+        }
+        recipients.removeIf(recipient -> recipient == null);
+        return recipients;
+    }
+}
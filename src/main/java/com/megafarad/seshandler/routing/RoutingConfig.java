@@ -0,0 +1,79 @@
+package com.megafarad.seshandler.routing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The routing configuration: an ordered list of routes and the actions taken for the
+ * notifications that meet none of them.
+ * <p>
+ * The configuration is read from JSON such as:
+ * <pre>
+ * {
+ *   "routes": [
+ *     {"name": "hard-bounces", "notificationTypes": ["Bounce"], "bounceTypes": ["Permanent"],
+ *      "actions": ["log", "email"]},
+ *     {"name": "test-domain", "recipientDomains": ["example.test"], "actions": ["drop"]}
+ *   ],
+ *   "defaultActions": ["log"]
+ * }
+ * </pre>
+ * When a notification meets more than one route, the route listed first is taken.
+ *
+ * @param routes         The routes, in order of precedence.
+ * @param defaultActions The actions taken for the notifications that meet no route; may be
+ *                       {@code null} or empty, in which case those notifications are only logged.
+ */
+public record RoutingConfig(List<RouteDefinition> routes, List<String> defaultActions) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Replaces missing lists with empty lists.
+     */
+    public RoutingConfig {
+        routes = routes == null ? List.of() : List.copyOf(routes);
+        defaultActions = defaultActions == null ? List.of() : List.copyOf(defaultActions);
+    }
+
+    /**
+     * Reads a routing configuration from JSON.
+     *
+     * @param json The configuration as a JSON document.
+     * @return The configuration.
+     * @throws IllegalArgumentException If the document is not a valid routing configuration,
+     *                                  e.g. because it holds an unknown property.
+     */
+    public static RoutingConfig parse(String json) {
+        try {
+            return MAPPER.readValue(json, RoutingConfig.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid routing configuration: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a routing configuration given inline or as the path of a file.
+     *
+     * @param location The configuration as a JSON document starting with `{`, or the path of a file
+     *                 holding it.
+     * @return The configuration.
+     * @throws IllegalArgumentException If the document is not a valid routing configuration.
+     * @throws UncheckedIOException     If the file could not be read.
+     */
+    public static RoutingConfig load(String location) {
+        if (location.strip().startsWith("{")) {
+            return parse(location);
+        }
+        try {
+            return parse(Files.readString(Path.of(location)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading routing configuration failed: " + location, e);
+        }
+    }
+}
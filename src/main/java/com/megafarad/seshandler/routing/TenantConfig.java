@@ -0,0 +1,80 @@
+package com.megafarad.seshandler.routing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The tenant configuration: the tenants whose notifications are sent to recipients of their own,
+ * and the recipients of the notifications that belong to no tenant.
+ * <p>
+ * The configuration is read from JSON such as:
+ * <pre>
+ * {
+ *   "tenants": [
+ *     {"name": "payments", "sourceArns": ["arn:aws:ses:us-east-1:123456789012:identity/pay.example.com"],
+ *      "recipients": ["payments-oncall@example.com"]},
+ *     {"name": "marketing", "sendingAccountIds": ["210987654321"], "tags": {"team": ["marketing"]},
+ *      "recipients": ["marketing@example.com", "deliverability@example.com"],
+ *      "textTemplate": "/opt/templates/marketing.peb"}
+ *   ],
+ *   "defaultRecipients": ["postmaster@example.com"]
+ * }
+ * </pre>
+ *
+ * @param tenants           The tenants.
+ * @param defaultRecipients The recipients of the notifications that belong to no tenant; may be
+ *                          {@code null} or empty, in which case those notifications are only logged.
+ */
+public record TenantConfig(List<TenantDefinition> tenants, List<String> defaultRecipients) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Replaces missing lists with empty lists.
+     */
+    public TenantConfig {
+        tenants = tenants == null ? List.of() : List.copyOf(tenants);
+        defaultRecipients = defaultRecipients == null ? List.of() : List.copyOf(defaultRecipients);
+    }
+
+    /**
+     * Reads a tenant configuration from JSON.
+     *
+     * @param json The configuration as a JSON document.
+     * @return The configuration.
+     * @throws IllegalArgumentException If the document is not a valid tenant configuration,
+     *                                  e.g. because it holds an unknown property.
+     */
+    public static TenantConfig parse(String json) {
+        try {
+            return MAPPER.readValue(json, TenantConfig.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid tenant configuration: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a tenant configuration given inline or as the path of a file.
+     *
+     * @param location The configuration as a JSON document starting with `{`, or the path of a file
+     *                 holding it.
+     * @return The configuration.
+     * @throws IllegalArgumentException If the document is not a valid tenant configuration.
+     * @throws UncheckedIOException     If the file could not be read.
+     */
+    public static TenantConfig load(String location) {
+        if (location.strip().startsWith("{")) {
+            return parse(location);
+        }
+        try {
+            return parse(Files.readString(Path.of(location)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading tenant configuration failed: " + location, e);
+        }
+    }
+}
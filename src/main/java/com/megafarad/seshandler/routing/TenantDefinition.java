@@ -0,0 +1,64 @@
+package com.megafarad.seshandler.routing;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A tenant of the tenant configuration: the sending identities, accounts, or tags that identify
+ * the emails of one team, and the recipients who are notified about them.
+ * <p>
+ * A notification belongs to a tenant when its mail matches any of the tenant's conditions, so a
+ * tenant can own several identities at once. A notification that belongs to more than one tenant
+ * is sent to each of them.
+ *
+ * @param name              The name of the tenant, available to its templates as `tenant.name`.
+ * @param sourceArns        The ARNs of the sending identities matched against `mail.sourceArn`.
+ * @param sendingAccountIds The AWS account IDs matched against `mail.sendingAccountId`.
+ * @param sourceDomains     The domains matched against the domain of `mail.source`, ignoring case.
+ *                          A domain also matches its subdomains.
+ * @param headers           The mail headers matched, by header name (ignoring case) and the values
+ *                          matched for that header, e.g. an `X-Team` header added by the sender.
+ *                          When a header occurs more than once, its last occurrence is matched.
+ * @param tags              The message tags matched, by tag name and the values matched for that
+ *                          tag, as published with the events of a configuration set.
+ * @param recipients        The email addresses notified about the notifications of the tenant.
+ * @param subjectTemplate   The Pebble template of the subject line, as a string; may be
+ *                          {@code null} to use the default.
+ * @param htmlTemplate      The location of the Pebble template of the HTML body; may be
+ *                          {@code null} to use the default.
+ * @param textTemplate      The location of the Pebble template of the plain text body; may be
+ *                          {@code null} to use the default.
+ */
+public record TenantDefinition(
+        String name,
+        Set<String> sourceArns,
+        Set<String> sendingAccountIds,
+        Set<String> sourceDomains,
+        Map<String, Set<String>> headers,
+        Map<String, Set<String>> tags,
+        List<String> recipients,
+        String subjectTemplate,
+        String htmlTemplate,
+        String textTemplate
+) {
+
+    /**
+     * Validates that the tenant has recipients and at least one condition.
+     *
+     * @throws IllegalArgumentException If no recipient or no condition is listed.
+     */
+    public TenantDefinition {
+        if (recipients == null || recipients.isEmpty()) {
+            throw new IllegalArgumentException("Tenant " + name + " has no recipients");
+        }
+        if (isEmpty(sourceArns) && isEmpty(sendingAccountIds) && isEmpty(sourceDomains)
+                && (headers == null || headers.isEmpty()) && (tags == null || tags.isEmpty())) {
+            throw new IllegalArgumentException("Tenant " + name + " has no conditions");
+        }
+    }
+
+    private static boolean isEmpty(Set<String> values) {
+        return values == null || values.isEmpty();
+    }
+}
@@ -0,0 +1,124 @@
+package com.megafarad.seshandler.routing;
+
+import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.model.MailHeaders;
+
+import java.util.List;
+
+/**
+ * The tenants of a tenant configuration, compiled into hash indexes that find every tenant a mail
+ * belongs to without evaluating the tenants one by one.
+ * <p>
+ * Tenants are numbered in the order they are listed, and each set of tenants is a bit set with one
+ * bit per tenant. For each kind of condition, a {@link BitSetIndex} maps every value named by a
+ * tenant to the set of tenants naming it. Since a mail belongs to a tenant when it matches any of the tenant's
+ * conditions, finding its tenants takes:
+ * - One hash lookup each for the source ARN and the sending account ID.
+ * - One hash lookup per label of the source domain, e.g. `mail.example.com`, `example.com`, and
+ *   `com`, so that a domain matches its subdomains.
+ * - One hash lookup per header and per tag named by a tenant.
+ * - A bitwise OR of the resulting sets, a word of 64 tenants at a time.
+ * <p>
+ * The cost is independent of the number of tenants, up to the size of the bit sets.
+ * <p>
+ * Instances are immutable and safe for use by multiple threads.
+ */
+public final class TenantIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private final int words;
+    private final BitSetIndex sourceArns;
+    private final BitSetIndex sendingAccountIds;
+    private final BitSetIndex sourceDomains;
+    private final String[] headerNames;
+    private final BitSetIndex[] headers;
+    private final String[] tagNames;
+    private final BitSetIndex[] tags;
+
+    private TenantIndex(int words, BitSetIndex sourceArns, BitSetIndex sendingAccountIds, BitSetIndex sourceDomains,
+                        String[] headerNames, BitSetIndex[] headers, String[] tagNames, BitSetIndex[] tags) {
+        this.words = words;
+        this.sourceArns = sourceArns;
+        this.sendingAccountIds = sendingAccountIds;
+        this.sourceDomains = sourceDomains;
+        this.headerNames = headerNames;
+        this.headers = headers;
+        this.tagNames = tagNames;
+        this.tags = tags;
+    }
+
+    /**
+     * Compiles tenants into a TenantIndex.
+     *
+     * @param tenants The tenants.
+     * @return The compiled index.
+     */
+    public static TenantIndex compile(List<TenantDefinition> tenants) {
+        BitSetIndex sourceArns = BitSetIndex.build(tenants, TenantDefinition::sourceArns, false, false);
+        BitSetIndex sendingAccountIds = BitSetIndex.build(tenants, TenantDefinition::sendingAccountIds, false, false);
+        BitSetIndex sourceDomains = BitSetIndex.build(tenants, TenantDefinition::sourceDomains, true, false);
+
+        String[] headerNames = BitSetIndex.names(tenants, TenantDefinition::headers, true);
+        BitSetIndex[] headers = new BitSetIndex[headerNames.length];
+        for (int i = 0; i < headerNames.length; i++) {
+            String headerName = headerNames[i];
+            headers[i] = BitSetIndex.build(tenants,
+                    tenant -> BitSetIndex.values(tenant.headers(), headerName, true), false, false);
+        }
+        String[] tagNames = BitSetIndex.names(tenants, TenantDefinition::tags, false);
+        BitSetIndex[] tags = new BitSetIndex[tagNames.length];
+        for (int i = 0; i < tagNames.length; i++) {
+            String tagName = tagNames[i];
+            tags[i] = BitSetIndex.build(tenants, tenant -> BitSetIndex.values(tenant.tags(), tagName, false),
+                    false, false);
+        }
+        return new TenantIndex(BitSetIndex.words(tenants.size()), sourceArns, sendingAccountIds, sourceDomains,
+                headerNames, headers, tagNames, tags);
+    }
+
+    /**
+     * Indicates whether any tenant matches mail headers, which must then be parsed.
+     *
+     * @return {@code true} if at least one tenant has a header condition.
+     */
+    public boolean matchesHeaders() {
+        return headerNames.length > 0;
+    }
+
+    /**
+     * Finds every tenant that a mail belongs to.
+     *
+     * @param mail The mail of a notification; may be {@code null}.
+     * @return The positions of the tenants in the list the index was compiled from, in ascending
+     *         order; empty if the mail belongs to no tenant.
+     */
+    public int[] match(Mail mail) {
+        if (mail == null) {
+            return NONE;
+        }
+        long[] matched = new long[words];
+        BitSetIndex.or(matched, sourceArns.exact(mail.sourceArn()));
+        BitSetIndex.or(matched, sendingAccountIds.exact(mail.sendingAccountId()));
+        if (sourceDomains.constrained() && mail.source() != null) {
+            sourceDomains.orDomain(matched, BitSetIndex.domain(mail.source()));
+        }
+        if (headerNames.length > 0 && mail.headers() != null) {
+            MailHeaders mailHeaders = mail.headers();
+            for (int i = 0; i < headerNames.length; i++) {
+                BitSetIndex.or(matched, headers[i].exact(mailHeaders.value(headerNames[i])));
+            }
+        }
+        if (tagNames.length > 0 && mail.tags() != null) {
+            for (int i = 0; i < tagNames.length; i++) {
+                List<String> values = mail.tags().get(tagNames[i]);
+                if (values != null) {
+                    for (String value : values) {
+                        BitSetIndex.or(matched, tags[i].exact(value));
+                    }
+                }
+            }
+        }
+        return BitSetIndex.positions(matched);
+    }
+}
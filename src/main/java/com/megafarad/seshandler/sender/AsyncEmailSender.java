@@ -0,0 +1,186 @@
+package com.megafarad.seshandler.sender;
+
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.services.ses.SesAsyncClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * AsyncEmailSender is an implementation of the EmailSender interface that sends emails
+ * through Amazon Simple Email Service (SES) without blocking the calling thread for the
+ * duration of each HTTPS round trip.
+ * <p>
+ * Each call to {@link #send} starts a request on an {@link SesAsyncClient} backed by a
+ * Netty HTTP client and returns immediately. The number of requests in flight is bounded;
+ * once the limit is reached, callers wait until an earlier send completes. {@link #flush()}
+ * waits for every pending send and reports any failures, so a batch of notifications is
+ * bound by SES throughput rather than the sum of the individual latencies.
+ * <p>
+ * The in-flight limit is read from the `MAX_IN_FLIGHT_SENDS` environment variable when
+ * using the no-argument constructor and defaults to 50.
+ * <p>
+ * A client created by this class is closed before a SnapStart snapshot is taken and created
+ * again after the snapshot is restored. A client passed to the constructor is left untouched.
+ */
+public class AsyncEmailSender implements EmailSender {
+
+    private final Supplier<SesAsyncClient> clientFactory;
+    private volatile SesAsyncClient sesClient;
+    private final Semaphore inFlight;
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs an AsyncEmailSender with an SesAsyncClient using a Netty HTTP client whose
+     * connection pool is sized to the `MAX_IN_FLIGHT_SENDS` environment variable.
+     */
+    public AsyncEmailSender() {
+        this(Integer.parseInt(getEnvVar("MAX_IN_FLIGHT_SENDS", "50")));
+    }
+
+    private AsyncEmailSender(int maxInFlight) {
+        this(() -> createClient(maxInFlight), maxInFlight);
+    }
+
+    private AsyncEmailSender(Supplier<SesAsyncClient> clientFactory, int maxInFlight) {
+        this.clientFactory = clientFactory;
+        this.sesClient = clientFactory.get();
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Constructs an AsyncEmailSender with the specified client and in-flight limit.
+     *
+     * @param sesClient   The asynchronous SES client used to send emails.
+     * @param maxInFlight The maximum number of send requests that may be in flight at the same time.
+     */
+    public AsyncEmailSender(SesAsyncClient sesClient, int maxInFlight) {
+        this.clientFactory = null;
+        this.sesClient = sesClient;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Starts sending an email and returns without waiting for SES to respond. The outcome
+     * is reported by {@link #flush()}.
+     *
+     * @param from      The email address of the sender.
+     * @param to        The email address of the recipient.
+     * @param subject   The subject line of the email.
+     * @param htmlBody  The HTML content of the email body.
+     * @param textBody  The plain text content of the email body.
+     */
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody) {
+        sendAsync(from, to, subject, htmlBody, textBody);
+    }
+
+    /**
+     * Starts sending an email, waiting first if the maximum number of sends is already in flight.
+     *
+     * @param from      The email address of the sender.
+     * @param to        The email address of the recipient.
+     * @param subject   The subject line of the email.
+     * @param htmlBody  The HTML content of the email body.
+     * @param textBody  The plain text content of the email body.
+     * @return A future that completes when SES has accepted the email, or completes exceptionally
+     *         if the request failed.
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to send email", e);
+        }
+
+        CompletableFuture<Void> future;
+        try {
+            future = sesClient.sendEmail(ProductionEmailSender.buildRequest(from, to, subject, htmlBody, textBody))
+                    .thenApply(response -> null);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+
+        CompletableFuture<Void> tracked = future.handle((result, error) -> {
+            inFlight.release();
+            if (error != null) {
+                failures.add(error);
+            }
+            return null;
+        });
+        pending.add(tracked);
+        tracked.whenComplete((result, error) -> pending.remove(tracked));
+        return future;
+    }
+
+    /**
+     * Waits for every pending send to complete.
+     *
+     * @throws RuntimeException If any send completed exceptionally since the last flush. The first
+     *                          failure is the cause; the remaining failures are suppressed.
+     */
+    @Override
+    public void flush() {
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+
+        List<Throwable> errors = new ArrayList<>();
+        Throwable error;
+        while ((error = failures.poll()) != null) {
+            errors.add(error);
+        }
+        if (!errors.isEmpty()) {
+            RuntimeException exception = new RuntimeException(errors.size() + " email send(s) failed",
+                    errors.getFirst());
+            errors.stream().skip(1).forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    /**
+     * Closes the SES client and its connection pool before a SnapStart snapshot is taken, if the
+     * client was created by this sender.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        if (clientFactory != null) {
+            sesClient.close();
+        }
+    }
+
+    /**
+     * Creates a new SES client after a SnapStart snapshot has been restored, if the previous
+     * client was created by this sender.
+     */
+    @Override
+    public void afterRestore() {
+        if (clientFactory != null) {
+            sesClient = clientFactory.get();
+        }
+    }
+
+    private static SesAsyncClient createClient(int maxInFlight) {
+        return SesAsyncClient.builder()
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxInFlight)
+                        .maxPendingConnectionAcquires(maxInFlight)
+                        .connectionAcquisitionTimeout(Duration.ofSeconds(10))
+                        .connectionMaxIdleTime(Duration.ofSeconds(60))
+                        .tcpKeepAlive(true))
+                .build();
+    }
+}
@@ -0,0 +1,14 @@
+package com.megafarad.seshandler.sender;
+
+/**
+ * Represents a file attached to an email.
+ * <p>
+ * Attachments of a `message/*` content type, such as `message/delivery-status`, are written to
+ * the email as they are and must therefore consist of 7-bit lines ending in CRLF. All other
+ * attachments are written base64-encoded.
+ *
+ * @param filename    the name under which the attachment is offered to the recipient
+ * @param contentType the MIME content type of the attachment, e.g. {@code application/json}
+ * @param content     the content of the attachment
+ */
+public record EmailAttachment(String filename, String contentType, byte[] content) { }
@@ -1,5 +1,8 @@
 package com.megafarad.seshandler.sender;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The EmailSender interface defines a contract for sending emails from a specified
  * sender to a recipient with a subject and content in both HTML and plain text formats.
@@ -24,4 +27,85 @@ public interface EmailSender {
      * @param textBody  The plain text content of the email body.
      */
     void send(String from, String to, String subject, String htmlBody, String textBody);
+
+    /**
+     * Sends an email with the specified details and returns a future that completes when the
+     * underlying delivery mechanism has accepted it. Senders that deliver synchronously send the
+     * email before returning, which is the default behavior, and throw any failure directly.
+     *
+     * @param from      The email address of the sender.
+     * @param to        The email address of the recipient.
+     * @param subject   The subject line of the email.
+     * @param htmlBody  The HTML content of the email body.
+     * @param textBody  The plain text content of the email body.
+     * @return A future that completes when the email has been accepted, or completes exceptionally
+     *         if sending it failed.
+     */
+    default CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                              String textBody) {
+        send(from, to, subject, htmlBody, textBody);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Sends an email with the specified details and attachments. Senders that cannot attach files,
+     * which is the default behavior, send the email without the attachments.
+     *
+     * @param from        The email address of the sender.
+     * @param to          The email address of the recipient.
+     * @param subject     The subject line of the email.
+     * @param htmlBody    The HTML content of the email body.
+     * @param textBody    The plain text content of the email body.
+     * @param attachments The files attached to the email; may be empty.
+     */
+    default void send(String from, String to, String subject, String htmlBody, String textBody,
+                      List<EmailAttachment> attachments) {
+        send(from, to, subject, htmlBody, textBody);
+    }
+
+    /**
+     * Sends an email with the specified details and attachments and returns a future that
+     * completes when the underlying delivery mechanism has accepted it. Senders that cannot attach
+     * files, which is the default behavior, send the email without the attachments.
+     *
+     * @param from        The email address of the sender.
+     * @param to          The email address of the recipient.
+     * @param subject     The subject line of the email.
+     * @param htmlBody    The HTML content of the email body.
+     * @param textBody    The plain text content of the email body.
+     * @param attachments The files attached to the email; may be empty.
+     * @return A future that completes when the email has been accepted, or completes exceptionally
+     *         if sending it failed.
+     */
+    default CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                              String textBody, List<EmailAttachment> attachments) {
+        return sendAsync(from, to, subject, htmlBody, textBody);
+    }
+
+    /**
+     * Blocks until every email handed to {@link #send} has been delivered to the underlying
+     * delivery mechanism. Senders that deliver synchronously have nothing to wait for, which is
+     * the default behavior.
+     *
+     * @throws RuntimeException If one or more of the pending sends failed.
+     */
+    default void flush() {
+
+    }
+
+    /**
+     * Releases the connections held by the sender before a SnapStart snapshot is taken, so that
+     * no connection is restored from the snapshot. Does nothing by default.
+     */
+    default void beforeCheckpoint() {
+
+    }
+
+    /**
+     * Rebuilds the client and connections of the sender after a SnapStart snapshot has been
+     * restored. Does nothing by default.
+     */
+    default void afterRestore() {
+
+    }
 }
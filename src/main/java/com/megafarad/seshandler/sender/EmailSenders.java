@@ -0,0 +1,173 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.metrics.Metrics;
+import com.megafarad.seshandler.outbox.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * The EmailSenders class provides a factory method that builds the EmailSender
+ * configured through environment variables, so that every notification handler
+ * delivers its emails the same way.
+ */
+public class EmailSenders {
+
+    private static OutboxEmailSender outbox;
+    private static TokenBucket sendRate;
+
+    /**
+     * Creates the EmailSender selected by the environment.
+     * <p>
+     * When the `RAW_EMAIL_SENDER` environment variable is `true`, or the `ATTACH_NOTIFICATION`
+     * environment variable selects an attachment, a {@link RawEmailSender} is created. Otherwise,
+     * when the `ASYNC_EMAIL_SENDER` environment variable is `true`, an {@link AsyncEmailSender} is
+     * created, and a {@link ProductionEmailSender} is created if it is not. When metrics are enabled
+     * (see {@link Metrics#fromEnv()}), the sender is wrapped in a {@link MeteredEmailSender}.
+     * <p>
+     * When the `MAX_SEND_RATE` environment variable is greater than zero, the sender is wrapped in
+     * a {@link RateLimitedEmailSender} sending at most that many emails per second, with a burst of
+     * `SEND_BURST` emails (the maximum rate by default), retrying each throttled email up to
+     * `MAX_SEND_RETRIES` times (5 by default) with at most `MAX_QUEUED_RETRIES` retries queued
+     * (100 by default). The rate applies to the process as a whole: every sender created by this
+     * method takes its tokens from the same bucket (see {@link #rateLimited}).
+     * <p>
+     * When the `OUTBOX_DIR` environment variable is set, the sender is wrapped in an
+     * {@link OutboxEmailSender} (see {@link #openOutbox}) whose {@link WriteAheadLog} is kept in a
+     * directory of its own within that directory, in segments of `OUTBOX_SEGMENT_SIZE_MB` megabytes
+     * (16 by default) that are forced to the storage device after every write when `OUTBOX_SYNC` is
+     * `true`. Emails are sent in batches of up to `OUTBOX_BATCH_SIZE` emails (10 by default) and
+     * attempted up to `OUTBOX_MAX_ATTEMPTS` times (10 by default). The outbox is opened once per
+     * process and shared by every caller, since a {@link WriteAheadLog} holds its directory
+     * exclusively. In AWS Lambda, detected by the `AWS_LAMBDA_RUNTIME_API` environment variable,
+     * flushing the outbox waits until every email has been sent or given up on, since no retry is
+     * sent while the execution environment is frozen between invocations.
+     *
+     * @return The configured EmailSender.
+     */
+    public static synchronized EmailSender fromEnv() {
+        String outboxDir = getEnvVar("OUTBOX_DIR", "");
+        if (outboxDir.isEmpty()) {
+            return createSender();
+        }
+        if (outbox == null) {
+            outbox = openOutbox(createSender(), Path.of(outboxDir),
+                    Integer.parseInt(getEnvVar("OUTBOX_SEGMENT_SIZE_MB", "16")) << 20,
+                    Boolean.parseBoolean(getEnvVar("OUTBOX_SYNC", "false")),
+                    Integer.parseInt(getEnvVar("OUTBOX_BATCH_SIZE", "10")),
+                    Integer.parseInt(getEnvVar("OUTBOX_MAX_ATTEMPTS", "10")),
+                    !getEnvVar("AWS_LAMBDA_RUNTIME_API", "").isEmpty());
+        }
+        return outbox;
+    }
+
+    /**
+     * Opens an outbox in a new directory of its own within a root directory, so that processes
+     * sharing the root directory, such as concurrent execution environments, do not contend for
+     * the same log.
+     * <p>
+     * The outbox then takes over the emails of every other directory within the root directory
+     * whose log is not held open, i.e. that was left behind by a process that has ended, and
+     * deletes that directory. A directory whose log is still held open by a running process is
+     * left alone.
+     *
+     * @param delegate     The EmailSender that sends the emails.
+     * @param root         The directory within which the directory of the outbox is created.
+     * @param segmentSize  The size of each segment of the log in bytes.
+     * @param sync         Whether every record is forced to the storage device.
+     * @param batchSize    The maximum number of emails sent together.
+     * @param maxAttempts  The maximum number of times an email is attempted.
+     * @param awaitRetries Whether flushing waits until every email has been sent or given up on.
+     * @return The outbox.
+     * @throws RuntimeException If a log cannot be opened or the root directory cannot be read.
+     */
+    static OutboxEmailSender openOutbox(EmailSender delegate, Path root, int segmentSize, boolean sync,
+                                        int batchSize, int maxAttempts, boolean awaitRetries) {
+        Path directory = root.resolve("outbox-" + UUID.randomUUID());
+        OutboxEmailSender opened = new OutboxEmailSender(delegate, WriteAheadLog.open(directory, segmentSize, sync),
+                batchSize, maxAttempts, Duration.ofSeconds(1), awaitRetries);
+        List<Path> others;
+        try (Stream<Path> children = Files.list(root)) {
+            others = children.filter(child -> Files.isDirectory(child) && !child.equals(directory)).toList();
+        } catch (IOException e) {
+            throw new RuntimeException("Reading outbox directory failed: " + root, e);
+        }
+        for (Path other : others) {
+            WriteAheadLog log;
+            try {
+                log = WriteAheadLog.open(other, segmentSize, sync);
+            } catch (IllegalStateException e) {
+                continue;
+            }
+            opened.adopt(log);
+            delete(other);
+        }
+        return opened;
+    }
+
+    private static void delete(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // The directory holds no pending email any more, so it is merely taken over again later.
+        }
+    }
+
+    private static EmailSender createSender() {
+        EmailSender sender;
+        if (Boolean.parseBoolean(getEnvVar("RAW_EMAIL_SENDER", "false"))
+                || NotificationAttachment.of(getEnvVar("ATTACH_NOTIFICATION", "none")) != NotificationAttachment.NONE) {
+            sender = new RawEmailSender();
+        } else if (Boolean.parseBoolean(getEnvVar("ASYNC_EMAIL_SENDER", "false"))) {
+            sender = new AsyncEmailSender();
+        } else {
+            sender = new ProductionEmailSender();
+        }
+        Metrics metrics = Metrics.fromEnv();
+        if (metrics.isEnabled()) {
+            sender = new MeteredEmailSender(sender, metrics);
+        }
+        double maxRate = Double.parseDouble(getEnvVar("MAX_SEND_RATE", "0"));
+        if (maxRate > 0) {
+            sender = rateLimited(sender, maxRate,
+                    Integer.parseInt(getEnvVar("SEND_BURST", Integer.toString((int) Math.ceil(maxRate)))),
+                    Integer.parseInt(getEnvVar("MAX_SEND_RETRIES", "5")),
+                    Integer.parseInt(getEnvVar("MAX_QUEUED_RETRIES", "100")),
+                    metrics);
+        }
+        return sender;
+    }
+
+    /**
+     * Wraps a sender in a {@link RateLimitedEmailSender} that takes its tokens from the bucket
+     * shared by every rate limited sender of the process, so that the senders of several handlers,
+     * such as the actions of a routing table, together stay below the maximum rate. The bucket is
+     * created by the first call, with its rate and burst. Each sender still retries and reports its
+     * own emails.
+     *
+     * @param sender           The EmailSender that sends the emails.
+     * @param maxRate          The maximum number of emails sent per second by the process.
+     * @param burst            The maximum number of emails sent at once after a pause.
+     * @param maxRetries       The maximum number of times a throttled email is retried.
+     * @param maxQueuedRetries The maximum number of throttled emails waiting to be retried.
+     * @param metrics          The Metrics in which waits and throttled sends are recorded.
+     * @return The rate limited sender.
+     */
+    static synchronized EmailSender rateLimited(EmailSender sender, double maxRate, int burst, int maxRetries,
+                                                int maxQueuedRetries, Metrics metrics) {
+        if (sendRate == null) {
+            sendRate = new TokenBucket(maxRate, burst, System::nanoTime);
+        }
+        return new RateLimitedEmailSender(sender, sendRate, maxRetries, maxQueuedRetries, metrics);
+    }
+}
@@ -0,0 +1,86 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link EmailSender} decorator that records the latency and failures of each send in
+ * {@link Metrics}, as the {@link Metrics.Stage#SEND} stage.
+ * <p>
+ * Emails are sent through {@link EmailSender#sendAsync}, so the latency of a sender that delivers
+ * asynchronously is measured until the delivery mechanism accepts the email, rather than until
+ * the send is started. Failures of such a sender are reported by {@link #flush()} as before.
+ */
+public class MeteredEmailSender implements EmailSender {
+
+    private final EmailSender delegate;
+    private final Metrics metrics;
+
+    /**
+     * Constructs a MeteredEmailSender.
+     *
+     * @param delegate The EmailSender that sends the emails.
+     * @param metrics  The Metrics in which sends are recorded.
+     */
+    public MeteredEmailSender(EmailSender delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody) {
+        sendAsync(from, to, subject, htmlBody, textBody, List.of());
+    }
+
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody,
+                     List<EmailAttachment> attachments) {
+        sendAsync(from, to, subject, htmlBody, textBody, attachments);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody) {
+        return sendAsync(from, to, subject, htmlBody, textBody, List.of());
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody, List<EmailAttachment> attachments) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> future;
+        try {
+            future = attachments.isEmpty()
+                    ? delegate.sendAsync(from, to, subject, htmlBody, textBody)
+                    : delegate.sendAsync(from, to, subject, htmlBody, textBody, attachments);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(Metrics.Stage.SEND);
+            throw e;
+        }
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                metrics.recordFailure(Metrics.Stage.SEND);
+            } else {
+                metrics.recordLatency(Metrics.Stage.SEND, System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void beforeCheckpoint() {
+        delegate.beforeCheckpoint();
+    }
+
+    @Override
+    public void afterRestore() {
+        delegate.afterRestore();
+    }
+}
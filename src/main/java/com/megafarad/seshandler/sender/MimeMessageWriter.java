@@ -0,0 +1,331 @@
+package com.megafarad.seshandler.sender;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that MIME messages are written into directly, without building
+ * intermediate strings or byte arrays for their parts.
+ * <p>
+ * Text is encoded as UTF-8 and base64 in a single pass: each character is turned into its UTF-8
+ * bytes, which are fed to a base64 encoder that writes lines of 76 characters ending in CRLF, as
+ * required for MIME bodies. Header values that are not printable ASCII, including values holding
+ * line breaks that would otherwise start a new header, are written as RFC 2047 encoded words.
+ * <p>
+ * Instances are not safe for use by multiple threads; they are meant to be pooled and reused by
+ * a single sender at a time.
+ */
+final class MimeMessageWriter {
+
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int BASE64_LINE_LENGTH = 76;
+    private static final int ENCODED_WORD_BYTES = 36;
+    private static final int MAX_PLAIN_HEADER_LENGTH = 900;
+
+    private byte[] buffer;
+    private int length;
+    private int pendingBits;
+    private int pendingBytes;
+    private int lineLength;
+    private final byte[] word = new byte[ENCODED_WORD_BYTES];
+
+    /**
+     * Creates a MimeMessageWriter.
+     *
+     * @param capacity The initial capacity, in bytes.
+     */
+    MimeMessageWriter(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Returns the buffer holding the written message. Only the first {@link #length()} bytes are
+     * part of the message.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Returns the size of the buffer.
+     */
+    int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Discards the written message, including any base64 left unfinished by a write that failed,
+     * and grows the buffer to at least the specified capacity.
+     *
+     * @param capacity The capacity needed for the next message, in bytes.
+     */
+    void reset(int capacity) {
+        length = 0;
+        pendingBits = 0;
+        pendingBytes = 0;
+        lineLength = 0;
+        if (buffer.length < capacity) {
+            buffer = new byte[capacity];
+        }
+    }
+
+    /**
+     * Copies the written message.
+     *
+     * @return A new array of exactly {@link #length()} bytes.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Writes text that is known to be ASCII, such as header names, boundaries, and constants.
+     */
+    MimeMessageWriter ascii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a line break.
+     */
+    MimeMessageWriter crlf() {
+        ensureCapacity(2);
+        buffer[length++] = '\r';
+        buffer[length++] = '\n';
+        return this;
+    }
+
+    /**
+     * Writes bytes as they are.
+     */
+    MimeMessageWriter bytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        return this;
+    }
+
+    /**
+     * Writes an unstructured header, such as `Subject`, encoding its value if needed.
+     */
+    MimeMessageWriter header(String name, String value) {
+        ascii(name).ascii(": ");
+        if (isPlain(value)) {
+            ascii(value);
+        } else {
+            encodedWords(value);
+        }
+        return crlf();
+    }
+
+    /**
+     * Writes an address header, such as `From` or `To`, encoding the display name of the address
+     * if needed. An address without a display name is written as it is, with any line breaks
+     * removed.
+     */
+    MimeMessageWriter addressHeader(String name, String address) {
+        ascii(name).ascii(": ");
+        int bracket = address.lastIndexOf('<');
+        if (isPlain(address)) {
+            ascii(address);
+        } else if (bracket > 0 && isPlain(address.substring(bracket))) {
+            encodedWords(address.substring(0, bracket).trim());
+            ascii(" ").ascii(address.substring(bracket));
+        } else {
+            utf8(address.replace('\r', ' ').replace('\n', ' '));
+        }
+        return crlf();
+    }
+
+    /**
+     * Writes text as base64-encoded UTF-8 in lines of 76 characters, ending with a line break.
+     */
+    MimeMessageWriter base64Utf8(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                base64Byte(c);
+            } else if (c < 0x800) {
+                base64Byte(0xC0 | c >> 6);
+                base64Byte(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                base64Byte(0xF0 | codePoint >> 18);
+                base64Byte(0x80 | codePoint >> 12 & 0x3F);
+                base64Byte(0x80 | codePoint >> 6 & 0x3F);
+                base64Byte(0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                base64Byte('?');
+            } else {
+                base64Byte(0xE0 | c >> 12);
+                base64Byte(0x80 | c >> 6 & 0x3F);
+                base64Byte(0x80 | c & 0x3F);
+            }
+        }
+        return endBase64();
+    }
+
+    /**
+     * Writes bytes base64-encoded in lines of 76 characters, ending with a line break.
+     */
+    MimeMessageWriter base64(byte[] bytes) {
+        for (byte b : bytes) {
+            base64Byte(b & 0xFF);
+        }
+        return endBase64();
+    }
+
+    private void base64Byte(int b) {
+        pendingBits = pendingBits << 8 | b;
+        if (++pendingBytes == 3) {
+            ensureCapacity(6);
+            base64Char(pendingBits >> 18);
+            base64Char(pendingBits >> 12);
+            base64Char(pendingBits >> 6);
+            base64Char(pendingBits);
+            pendingBits = 0;
+            pendingBytes = 0;
+        }
+    }
+
+    private void base64Char(int sextet) {
+        lineByte(BASE64[sextet & 0x3F]);
+    }
+
+    private void lineByte(byte b) {
+        buffer[length++] = b;
+        if (++lineLength == BASE64_LINE_LENGTH) {
+            buffer[length++] = '\r';
+            buffer[length++] = '\n';
+            lineLength = 0;
+        }
+    }
+
+    private MimeMessageWriter endBase64() {
+        ensureCapacity(6);
+        if (pendingBytes > 0) {
+            int bits = pendingBits << (3 - pendingBytes) * 8;
+            base64Char(bits >> 18);
+            base64Char(bits >> 12);
+            lineByte(pendingBytes == 2 ? BASE64[bits >> 6 & 0x3F] : (byte) '=');
+            lineByte((byte) '=');
+            pendingBits = 0;
+            pendingBytes = 0;
+        }
+        if (lineLength > 0) {
+            crlf();
+            lineLength = 0;
+        }
+        return this;
+    }
+
+    /**
+     * Writes a header value as UTF-8 base64 encoded words of 60 characters at most, folded onto
+     * continuation lines, so that the lines stay below 78 characters even after a long header
+     * name. Characters are never split across words.
+     */
+    private void encodedWords(String value) {
+        int wordLength = 0;
+        boolean first = true;
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            int bytes = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (wordLength + bytes > ENCODED_WORD_BYTES) {
+                encodedWord(wordLength, first);
+                first = false;
+                wordLength = 0;
+            }
+            wordLength = utf8(codePoint, word, wordLength);
+        }
+        encodedWord(wordLength, first);
+    }
+
+    private void encodedWord(int wordLength, boolean first) {
+        if (!first) {
+            crlf().ascii(" ");
+        }
+        ascii("=?UTF-8?B?");
+        ensureCapacity(wordLength / 3 * 4 + 4);
+        int i = 0;
+        for (; i + 2 < wordLength; i += 3) {
+            int bits = (word[i] & 0xFF) << 16 | (word[i + 1] & 0xFF) << 8 | word[i + 2] & 0xFF;
+            buffer[length++] = BASE64[bits >> 18 & 0x3F];
+            buffer[length++] = BASE64[bits >> 12 & 0x3F];
+            buffer[length++] = BASE64[bits >> 6 & 0x3F];
+            buffer[length++] = BASE64[bits & 0x3F];
+        }
+        if (i < wordLength) {
+            int bits = (word[i] & 0xFF) << 16 | (i + 1 < wordLength ? (word[i + 1] & 0xFF) << 8 : 0);
+            buffer[length++] = BASE64[bits >> 18 & 0x3F];
+            buffer[length++] = BASE64[bits >> 12 & 0x3F];
+            buffer[length++] = i + 1 < wordLength ? BASE64[bits >> 6 & 0x3F] : (byte) '=';
+            buffer[length++] = '=';
+        }
+        ascii("?=");
+    }
+
+    private void utf8(String text) {
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            ensureCapacity(4);
+            length = utf8(codePoint, buffer, length);
+        }
+    }
+
+    private static int utf8(int codePoint, byte[] target, int offset) {
+        if (codePoint < 0x80) {
+            target[offset++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            target[offset++] = (byte) (0xC0 | codePoint >> 6);
+            target[offset++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (codePoint < 0x10000) {
+            if (Character.isSurrogate((char) codePoint)) {
+                target[offset++] = '?';
+                return offset;
+            }
+            target[offset++] = (byte) (0xE0 | codePoint >> 12);
+            target[offset++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            target[offset++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+            target[offset++] = (byte) (0xF0 | codePoint >> 18);
+            target[offset++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            target[offset++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            target[offset++] = (byte) (0x80 | codePoint & 0x3F);
+        }
+        return offset;
+    }
+
+    private static boolean isPlain(String value) {
+        if (value.length() > MAX_PLAIN_HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length + additional, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.megafarad.seshandler.sender;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.BouncedRecipient;
+import com.megafarad.seshandler.model.Delivery;
+import com.megafarad.seshandler.model.SESNotification;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The files that can be attached to the email sent about an SES notification.
+ * <p>
+ * Attachments are only delivered by senders that can attach files, such as
+ * {@link RawEmailSender}.
+ */
+public enum NotificationAttachment {
+
+    /**
+     * No attachment.
+     */
+    NONE,
+
+    /**
+     * The notification as a JSON document, `notification.json`, written from the fields of
+     * {@link SESNotification} under the names SES uses. Fields that the model does not map are not
+     * included, and the type of an event is written as `notificationType` rather than `eventType`.
+     */
+    JSON,
+
+    /**
+     * A delivery status report (RFC 3464), `delivery-status.txt` of type `message/delivery-status`,
+     * for bounce and delivery notifications, which mail clients and ticketing systems can parse.
+     * Complaints are not delivery status notifications and get no attachment.
+     */
+    DSN;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final int MAX_FIELD_LENGTH = 900;
+
+    /**
+     * Returns the attachment selected by name, ignoring case.
+     *
+     * @param name `none`, `json`, or `dsn`.
+     * @return The selected attachment.
+     * @throws IllegalArgumentException If the name is not one of the above.
+     */
+    public static NotificationAttachment of(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Builds the files to attach to the email about the specified notification.
+     *
+     * @param notification The notification.
+     * @return The attachments; empty if there is nothing to attach.
+     */
+    public List<EmailAttachment> attachmentsFor(SESNotification notification) {
+        return switch (this) {
+            case NONE -> List.of();
+            case JSON -> List.of(json(notification));
+            case DSN -> {
+                String report = deliveryStatus(notification);
+                yield report == null ? List.of() : List.of(new EmailAttachment("delivery-status.txt",
+                        "message/delivery-status", report.getBytes(StandardCharsets.US_ASCII)));
+            }
+        };
+    }
+
+    private static EmailAttachment json(SESNotification notification) {
+        try {
+            return new EmailAttachment("notification.json", "application/json",
+                    MAPPER.writeValueAsBytes(notification));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Writing notification failed", e);
+        }
+    }
+
+    /**
+     * Builds the body of a `message/delivery-status` part for a bounce or delivery notification.
+     *
+     * @param notification The notification.
+     * @return The report, in 7-bit lines ending in CRLF, or {@code null} for other notifications.
+     */
+    static String deliveryStatus(SESNotification notification) {
+        StringBuilder report = new StringBuilder(256);
+        if (notification.bounce() != null) {
+            Bounce bounce = notification.bounce();
+            perMessageFields(report, bounce.reportingMTA(), notification);
+            boolean permanent = "Permanent".equals(bounce.bounceType());
+            for (BouncedRecipient recipient : bounce.bouncedRecipients() == null
+                    ? List.<BouncedRecipient>of() : bounce.bouncedRecipients()) {
+                report.append("\r\n");
+                field(report, "Final-Recipient", "rfc822; " + recipient.emailAddress());
+                field(report, "Action", recipient.action() != null ? recipient.action()
+                        : permanent ? "failed" : "delayed");
+                field(report, "Status", recipient.status() != null ? recipient.status()
+                        : permanent ? "5.0.0" : "4.0.0");
+                if (bounce.remoteMtaIp() != null) {
+                    field(report, "Remote-MTA", "dns; " + bounce.remoteMtaIp());
+                }
+                if (recipient.diagnosticCode() != null) {
+                    field(report, "Diagnostic-Code", recipient.diagnosticCode());
+                }
+            }
+            return report.toString();
+        }
+        if (notification.delivery() != null) {
+            Delivery delivery = notification.delivery();
+            perMessageFields(report, delivery.reportingMTA(), notification);
+            for (String recipient : delivery.recipients() == null ? List.<String>of() : delivery.recipients()) {
+                report.append("\r\n");
+                field(report, "Final-Recipient", "rfc822; " + recipient);
+                field(report, "Action", "delivered");
+                field(report, "Status", "2.0.0");
+                if (delivery.remoteMtaIp() != null) {
+                    field(report, "Remote-MTA", "dns; " + delivery.remoteMtaIp());
+                }
+                if (delivery.smtpResponse() != null) {
+                    field(report, "Diagnostic-Code", "smtp; " + delivery.smtpResponse());
+                }
+            }
+            return report.toString();
+        }
+        return null;
+    }
+
+    private static void perMessageFields(StringBuilder report, String reportingMta, SESNotification notification) {
+        String mta = reportingMta == null ? "amazonses.com" : reportingMta;
+        field(report, "Reporting-MTA", mta.indexOf(';') < 0 ? "dns; " + mta : mta);
+        if (notification.mail() != null && notification.mail().messageId() != null) {
+            field(report, "X-SES-Message-ID", notification.mail().messageId());
+        }
+    }
+
+    /**
+     * Appends a field, replacing line breaks and any character that is not printable ASCII, and
+     * truncating values that would exceed the line length limit.
+     */
+    private static void field(StringBuilder report, String name, String value) {
+        report.append(name).append(": ");
+        int length = Math.min(value.length(), MAX_FIELD_LENGTH);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            report.append(c >= 0x20 && c < 0x7F ? c : c == '\t' || c == '\r' || c == '\n' ? ' ' : '?');
+        }
+        report.append("\r\n");
+    }
+}
@@ -0,0 +1,350 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.outbox.OutboxEntry;
+import com.megafarad.seshandler.outbox.WriteAheadLog;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link EmailSender} decorator that writes every email to a durable outbox before sending it,
+ * so that an email that cannot be sent right away is retried rather than lost.
+ * <p>
+ * The decorator:
+ * - Appends each email to a {@link WriteAheadLog} and returns as soon as it has been written.
+ * - Sends the emails from a background thread, in batches of up to the configured batch size
+ *   that are handed to the decorated sender together and flushed once.
+ * - Completes each email in the log once it has been sent, so that its segment can be deleted.
+ * - Retries an email whose send failed after an exponentially growing delay with random jitter,
+ *   of at most five minutes. An email that failed the maximum number of attempts is completed as
+ *   well, and reported by the next {@link #flush()}.
+ * - Sends the emails that were still pending in the log when it was opened, e.g. after the
+ *   process crashed or was stopped, before any new ones.
+ * <p>
+ * By default, {@link #flush()} waits until every email appended so far has been attempted once,
+ * and reports only the emails that were given up on; an email waiting for a retry stays in the
+ * outbox and is sent in the background. Where nothing runs between invocations, such as in AWS
+ * Lambda, whose execution environment is frozen once the handler returns, flush can instead be
+ * made to wait until every email has been sent or given up on, so that no email is left waiting
+ * for a retry after the notification that produced it has been acknowledged.
+ * <p>
+ * The emails still pending in the log of another outbox, e.g. of a process that has ended, can be
+ * taken over with {@link #adopt(WriteAheadLog)}.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public class OutboxEmailSender implements EmailSender, AutoCloseable {
+
+    private static final Duration RETRY_MAX_DELAY = Duration.ofMinutes(5);
+
+    private final EmailSender delegate;
+    private final WriteAheadLog log;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBaseDelayNanos;
+    private final boolean awaitRetries;
+    private final DelayQueue<Delivery> ready = new DelayQueue<>();
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    /**
+     * Constructs an OutboxEmailSender and starts sending the emails recovered from the log.
+     *
+     * @param delegate       The EmailSender that sends the emails.
+     * @param log            The log in which emails are kept until they have been sent.
+     * @param batchSize      The maximum number of emails sent together.
+     * @param maxAttempts    The maximum number of times an email is attempted before it is given up on.
+     * @param retryBaseDelay The delay before the first retry of an email, which doubles with each
+     *                       further retry.
+     */
+    public OutboxEmailSender(EmailSender delegate, WriteAheadLog log, int batchSize, int maxAttempts,
+                             Duration retryBaseDelay) {
+        this(delegate, log, batchSize, maxAttempts, retryBaseDelay, false);
+    }
+
+    /**
+     * Constructs an OutboxEmailSender and starts sending the emails recovered from the log.
+     *
+     * @param delegate       The EmailSender that sends the emails.
+     * @param log            The log in which emails are kept until they have been sent.
+     * @param batchSize      The maximum number of emails sent together.
+     * @param maxAttempts    The maximum number of times an email is attempted before it is given up on.
+     * @param retryBaseDelay The delay before the first retry of an email, which doubles with each
+     *                       further retry.
+     * @param awaitRetries   Whether {@link #flush()} waits until every email has been sent or given
+     *                       up on, rather than until it has been attempted once.
+     */
+    public OutboxEmailSender(EmailSender delegate, WriteAheadLog log, int batchSize, int maxAttempts,
+                             Duration retryBaseDelay, boolean awaitRetries) {
+        this.delegate = delegate;
+        this.log = log;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelayNanos = retryBaseDelay.toNanos();
+        this.awaitRetries = awaitRetries;
+        for (OutboxEntry entry : log.recovered()) {
+            enqueue(new Delivery(entry));
+        }
+        this.drainer = Thread.ofPlatform().name("outbox-drainer").daemon().unstarted(this::drain);
+        drainer.start();
+    }
+
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody) {
+        sendAsync(from, to, subject, htmlBody, textBody, List.of());
+    }
+
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody,
+                     List<EmailAttachment> attachments) {
+        sendAsync(from, to, subject, htmlBody, textBody, attachments);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody) {
+        return sendAsync(from, to, subject, htmlBody, textBody, List.of());
+    }
+
+    /**
+     * Appends an email to the outbox, from which it is sent in the background.
+     *
+     * @param from        The email address of the sender.
+     * @param to          The email address of the recipient.
+     * @param subject     The subject line of the email.
+     * @param htmlBody    The HTML content of the email body.
+     * @param textBody    The plain text content of the email body.
+     * @param attachments The files attached to the email; may be empty.
+     * @return A future that completes when the email has been sent, possibly after being retried,
+     *         or completes exceptionally if it was given up on.
+     * @throws IllegalStateException If the sender has been closed.
+     * @throws RuntimeException      If the email could not be written to the log.
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody, List<EmailAttachment> attachments) {
+        if (closed) {
+            throw new IllegalStateException("Outbox is closed");
+        }
+        RenderedEmail email = new RenderedEmail(subject, htmlBody, textBody);
+        long sequence = log.append(from, to, email, attachments);
+        Delivery delivery = new Delivery(new OutboxEntry(sequence, from, to, email, attachments));
+        enqueue(delivery);
+        return delivery.delivered;
+    }
+
+    /**
+     * Waits until every email appended so far, or recovered from the log, has been attempted at
+     * least once, or, if the outbox awaits retries, until every such email has been sent or given
+     * up on.
+     *
+     * @throws RuntimeException If any email was given up on since the last flush. The first failure
+     *                          is the cause; the remaining failures are suppressed.
+     */
+    @Override
+    public void flush() {
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+
+        List<Throwable> errors = new ArrayList<>();
+        Throwable error;
+        while ((error = failures.poll()) != null) {
+            errors.add(error);
+        }
+        if (!errors.isEmpty()) {
+            RuntimeException exception = new RuntimeException(errors.size() + " email send(s) failed",
+                    errors.getFirst());
+            errors.stream().skip(1).forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint() {
+        delegate.beforeCheckpoint();
+    }
+
+    @Override
+    public void afterRestore() {
+        delegate.afterRestore();
+    }
+
+    /**
+     * Takes over the emails still pending in another log, such as the log of a process that has
+     * ended, and closes it. Each email is appended to this outbox before it is completed in the
+     * other log, so an email is sent twice rather than lost if the process stops in between.
+     *
+     * @param other The log to take the emails from, which must not be used afterwards.
+     * @return The number of emails taken over.
+     * @throws IllegalStateException If the sender has been closed.
+     * @throws RuntimeException      If an email could not be written to this outbox or completed in
+     *                               the other log.
+     */
+    public int adopt(WriteAheadLog other) {
+        try {
+            for (OutboxEntry entry : other.recovered()) {
+                RenderedEmail email = entry.email();
+                sendAsync(entry.from(), entry.to(), email.subject(), email.htmlBody(), email.textBody(),
+                        entry.attachments());
+                other.complete(entry.sequence());
+            }
+            return other.recovered().size();
+        } finally {
+            other.close();
+        }
+    }
+
+    /**
+     * Returns the number of emails in the outbox that have not been sent or given up on yet.
+     *
+     * @return The number of pending emails.
+     */
+    public int pendingCount() {
+        return log.pendingCount();
+    }
+
+    /**
+     * Stops sending once the current batch is done and closes the log. Emails that have not been
+     * sent yet stay in the log and are sent when it is opened again.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        drainer.interrupt();
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    private void enqueue(Delivery delivery) {
+        CompletableFuture<Void> awaited = awaitRetries ? delivery.delivered : delivery.attempted;
+        pending.add(awaited);
+        awaited.whenComplete((ignored, error) -> pending.remove(awaited));
+        ready.add(delivery);
+    }
+
+    private void drain() {
+        List<Delivery> batch = new ArrayList<>(batchSize);
+        while (!closed) {
+            try {
+                batch.add(ready.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            ready.drainTo(batch, batchSize - 1);
+            try {
+                sendBatch(batch);
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void sendBatch(List<Delivery> batch) {
+        List<CompletableFuture<Void>> sends = new ArrayList<>(batch.size());
+        for (Delivery delivery : batch) {
+            OutboxEntry entry = delivery.entry;
+            RenderedEmail email = entry.email();
+            try {
+                sends.add(entry.attachments().isEmpty()
+                        ? delegate.sendAsync(entry.from(), entry.to(), email.subject(), email.htmlBody(),
+                                email.textBody())
+                        : delegate.sendAsync(entry.from(), entry.to(), email.subject(), email.htmlBody(),
+                                email.textBody(), entry.attachments()));
+            } catch (RuntimeException e) {
+                sends.add(CompletableFuture.failedFuture(e));
+            }
+        }
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+        try {
+            delegate.flush();
+        } catch (RuntimeException e) {
+            // Superseded by the outcome of each email, which is handled below.
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Delivery delivery = batch.get(i);
+            try {
+                Throwable error = sends.get(i).handle((ignored, failure) -> failure).join();
+                if (error == null) {
+                    log.complete(delivery.entry.sequence());
+                    delivery.delivered.complete(null);
+                } else if (++delivery.attempts >= maxAttempts) {
+                    log.complete(delivery.entry.sequence());
+                    failures.add(unwrap(error));
+                    delivery.delivered.completeExceptionally(unwrap(error));
+                } else {
+                    delivery.readyAtNanos = System.nanoTime() + retryDelayNanos(delivery.attempts - 1);
+                    ready.add(delivery);
+                }
+            } catch (RuntimeException e) {
+                // The entry stays pending in the log, so it is sent again when the log is reopened.
+                // The failure is recorded before the attempt completes, so that flush reports it.
+                failures.add(e);
+                delivery.delivered.completeExceptionally(e);
+            } finally {
+                delivery.attempted.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Returns a delay drawn uniformly between half of and the full exponential backoff for the
+     * attempt, which is capped at five minutes.
+     */
+    private long retryDelayNanos(int retries) {
+        long backoff = Math.min(RETRY_MAX_DELAY.toNanos(), retryBaseDelayNanos << Math.min(retries, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * An email in the outbox, ready to be sent at {@code readyAtNanos}.
+     */
+    private static final class Delivery implements Delayed {
+
+        private final OutboxEntry entry;
+        private final CompletableFuture<Void> delivered = new CompletableFuture<>();
+        private final CompletableFuture<Void> attempted = new CompletableFuture<>();
+        private volatile long readyAtNanos = System.nanoTime();
+        private int attempts;
+
+        private Delivery(OutboxEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof Delivery delivery) {
+                int byTime = Long.compare(readyAtNanos - delivery.readyAtNanos, 0);
+                return byTime != 0 ? byTime : Long.compare(entry.sequence(), delivery.entry.sequence());
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
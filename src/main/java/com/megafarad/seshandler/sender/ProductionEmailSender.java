@@ -19,7 +19,9 @@ import software.amazon.awssdk.services.ses.model.*;
  *   from other application components.
  * <p>
  * This class uses an `SesClient` instance to communicate with Amazon SES. The `SesClient`
- * is created during the instantiation of the class.
+ * is created during the instantiation of the class. It is closed before a SnapStart snapshot
+ * is taken, so that no pooled connection is captured, and created again after the snapshot
+ * is restored.
  * <p>
  * Typical use cases include:
  * - Sending application notifications via email.
@@ -27,7 +29,7 @@ import software.amazon.awssdk.services.ses.model.*;
  */
 public class ProductionEmailSender implements EmailSender {
 
-    private final SesClient sesClient;
+    private volatile SesClient sesClient;
 
     public ProductionEmailSender() {
         this.sesClient = SesClient.create();
@@ -35,6 +37,26 @@ public class ProductionEmailSender implements EmailSender {
 
     @Override
     public void send(String from, String to, String subject, String htmlBody, String textBody) {
+        sesClient.sendEmail(buildRequest(from, to, subject, htmlBody, textBody));
+    }
+
+    /**
+     * Closes the SES client and its connection pool before a SnapStart snapshot is taken.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        sesClient.close();
+    }
+
+    /**
+     * Creates a new SES client after a SnapStart snapshot has been restored.
+     */
+    @Override
+    public void afterRestore() {
+        sesClient = SesClient.create();
+    }
+
+    static SendEmailRequest buildRequest(String from, String to, String subject, String htmlBody, String textBody) {
         Destination destination = Destination.builder()
                 .toAddresses(to)
                 .build();
@@ -53,12 +75,10 @@ public class ProductionEmailSender implements EmailSender {
                 .body(body)
                 .build();
 
-        SendEmailRequest request = SendEmailRequest.builder()
+        return SendEmailRequest.builder()
                 .source(from)
                 .destination(destination)
                 .message(message)
                 .build();
-
-        sesClient.sendEmail(request);
     }
 }
@@ -0,0 +1,297 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.metrics.Metrics;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link EmailSender} decorator that keeps sends below the maximum send rate of the SES
+ * account and retries the sends that SES throttles nonetheless.
+ * <p>
+ * The decorator:
+ * - Takes a token from a {@link TokenBucket} before each send, waiting when the bucket is empty.
+ *   The bucket refills at the configured maximum rate and holds up to the configured burst.
+ * - Halves the rate when SES rejects a send with a `Throttling` error and grows it back gradually
+ *   as sends succeed (AIMD), so that the sends of several concurrent execution environments
+ *   settle below the account limit together.
+ * - Queues a throttled send for a retry after an exponentially growing delay with random jitter,
+ *   so that retries do not arrive at SES in lockstep. The number of queued retries is bounded;
+ *   once the queue is full, or a send has been throttled too many times, the send fails.
+ * - Records the time each send waited for a token, the depth of the retry queue, and the number
+ *   of throttled sends in {@link Metrics}.
+ * <p>
+ * Rejections because the daily sending quota is exhausted are not retried, since they would not
+ * succeed before the quota is reset.
+ * <p>
+ * Because throttled attempts are retried, the outcome of an email is known only to this sender.
+ * {@link #flush()} therefore waits for every email, including its retries, and reports the emails
+ * that ultimately failed; failures of individual attempts reported by the decorated sender are
+ * superseded.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public class RateLimitedEmailSender implements EmailSender {
+
+    private static final Duration RETRY_BASE_DELAY = Duration.ofMillis(100);
+    private static final Duration RETRY_MAX_DELAY = Duration.ofSeconds(5);
+    private static final Executor RETRY_EXECUTOR = runnable -> Thread.ofVirtual().start(runnable);
+
+    private final EmailSender delegate;
+    private final TokenBucket bucket;
+    private final int maxRetries;
+    private final int maxQueuedRetries;
+    private final long retryBaseDelayNanos;
+    private final Metrics metrics;
+    private final AtomicInteger queuedRetries = new AtomicInteger();
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a RateLimitedEmailSender.
+     *
+     * @param delegate         The EmailSender that sends the emails.
+     * @param maxRate          The maximum number of emails sent per second.
+     * @param burst            The maximum number of emails sent at once after a pause.
+     * @param maxRetries       The maximum number of times a throttled email is retried.
+     * @param maxQueuedRetries The maximum number of throttled emails waiting to be retried.
+     * @param metrics          The Metrics in which waits and throttled sends are recorded.
+     */
+    public RateLimitedEmailSender(EmailSender delegate, double maxRate, int burst, int maxRetries,
+                                  int maxQueuedRetries, Metrics metrics) {
+        this(delegate, new TokenBucket(maxRate, burst, System::nanoTime), maxRetries, maxQueuedRetries,
+                RETRY_BASE_DELAY, metrics);
+    }
+
+    /**
+     * Constructs a RateLimitedEmailSender that takes its tokens from a bucket shared with other
+     * senders, so that they stay below the rate together.
+     *
+     * @param delegate         The EmailSender that sends the emails.
+     * @param bucket           The bucket from which a token is taken before each send.
+     * @param maxRetries       The maximum number of times a throttled email is retried.
+     * @param maxQueuedRetries The maximum number of throttled emails waiting to be retried.
+     * @param metrics          The Metrics in which waits and throttled sends are recorded.
+     */
+    RateLimitedEmailSender(EmailSender delegate, TokenBucket bucket, int maxRetries, int maxQueuedRetries,
+                           Metrics metrics) {
+        this(delegate, bucket, maxRetries, maxQueuedRetries, RETRY_BASE_DELAY, metrics);
+    }
+
+    RateLimitedEmailSender(EmailSender delegate, TokenBucket bucket, int maxRetries, int maxQueuedRetries,
+                           Duration retryBaseDelay, Metrics metrics) {
+        this.delegate = delegate;
+        this.bucket = bucket;
+        this.maxRetries = maxRetries;
+        this.maxQueuedRetries = maxQueuedRetries;
+        this.retryBaseDelayNanos = retryBaseDelay.toNanos();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends an email, waiting for the send rate limit and for any retries.
+     *
+     * @param from      The email address of the sender.
+     * @param to        The email address of the recipient.
+     * @param subject   The subject line of the email.
+     * @param htmlBody  The HTML content of the email body.
+     * @param textBody  The plain text content of the email body.
+     */
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody) {
+        send(from, to, subject, htmlBody, textBody, List.of());
+    }
+
+    /**
+     * Sends an email with attachments, waiting for the send rate limit and for any retries.
+     *
+     * @param from        The email address of the sender.
+     * @param to          The email address of the recipient.
+     * @param subject     The subject line of the email.
+     * @param htmlBody    The HTML content of the email body.
+     * @param textBody    The plain text content of the email body.
+     * @param attachments The files attached to the email; may be empty.
+     */
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody,
+                     List<EmailAttachment> attachments) {
+        try {
+            sendAsync(from, to, subject, htmlBody, textBody, attachments).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts sending an email once the send rate limit allows it.
+     *
+     * @param from      The email address of the sender.
+     * @param to        The email address of the recipient.
+     * @param subject   The subject line of the email.
+     * @param htmlBody  The HTML content of the email body.
+     * @param textBody  The plain text content of the email body.
+     * @return A future that completes when the email has been accepted, possibly after being
+     *         retried, or completes exceptionally if sending it failed.
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody) {
+        return sendAsync(from, to, subject, htmlBody, textBody, List.of());
+    }
+
+    /**
+     * Starts sending an email with attachments once the send rate limit allows it.
+     *
+     * @param from        The email address of the sender.
+     * @param to          The email address of the recipient.
+     * @param subject     The subject line of the email.
+     * @param htmlBody    The HTML content of the email body.
+     * @param textBody    The plain text content of the email body.
+     * @param attachments The files attached to the email; may be empty.
+     * @return A future that completes when the email has been accepted, possibly after being
+     *         retried, or completes exceptionally if sending it failed.
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody, List<EmailAttachment> attachments) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        pending.add(result);
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                failures.add(error);
+            }
+            pending.remove(result);
+        });
+        attempt(new Email(from, to, subject, htmlBody, textBody, attachments), 0, result);
+        return result;
+    }
+
+    /**
+     * Waits for every pending email, including its retries, and for the decorated sender.
+     *
+     * @throws RuntimeException If any email failed since the last flush. The first failure is the
+     *                          cause; the remaining failures are suppressed.
+     */
+    @Override
+    public void flush() {
+        CompletableFuture<?>[] waiting;
+        while ((waiting = pending.toArray(CompletableFuture[]::new)).length > 0) {
+            CompletableFuture.allOf(waiting).exceptionally(error -> null).join();
+        }
+        try {
+            delegate.flush();
+        } catch (RuntimeException e) {
+            // Superseded by the outcome of each email, which has been recorded above.
+        }
+
+        List<Throwable> errors = new ArrayList<>();
+        Throwable error;
+        while ((error = failures.poll()) != null) {
+            errors.add(error);
+        }
+        if (!errors.isEmpty()) {
+            RuntimeException exception = new RuntimeException(errors.size() + " email send(s) failed",
+                    errors.getFirst());
+            errors.stream().skip(1).forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint() {
+        delegate.beforeCheckpoint();
+    }
+
+    @Override
+    public void afterRestore() {
+        delegate.afterRestore();
+    }
+
+    private void attempt(Email email, int retries, CompletableFuture<Void> result) {
+        CompletableFuture<Void> sent;
+        try {
+            metrics.recordSendWait(bucket.acquire());
+            sent = email.attachments().isEmpty()
+                    ? delegate.sendAsync(email.from(), email.to(), email.subject(), email.htmlBody(), email.textBody())
+                    : delegate.sendAsync(email.from(), email.to(), email.subject(), email.htmlBody(), email.textBody(),
+                            email.attachments());
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((ignored, error) -> {
+            if (error == null) {
+                bucket.onSuccess();
+                result.complete(null);
+            } else if (isThrottling(error)) {
+                bucket.onThrottle();
+                retry(email, retries, result, unwrap(error));
+            } else {
+                result.completeExceptionally(unwrap(error));
+            }
+        });
+    }
+
+    private void retry(Email email, int retries, CompletableFuture<Void> result, Throwable error) {
+        if (retries >= maxRetries) {
+            metrics.recordThrottle(0);
+            result.completeExceptionally(error);
+            return;
+        }
+        int depth = queuedRetries.incrementAndGet();
+        if (depth > maxQueuedRetries) {
+            queuedRetries.decrementAndGet();
+            metrics.recordThrottle(0);
+            result.completeExceptionally(error);
+            return;
+        }
+        metrics.recordThrottle(depth);
+        CompletableFuture.runAsync(() -> {
+            queuedRetries.decrementAndGet();
+            attempt(email, retries + 1, result);
+        }, CompletableFuture.delayedExecutor(retryDelayNanos(retries), TimeUnit.NANOSECONDS, RETRY_EXECUTOR));
+    }
+
+    /**
+     * Returns a delay drawn uniformly between half of and the full exponential backoff for the
+     * attempt, which is capped at five seconds.
+     */
+    private long retryDelayNanos(int retries) {
+        long backoff = Math.min(RETRY_MAX_DELAY.toNanos(), retryBaseDelayNanos << Math.min(retries, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * Determines whether a send failed because the maximum send rate was exceeded.
+     *
+     * @param error The failure of a send.
+     * @return {@code true} if the send should be retried at a lower rate.
+     */
+    static boolean isThrottling(Throwable error) {
+        return unwrap(error) instanceof AwsServiceException exception
+                && exception.isThrottlingException()
+                && !String.valueOf(exception.getMessage()).contains("quota");
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private record Email(String from, String to, String subject, String htmlBody, String textBody,
+                         List<EmailAttachment> attachments) {
+    }
+}
@@ -0,0 +1,250 @@
+package com.megafarad.seshandler.sender;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.ses.SesClient;
+import software.amazon.awssdk.services.ses.model.RawMessage;
+import software.amazon.awssdk.services.ses.model.SendRawEmailRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * RawEmailSender is an implementation of the EmailSender interface that assembles each email as
+ * a MIME message itself and sends it through the `SendRawEmail` action of Amazon Simple Email
+ * Service (SES).
+ * <p>
+ * Compared with {@link ProductionEmailSender}, which describes each email with a tree of SDK
+ * builder objects, this sender:
+ * - Writes the message straight into pooled byte buffers, encoding the subject, HTML body, and
+ *   plain text body as UTF-8 and base64 in a single pass (see {@link MimeMessageWriter}), so the
+ *   only per-email allocation of the size of the message is the copy handed to the SDK.
+ * - Can attach files, such as the original SES notification or a delivery status report (see
+ *   {@link NotificationAttachment}).
+ * <p>
+ * An email without attachments is a `multipart/alternative` message with a plain text and an
+ * HTML part. Attachments are added by wrapping it in a `multipart/mixed` message.
+ * <p>
+ * A client created by this class is closed before a SnapStart snapshot is taken and created
+ * again after the snapshot is restored. A client passed to the constructor is left untouched.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public class RawEmailSender implements EmailSender {
+
+    static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 32;
+    private static final int HEADER_CAPACITY = 1024;
+
+    private final Supplier<SesClient> clientFactory;
+    private volatile SesClient sesClient;
+    private final ConcurrentLinkedQueue<MimeMessageWriter> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+    /**
+     * Constructs a RawEmailSender with a default SesClient.
+     */
+    public RawEmailSender() {
+        this.clientFactory = SesClient::create;
+        this.sesClient = clientFactory.get();
+    }
+
+    /**
+     * Constructs a RawEmailSender with the specified client.
+     *
+     * @param sesClient The SES client used to send emails.
+     */
+    public RawEmailSender(SesClient sesClient) {
+        this.clientFactory = null;
+        this.sesClient = sesClient;
+    }
+
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody) {
+        send(from, to, subject, htmlBody, textBody, List.of());
+    }
+
+    /**
+     * Sends an email with the specified details and attachments as a raw MIME message.
+     *
+     * @param from        The email address of the sender.
+     * @param to          The email address of the recipient.
+     * @param subject     The subject line of the email.
+     * @param htmlBody    The HTML content of the email body.
+     * @param textBody    The plain text content of the email body.
+     * @param attachments The files attached to the email; may be empty.
+     */
+    @Override
+    public void send(String from, String to, String subject, String htmlBody, String textBody,
+                     List<EmailAttachment> attachments) {
+        sesClient.sendRawEmail(buildRequest(from, to, subject, htmlBody, textBody, attachments));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                             String textBody, List<EmailAttachment> attachments) {
+        send(from, to, subject, htmlBody, textBody, attachments);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Closes the SES client and its connection pool before a SnapStart snapshot is taken, if the
+     * client was created by this sender.
+     */
+    @Override
+    public void beforeCheckpoint() {
+        if (clientFactory != null) {
+            sesClient.close();
+        }
+    }
+
+    /**
+     * Creates a new SES client after a SnapStart snapshot has been restored, if the previous
+     * client was created by this sender.
+     */
+    @Override
+    public void afterRestore() {
+        if (clientFactory != null) {
+            sesClient = clientFactory.get();
+        }
+    }
+
+    /**
+     * Builds the request that sends an email as a raw MIME message, writing the message into a
+     * pooled buffer.
+     */
+    SendRawEmailRequest buildRequest(String from, String to, String subject, String htmlBody, String textBody,
+                                     List<EmailAttachment> attachments) {
+        MimeMessageWriter writer = acquire(estimateSize(subject, htmlBody, textBody, attachments));
+        try {
+            writeMessage(writer, from, to, subject, htmlBody, textBody, attachments,
+                    Long.toHexString(ThreadLocalRandom.current().nextLong()));
+            RawMessage message = RawMessage.builder()
+                    .data(SdkBytes.fromByteArrayUnsafe(writer.toByteArray()))
+                    .build();
+            return SendRawEmailRequest.builder()
+                    .source(from)
+                    .destinations(to)
+                    .rawMessage(message)
+                    .build();
+        } finally {
+            release(writer);
+        }
+    }
+
+    /**
+     * Writes an email as a MIME message.
+     *
+     * @param writer         The writer to write the message to.
+     * @param boundarySuffix A random suffix making the multipart boundaries unique to the message.
+     */
+    static void writeMessage(MimeMessageWriter writer, String from, String to, String subject, String htmlBody,
+                             String textBody, List<EmailAttachment> attachments, String boundarySuffix) {
+        writer.addressHeader("From", from)
+                .addressHeader("To", to)
+                .header("Subject", subject == null ? "" : subject)
+                .ascii("MIME-Version: 1.0").crlf();
+
+        String alternative = "=_alt_" + boundarySuffix;
+        if (attachments.isEmpty()) {
+            writeAlternative(writer, alternative, htmlBody, textBody);
+            return;
+        }
+
+        String mixed = "=_mixed_" + boundarySuffix;
+        writer.ascii("Content-Type: multipart/mixed; boundary=\"").ascii(mixed).ascii("\"").crlf()
+                .crlf()
+                .ascii("--").ascii(mixed).crlf();
+        writeAlternative(writer, alternative, htmlBody, textBody);
+        for (EmailAttachment attachment : attachments) {
+            String filename = asciiFilename(attachment.filename());
+            writer.ascii("--").ascii(mixed).crlf()
+                    .ascii("Content-Type: ").ascii(attachment.contentType()).ascii("; name=\"").ascii(filename)
+                    .ascii("\"").crlf()
+                    .ascii("Content-Disposition: attachment; filename=\"").ascii(filename).ascii("\"").crlf();
+            if (attachment.contentType().startsWith("message/")) {
+                byte[] content = attachment.content();
+                writer.crlf().bytes(content);
+                if (content.length == 0 || content[content.length - 1] != '\n') {
+                    writer.crlf();
+                }
+            } else {
+                writer.ascii("Content-Transfer-Encoding: base64").crlf()
+                        .crlf()
+                        .base64(attachment.content());
+            }
+        }
+        writer.ascii("--").ascii(mixed).ascii("--").crlf();
+    }
+
+    private static void writeAlternative(MimeMessageWriter writer, String boundary, String htmlBody,
+                                         String textBody) {
+        writer.ascii("Content-Type: multipart/alternative; boundary=\"").ascii(boundary).ascii("\"").crlf()
+                .crlf();
+        if (textBody != null || htmlBody == null) {
+            writer.ascii("--").ascii(boundary).crlf()
+                    .ascii("Content-Type: text/plain; charset=UTF-8").crlf()
+                    .ascii("Content-Transfer-Encoding: base64").crlf()
+                    .crlf()
+                    .base64Utf8(textBody == null ? "" : textBody);
+        }
+        if (htmlBody != null) {
+            writer.ascii("--").ascii(boundary).crlf()
+                    .ascii("Content-Type: text/html; charset=UTF-8").crlf()
+                    .ascii("Content-Transfer-Encoding: base64").crlf()
+                    .crlf()
+                    .base64Utf8(htmlBody);
+        }
+        writer.ascii("--").ascii(boundary).ascii("--").crlf();
+    }
+
+    private static String asciiFilename(String filename) {
+        StringBuilder ascii = new StringBuilder(filename.length());
+        for (int i = 0; i < filename.length(); i++) {
+            char c = filename.charAt(i);
+            ascii.append(c >= 0x20 && c < 0x7F && c != '"' && c != '\\' ? c : '_');
+        }
+        return ascii.toString();
+    }
+
+    /**
+     * Estimates the size of the message from the length of its parts, assuming mostly ASCII text,
+     * which grows by a third when base64-encoded.
+     */
+    private static int estimateSize(String subject, String htmlBody, String textBody,
+                                    List<EmailAttachment> attachments) {
+        long characters = length(subject) + length(htmlBody) + length(textBody);
+        for (EmailAttachment attachment : attachments) {
+            characters += attachment.content().length + 256;
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 8, HEADER_CAPACITY + characters * 4 / 3 + characters / 38);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private MimeMessageWriter acquire(int capacity) {
+        MimeMessageWriter writer = pool.poll();
+        if (writer == null) {
+            return new MimeMessageWriter(capacity);
+        }
+        pooledBuffers.decrementAndGet();
+        writer.reset(capacity);
+        return writer;
+    }
+
+    private void release(MimeMessageWriter writer) {
+        if (writer.capacity() > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            pool.offer(writer);
+        } else {
+            pooledBuffers.decrementAndGet();
+        }
+    }
+}
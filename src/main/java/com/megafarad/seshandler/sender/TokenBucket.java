@@ -0,0 +1,128 @@
+package com.megafarad.seshandler.sender;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket whose refill rate adapts to throttling with additive increase and
+ * multiplicative decrease (AIMD).
+ * <p>
+ * Tokens accumulate at the current rate up to the capacity of the bucket, which allows short
+ * bursts. Each send takes one token; when none is left, the send is reserved a token that will be
+ * refilled in the future and waits until then, so concurrent senders are released in the order in
+ * which they asked and never exceed the rate together.
+ * <p>
+ * The rate starts at the maximum rate and:
+ * - Is halved when a send is throttled, at most once per second so that a burst of throttled
+ *   sends that were already in flight counts as a single signal, and the bucket is emptied. The
+ *   rate never drops below 1/32 of the maximum rate.
+ * - Grows again by one send per second for every second of successful sends, up to the maximum
+ *   rate.
+ */
+final class TokenBucket {
+
+    private static final double MIN_RATE_FRACTION = 1.0 / 32;
+    private static final double ADDITIVE_INCREASE = 1.0;
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxRate;
+    private final double minRate;
+    private final double capacity;
+    private final LongSupplier nanoTime;
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long lastDecrease;
+
+    /**
+     * Creates a full TokenBucket.
+     *
+     * @param maxRate  The maximum number of tokens refilled per second.
+     * @param capacity The maximum number of tokens held.
+     * @param nanoTime The source of the current time, in nanoseconds.
+     */
+    TokenBucket(double maxRate, double capacity, LongSupplier nanoTime) {
+        if (maxRate <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid rate " + maxRate + " or capacity " + capacity);
+        }
+        this.maxRate = maxRate;
+        this.minRate = maxRate * MIN_RATE_FRACTION;
+        this.capacity = capacity;
+        this.nanoTime = nanoTime;
+        this.rate = maxRate;
+        this.tokens = capacity;
+        this.lastRefill = nanoTime.getAsLong();
+        this.lastDecrease = lastRefill - DECREASE_INTERVAL_NANOS;
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @return The time waited, in nanoseconds.
+     * @throws IllegalStateException If the thread is interrupted while waiting.
+     */
+    long acquire() {
+        long wait = reserve();
+        if (wait > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to send email", e);
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Takes a token, borrowing it from the future if none is available.
+     *
+     * @return The time until the token is available, in nanoseconds; zero if it is available now.
+     */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / rate * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Signals that a send succeeded, growing the rate towards the maximum rate.
+     */
+    synchronized void onSuccess() {
+        if (rate < maxRate) {
+            refill();
+            rate = Math.min(maxRate, rate + ADDITIVE_INCREASE / rate);
+        }
+    }
+
+    /**
+     * Signals that a send was throttled, halving the rate unless it was halved less than a second
+     * ago, and emptying the bucket.
+     */
+    synchronized void onThrottle() {
+        refill();
+        long now = lastRefill;
+        if (now - lastDecrease >= DECREASE_INTERVAL_NANOS) {
+            rate = Math.max(minRate, rate / 2);
+            lastDecrease = now;
+        }
+        tokens = Math.min(tokens, 0);
+    }
+
+    /**
+     * Returns the current rate.
+     *
+     * @return The number of tokens refilled per second.
+     */
+    synchronized double rate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / NANOS_PER_SECOND * rate);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,284 @@
+package com.megafarad.seshandler.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A cache of the certificates that SNS signs messages with, keyed by their `SigningCertURL`.
+ * <p>
+ * SNS signs every message with one of a few certificates, so fetching and parsing the
+ * certificate of each message would add a network round trip and an X.509 parse to every
+ * request. Certificates are looked up:
+ * - In memory, as parsed {@link X509Certificate}s.
+ * - In the cache directory, if any, where each certificate is kept as the PEM file fetched from
+ *   SNS, named after the SHA-256 hash of its URL, so that it survives restarts.
+ * - At the URL, which must be an `https` URL of a `.pem` file on a trusted host, by default
+ *   `sns.<region>.amazonaws.com`, without a port, user info, query, or fragment.
+ * <p>
+ * A certificate that is not valid at the time it is looked up is discarded and fetched again.
+ * Both the memory and the cache directory hold at most a number of certificates, so that
+ * messages naming many distinct URLs cannot grow them without bound. The least recently used
+ * certificate is evicted from memory first, and the file least recently fetched or read is
+ * deleted from the directory first.
+ * <p>
+ * Instances are safe for use by multiple threads. Concurrent misses for the same URL may fetch
+ * the certificate more than once.
+ */
+public class CertificateCache {
+
+    /**
+     * The hosts that serve the signing certificates of SNS.
+     */
+    public static final Pattern SNS_HOSTS = Pattern.compile("sns\\.[a-z0-9-]+\\.amazonaws\\.com(\\.cn)?");
+
+    /**
+     * The number of certificates kept in memory and on disk unless specified otherwise.
+     */
+    public static final int DEFAULT_MAX_CERTIFICATES = 100;
+
+    private static final String EXTENSION = ".pem";
+
+    /**
+     * Fetches the PEM-encoded certificate at a URL.
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+
+        /**
+         * Fetches a certificate.
+         *
+         * @param url The `SigningCertURL`.
+         * @return The PEM-encoded certificate.
+         * @throws IOException If the certificate could not be fetched.
+         */
+        byte[] fetch(URI url) throws IOException;
+    }
+
+    private final LinkedHashMap<String, X509Certificate> certificates = new LinkedHashMap<>(16, 0.75f, true);
+    private final Path directory;
+    private final Fetcher fetcher;
+    private final Pattern trustedHosts;
+    private final int maxCertificates;
+
+    /**
+     * Constructs a CertificateCache that fetches certificates from SNS over HTTPS.
+     *
+     * @param directory The directory in which fetched certificates are kept, or {@code null} to
+     *                  keep them in memory only.
+     */
+    public CertificateCache(Path directory) {
+        this(directory, CertificateCache::download, SNS_HOSTS);
+    }
+
+    /**
+     * Constructs a CertificateCache.
+     *
+     * @param directory    The directory in which fetched certificates are kept, or {@code null} to
+     *                     keep them in memory only.
+     * @param fetcher      Fetches certificates that are not cached.
+     * @param trustedHosts The hosts from which certificates are accepted.
+     */
+    public CertificateCache(Path directory, Fetcher fetcher, Pattern trustedHosts) {
+        this(directory, fetcher, trustedHosts, DEFAULT_MAX_CERTIFICATES);
+    }
+
+    /**
+     * Constructs a CertificateCache holding at most a number of certificates.
+     *
+     * @param directory       The directory in which fetched certificates are kept, or {@code null}
+     *                        to keep them in memory only.
+     * @param fetcher         Fetches certificates that are not cached.
+     * @param trustedHosts    The hosts from which certificates are accepted.
+     * @param maxCertificates The maximum number of certificates kept in memory and in the directory.
+     */
+    public CertificateCache(Path directory, Fetcher fetcher, Pattern trustedHosts, int maxCertificates) {
+        if (maxCertificates < 1) {
+            throw new IllegalArgumentException("maxCertificates must be at least 1: " + maxCertificates);
+        }
+        this.directory = directory;
+        this.fetcher = fetcher;
+        this.trustedHosts = trustedHosts;
+        this.maxCertificates = maxCertificates;
+    }
+
+    /**
+     * Indicates whether a `SigningCertURL` may be fetched: an `https` URL of a `.pem` file on a
+     * trusted host, without a port, user info, query, or fragment.
+     *
+     * @param url The URL.
+     * @return {@code true} if certificates from this URL are trusted.
+     */
+    public boolean trusts(String url) {
+        if (url == null) {
+            return false;
+        }
+        try {
+            URI uri = new URI(url);
+            return "https".equals(uri.getScheme()) && uri.getHost() != null
+                    && trustedHosts.matcher(uri.getHost()).matches()
+                    && uri.getPort() == -1 && uri.getRawUserInfo() == null
+                    && uri.getRawQuery() == null && uri.getRawFragment() == null
+                    && uri.getPath() != null && uri.getPath().endsWith(EXTENSION);
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the certificate at a URL, from the cache if possible.
+     *
+     * @param url The `SigningCertURL`, which must be trusted.
+     * @return The certificate.
+     * @throws IllegalArgumentException If the URL is not trusted.
+     * @throws IOException              If the certificate could not be fetched, is invalid, or has
+     *                                  expired.
+     */
+    public X509Certificate get(String url) throws IOException {
+        X509Certificate certificate = cached(url);
+        if (certificate != null && isCurrent(certificate)) {
+            return certificate;
+        }
+        if (!trusts(url)) {
+            throw new IllegalArgumentException("Untrusted certificate URL: " + url);
+        }
+        Path file = directory == null ? null : directory.resolve(fileName(url));
+        if (file != null && Files.exists(file)) {
+            try {
+                certificate = parse(Files.readAllBytes(file));
+                if (isCurrent(certificate)) {
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                    remember(url, certificate);
+                    return certificate;
+                }
+            } catch (CertificateException e) {
+                Files.deleteIfExists(file);
+            }
+        }
+        byte[] pem = fetcher.fetch(URI.create(url));
+        try {
+            certificate = parse(pem);
+        } catch (CertificateException e) {
+            throw new IOException("Invalid certificate: " + url, e);
+        }
+        if (!isCurrent(certificate)) {
+            throw new IOException("Certificate not valid now: " + url);
+        }
+        if (file != null) {
+            store(file, pem);
+            prune(file);
+        }
+        remember(url, certificate);
+        return certificate;
+    }
+
+    private synchronized X509Certificate cached(String url) {
+        return certificates.get(url);
+    }
+
+    private synchronized void remember(String url, X509Certificate certificate) {
+        certificates.put(url, certificate);
+        Iterator<X509Certificate> eldest = certificates.values().iterator();
+        while (certificates.size() > maxCertificates && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Deletes the certificates least recently fetched or read from the directory until it holds
+     * no more than the maximum number, keeping the one just stored.
+     */
+    private void prune(Path stored) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(directory)) {
+            files = listed.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).toList();
+        }
+        if (files.size() <= maxCertificates) {
+            return;
+        }
+        List<Path> oldest = files.stream()
+                .filter(file -> !file.equals(stored))
+                .sorted(Comparator.comparing(CertificateCache::lastModified))
+                .limit(files.size() - maxCertificates)
+                .toList();
+        for (Path file : oldest) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static X509Certificate parse(byte[] pem) throws CertificateException {
+        return (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(pem));
+    }
+
+    private static boolean isCurrent(X509Certificate certificate) {
+        try {
+            certificate.checkValidity();
+            return true;
+        } catch (CertificateException e) {
+            return false;
+        }
+    }
+
+    private static void store(Path file, byte[] pem) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".writing");
+        Files.write(temporary, pem);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String fileName(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] download(URI url) throws IOException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        try {
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(url).timeout(Duration.ofSeconds(10))
+                    .GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IOException("Fetching certificate failed with HTTP " + response.statusCode() + ": " + url);
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching certificate: " + url, e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.megafarad.seshandler.server;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * A Lambda {@link Context} for handling notifications outside of Lambda, e.g. in
+ * {@link SNSHttpServer}.
+ * <p>
+ * Each context stands for one batch of notifications: its remaining time counts down from the
+ * timeout it was created with, and its logger writes to standard output, as the Lambda runtime
+ * does.
+ */
+public class LocalContext implements Context {
+
+    /**
+     * A logger that writes each message to standard output.
+     */
+    public static final LambdaLogger STDOUT_LOGGER = new LambdaLogger() {
+        @Override
+        public void log(String message) {
+            System.out.println(message);
+        }
+
+        @Override
+        public void log(byte[] message) {
+            log(new String(message, StandardCharsets.UTF_8));
+        }
+    };
+
+    private final String functionName;
+    private final String requestId;
+    private final long deadlineMillis;
+    private final LambdaLogger logger;
+
+    /**
+     * Constructs a LocalContext that logs to standard output.
+     *
+     * @param functionName The name reported as the function name, e.g. in metrics.
+     * @param requestId    The identifier of the batch.
+     * @param timeout      The time the batch may take.
+     */
+    public LocalContext(String functionName, String requestId, Duration timeout) {
+        this(functionName, requestId, timeout, STDOUT_LOGGER);
+    }
+
+    /**
+     * Constructs a LocalContext.
+     *
+     * @param functionName The name reported as the function name, e.g. in metrics.
+     * @param requestId    The identifier of the batch.
+     * @param timeout      The time the batch may take.
+     * @param logger       The logger handed to the handlers.
+     */
+    public LocalContext(String functionName, String requestId, Duration timeout, LambdaLogger logger) {
+        this.functionName = functionName;
+        this.requestId = requestId;
+        this.deadlineMillis = System.currentTimeMillis() + timeout.toMillis();
+        this.logger = logger;
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return requestId;
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return null;
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return null;
+    }
+
+    @Override
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return null;
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, deadlineMillis - System.currentTimeMillis()));
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return logger;
+    }
+}
@@ -0,0 +1,79 @@
+package com.megafarad.seshandler.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The JSON document that SNS posts to an HTTP(S) subscription endpoint.
+ * <p>
+ * Its `Type` is `SubscriptionConfirmation` when the subscription is created, `Notification` for
+ * each published message, and `UnsubscribeConfirmation` when the subscription is deleted. Fields
+ * that do not apply to a type are {@code null}.
+ *
+ * @param type             The type of the SNS message.
+ * @param messageId        The unique identifier of the SNS message.
+ * @param token            The token of a subscription or unsubscribe confirmation.
+ * @param topicArn         The ARN of the topic the message was published to.
+ * @param subject          The subject of a notification, if any.
+ * @param message          The message; for a notification, the SES notification as JSON.
+ * @param timestamp        When the message was published.
+ * @param signatureVersion The version of the SNS signature.
+ * @param signature        The Base64-encoded signature of the message.
+ * @param signingCertUrl   The URL of the certificate that signed the message.
+ * @param subscribeUrl     The URL to visit to confirm a subscription.
+ * @param unsubscribeUrl   The URL to visit to unsubscribe from the topic.
+ */
+public record SNSEnvelope(
+        String type,
+        String messageId,
+        String token,
+        String topicArn,
+        String subject,
+        String message,
+        String timestamp,
+        String signatureVersion,
+        String signature,
+        String signingCertUrl,
+        String subscribeUrl,
+        String unsubscribeUrl
+) {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Parses an SNS message. Only string fields at the top level are read; nested objects, such as
+     * `MessageAttributes`, are skipped.
+     *
+     * @param json The body of the POST request.
+     * @return The envelope.
+     * @throws IOException If the body is not a JSON object with a `Type`.
+     */
+    public static SNSEnvelope parse(String json) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("SNS message is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.VALUE_STRING) {
+                    fields.put(field, parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (fields.get("Type") == null) {
+            throw new IOException("SNS message has no Type");
+        }
+        return new SNSEnvelope(fields.get("Type"), fields.get("MessageId"), fields.get("Token"),
+                fields.get("TopicArn"), fields.get("Subject"), fields.get("Message"), fields.get("Timestamp"),
+                fields.get("SignatureVersion"), fields.get("Signature"), fields.get("SigningCertURL"),
+                fields.get("SubscribeURL"), fields.get("UnsubscribeURL"));
+    }
+}
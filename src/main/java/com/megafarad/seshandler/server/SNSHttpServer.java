@@ -0,0 +1,391 @@
+package com.megafarad.seshandler.server;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.handler.sns.SNSMessageHandler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * An HTTP endpoint for SNS HTTP(S) subscriptions, built on the JDK {@link HttpServer}, that runs
+ * the notification pipeline as a long-running process, e.g. in a container, instead of in Lambda.
+ * <p>
+ * SNS posts one message per request:
+ * - `SubscriptionConfirmation`: the subscription is confirmed by visiting its `SubscribeURL`,
+ *   which must be an `https` URL of an SNS endpoint.
+ * - `Notification`: the SES notification in its `Message` is queued, handed to an
+ *   {@link SNSMessageHandler} together with the other queued notifications, and acknowledged with
+ *   `200` once handled, or with `500` if it could not be handled, so that SNS retries it.
+ * - `UnsubscribeConfirmation`: logged and acknowledged.
+ * <p>
+ * Unless disabled, the signature of every message is verified by an {@link SNSSignatureVerifier}
+ * before it is acted on, and messages with a missing or invalid signature are answered with
+ * `403`.
+ * <p>
+ * Each request is served on its own virtual thread. Notifications wait in a bounded queue, from
+ * which a single dispatcher thread takes batches of up to the maximum batch size, each with its
+ * own {@link Context} created by the context factory. Every batch is therefore handled and
+ * flushed like the SNS event of one Lambda invocation. When the queue is full, requests are
+ * answered with `503` and a `Retry-After` header at once, which makes SNS back off and retry
+ * according to the delivery policy of the subscription. `GET` requests are answered with `200`
+ * so the endpoint can serve as a health check.
+ * <p>
+ * Responses have a known length, so connections are kept alive between requests; the JDK closes
+ * them once idle for `sun.net.httpserver.idleInterval` seconds (30 by default).
+ */
+public class SNSHttpServer implements AutoCloseable {
+
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    /**
+     * Confirms a subscription by visiting its `SubscribeURL`.
+     */
+    @FunctionalInterface
+    public interface SubscriptionConfirmer {
+
+        /**
+         * Confirms a subscription.
+         *
+         * @param subscribeUrl The `SubscribeURL` of the `SubscriptionConfirmation` message.
+         * @throws IOException If the subscription could not be confirmed.
+         */
+        void confirm(URI subscribeUrl) throws IOException;
+    }
+
+    private record Pending(String message, CompletableFuture<Boolean> handled) { }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SNSMessageHandler handler;
+    private final Function<String, Context> contextFactory;
+    private final SubscriptionConfirmer confirmer;
+    private final SNSSignatureVerifier verifier;
+    private final Set<String> topicArns;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatchSize;
+    private final Duration requestTimeout;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs an SNSHttpServer bound to the specified address. The server accepts requests
+     * once {@link #start()} is called.
+     *
+     * @param address        The address to listen on; port 0 picks a free port.
+     * @param path           The path to which SNS posts.
+     * @param handler        The SNSMessageHandler that handles each batch of notifications.
+     * @param contextFactory Creates the Context of a batch from its request identifier.
+     * @param confirmer      Confirms subscriptions.
+     * @param verifier       Verifies the signature of each message, or {@code null} to accept
+     *                       unsigned messages, e.g. behind a trusted proxy that verifies them.
+     * @param topicArns      The topics whose messages are accepted, or an empty set to accept any topic.
+     * @param queueCapacity  The maximum number of notifications waiting to be handled.
+     * @param maxBatchSize   The maximum number of notifications handled as one batch.
+     * @param requestTimeout How long a request waits for its notification to be handled.
+     * @throws IOException If the server cannot be bound.
+     */
+    public SNSHttpServer(InetSocketAddress address, String path, SNSMessageHandler handler,
+                         Function<String, Context> contextFactory, SubscriptionConfirmer confirmer,
+                         SNSSignatureVerifier verifier, Set<String> topicArns, int queueCapacity,
+                         int maxBatchSize, Duration requestTimeout)
+            throws IOException {
+        this.handler = handler;
+        this.contextFactory = contextFactory;
+        this.confirmer = confirmer;
+        this.verifier = verifier;
+        this.topicArns = Set.copyOf(topicArns);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.requestTimeout = requestTimeout;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext(path, this::serve);
+        this.dispatcher = Thread.ofPlatform().name("sns-dispatcher").unstarted(this::dispatch);
+    }
+
+    /**
+     * Constructs an SNSHttpServer configured from environment variables, around an
+     * SNSMessageHandler that is itself configured from the environment.
+     * <p>
+     * The server listens on `PORT` (8080 by default) at `SERVER_PATH` (`/` by default), accepts
+     * the topics listed, comma-separated, in `SNS_TOPIC_ARNS` (any topic by default), queues up
+     * to `SERVER_QUEUE_CAPACITY` notifications (1000 by default), handles them in batches of up
+     * to `SERVER_MAX_BATCH_SIZE` (10 by default), and lets each request wait
+     * `SERVER_REQUEST_TIMEOUT_SECONDS` (30 by default). Signatures are verified unless
+     * `SNS_VERIFY_SIGNATURES` is `false`, with signing certificates kept in memory and, when
+     * `SNS_CERTIFICATE_CACHE_DIR` is set, in that directory. Batches are reported under the function
+     * name in `AWS_LAMBDA_FUNCTION_NAME` (`ses-notification-handler` by default).
+     *
+     * @return The server, not yet started.
+     * @throws IOException If the server cannot be bound.
+     */
+    public static SNSHttpServer fromEnv() throws IOException {
+        String functionName = getEnvVar("AWS_LAMBDA_FUNCTION_NAME", "ses-notification-handler");
+        Duration requestTimeout = Duration.ofSeconds(Long.parseLong(getEnvVar("SERVER_REQUEST_TIMEOUT_SECONDS",
+                "30")));
+        Set<String> topicArns = Arrays.stream(getEnvVar("SNS_TOPIC_ARNS", "").split(","))
+                .map(String::strip)
+                .filter(arn -> !arn.isEmpty())
+                .collect(Collectors.toSet());
+        boolean verifySignatures = Boolean.parseBoolean(getEnvVar("SNS_VERIFY_SIGNATURES", "true"));
+        String certificatePath = getEnvVar("SNS_CERTIFICATE_CACHE_DIR", "");
+        Path certificateDirectory = certificatePath.isEmpty() ? null : Path.of(certificatePath);
+        return new SNSHttpServer(new InetSocketAddress(Integer.parseInt(getEnvVar("PORT", "8080"))),
+                getEnvVar("SERVER_PATH", "/"),
+                new SNSMessageHandler(),
+                requestId -> new LocalContext(functionName, requestId, requestTimeout),
+                SNSHttpServer::visit,
+                verifySignatures ? new SNSSignatureVerifier(new CertificateCache(certificateDirectory)) : null,
+                topicArns,
+                Integer.parseInt(getEnvVar("SERVER_QUEUE_CAPACITY", "1000")),
+                Integer.parseInt(getEnvVar("SERVER_MAX_BATCH_SIZE", "10")),
+                requestTimeout);
+    }
+
+    /**
+     * Runs an SNSHttpServer configured from environment variables until the process is stopped.
+     *
+     * @param args Ignored.
+     * @throws IOException If the server cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        SNSHttpServer server = fromEnv();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        LocalContext.STDOUT_LOGGER.log("Listening for SNS messages on port " + server.port());
+    }
+
+    /**
+     * Starts accepting requests and handling notifications.
+     */
+    public void start() {
+        dispatcher.start();
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server: new notifications are refused, the queued ones are handled and
+     * acknowledged, and then the server stops listening.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (dispatcher.isAlive()) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        server.stop(1);
+        executor.close();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if ("GET".equals(method) || "HEAD".equals(method)) {
+                respond(exchange, 200, "OK");
+                return;
+            }
+            if (!"POST".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD, POST");
+                respond(exchange, 405, "Method not allowed");
+                return;
+            }
+            String body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respond(exchange, 413, "Message too large");
+                return;
+            }
+            SNSEnvelope envelope;
+            try {
+                envelope = SNSEnvelope.parse(body);
+            } catch (IOException e) {
+                respond(exchange, 400, "Invalid SNS message: " + e.getMessage());
+                return;
+            }
+            if (!topicArns.isEmpty() && !topicArns.contains(envelope.topicArn())) {
+                respond(exchange, 403, "Topic not accepted");
+                return;
+            }
+            if (verifier != null && !verify(exchange, envelope)) {
+                return;
+            }
+            switch (envelope.type()) {
+                case "Notification" -> handleNotification(exchange, envelope);
+                case "SubscriptionConfirmation" -> confirmSubscription(exchange, envelope);
+                case "UnsubscribeConfirmation" -> {
+                    LocalContext.STDOUT_LOGGER.log("Unsubscribed from " + envelope.topicArn());
+                    respond(exchange, 200, "OK");
+                }
+                default -> respond(exchange, 400, "Unknown SNS message type: " + envelope.type());
+            }
+        }
+    }
+
+    private boolean verify(HttpExchange exchange, SNSEnvelope envelope) throws IOException {
+        try {
+            if (verifier.verify(envelope)) {
+                return true;
+            }
+            respond(exchange, 403, "Invalid signature");
+        } catch (IOException e) {
+            LocalContext.STDOUT_LOGGER.log("Failed to verify message " + envelope.messageId() + ": " + e.getMessage());
+            respond(exchange, 502, "Signing certificate unavailable");
+        }
+        return false;
+    }
+
+    private void handleNotification(HttpExchange exchange, SNSEnvelope envelope) throws IOException {
+        Pending pending = new Pending(envelope.message(), new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, "Too many notifications");
+            return;
+        }
+        try {
+            boolean handled = pending.handled().get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            respond(exchange, handled ? 200 : 500, handled ? "OK" : "Notification not handled");
+        } catch (TimeoutException e) {
+            respond(exchange, 503, "Notification not handled in time");
+        } catch (ExecutionException e) {
+            respond(exchange, 500, "Notification not handled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Server stopping");
+        }
+    }
+
+    private void confirmSubscription(HttpExchange exchange, SNSEnvelope envelope) throws IOException {
+        URI subscribeUrl;
+        try {
+            subscribeUrl = new URI(envelope.subscribeUrl() == null ? "" : envelope.subscribeUrl());
+        } catch (URISyntaxException e) {
+            subscribeUrl = null;
+        }
+        if (subscribeUrl == null || !"https".equals(subscribeUrl.getScheme()) || subscribeUrl.getHost() == null
+                || !CertificateCache.SNS_HOSTS.matcher(subscribeUrl.getHost()).matches()) {
+            respond(exchange, 400, "Invalid SubscribeURL");
+            return;
+        }
+        try {
+            confirmer.confirm(subscribeUrl);
+        } catch (IOException e) {
+            LocalContext.STDOUT_LOGGER.log("Failed to confirm subscription to " + envelope.topicArn() + ": "
+                    + e.getMessage());
+            respond(exchange, 502, "Subscription not confirmed");
+            return;
+        }
+        LocalContext.STDOUT_LOGGER.log("Confirmed subscription to " + envelope.topicArn());
+        respond(exchange, 200, "OK");
+    }
+
+    /**
+     * Takes batches of notifications from the queue until the server is closed and the queue is
+     * empty, and completes each notification with whether it was handled.
+     */
+    private void dispatch() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            Pending first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatchSize - 1);
+            List<String> messages = new ArrayList<>(batch.size());
+            batch.forEach(pending -> messages.add(pending.message()));
+            try {
+                Context context = contextFactory.apply(UUID.randomUUID().toString());
+                boolean[] failed = new boolean[batch.size()];
+                for (int index : handler.handleMessages(messages, context)) {
+                    failed[index] = true;
+                }
+                for (int i = 0; i < failed.length; i++) {
+                    batch.get(i).handled().complete(!failed[i]);
+                }
+            } catch (RuntimeException e) {
+                batch.forEach(pending -> pending.handled().completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            return null;
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void visit(URI url) throws IOException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        try {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(url).timeout(Duration.ofSeconds(10))
+                    .GET().build(), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("HTTP " + response.statusCode());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+}
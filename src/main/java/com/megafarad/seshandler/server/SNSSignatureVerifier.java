@@ -0,0 +1,161 @@
+package com.megafarad.seshandler.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies the signatures of SNS messages, so that an HTTP endpoint only acts on messages that
+ * SNS actually sent.
+ * <p>
+ * SNS signs a canonical string made of selected fields of the message, each as its name and its
+ * value on separate lines, in alphabetical order of the names:
+ * - Notification: `Message`, `MessageId`, `Subject` (when present), `Timestamp`, `TopicArn`,
+ *   `Type`.
+ * - SubscriptionConfirmation and UnsubscribeConfirmation: `Message`, `MessageId`,
+ *   `SubscribeURL`, `Timestamp`, `Token`, `TopicArn`, `Type`.
+ * <p>
+ * `SignatureVersion` 1 signs with SHA1withRSA and version 2 with SHA256withRSA. The certificate
+ * is looked up in a {@link CertificateCache}. {@link Signature} instances are pooled and reused
+ * across messages: requests are served on virtual threads, which would each create their own
+ * instance if it were kept per thread.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public class SNSSignatureVerifier {
+
+    private static final int MAX_POOLED_SIGNATURES = 64;
+
+    private final CertificateCache certificates;
+    private final SignaturePool sha1 = new SignaturePool("SHA1withRSA");
+    private final SignaturePool sha256 = new SignaturePool("SHA256withRSA");
+
+    /**
+     * Constructs an SNSSignatureVerifier.
+     *
+     * @param certificates The cache of signing certificates.
+     */
+    public SNSSignatureVerifier(CertificateCache certificates) {
+        this.certificates = certificates;
+    }
+
+    /**
+     * Verifies the signature of an SNS message.
+     *
+     * @param envelope The SNS message.
+     * @return {@code true} if the message was signed by a trusted SNS certificate; {@code false}
+     *         if it is unsigned, its signature version or certificate URL is not supported, or the
+     *         signature does not match.
+     * @throws IOException If the certificate could not be obtained.
+     */
+    public boolean verify(SNSEnvelope envelope) throws IOException {
+        SignaturePool pool = switch (envelope.signatureVersion() == null ? "" : envelope.signatureVersion()) {
+            case "1" -> sha1;
+            case "2" -> sha256;
+            default -> null;
+        };
+        String canonical = canonicalString(envelope);
+        if (pool == null || canonical == null || envelope.signature() == null
+                || !certificates.trusts(envelope.signingCertUrl())) {
+            return false;
+        }
+        byte[] signature;
+        try {
+            signature = Base64.getDecoder().decode(envelope.signature());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        X509Certificate certificate = certificates.get(envelope.signingCertUrl());
+        Signature verifier = pool.acquire();
+        try {
+            verifier.initVerify(certificate.getPublicKey());
+            verifier.update(canonical.getBytes(StandardCharsets.UTF_8));
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            return false;
+        } finally {
+            pool.release(verifier);
+        }
+    }
+
+    /**
+     * Builds the string that SNS signs for a message.
+     *
+     * @param envelope The SNS message.
+     * @return The canonical string, or {@code null} if the type of the message is not signed.
+     */
+    static String canonicalString(SNSEnvelope envelope) {
+        int messageLength = envelope.message() == null ? 0 : envelope.message().length();
+        StringBuilder canonical = new StringBuilder(256 + messageLength);
+        switch (envelope.type()) {
+            case "Notification" -> {
+                append(canonical, "Message", envelope.message());
+                append(canonical, "MessageId", envelope.messageId());
+                if (envelope.subject() != null) {
+                    append(canonical, "Subject", envelope.subject());
+                }
+                append(canonical, "Timestamp", envelope.timestamp());
+                append(canonical, "TopicArn", envelope.topicArn());
+                append(canonical, "Type", envelope.type());
+            }
+            case "SubscriptionConfirmation", "UnsubscribeConfirmation" -> {
+                append(canonical, "Message", envelope.message());
+                append(canonical, "MessageId", envelope.messageId());
+                append(canonical, "SubscribeURL", envelope.subscribeUrl());
+                append(canonical, "Timestamp", envelope.timestamp());
+                append(canonical, "Token", envelope.token());
+                append(canonical, "TopicArn", envelope.topicArn());
+                append(canonical, "Type", envelope.type());
+            }
+            default -> {
+                return null;
+            }
+        }
+        return canonical.toString();
+    }
+
+    private static void append(StringBuilder canonical, String name, String value) {
+        canonical.append(name).append('\n').append(value).append('\n');
+    }
+
+    /**
+     * A bounded pool of the Signature instances of one algorithm.
+     */
+    private static final class SignaturePool {
+
+        private final String algorithm;
+        private final ConcurrentLinkedQueue<Signature> pool = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        private SignaturePool(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        Signature acquire() {
+            Signature signature = pool.poll();
+            if (signature != null) {
+                pooled.decrementAndGet();
+                return signature;
+            }
+            try {
+                return Signature.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void release(Signature signature) {
+            if (pooled.incrementAndGet() <= MAX_POOLED_SIGNATURES) {
+                pool.offer(signature);
+            } else {
+                pooled.decrementAndGet();
+            }
+        }
+    }
+}
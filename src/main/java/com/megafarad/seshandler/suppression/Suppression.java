@@ -0,0 +1,26 @@
+package com.megafarad.seshandler.suppression;
+
+/**
+ * An entry of a {@link SuppressionList}: an address or a domain to which no email should be sent.
+ *
+ * @param key             The lowercase address, or the lowercase domain prefixed with `@`.
+ * @param reason          Why the address or domain is suppressed.
+ * @param expiresAtMillis When the suppression expires, in milliseconds since the epoch, or
+ *                        {@link #NEVER} if it does not expire.
+ */
+public record Suppression(String key, SuppressionReason reason, long expiresAtMillis) {
+
+    /**
+     * The expiry time of suppressions that do not expire.
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Indicates whether this entry suppresses a whole domain, including its subdomains.
+     *
+     * @return {@code true} for a domain, {@code false} for an address.
+     */
+    public boolean isDomain() {
+        return key.startsWith("@");
+    }
+}
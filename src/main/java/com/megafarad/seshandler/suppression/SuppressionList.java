@@ -0,0 +1,271 @@
+package com.megafarad.seshandler.suppression;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The addresses and domains to which no email should be sent, each with the reason it is
+ * suppressed and an optional expiry time.
+ * <p>
+ * The list is held as a memory-mapped {@link SuppressionSnapshot} overlaid by the changes made
+ * since the snapshot was written. {@link #save(Path)} merges the changes into a new snapshot,
+ * dropping expired suppressions, and maps it in place of the previous one. Keys are lowercase;
+ * a domain is keyed by the domain prefixed with `@`, so addresses and domains share one index.
+ * <p>
+ * Looking up an address takes one hash lookup for the address and one per label of its domain,
+ * from the most specific to the top-level domain, so a suppressed domain also covers its
+ * subdomains. Walking the parent domains of the reversed labels gives the prefix matching of a
+ * trie over reversed domains without building one.
+ * <p>
+ * This class is safe for use by multiple threads. A snapshot file must not be saved by several
+ * processes at the same time.
+ */
+public class SuppressionList {
+
+    private final Clock clock;
+    private final Map<String, Suppression> changes = new ConcurrentHashMap<>();
+    private volatile SuppressionSnapshot snapshot;
+
+    /**
+     * Constructs an empty SuppressionList.
+     *
+     * @param clock The clock against which suppressions expire.
+     */
+    public SuppressionList(Clock clock) {
+        this(SuppressionSnapshot.EMPTY, clock);
+    }
+
+    /**
+     * Constructs a SuppressionList holding the suppressions of a snapshot.
+     *
+     * @param snapshot The snapshot.
+     * @param clock    The clock against which suppressions expire.
+     */
+    public SuppressionList(SuppressionSnapshot snapshot, Clock clock) {
+        this.snapshot = snapshot;
+        this.clock = clock;
+    }
+
+    /**
+     * Loads the SuppressionList saved in a snapshot file, or creates an empty one if the file does
+     * not exist yet.
+     *
+     * @param path  The snapshot file.
+     * @param clock The clock against which suppressions expire.
+     * @return The suppression list.
+     * @throws RuntimeException If the file exists but cannot be read.
+     */
+    public static SuppressionList load(Path path, Clock clock) {
+        return new SuppressionList(Files.exists(path) ? SuppressionSnapshot.open(path) : SuppressionSnapshot.EMPTY,
+                clock);
+    }
+
+    /**
+     * Suppresses an address. An existing suppression of the address that expires later is kept.
+     *
+     * @param address The address, optionally enclosed in angle brackets after a display name.
+     * @param reason  Why the address is suppressed.
+     * @param ttl     How long the address stays suppressed, or {@code null} if it does not expire.
+     */
+    public void suppressAddress(String address, SuppressionReason reason, Duration ttl) {
+        suppress(addressKey(address), reason, ttl);
+    }
+
+    /**
+     * Suppresses a domain and its subdomains. An existing suppression of the domain that expires
+     * later is kept.
+     *
+     * @param domain The domain.
+     * @param reason Why the domain is suppressed.
+     * @param ttl    How long the domain stays suppressed, or {@code null} if it does not expire.
+     */
+    public void suppressDomain(String domain, SuppressionReason reason, Duration ttl) {
+        suppress(domainKey(domain), reason, ttl);
+    }
+
+    /**
+     * Removes the suppression of an address, if any. Suppressions of its domain are not affected.
+     *
+     * @param address The address.
+     */
+    public void removeAddress(String address) {
+        changes.put(addressKey(address), new Suppression(addressKey(address), SuppressionReason.MANUAL, 0));
+    }
+
+    /**
+     * Removes the suppression of a domain, if any.
+     *
+     * @param domain The domain.
+     */
+    public void removeDomain(String domain) {
+        changes.put(domainKey(domain), new Suppression(domainKey(domain), SuppressionReason.MANUAL, 0));
+    }
+
+    /**
+     * Finds the suppression that applies to an address: that of the address itself, or else that
+     * of its domain or the closest of its parent domains.
+     *
+     * @param address The address, optionally enclosed in angle brackets after a display name.
+     * @return The suppression, or {@code null} if the address is not suppressed.
+     */
+    public Suppression lookup(String address) {
+        long now = clock.millis();
+        String key = addressKey(address);
+        Suppression suppression = get(key, now);
+        int at = key.lastIndexOf('@');
+        if (suppression != null || at < 0) {
+            return suppression;
+        }
+        String domain = key.substring(at + 1);
+        while (!domain.isEmpty()) {
+            suppression = get("@" + domain, now);
+            if (suppression != null) {
+                return suppression;
+            }
+            int dot = domain.indexOf('.');
+            domain = dot < 0 ? "" : domain.substring(dot + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Indicates whether an address is suppressed, by itself or through its domain.
+     *
+     * @param address The address.
+     * @return {@code true} if no email should be sent to the address.
+     */
+    public boolean isSuppressed(String address) {
+        return lookup(address) != null;
+    }
+
+    /**
+     * Indicates whether the list changed since it was loaded or last saved.
+     *
+     * @return {@code true} if {@link #save(Path)} would write a different snapshot.
+     */
+    public boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Returns the suppressions that have not expired, ordered by key.
+     *
+     * @return The live suppressions.
+     */
+    public List<Suppression> entries() {
+        List<Suppression> entries = new ArrayList<>(merge(clock.millis()).values());
+        entries.sort(Comparator.comparing(Suppression::key));
+        return entries;
+    }
+
+    /**
+     * Writes the suppressions that have not expired as comma-separated lines of key, reason, and
+     * expiry time, ordered by key, e.g. `jane@example.com,BOUNCE,2024-01-01T00:00:00Z`. The expiry
+     * time is empty for suppressions that do not expire, and domains are prefixed with `@`. This
+     * lets senders that cannot read a snapshot filter their recipient lists.
+     *
+     * @param out Where to write the lines.
+     * @throws IOException If writing fails.
+     */
+    public void export(Appendable out) throws IOException {
+        for (Suppression suppression : entries()) {
+            out.append(suppression.key()).append(',').append(suppression.reason().name()).append(',');
+            if (suppression.expiresAtMillis() != Suppression.NEVER) {
+                out.append(Instant.ofEpochMilli(suppression.expiresAtMillis()).toString());
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Saves the list to a snapshot file and maps the new snapshot in place of the current one.
+     * Changes made while saving are kept for the next save: a saved change is only dropped if it
+     * was not replaced in the meantime.
+     *
+     * @param path The snapshot file.
+     * @throws RuntimeException If the snapshot cannot be written or mapped.
+     */
+    public synchronized void save(Path path) {
+        long now = clock.millis();
+        Map<String, Suppression> saved = Map.copyOf(changes);
+        SuppressionSnapshot.write(path, merge(now, saved).values(), now);
+        snapshot = SuppressionSnapshot.open(path);
+        saved.forEach((key, suppression) -> changes.remove(key, suppression));
+    }
+
+    /**
+     * Normalizes an address into its key.
+     *
+     * @param address The address, optionally enclosed in angle brackets after a display name.
+     * @return The lowercase address.
+     */
+    public static String addressKey(String address) {
+        int open = address.lastIndexOf('<');
+        int close = address.lastIndexOf('>');
+        String bare = open >= 0 && close > open ? address.substring(open + 1, close) : address;
+        return bare.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Normalizes a domain into its key.
+     *
+     * @param domain The domain, optionally prefixed with `@`.
+     * @return The lowercase domain prefixed with `@`.
+     */
+    public static String domainKey(String domain) {
+        String bare = domain.strip().toLowerCase(Locale.ROOT);
+        return bare.startsWith("@") ? bare : "@" + bare;
+    }
+
+    private void suppress(String key, SuppressionReason reason, Duration ttl) {
+        long now = clock.millis();
+        long expiresAt = ttl == null ? Suppression.NEVER : now + ttl.toMillis();
+        changes.compute(key, (ignored, change) -> {
+            Suppression current = change != null ? change : snapshot.get(key);
+            if (current != null && current.expiresAtMillis() > expiresAt) {
+                return change;
+            }
+            return new Suppression(key, reason, expiresAt);
+        });
+    }
+
+    private Suppression get(String key, long now) {
+        Suppression suppression = changes.get(key);
+        if (suppression == null) {
+            suppression = snapshot.get(key);
+        }
+        return suppression != null && suppression.expiresAtMillis() > now ? suppression : null;
+    }
+
+    private Map<String, Suppression> merge(long now) {
+        return merge(now, Map.copyOf(changes));
+    }
+
+    private Map<String, Suppression> merge(long now, Map<String, Suppression> pending) {
+        Map<String, Suppression> merged = new HashMap<>();
+        snapshot.forEach(suppression -> {
+            if (suppression.expiresAtMillis() > now) {
+                merged.put(suppression.key(), suppression);
+            }
+        });
+        pending.forEach((key, suppression) -> {
+            if (suppression.expiresAtMillis() > now) {
+                merged.put(key, suppression);
+            } else {
+                merged.remove(key);
+            }
+        });
+        return merged;
+    }
+}
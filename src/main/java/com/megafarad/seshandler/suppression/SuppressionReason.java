@@ -0,0 +1,22 @@
+package com.megafarad.seshandler.suppression;
+
+/**
+ * Why an address or domain is suppressed.
+ */
+public enum SuppressionReason {
+
+    /**
+     * A message to the address bounced permanently.
+     */
+    BOUNCE,
+
+    /**
+     * The recipient marked a message as spam.
+     */
+    COMPLAINT,
+
+    /**
+     * The address or domain was suppressed by an operator.
+     */
+    MANUAL
+}
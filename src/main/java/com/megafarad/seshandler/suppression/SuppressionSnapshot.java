@@ -0,0 +1,233 @@
+package com.megafarad.seshandler.suppression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An immutable set of suppressions in a compact binary file that is queried in place, without
+ * being parsed into objects first. Opening a snapshot memory-maps the file, so even a large
+ * suppression list is available on a cold start as soon as the file is mapped, and its pages are
+ * read lazily and shared with the page cache.
+ * <p>
+ * The file is an open-addressing hash table followed by the keys:
+ * - A header of 24 bytes: the magic number `SUP1`, the number of slots (a power of two), the
+ *   number of suppressions, the length of the key area, and the creation time in milliseconds.
+ * - One slot of 24 bytes per position of the table: the 64-bit hash of the key (zero for an
+ *   empty slot), the expiry time, the offset and length of the key in the key area, and the
+ *   reason. The table is at most half full, so a lookup probes few slots.
+ * - The UTF-8 keys, one after the other.
+ * <p>
+ * All numbers are big-endian. The file is self-contained, so it can be copied to senders that
+ * open it with {@link #open(Path)} to filter their recipient lists before sending.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public final class SuppressionSnapshot {
+
+    private static final int MAGIC = 0x53555031;
+    private static final int HEADER_BYTES = 24;
+    private static final int SLOT_BYTES = 24;
+    private static final SuppressionReason[] REASONS = SuppressionReason.values();
+
+    /**
+     * A snapshot without suppressions.
+     */
+    public static final SuppressionSnapshot EMPTY = new SuppressionSnapshot(encode(List.of(), 0));
+
+    private final ByteBuffer buffer;
+    private final int mask;
+    private final int size;
+    private final int keysStart;
+    private final long createdAtMillis;
+
+    private SuppressionSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.mask = buffer.getInt(4) - 1;
+        this.size = buffer.getInt(8);
+        this.keysStart = HEADER_BYTES + (mask + 1) * SLOT_BYTES;
+        this.createdAtMillis = buffer.getLong(16);
+    }
+
+    /**
+     * Opens a snapshot by memory-mapping its file.
+     *
+     * @param path The snapshot file.
+     * @return The snapshot.
+     * @throws RuntimeException If the file cannot be read or is not a suppression snapshot.
+     */
+    public static SuppressionSnapshot open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot length " + length);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int slots = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC || slots <= 0 || Integer.bitCount(slots) != 1
+                    || (long) HEADER_BYTES + (long) slots * SLOT_BYTES + buffer.getInt(12) != length) {
+                throw new IOException("Not a suppression snapshot");
+            }
+            return new SuppressionSnapshot(buffer);
+        } catch (IOException e) {
+            throw new RuntimeException("Reading suppression snapshot failed: " + path, e);
+        }
+    }
+
+    /**
+     * Writes suppressions to a snapshot file. The snapshot is written to a temporary file that
+     * then replaces the file, so readers never see a partially written snapshot.
+     *
+     * @param path            The snapshot file.
+     * @param suppressions    The suppressions, with distinct keys.
+     * @param createdAtMillis The creation time recorded in the snapshot.
+     * @throws RuntimeException If the file cannot be written.
+     */
+    public static void write(Path path, Collection<Suppression> suppressions, long createdAtMillis) {
+        ByteBuffer buffer = encode(suppressions, createdAtMillis);
+        Path temporary = path.resolveSibling(path.getFileName() + ".writing");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Writing suppression snapshot failed: " + path, e);
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Writing suppression snapshot failed: " + path, e);
+        }
+    }
+
+    /**
+     * Returns the suppression of a key, whether or not it has expired.
+     *
+     * @param key The lowercase address, or the lowercase domain prefixed with `@`.
+     * @return The suppression, or {@code null} if the snapshot does not hold the key.
+     */
+    public Suppression get(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long slotHash = buffer.getLong(position);
+            if (slotHash == 0) {
+                return null;
+            }
+            if (slotHash == hash && keyEquals(position, bytes)) {
+                return new Suppression(key, REASONS[buffer.get(position + 22)], buffer.getLong(position + 8));
+            }
+        }
+    }
+
+    /**
+     * Performs the action for each suppression of the snapshot, in no particular order.
+     *
+     * @param action The action.
+     */
+    public void forEach(Consumer<Suppression> action) {
+        for (int slot = 0; slot <= mask; slot++) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            if (buffer.getLong(position) != 0) {
+                byte[] key = new byte[buffer.getShort(position + 20)];
+                buffer.get(keysStart + buffer.getInt(position + 16), key);
+                action.accept(new Suppression(new String(key, StandardCharsets.UTF_8),
+                        REASONS[buffer.get(position + 22)], buffer.getLong(position + 8)));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of suppressions held, including expired ones.
+     *
+     * @return The number of suppressions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns when the snapshot was written.
+     *
+     * @return The creation time, in milliseconds since the epoch.
+     */
+    public long createdAtMillis() {
+        return createdAtMillis;
+    }
+
+    private boolean keyEquals(int position, byte[] key) {
+        if (buffer.getShort(position + 20) != key.length) {
+            return false;
+        }
+        int offset = keysStart + buffer.getInt(position + 16);
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer encode(Collection<Suppression> suppressions, long createdAtMillis) {
+        int slots = Integer.highestOneBit(Math.max(1, suppressions.size())) << 2;
+        byte[][] keys = new byte[suppressions.size()][];
+        int keysLength = 0;
+        int i = 0;
+        for (Suppression suppression : suppressions) {
+            keys[i] = suppression.key().getBytes(StandardCharsets.UTF_8);
+            if (keys[i].length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Suppression key too long: " + suppression.key());
+            }
+            keysLength += keys[i++].length;
+        }
+        int keysStart = HEADER_BYTES + slots * SLOT_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(keysStart + keysLength);
+        buffer.putInt(0, MAGIC).putInt(4, slots).putInt(8, suppressions.size()).putInt(12, keysLength)
+                .putLong(16, createdAtMillis);
+        int offset = 0;
+        i = 0;
+        for (Suppression suppression : suppressions) {
+            byte[] key = keys[i++];
+            long hash = hash(key);
+            int slot = (int) hash & (slots - 1);
+            while (buffer.getLong(HEADER_BYTES + slot * SLOT_BYTES) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            buffer.putLong(position, hash).putLong(position + 8, suppression.expiresAtMillis())
+                    .putInt(position + 16, offset).putShort(position + 20, (short) key.length)
+                    .put(position + 22, (byte) suppression.reason().ordinal());
+            buffer.put(keysStart + offset, key);
+            offset += key.length;
+        }
+        return buffer;
+    }
+
+    /**
+     * Hashes a key with 64-bit FNV-1a followed by the MurmurHash3 finalizer, so that the low bits
+     * used to pick a slot depend on every byte. Zero marks an empty slot and is never returned.
+     */
+    static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+}
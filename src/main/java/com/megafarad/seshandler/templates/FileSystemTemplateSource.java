@@ -0,0 +1,64 @@
+package com.megafarad.seshandler.templates;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A {@link TemplateSource} reading templates from a directory, e.g. on a mounted EFS volume or a
+ * local directory kept in sync with an S3 prefix by `aws s3 sync`.
+ * <p>
+ * Template names are resolved against the directory, so `templates/html-bounce-notification.peb`
+ * names the file `templates/html-bounce-notification.peb` below it; names that resolve to a path
+ * outside the directory name no template. The version of a template is its modification time and
+ * size, which only takes reading the file's attributes.
+ */
+public final class FileSystemTemplateSource implements TemplateSource {
+
+    private final Path root;
+
+    /**
+     * Constructs a FileSystemTemplateSource.
+     *
+     * @param root The directory holding the templates.
+     */
+    public FileSystemTemplateSource(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String version(String name) throws IOException {
+        Path path = resolve(name);
+        if (path == null) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes.lastModifiedTime().toMillis() + "-" + attributes.size()
+                    : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String read(String name) throws IOException {
+        Path path = resolve(name);
+        if (path == null) {
+            throw new NoSuchFileException(name);
+        }
+        return Files.readString(path);
+    }
+
+    private Path resolve(String name) {
+        try {
+            Path path = root.resolve(name).normalize();
+            return path.startsWith(root) ? path : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+}
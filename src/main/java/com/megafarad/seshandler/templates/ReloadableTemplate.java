@@ -0,0 +1,95 @@
+package com.megafarad.seshandler.templates;
+
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A template of a {@link TemplateStore} that always renders the version of the template that the
+ * store currently holds.
+ * <p>
+ * Handlers keep a ReloadableTemplate for as long as they keep any other {@link PebbleTemplate};
+ * each evaluation looks up the current version of the template in the store, which only takes
+ * reading an immutable map, and delegates to the template compiled for that version. Caches of
+ * rendered output must key it by {@link #current()} rather than by this template, so that output
+ * rendered with a previous version is not reused.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public final class ReloadableTemplate implements PebbleTemplate {
+
+    private final TemplateStore store;
+    private final String name;
+    private volatile Compiled compiled;
+
+    ReloadableTemplate(TemplateStore store, String name) {
+        this.store = store;
+        this.name = name;
+    }
+
+    /**
+     * Returns the template compiled for the current version.
+     *
+     * @return The compiled template.
+     */
+    public PebbleTemplate current() {
+        String version = store.version(name);
+        Compiled current = compiled;
+        if (current == null || !current.version().equals(version)) {
+            current = new Compiled(version, store.compile(name));
+            compiled = current;
+        }
+        return current.template();
+    }
+
+    @Override
+    public void evaluate(Writer writer) throws IOException {
+        current().evaluate(writer);
+    }
+
+    @Override
+    public void evaluate(Writer writer, Locale locale) throws IOException {
+        current().evaluate(writer, locale);
+    }
+
+    @Override
+    public void evaluate(Writer writer, Map<String, Object> context) throws IOException {
+        current().evaluate(writer, context);
+    }
+
+    @Override
+    public void evaluate(Writer writer, Map<String, Object> context, Locale locale) throws IOException {
+        current().evaluate(writer, context, locale);
+    }
+
+    @Override
+    public void evaluateBlock(String blockName, Writer writer) throws IOException {
+        current().evaluateBlock(blockName, writer);
+    }
+
+    @Override
+    public void evaluateBlock(String blockName, Writer writer, Locale locale) throws IOException {
+        current().evaluateBlock(blockName, writer, locale);
+    }
+
+    @Override
+    public void evaluateBlock(String blockName, Writer writer, Map<String, Object> context) throws IOException {
+        current().evaluateBlock(blockName, writer, context);
+    }
+
+    @Override
+    public void evaluateBlock(String blockName, Writer writer, Map<String, Object> context, Locale locale)
+            throws IOException {
+        current().evaluateBlock(blockName, writer, context, locale);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    private record Compiled(String version, PebbleTemplate template) { }
+}
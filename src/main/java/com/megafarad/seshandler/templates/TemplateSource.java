@@ -0,0 +1,33 @@
+package com.megafarad.seshandler.templates;
+
+import java.io.IOException;
+
+/**
+ * A source of template files whose content may change while the handler is running, such as a
+ * directory on a mounted volume or a local directory synced from S3.
+ * <p>
+ * Each template has a version that changes whenever its content does, e.g. its modification
+ * time or its ETag. A {@link TemplateStore} compares versions to find out which templates must be
+ * compiled again, so looking up a version should be much cheaper than reading the template.
+ */
+public interface TemplateSource {
+
+    /**
+     * Returns the current version of a template.
+     *
+     * @param name The name of the template, e.g. `templates/html-bounce-notification.peb`.
+     * @return An opaque version that changes whenever the content of the template does, or
+     *         {@code null} if the source holds no template of that name.
+     * @throws IOException If the version could not be determined.
+     */
+    String version(String name) throws IOException;
+
+    /**
+     * Reads the content of a template.
+     *
+     * @param name The name of the template.
+     * @return The template source code.
+     * @throws IOException If the template does not exist or could not be read.
+     */
+    String read(String name) throws IOException;
+}
@@ -0,0 +1,339 @@
+package com.megafarad.seshandler.templates;
+
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.cache.PebbleCache;
+import io.pebbletemplates.pebble.error.LoaderException;
+import io.pebbletemplates.pebble.error.PebbleException;
+import io.pebbletemplates.pebble.loader.ClasspathLoader;
+import io.pebbletemplates.pebble.loader.DelegatingLoader;
+import io.pebbletemplates.pebble.loader.FileLoader;
+import io.pebbletemplates.pebble.loader.Loader;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+import io.pebbletemplates.pebble.utils.PathUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A store of body templates read from a {@link TemplateSource}, which picks up changes to the
+ * templates without a redeployment.
+ * <p>
+ * The store keeps the version of every template it has loaded, and compiles templates on a
+ * Pebble engine whose cache keys combine a template's name with its version:
+ * - {@link #get(String)} returns a {@link ReloadableTemplate}, which renders the template compiled
+ *   for the current version. Templates that are included or extended are looked up the same way
+ *   while rendering, so they are reloaded as well.
+ * - {@link #revalidate()} looks up the version of every loaded template in the source and
+ *   compiles the templates that changed. Only then are the new versions published, by replacing
+ *   the immutable map of versions in a single write, so rendering never waits for a template to be
+ *   read or compiled and never sees a template that failed to compile. A template that fails to
+ *   compile keeps its previous version until it is fixed.
+ * - Unless the revalidation interval is zero, the store revalidates its templates in the
+ *   background on a daemon thread.
+ * <p>
+ * Templates that the source does not hold, such as the bundled templates, are read from the
+ * classpath or the file system like the default Pebble engine reads them, so the source only
+ * needs to hold the templates that are overridden. Compiled templates are kept in a cache bounded
+ * by the number of templates, from which the least recently used template is evicted first,
+ * including the versions that were replaced.
+ * <p>
+ * Instances are safe for use by multiple threads.
+ */
+public final class TemplateStore implements AutoCloseable {
+
+    private static final String NOT_IN_SOURCE = "";
+
+    private final TemplateSource source;
+    private final DelegatingLoader fallback = new DelegatingLoader(List.of(new ClasspathLoader(), new FileLoader()));
+    private final PebbleEngine engine;
+    private final BoundedTemplateCache cache;
+    private final Map<String, ReloadableTemplate> templates = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, String>> pending = new ThreadLocal<>();
+    private final Object versionsLock = new Object();
+    private final Object revalidationLock = new Object();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder reloadFailures = new LongAdder();
+    private final ScheduledExecutorService revalidator;
+    private volatile Map<String, String> versions = Map.of();
+
+    /**
+     * Constructs a TemplateStore.
+     *
+     * @param source             The source of the templates.
+     * @param maxTemplates       The maximum number of compiled templates kept in the cache.
+     * @param revalidateInterval The interval at which templates are revalidated in the background,
+     *                           or {@link Duration#ZERO} to only revalidate them when
+     *                           {@link #revalidate()} is called.
+     */
+    public TemplateStore(TemplateSource source, int maxTemplates, Duration revalidateInterval) {
+        if (maxTemplates < 1) {
+            throw new IllegalArgumentException("maxTemplates must be at least 1: " + maxTemplates);
+        }
+        this.source = source;
+        this.cache = new BoundedTemplateCache(maxTemplates);
+        this.engine = new PebbleEngine.Builder().loader(new StoreLoader()).templateCache(cache).autoEscaping(true)
+                .build();
+        if (revalidateInterval.isZero()) {
+            this.revalidator = null;
+        } else {
+            long millis = revalidateInterval.toMillis();
+            this.revalidator = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("template-revalidator").daemon().factory());
+            revalidator.scheduleWithFixedDelay(() -> {
+                try {
+                    revalidate();
+                } catch (RuntimeException e) {
+                    reloadFailures.increment();
+                }
+            }, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the template of the specified name, compiling it if it has not been loaded yet.
+     *
+     * @param name The name of the template, e.g. `templates/html-bounce-notification.peb`.
+     * @return The template, which always renders its current version.
+     * @throws PebbleException If the template does not exist or fails to compile.
+     */
+    public ReloadableTemplate get(String name) {
+        return templates.computeIfAbsent(name, key -> {
+            ReloadableTemplate template = new ReloadableTemplate(this, key);
+            template.current();
+            return template;
+        });
+    }
+
+    /**
+     * Looks up the version of every loaded template in the source, compiles the templates that
+     * changed, and publishes their new versions.
+     *
+     * @return {@code true} if at least one template was reloaded.
+     */
+    public boolean revalidate() {
+        synchronized (revalidationLock) {
+            Map<String, String> changed = new HashMap<>();
+            for (Map.Entry<String, String> entry : versions.entrySet()) {
+                try {
+                    String version = lookup(entry.getKey());
+                    if (!version.equals(entry.getValue())) {
+                        changed.put(entry.getKey(), version);
+                    }
+                } catch (IOException e) {
+                    reloadFailures.increment();
+                }
+            }
+            if (changed.isEmpty()) {
+                return false;
+            }
+
+            pending.set(changed);
+            try {
+                for (Iterator<String> names = changed.keySet().iterator(); names.hasNext(); ) {
+                    try {
+                        engine.getTemplate(names.next());
+                    } catch (PebbleException | UncheckedIOException e) {
+                        names.remove();
+                        reloadFailures.increment();
+                    }
+                }
+            } finally {
+                pending.remove();
+            }
+            if (changed.isEmpty()) {
+                return false;
+            }
+            synchronized (versionsLock) {
+                Map<String, String> next = new HashMap<>(versions);
+                next.putAll(changed);
+                versions = Map.copyOf(next);
+            }
+            reloads.add(changed.size());
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of template versions that were compiled and published by revalidation.
+     *
+     * @return The number of reloads.
+     */
+    public long reloadCount() {
+        return reloads.sum();
+    }
+
+    /**
+     * Returns the number of templates that could not be revalidated, because their version could
+     * not be determined or their new version failed to compile.
+     *
+     * @return The number of failed reloads.
+     */
+    public long reloadFailureCount() {
+        return reloadFailures.sum();
+    }
+
+    /**
+     * Returns the number of compiled templates evicted to keep the cache within its bound.
+     *
+     * @return The number of evictions.
+     */
+    public long evictionCount() {
+        return cache.evictions.sum();
+    }
+
+    /**
+     * Stops revalidating templates in the background.
+     */
+    @Override
+    public void close() {
+        if (revalidator != null) {
+            revalidator.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the version of a template that rendering uses: the version being compiled by the
+     * current revalidation, if any, or else the published version, which is looked up in the
+     * source the first time the template is loaded.
+     */
+    String version(String name) {
+        Map<String, String> compiling = pending.get();
+        if (compiling != null && compiling.containsKey(name)) {
+            return compiling.get(name);
+        }
+        String version = versions.get(name);
+        return version != null ? version : track(name);
+    }
+
+    PebbleTemplate compile(String name) {
+        return engine.getTemplate(name);
+    }
+
+    private String track(String name) {
+        synchronized (versionsLock) {
+            String version = versions.get(name);
+            if (version != null) {
+                return version;
+            }
+            try {
+                version = lookup(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Looking up template version failed: " + name, e);
+            }
+            Map<String, String> next = new HashMap<>(versions);
+            next.put(name, version);
+            versions = Map.copyOf(next);
+            return version;
+        }
+    }
+
+    private String lookup(String name) throws IOException {
+        String version = source.version(name);
+        return version == null ? NOT_IN_SOURCE : version;
+    }
+
+    /**
+     * A template name and the version of the template that it was compiled from.
+     */
+    private record Key(String name, String version) { }
+
+    private final class StoreLoader implements Loader<Key> {
+
+        @Override
+        public Reader getReader(Key key) {
+            if (NOT_IN_SOURCE.equals(key.version())) {
+                return fallback.getReader(fallback.createCacheKey(key.name()));
+            }
+            try {
+                return new StringReader(source.read(key.name()));
+            } catch (IOException e) {
+                throw new LoaderException(e, "Could not read template \"" + key.name() + "\"");
+            }
+        }
+
+        @Override
+        public void setCharset(String charset) {
+            fallback.setCharset(charset);
+        }
+
+        @Override
+        public void setPrefix(String prefix) {
+            fallback.setPrefix(prefix);
+        }
+
+        @Override
+        public void setSuffix(String suffix) {
+            fallback.setSuffix(suffix);
+        }
+
+        @Override
+        public String resolveRelativePath(String relativePath, String anchorPath) {
+            return PathUtils.resolveRelativePath(relativePath, anchorPath, '/');
+        }
+
+        @Override
+        public Key createCacheKey(String templateName) {
+            return new Key(templateName, version(templateName));
+        }
+
+        @Override
+        public boolean resourceExists(String templateName) {
+            return !NOT_IN_SOURCE.equals(version(templateName)) || fallback.resourceExists(templateName);
+        }
+    }
+
+    /**
+     * A cache of compiled templates holding at most a number of templates. Templates are compiled
+     * outside the lock, so a template being compiled does not hold up lookups of other templates.
+     */
+    private static final class BoundedTemplateCache implements PebbleCache<Object, PebbleTemplate> {
+
+        private final int maxTemplates;
+        private final LinkedHashMap<Object, PebbleTemplate> templates = new LinkedHashMap<>(16, 0.75f, true);
+        private final LongAdder evictions = new LongAdder();
+
+        private BoundedTemplateCache(int maxTemplates) {
+            this.maxTemplates = maxTemplates;
+        }
+
+        @Override
+        public PebbleTemplate computeIfAbsent(Object key, Function<? super Object, ? extends PebbleTemplate> compile) {
+            synchronized (this) {
+                PebbleTemplate template = templates.get(key);
+                if (template != null) {
+                    return template;
+                }
+            }
+            PebbleTemplate compiled = compile.apply(key);
+            synchronized (this) {
+                PebbleTemplate existing = templates.putIfAbsent(key, compiled);
+                Iterator<PebbleTemplate> eldest = templates.values().iterator();
+                while (templates.size() > maxTemplates && eldest.hasNext()) {
+                    eldest.next();
+                    eldest.remove();
+                    evictions.increment();
+                }
+                return existing == null ? compiled : existing;
+            }
+        }
+
+        @Override
+        public synchronized void invalidateAll() {
+            templates.clear();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.megafarad.seshandler.templates;
+
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Function;
+
+import static com.megafarad.seshandler.utils.EnvVar.getEnvVar;
+
+/**
+ * The TemplateStores class provides a factory method that loads body templates the way the
+ * environment configures, so that every notification handler picks up template changes the same
+ * way.
+ */
+public class TemplateStores {
+
+    private static TemplateStore store;
+
+    /**
+     * Returns the function that loads body templates by name.
+     * <p>
+     * When the `TEMPLATE_DIR` environment variable is set, templates are loaded from a
+     * {@link TemplateStore} reading that directory through a {@link FileSystemTemplateSource},
+     * falling back to the classpath for templates the directory does not hold. The store keeps at
+     * most `TEMPLATE_CACHE_MAX_TEMPLATES` compiled templates (100 by default) and revalidates them
+     * every `TEMPLATE_REVALIDATE_SECONDS` seconds (30 by default; `0` disables revalidation). It is
+     * shared by every handler of the function. Otherwise, templates are compiled once by a Pebble
+     * engine reading the classpath and the file system.
+     *
+     * @return A function returning the compiled template of a name.
+     */
+    public static synchronized Function<String, PebbleTemplate> fromEnv() {
+        String templateDir = getEnvVar("TEMPLATE_DIR", "");
+        if (templateDir.isEmpty()) {
+            PebbleEngine engine = new PebbleEngine.Builder().autoEscaping(true).build();
+            return engine::getTemplate;
+        }
+        if (store == null) {
+            store = new TemplateStore(new FileSystemTemplateSource(Path.of(templateDir)),
+                    Integer.parseInt(getEnvVar("TEMPLATE_CACHE_MAX_TEMPLATES", "100")),
+                    Duration.ofSeconds(Long.parseLong(getEnvVar("TEMPLATE_REVALIDATE_SECONDS", "30"))));
+        }
+        return store::get;
+    }
+}
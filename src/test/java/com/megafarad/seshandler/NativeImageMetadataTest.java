@@ -0,0 +1,74 @@
+package com.megafarad.seshandler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megafarad.seshandler.aggregation.NotificationSummary;
+import com.megafarad.seshandler.handler.ses.AggregatingSESNotificationHandler;
+import com.megafarad.seshandler.handler.ses.DigestSESNotificationHandler;
+import com.megafarad.seshandler.handler.ses.SESNotificationHandlerProvider;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.routing.RoutingConfig;
+import com.megafarad.seshandler.routing.TenantConfig;
+import com.megafarad.utils.ResourceReader;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the native-image metadata covers every record that Jackson binds or that templates
+ * read, so that adding a record component does not break the native executable unnoticed.
+ */
+public class NativeImageMetadataTest {
+
+    private static final String METADATA = "META-INF/native-image/com.megafarad/ses-notification-handler/";
+
+    @Test
+    public void testReachableRecordsAreRegisteredForReflection() throws Exception {
+        Set<String> registered = new HashSet<>();
+        for (JsonNode entry : new ObjectMapper().readTree(ResourceReader.readResourceToString(
+                METADATA + "reflect-config.json"))) {
+            registered.add(entry.get("name").asText());
+        }
+
+        for (Class<?> record : reachableRecords(SESNotification.class, NotificationSummary.class,
+                DigestSESNotificationHandler.DigestEntry.class, AggregatingSESNotificationHandler.ReportGroup.class,
+                RoutingConfig.class, TenantConfig.class)) {
+            assertTrue(registered.contains(record.getName()), "Not registered for reflection: " + record.getName());
+        }
+    }
+
+    @Test
+    public void testHandlerProviderIsRegisteredAsService() {
+        String services = ResourceReader.readResourceToString(
+                "META-INF/services/" + SESNotificationHandlerProvider.class.getName());
+        assertTrue(services.contains("BuiltInSESNotificationHandlerProvider"));
+        String resources = ResourceReader.readResourceToString(METADATA + "resource-config.json");
+        assertTrue(resources.contains("templates/"));
+        assertTrue(resources.contains("priming/"));
+    }
+
+    private static Set<Class<?>> reachableRecords(Class<?>... roots) {
+        Set<Class<?>> records = new HashSet<>();
+        Deque<Type> pending = new ArrayDeque<>(List.of(roots));
+        while (!pending.isEmpty()) {
+            Type type = pending.pop();
+            if (type instanceof ParameterizedType parameterized) {
+                pending.addAll(List.of(parameterized.getActualTypeArguments()));
+            } else if (type instanceof Class<?> clazz && clazz.isRecord() && records.add(clazz)) {
+                for (RecordComponent component : clazz.getRecordComponents()) {
+                    pending.push(component.getGenericType());
+                }
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,77 @@
+package com.megafarad.seshandler.aggregation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+public class FileAggregationStoreTest {
+
+    private Path path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        path = Files.createTempFile("aggregation", ".jsonl");
+        Files.delete(path);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testWindowSurvivesReopening() {
+        FileAggregationStore store = new FileAggregationStore(path);
+        Assertions.assertTrue(store.window().isEmpty());
+
+        store.append(summary("message-1", 2000));
+        store.append(summary("message-2", 1000));
+
+        FileAggregationStore reopened = new FileAggregationStore(path);
+        AggregationWindow window = reopened.window().orElseThrow();
+        Assertions.assertEquals(2, window.count());
+        Assertions.assertEquals(Instant.ofEpochMilli(1000), window.start());
+    }
+
+    @Test
+    public void testRemovingReportedSummariesClosesWindow() {
+        FileAggregationStore store = new FileAggregationStore(path);
+        store.append(summary("message-1", 1000));
+        store.append(summary("message-2", 2000));
+
+        List<NotificationSummary> summaries = store.summaries();
+        Assertions.assertEquals(List.of(summary("message-1", 1000), summary("message-2", 2000)), summaries);
+        Assertions.assertEquals(2, new FileAggregationStore(path).window().orElseThrow().count());
+
+        store.remove(summaries.size());
+        Assertions.assertTrue(store.window().isEmpty());
+        Assertions.assertTrue(new FileAggregationStore(path).window().isEmpty());
+    }
+
+    @Test
+    public void testSummariesAppendedSinceReadingAreKept() {
+        FileAggregationStore store = new FileAggregationStore(path);
+        store.append(summary("message-1", 1000));
+        List<NotificationSummary> summaries = store.summaries();
+        store.append(summary("message-2", 2000));
+
+        store.remove(summaries.size());
+
+        AggregationWindow window = new FileAggregationStore(path).window().orElseThrow();
+        Assertions.assertEquals(1, window.count());
+        Assertions.assertEquals(Instant.ofEpochMilli(2000), window.start());
+        Assertions.assertEquals(List.of(summary("message-2", 2000)), store.summaries());
+    }
+
+    private NotificationSummary summary(String messageId, long receivedAt) {
+        return new NotificationSummary("Bounce", "Permanent", "example.com", messageId,
+                "2016-01-27T14:59:38.237Z", List.of("jane@example.com"), "General", receivedAt);
+    }
+}
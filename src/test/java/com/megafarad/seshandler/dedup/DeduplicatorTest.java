@@ -0,0 +1,135 @@
+package com.megafarad.seshandler.dedup;
+
+import com.megafarad.seshandler.model.SESNotification;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeduplicatorTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    public void testKeyOf() {
+        SESNotification bounce = parseNotification("bounce_with_dsn.json");
+        SESNotification delivery = parseNotification("delivery.json");
+
+        assertEquals("Bounce/" + bounce.mail().messageId() + "/" + bounce.bounce().feedbackId(),
+                Deduplicator.keyOf(bounce));
+        assertEquals("Delivery/" + delivery.mail().messageId() + "/" + delivery.delivery().timestamp(),
+                Deduplicator.keyOf(delivery));
+        assertNull(Deduplicator.keyOf(new SESNotification("Bounce", null, bounce.bounce(), null, null)));
+        assertNull(Deduplicator.keyOf(new SESNotification("Bounce", bounce.mail(), null, null, null)));
+    }
+
+    @Test
+    public void testKeyOfEvents() {
+        SESNotification click = parseNotification("click_event.json");
+        SESNotification failure = parseNotification("rendering_failure_event.json");
+
+        assertEquals("Click/" + click.mail().messageId() + "/" + click.click().timestamp() + "/"
+                + click.click().link(), Deduplicator.keyOf(click));
+        assertEquals("Rendering Failure/" + failure.mail().messageId() + "/", Deduplicator.keyOf(failure));
+        assertNotEquals(Deduplicator.keyOf(parseNotification("open_event.json")), Deduplicator.keyOf(click));
+    }
+
+    @Test
+    public void testDuplicateIsRecognizedUntilExpiry() {
+        Deduplicator deduplicator = new Deduplicator(Duration.ofMinutes(10), 100, null, clock);
+        assertTrue(deduplicator.tryAcquire("a"));
+        assertFalse(deduplicator.tryAcquire("a"));
+        assertTrue(deduplicator.tryAcquire("b"));
+
+        clock.advance(Duration.ofMinutes(11));
+        assertTrue(deduplicator.tryAcquire("a"));
+    }
+
+    @Test
+    public void testReleasedKeyCanBeAcquiredAgain() {
+        InMemoryStore store = new InMemoryStore();
+        Deduplicator deduplicator = new Deduplicator(Duration.ofMinutes(10), 100, store, clock);
+        assertTrue(deduplicator.tryAcquire("a"));
+        deduplicator.release("a");
+        assertTrue(deduplicator.tryAcquire("a"));
+    }
+
+    @Test
+    public void testStoreRecognizesKeysEvictedFromCache() {
+        InMemoryStore store = new InMemoryStore();
+        Deduplicator deduplicator = new Deduplicator(Duration.ofMinutes(10), 2, store, clock);
+        assertTrue(deduplicator.tryAcquire("a"));
+        assertTrue(deduplicator.tryAcquire("b"));
+        assertTrue(deduplicator.tryAcquire("c"));
+        deduplicator.commit(List.of("a", "b", "c"));
+
+        assertFalse(deduplicator.tryAcquire("a"));
+        assertEquals(4, store.lookups);
+        assertFalse(deduplicator.tryAcquire("c"));
+        assertEquals(4, store.lookups);
+    }
+
+    @Test
+    public void testOnlyCommittedKeysAreRecorded() {
+        InMemoryStore store = new InMemoryStore();
+        Deduplicator deduplicator = new Deduplicator(Duration.ofMinutes(10), 100, store, clock);
+        assertTrue(deduplicator.tryAcquire("a"));
+        assertFalse(deduplicator.tryAcquire("a"));
+        assertTrue(new Deduplicator(Duration.ofMinutes(10), 100, store, clock).tryAcquire("a"));
+
+        deduplicator.commit(List.of("a"));
+        assertFalse(new Deduplicator(Duration.ofMinutes(10), 100, store, clock).tryAcquire("a"));
+    }
+
+    private static class InMemoryStore implements DeduplicationStore {
+
+        private final Map<String, Long> keys = new HashMap<>();
+        private int lookups;
+
+        @Override
+        public synchronized boolean contains(String key, long nowMillis) {
+            lookups++;
+            Long expiresAt = keys.get(key);
+            return expiresAt != null && expiresAt > nowMillis;
+        }
+
+        @Override
+        public synchronized void record(Collection<String> recorded, long expiresAtMillis, long nowMillis) {
+            recorded.forEach(key -> keys.put(key, expiresAtMillis));
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
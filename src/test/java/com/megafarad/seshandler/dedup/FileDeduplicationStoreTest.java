@@ -0,0 +1,70 @@
+package com.megafarad.seshandler.dedup;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileDeduplicationStoreTest {
+
+    private Path path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        path = Files.createTempFile("dedup", ".log");
+        Files.delete(path);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testKeysSurviveReopening() {
+        FileDeduplicationStore store = new FileDeduplicationStore(path);
+        long now = System.currentTimeMillis();
+        assertFalse(store.contains("a", now));
+        store.record(List.of("a"), now + 60_000, now);
+        assertTrue(store.contains("a", now));
+
+        FileDeduplicationStore reopened = new FileDeduplicationStore(path);
+        assertEquals(1, reopened.size());
+        assertTrue(reopened.contains("a", now));
+        assertFalse(reopened.contains("b", now));
+    }
+
+    @Test
+    public void testExpiredKeysAreNotRecognized() {
+        FileDeduplicationStore store = new FileDeduplicationStore(path);
+        long now = System.currentTimeMillis();
+        store.record(List.of("a"), now + 1_000, now);
+        assertFalse(store.contains("a", now + 1_000));
+
+        long past = now - 60_000;
+        store.record(List.of("b"), past + 1_000, past);
+        assertEquals(1, new FileDeduplicationStore(path).size());
+    }
+
+    @Test
+    public void testCompactionDropsExpiredKeys() throws IOException {
+        FileDeduplicationStore store = new FileDeduplicationStore(path);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5000; i++) {
+            store.record(List.of("key" + i), now + i + 1, now + i);
+        }
+        store.record(List.of("live"), now + 60_000, now);
+
+        assertTrue(Files.readAllLines(path).size() <= 1024);
+        assertTrue(store.size() <= 1024);
+        FileDeduplicationStore reopened = new FileDeduplicationStore(path);
+        assertTrue(reopened.contains("live", now));
+        assertFalse(reopened.contains("key0", now + 1));
+    }
+}
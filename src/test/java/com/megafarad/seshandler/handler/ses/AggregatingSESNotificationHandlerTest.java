@@ -0,0 +1,190 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.megafarad.seshandler.aggregation.InMemoryAggregationStore;
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.Complaint;
+import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.sender.EmailSender;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.mockito.Mockito.*;
+
+class AggregatingSESNotificationHandlerTest {
+
+    private AutoCloseable closeable;
+
+    private final MutableClock clock = new MutableClock();
+
+    private final InMemoryAggregationStore store = new InMemoryAggregationStore();
+
+    @Mock
+    private EmailSender emailSender;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(context.getLogger()).thenReturn(logger);
+    }
+
+    @AfterEach
+    void destroy() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testReportIsSentWhenWindowExpires() {
+        AggregatingSESNotificationHandler handler = createHandler(100);
+
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.flush(context);
+        clock.advance(Duration.ofSeconds(30));
+        handler.handleNotification(parseNotification("complaint_with_feedback.json"), context);
+        handler.flush(context);
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+
+        clock.advance(Duration.ofSeconds(30));
+        handler.flush(context);
+
+        verify(emailSender).send(eq("sender@example.com"), eq("recipient@example.com"),
+                eq("SES Notification Report: 2 notification(s)"),
+                argThat(s -> s.contains("Bounce (Permanent) - example.com:</strong> 1") &&
+                        s.contains("jane@example.com") &&
+                        s.contains("Complaint - example.com:</strong> 1")),
+                argThat(s -> s.contains("Notifications: 2") && s.contains("richard@example.com - abuse")));
+        Assertions.assertTrue(store.window().isEmpty());
+    }
+
+    @Test
+    public void testReportIsSentWhenWindowIsFull() {
+        AggregatingSESNotificationHandler handler = createHandler(2);
+
+        handler.handleNotification(parseNotification("delivery.json"), context);
+        handler.flush(context);
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+
+        handler.handleNotification(parseNotification("delivery.json"), context);
+        handler.flush(context);
+        verify(emailSender).send(anyString(), anyString(), eq("SES Notification Report: 2 notification(s)"),
+                anyString(), anyString());
+    }
+
+    @Test
+    public void testSummariesAreRetainedWhenReportFails() {
+        doThrow(new RuntimeException("Throttling")).when(emailSender)
+                .send(anyString(), anyString(), anyString(), anyString(), anyString());
+        AggregatingSESNotificationHandler handler = createHandler(1);
+
+        handler.handleNotification(parseNotification("delivery.json"), context);
+        Assertions.assertDoesNotThrow(() -> handler.flush(context));
+        Assertions.assertEquals(1, store.window().orElseThrow().count());
+        verify(logger).log(argThat((String message) -> message.startsWith("Failed to send aggregate report")));
+    }
+
+    @Test
+    public void testSummariesAppendedWhileReportIsSentAreKept() {
+        AggregatingSESNotificationHandler handler = createHandler(1);
+        doAnswer(invocation -> {
+            handler.handleNotification(parseNotification("delivery.json"), context);
+            return null;
+        }).when(emailSender).send(anyString(), anyString(), anyString(), anyString(), anyString());
+
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.flush(context);
+
+        Assertions.assertEquals(1, store.window().orElseThrow().count());
+        Assertions.assertEquals("Delivery", store.summaries().get(0).notificationType());
+    }
+
+    @Test
+    public void testNotificationsWithoutRecipientsAreSummarized() {
+        AggregatingSESNotificationHandler handler = createHandler(2);
+        Mail mail = parseNotification("delivery.json").mail();
+
+        handler.handleNotification(new SESNotification("Bounce", mail,
+                new Bounce("Transient", "General", null, null, null, null, null), null, null), context);
+        handler.handleNotification(new SESNotification("Complaint", mail, null,
+                new Complaint(null, null, null, null, null, "abuse", null), null), context);
+        handler.flush(context);
+
+        verify(emailSender).send(anyString(), anyString(), eq("SES Notification Report: 2 notification(s)"),
+                anyString(), anyString());
+    }
+
+    @Test
+    public void testPrimingDoesNotStoreOrSend() {
+        AggregatingSESNotificationHandler handler = createHandler(1);
+        handler.prime(parseNotification("bounce_with_dsn.json"));
+        handler.prime(parseNotification("complaint_with_feedback.json"));
+        handler.prime(parseNotification("delivery.json"));
+        handler.flush(context);
+
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
+    private AggregatingSESNotificationHandler createHandler(int maxEvents) {
+        PebbleEngine bodyEngine = new PebbleEngine.Builder().autoEscaping(true).build();
+        PebbleEngine subjectEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
+
+        return new AggregatingSESNotificationHandler(
+                store,
+                Duration.ofMinutes(1),
+                maxEvents,
+                clock,
+                emailSender,
+                new ProductionRenderingService(),
+                subjectEngine.getTemplate("SES Notification Report: {{ report.count }} notification(s)"),
+                bodyEngine.getTemplate("templates/html-aggregate-report.peb"),
+                bodyEngine.getTemplate("templates/text-aggregate-report.peb"),
+                "sender@example.com",
+                "recipient@example.com"
+        );
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.megafarad.seshandler.dedup.Deduplicator;
+import com.megafarad.seshandler.dedup.FileDeduplicationStore;
+import com.megafarad.seshandler.model.SESNotification;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DeduplicatingSESNotificationHandlerTest {
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private SESNotificationHandler delegate;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private DeduplicatingSESNotificationHandler handler;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(context.getLogger()).thenReturn(logger);
+        handler = new DeduplicatingSESNotificationHandler(delegate,
+                new Deduplicator(Duration.ofHours(1), 100, null, Clock.systemUTC()));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testDuplicateIsDropped() {
+        SESNotification notification = parseNotification("bounce_with_dsn.json");
+        handler.handleNotification(notification, context);
+        handler.handleNotification(notification, context);
+
+        verify(delegate, times(1)).handleNotification(notification, context);
+        verify(logger).log(contains("Dropped duplicate notification"));
+    }
+
+    @Test
+    public void testDistinctNotificationsAreHandled() {
+        SESNotification bounce = parseNotification("bounce_with_dsn.json");
+        SESNotification delivery = parseNotification("delivery.json");
+        handler.handleNotification(bounce, context);
+        handler.handleNotification(delivery, context);
+
+        verify(delegate).handleNotification(bounce, context);
+        verify(delegate).handleNotification(delivery, context);
+    }
+
+    @Test
+    public void testKeyIsReleasedWhenHandlingFails() {
+        SESNotification notification = parseNotification("complaint_with_feedback.json");
+        doThrow(new RuntimeException("boom")).when(delegate).handleNotification(notification, context);
+        assertThrows(RuntimeException.class, () -> handler.handleNotification(notification, context));
+
+        doNothing().when(delegate).handleNotification(notification, context);
+        handler.handleNotification(notification, context);
+        verify(delegate, times(2)).handleNotification(notification, context);
+    }
+
+    @Test
+    public void testKeysAreReleasedWhenFlushFails() {
+        SESNotification notification = parseNotification("delivery.json");
+        handler.handleNotification(notification, context);
+        doThrow(new RuntimeException("boom")).when(delegate).flush(context);
+        assertThrows(RuntimeException.class, () -> handler.flush(context));
+
+        handler.handleNotification(notification, context);
+        verify(delegate, times(2)).handleNotification(notification, context);
+    }
+
+    @Test
+    public void testKeysAreRecordedOnlyOnceFlushed() throws IOException {
+        Path path = Files.createTempFile("dedup", ".log");
+        try {
+            FileDeduplicationStore store = new FileDeduplicationStore(path);
+            handler = new DeduplicatingSESNotificationHandler(delegate,
+                    new Deduplicator(Duration.ofHours(1), 100, store, Clock.systemUTC()));
+            SESNotification notification = parseNotification("delivery.json");
+            handler.handleNotification(notification, context);
+            assertEquals(0, new FileDeduplicationStore(path).size());
+
+            handler.flush(context);
+            assertTrue(new FileDeduplicationStore(path).contains(Deduplicator.keyOf(notification),
+                    System.currentTimeMillis()));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testKeysAreKeptAfterSuccessfulFlush() {
+        SESNotification notification = parseNotification("delivery.json");
+        handler.handleNotification(notification, context);
+        handler.flush(context);
+        handler.handleNotification(notification, context);
+
+        verify(delegate, times(1)).handleNotification(notification, context);
+        verify(delegate).flush(context);
+    }
+}
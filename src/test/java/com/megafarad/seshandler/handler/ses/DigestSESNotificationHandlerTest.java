@@ -0,0 +1,139 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.sender.EmailSender;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DigestSESNotificationHandlerTest {
+
+    private final String senderEmail = "sender@example.com";
+
+    private final String recipientEmail = "recipient@example.com";
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private EmailSender emailSender;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(context.getLogger()).thenReturn(logger);
+    }
+
+    @AfterEach
+    void destroy() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testBouncesAreGroupedIntoOneDigest() {
+        DigestSESNotificationHandler handler = createHandler();
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.handleNotification(parseNotification("bounce_without_dsn.json"), context);
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+
+        handler.flush(context);
+
+        verify(emailSender).send(eq(senderEmail),
+                eq(recipientEmail),
+                eq("Bounce Digest: 2 notification(s) for example.com"),
+                argThat(s -> s.contains("<strong>Bounce Type:</strong> Permanent") &&
+                        s.contains("jane@example.com") &&
+                        s.contains("richard@example.com")),
+                argThat(s -> s.contains("Notifications: 2") &&
+                        s.contains("jane@example.com") &&
+                        s.contains("richard@example.com")));
+        verify(emailSender).flush();
+    }
+
+    @Test
+    public void testOneDigestPerNotificationType() {
+        DigestSESNotificationHandler handler = createHandler();
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.handleNotification(parseNotification("complaint_with_feedback.json"), context);
+        handler.handleNotification(parseNotification("complaint_without_feedback.json"), context);
+        handler.handleNotification(parseNotification("delivery.json"), context);
+
+        handler.flush(context);
+
+        verify(emailSender, times(3)).send(anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(emailSender).send(anyString(), anyString(),
+                eq("Complaint Digest: 2 notification(s) for example.com"),
+                argThat(s -> s.contains("abuse")),
+                argThat(s -> s.contains("richard@example.com")));
+    }
+
+    @Test
+    public void testFlushClearsGroups() {
+        DigestSESNotificationHandler handler = createHandler();
+        handler.handleNotification(parseNotification("delivery.json"), context);
+        handler.flush(context);
+        handler.flush(context);
+
+        verify(emailSender, times(1)).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testFailedDigestFailsFlushAfterOtherDigestsAreSent() {
+        DigestSESNotificationHandler handler = createHandler();
+        RuntimeException throttled = new RuntimeException("throttled");
+        doThrow(throttled).when(emailSender).send(anyString(), anyString(),
+                eq("Bounce Digest: 1 notification(s) for example.com"), anyString(), anyString());
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.handleNotification(parseNotification("delivery.json"), context);
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> handler.flush(context));
+
+        assertSame(throttled, exception);
+        verify(emailSender).send(anyString(), anyString(), eq("Delivery Digest: 1 notification(s) for example.com"),
+                anyString(), anyString());
+        verify(emailSender).flush();
+        verify(logger).log(argThat((String message) -> message.startsWith("Failed to send digest")));
+    }
+
+    @Test
+    public void testPrimingDoesNotCollectOrSend() {
+        DigestSESNotificationHandler handler = createHandler();
+        handler.prime(parseNotification("bounce_with_dsn.json"));
+        handler.prime(parseNotification("complaint_with_feedback.json"));
+        handler.prime(parseNotification("delivery.json"));
+        handler.flush(context);
+
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
+    private DigestSESNotificationHandler createHandler() {
+        PebbleEngine bodyEngine = new PebbleEngine.Builder().autoEscaping(true).build();
+        PebbleEngine subjectEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
+
+        return new DigestSESNotificationHandler(
+                emailSender,
+                new ProductionRenderingService(),
+                subjectEngine.getTemplate(
+                        "{{ digest.notificationType }} Digest: {{ digest.count }} notification(s) for {{ digest.sendingDomain }}"),
+                bodyEngine.getTemplate("templates/html-digest-notification.peb"),
+                bodyEngine.getTemplate("templates/text-digest-notification.peb"),
+                senderEmail,
+                recipientEmail
+        );
+    }
+}
@@ -56,4 +56,12 @@ public class LoggingSESNotificationHandlerTest {
         handler.handleNotification(notification, context);
         verify(logger).log(contains("Delivery"));
     }
+
+    @Test
+    public void testUnhandledType() {
+        SESNotification notification = new SESNotification("Unknown", parseNotification("delivery.json").mail(),
+                null, null, null);
+        handler.handleNotification(notification, context);
+        verify(logger).log(contains("Unhandled notification type Unknown"));
+    }
 }
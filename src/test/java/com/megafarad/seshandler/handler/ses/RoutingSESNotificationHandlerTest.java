@@ -0,0 +1,154 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.routing.RoutingConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RoutingSESNotificationHandlerTest {
+
+    private static final RoutingConfig CONFIG = RoutingConfig.parse("""
+            {"routes": [
+              {"name": "permanent", "notificationTypes": ["Bounce"], "bounceTypes": ["Permanent"],
+               "actions": ["log", "email"]},
+              {"name": "test-domain", "recipientDomains": ["example.com"], "notificationTypes": ["Delivery"],
+               "actions": ["drop"]},
+              {"name": "complaints", "notificationTypes": ["Complaint"], "actions": ["forward:abuse@example.org"]}
+            ]}""");
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private SESNotificationHandler log;
+
+    @Mock
+    private SESNotificationHandler email;
+
+    @Mock
+    private SESNotificationHandler forward;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    private final List<String> created = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(context.getLogger()).thenReturn(logger);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testDispatchesToChainOfMatchingRoute() {
+        RoutingSESNotificationHandler handler = createHandler(CONFIG);
+        SESNotification bounce = parseNotification("bounce_with_dsn.json");
+        SESNotification complaint = parseNotification("complaint_with_feedback.json");
+        handler.handleNotification(bounce, context);
+        handler.handleNotification(complaint, context);
+
+        verify(log).handleNotification(bounce, context);
+        verify(email).handleNotification(bounce, context);
+        verify(forward).handleNotification(complaint, context);
+        verify(log, never()).handleNotification(complaint, context);
+        assertEquals(List.of("log", "email", "forward:abuse@example.org"), created);
+    }
+
+    @Test
+    public void testDropRouteHandsNotificationToNoHandler() {
+        RoutingSESNotificationHandler handler = createHandler(CONFIG);
+        handler.handleNotification(parseNotification("delivery.json"), context);
+
+        verifyNoInteractions(log, email, forward, logger);
+    }
+
+    @Test
+    public void testUnroutedNotificationIsLogged() {
+        RoutingSESNotificationHandler handler = createHandler(CONFIG);
+        SESNotification open = new SESNotification("Open", parseNotification("delivery.json").mail(), null, null, null);
+        handler.handleNotification(open, context);
+
+        verify(logger).log(contains("Unrouted notification Open"));
+        verifyNoInteractions(log, email, forward);
+    }
+
+    @Test
+    public void testUnroutedNotificationIsHandedToDefaultActions() {
+        RoutingSESNotificationHandler handler = createHandler(new RoutingConfig(CONFIG.routes(), List.of("log")));
+        SESNotification click = new SESNotification("Click", parseNotification("bounce_with_dsn.json").mail(),
+                null, null, null);
+        handler.handleNotification(click, context);
+
+        verify(log).handleNotification(click, context);
+        verifyNoInteractions(email, forward, logger);
+    }
+
+    @Test
+    public void testIgnoresTypesThatNoRouteMatches() {
+        RoutingSESNotificationHandler handler = createHandler(CONFIG);
+        assertFalse(handler.ignores("Bounce"));
+        assertTrue(handler.ignores("Open"));
+        assertFalse(createHandler(new RoutingConfig(CONFIG.routes(), List.of("log"))).ignores("Open"));
+    }
+
+    @Test
+    public void testFlushReachesEveryHandlerWhenOneFails() {
+        RoutingSESNotificationHandler handler = createHandler(CONFIG);
+        doThrow(new RuntimeException("first")).when(log).flush(context);
+        doThrow(new RuntimeException("second")).when(forward).flush(context);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> handler.flush(context));
+        assertEquals("first", e.getMessage());
+        assertEquals(1, e.getSuppressed().length);
+        verify(email).flush(context);
+    }
+
+    @Test
+    public void testRequiresMailHeadersOnlyWhenNeeded() {
+        when(log.requiresMailHeaders()).thenReturn(false);
+        when(email.requiresMailHeaders()).thenReturn(false);
+        when(forward.requiresMailHeaders()).thenReturn(false);
+        assertFalse(createHandler(CONFIG).requiresMailHeaders());
+
+        RoutingConfig byHeader = RoutingConfig.parse("""
+                {"routes": [{"name": "tagged", "headers": {"X-Tag": ["alerts"]}, "actions": ["log"]}]}""");
+        assertTrue(createHandler(byHeader).requiresMailHeaders());
+    }
+
+    @Test
+    public void testDropCannotBeCombinedWithOtherActions() {
+        RoutingConfig config = RoutingConfig.parse("""
+                {"routes": [{"name": "bad", "actions": ["log", "drop"]}]}""");
+        assertThrows(IllegalArgumentException.class, () -> createHandler(config));
+        assertThrows(IllegalArgumentException.class, () -> RoutingSESNotificationHandler.createAction("mystery"));
+    }
+
+    private RoutingSESNotificationHandler createHandler(RoutingConfig config) {
+        Map<String, SESNotificationHandler> actions = Map.of("log", log, "email", email,
+                "forward:abuse@example.org", forward);
+        return new RoutingSESNotificationHandler(config, name -> {
+            created.add(name);
+            return actions.get(name);
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package com.megafarad.seshandler.handler.ses;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SESNotificationHandlersTest {
+
+    @Test
+    public void testBuiltInHandlerIsProvided() {
+        assertTrue(SESNotificationHandlers.create(LoggingSESNotificationHandler.class.getName())
+                instanceof LoggingSESNotificationHandler);
+    }
+
+    @Test
+    public void testEveryBuiltInHandlerIsRegistered() {
+        assertEquals(7, new BuiltInSESNotificationHandlerProvider().handlers().size());
+        assertTrue(new BuiltInSESNotificationHandlerProvider().handlers()
+                .containsKey(SendEmailSESNotificationHandler.class.getName()));
+    }
+
+    @Test
+    public void testUnregisteredHandlerIsInstantiatedReflectively() {
+        assertTrue(SESNotificationHandlers.create(TestHandler.class.getName()) instanceof TestHandler);
+    }
+
+    @Test
+    public void testClassThatIsNotAHandlerIsRejected() {
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> SESNotificationHandlers.create(String.class.getName()));
+        assertTrue(e.getMessage().contains(String.class.getName()));
+    }
+
+    @Test
+    public void testUnknownClassIsRejected() {
+        assertThrows(RuntimeException.class, () -> SESNotificationHandlers.create("com.example.MissingHandler"));
+    }
+
+    public static class TestHandler extends AbstractSESNotificationHandler { }
+}
@@ -5,6 +5,7 @@ import com.amazonaws.services.lambda.runtime.LambdaLogger;
 import com.megafarad.seshandler.model.SESNotification;
 import com.megafarad.seshandler.rendering.ProductionRenderingService;
 import com.megafarad.seshandler.sender.EmailSender;
+import com.megafarad.seshandler.sender.NotificationAttachment;
 import io.pebbletemplates.pebble.PebbleEngine;
 import io.pebbletemplates.pebble.loader.StringLoader;
 import org.junit.jupiter.api.AfterEach;
@@ -126,7 +127,45 @@ class SendEmailSESNotificationHandlerTest {
                 argThat(s -> s.contains("jane@example.com")));
     }
 
+    @Test
+    public void testPrimingRendersWithoutSending() {
+        SendEmailSESNotificationHandler handler = createHandler(emailSender);
+        handler.prime(parseNotification("bounce_with_dsn.json"));
+        handler.prime(parseNotification("complaint_with_feedback.json"));
+        handler.prime(parseNotification("delivery.json"));
+
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCheckpointAndRestoreAreForwardedToSender() {
+        SendEmailSESNotificationHandler handler = createHandler(emailSender);
+        handler.beforeCheckpoint();
+        handler.afterRestore();
+
+        verify(emailSender).beforeCheckpoint();
+        verify(emailSender).afterRestore();
+    }
+
+    @Test
+    public void testAttachesNotification() {
+        SendEmailSESNotificationHandler handler = createHandler(emailSender, NotificationAttachment.DSN);
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        verify(emailSender).send(eq(senderEmail),
+                eq(recipientEmail),
+                eq(bounceSubject),
+                anyString(),
+                anyString(),
+                argThat(attachments -> attachments.size() == 1 &&
+                        attachments.getFirst().contentType().equals("message/delivery-status")));
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
     private SendEmailSESNotificationHandler createHandler(EmailSender emailSender) {
+        return createHandler(emailSender, NotificationAttachment.NONE);
+    }
+
+    private SendEmailSESNotificationHandler createHandler(EmailSender emailSender, NotificationAttachment attachment) {
         PebbleEngine bodyEngine = new PebbleEngine.Builder().autoEscaping(true).build();
         PebbleEngine subjectEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
 
@@ -143,8 +182,8 @@ class SendEmailSESNotificationHandlerTest {
                 subjectEngine.getTemplate(complaintSubject),
                 subjectEngine.getTemplate(deliverySubject),
                 senderEmail,
-                recipientEmail
-
+                recipientEmail,
+                attachment
         );
     }
 
@@ -0,0 +1,90 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.Complaint;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.suppression.SuppressionList;
+import com.megafarad.seshandler.suppression.SuppressionReason;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuppressionSESNotificationHandlerTest {
+
+    private AutoCloseable closeable;
+    private Path path;
+
+    @Mock
+    private Context context;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        closeable = MockitoAnnotations.openMocks(this);
+        path = Files.createTempFile("suppression", ".snapshot");
+        Files.delete(path);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        closeable.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testPermanentBouncesAndComplaintsAreSuppressed() {
+        SuppressionList list = new SuppressionList(Clock.systemUTC());
+        SuppressionSESNotificationHandler handler = new SuppressionSESNotificationHandler(list, null,
+                Duration.ofDays(30), null);
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.handleNotification(parseNotification("complaint_with_feedback.json"), context);
+        handler.handleNotification(parseNotification("delivery.json"), context);
+
+        assertEquals(SuppressionReason.BOUNCE, list.lookup("jane@example.com").reason());
+        assertEquals(SuppressionReason.COMPLAINT, list.lookup("richard@example.com").reason());
+        assertEquals(2, list.entries().size());
+        assertTrue(handler.ignores("Delivery"));
+        assertFalse(handler.ignores("Complaint"));
+    }
+
+    @Test
+    public void testTransientBouncesAndNotSpamComplaintsAreNotSuppressed() {
+        SuppressionList list = new SuppressionList(Clock.systemUTC());
+        SuppressionSESNotificationHandler handler = new SuppressionSESNotificationHandler(list, null, null, null);
+        SESNotification bounce = parseNotification("bounce_with_dsn.json");
+        Bounce b = bounce.bounce();
+        handler.handleNotification(new SESNotification("Bounce", bounce.mail(), new Bounce("Transient",
+                b.bounceSubType(), b.bouncedRecipients(), b.timestamp(), b.feedbackId(), b.remoteMtaIp(),
+                b.reportingMTA()), null, null), context);
+        SESNotification complaint = parseNotification("complaint_with_feedback.json");
+        Complaint c = complaint.complaint();
+        handler.handleNotification(new SESNotification("Complaint", complaint.mail(), null, new Complaint(
+                c.complainedRecipients(), c.timestamp(), c.complaintSubType(), c.feedbackId(), c.userAgent(),
+                "not-spam", c.arrivalDate()), null), context);
+
+        assertFalse(list.hasChanges());
+    }
+
+    @Test
+    public void testFlushSavesChangedList() {
+        SuppressionSESNotificationHandler handler = new SuppressionSESNotificationHandler(
+                new SuppressionList(Clock.systemUTC()), path, null, null);
+        handler.flush(context);
+        assertFalse(Files.exists(path));
+
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.flush(context);
+        assertTrue(SuppressionList.load(path, Clock.systemUTC()).isSuppressed("jane@example.com"));
+    }
+}
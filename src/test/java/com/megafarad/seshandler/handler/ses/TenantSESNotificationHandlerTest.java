@@ -0,0 +1,143 @@
+package com.megafarad.seshandler.handler.ses;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import com.megafarad.seshandler.routing.TenantConfig;
+import com.megafarad.seshandler.sender.EmailSender;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TenantSESNotificationHandlerTest {
+
+    private static final String CONFIG = """
+            {"tenants": [
+              {"name": "example", "sourceArns": ["arn:aws:ses:us-east-1:888888888888:identity/example.com"],
+               "recipients": ["ops@example.com", "oncall@example.com", "ops@example.com"]},
+              {"name": "account", "sendingAccountIds": ["123456789012"], "recipients": ["account@example.com"],
+               "subjectTemplate": "Account: {{ tenant.count }}"},
+              {"name": "other", "sourceDomains": ["example.org"], "recipients": ["other@example.org"]}
+            ]}""";
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private EmailSender emailSender;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(context.getLogger()).thenReturn(logger);
+    }
+
+    @AfterEach
+    void destroy() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testNotificationsOfATenantAreCoalescedPerRecipient() {
+        TenantSESNotificationHandler handler = createHandler(CONFIG);
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.handleNotification(parseNotification("complaint_with_feedback.json"), context);
+        handler.handleNotification(parseNotification("delivery.json"), context);
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+
+        handler.flush(context);
+
+        verify(emailSender).send(eq("sender@example.com"), eq("ops@example.com"),
+                eq("3 SES notification(s) for example"),
+                argThat(s -> s.contains("Bounce (Permanent)") && s.contains("Complaint")),
+                argThat(s -> s.contains("Notifications: 3") && s.contains("jane@example.com")
+                        && s.contains("richard@example.com") && s.contains("abuse")));
+        verify(emailSender).send(eq("sender@example.com"), eq("oncall@example.com"),
+                eq("3 SES notification(s) for example"), anyString(), anyString());
+        verify(emailSender).send(eq("sender@example.com"), eq("account@example.com"), eq("Account: 3"),
+                anyString(), anyString());
+        verify(emailSender, times(3)).send(anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(emailSender).flush();
+
+        handler.flush(context);
+        verify(emailSender, times(3)).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testNotificationsOfNoTenantGoToDefaultRecipients() {
+        TenantSESNotificationHandler handler = createHandler("""
+                {"tenants": [{"name": "other", "sourceDomains": ["example.org"], "recipients": ["other@example.org"]}],
+                 "defaultRecipients": ["postmaster@example.com"]}""");
+        handler.handleNotification(parseNotification("bounce_with_dsn.json"), context);
+        handler.flush(context);
+
+        verify(emailSender).send(eq("sender@example.com"), eq("postmaster@example.com"),
+                eq("1 SES notification(s) for default"), anyString(), anyString());
+        verify(emailSender, times(1)).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testNotificationsOfNoTenantAreLoggedWithoutDefaultRecipients() {
+        TenantSESNotificationHandler handler = createHandler("""
+                {"tenants": [
+                  {"name": "other", "sourceDomains": ["example.org"], "recipients": ["other@example.org"]}
+                ]}""");
+        handler.handleNotification(parseNotification("delivery.json"), context);
+        handler.flush(context);
+
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(logger).log(argThat((String message) -> message.startsWith("Notification of no tenant")));
+        assertTrue(handler.ignores("Open"));
+        assertFalse(handler.ignores("Bounce"));
+        assertFalse(handler.requiresMailHeaders());
+    }
+
+    @Test
+    public void testFailedTenantFailsFlushAfterOtherTenantsAreNotified() {
+        TenantSESNotificationHandler handler = createHandler(CONFIG);
+        RuntimeException throttled = new RuntimeException("throttled");
+        doThrow(throttled).when(emailSender).send(anyString(), eq("ops@example.com"), anyString(), anyString(),
+                anyString());
+        handler.handleNotification(parseNotification("delivery.json"), context);
+
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> handler.flush(context));
+
+        assertSame(throttled, exception);
+        verify(emailSender).send(anyString(), eq("account@example.com"), anyString(), anyString(), anyString());
+        verify(emailSender).flush();
+        verify(logger).log(argThat((String message) -> message.startsWith("Failed to send notifications of tenant")));
+    }
+
+    @Test
+    public void testPrimingDoesNotCollectOrSend() {
+        TenantSESNotificationHandler handler = createHandler(CONFIG);
+        handler.prime(parseNotification("bounce_with_dsn.json"));
+        handler.prime(parseNotification("complaint_with_feedback.json"));
+        handler.prime(parseNotification("delivery.json"));
+        handler.flush(context);
+
+        verify(emailSender, never()).send(anyString(), anyString(), anyString(), anyString(), anyString());
+    }
+
+    private TenantSESNotificationHandler createHandler(String config) {
+        return new TenantSESNotificationHandler(TenantConfig.parse(config), emailSender,
+                new ProductionRenderingService(), new PebbleEngine.Builder().autoEscaping(true).build()::getTemplate,
+                new PebbleEngine.Builder().loader(new StringLoader()).build(),
+                "{{ tenant.count }} SES notification(s) for {{ tenant.name }}",
+                "templates/html-tenant-notification.peb", "templates/text-tenant-notification.peb",
+                "sender@example.com", false);
+    }
+}
@@ -0,0 +1,176 @@
+package com.megafarad.seshandler.handler.sns;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.megafarad.seshandler.handler.ses.LoggingSESNotificationHandler;
+import com.megafarad.utils.ResourceReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the native executable built by the {@code native} Maven profile against the JSON fixtures.
+ * <p>
+ * The executable is started as it is started by a Lambda custom runtime, against a local
+ * implementation of the Lambda Runtime API that hands out one SNS event per fixture and records
+ * the responses. The test is skipped when the executable has not been built.
+ */
+public class SNSMessageHandlerNativeIT {
+
+    private static final String FUNCTION_HANDLER = SNSMessageHandler.class.getName() + "::handleRequest";
+    private static final String TOPIC_ARN = "arn:aws:sns:us-east-1:123456789012:ses-notifications";
+    private static final List<String> FIXTURES = List.of("bounce_with_dsn.json", "bounce_without_dsn.json",
+            "complaint_with_feedback.json", "complaint_without_feedback.json", "delivery.json");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BlockingQueue<Invocation> invocations = new LinkedBlockingQueue<>();
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final Map<String, String> errors = new ConcurrentHashMap<>();
+    private final CountDownLatch completed = new CountDownLatch(FIXTURES.size());
+    private ExecutorService executor;
+    private HttpServer server;
+    private Process process;
+
+    @AfterEach
+    public void tearDown() {
+        if (process != null) {
+            process.destroyForcibly();
+        }
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBinaryHandlesFixtures() throws Exception {
+        Path binary = Path.of(System.getProperty("native.binary", "target/ses-notification-handler"));
+        Assumptions.assumeTrue(Files.isExecutable(binary), "Native executable not built: " + binary);
+
+        for (String fixture : FIXTURES) {
+            invocations.add(new Invocation(UUID.randomUUID().toString(), createEvent(fixture)));
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/2018-06-01/runtime/", this::handleRuntimeApi);
+        server.setExecutor(executor);
+        server.start();
+
+        Path output = Files.createTempFile("ses-notification-handler", ".log");
+        ProcessBuilder builder = new ProcessBuilder(binary.toAbsolutePath().toString(), FUNCTION_HANDLER)
+                .redirectErrorStream(true)
+                .redirectOutput(output.toFile());
+        builder.environment().put("AWS_LAMBDA_RUNTIME_API", "127.0.0.1:" + server.getAddress().getPort());
+        builder.environment().put("_HANDLER", FUNCTION_HANDLER);
+        builder.environment().put("SES_NOTIFICATION_HANDLER_CLASS", LoggingSESNotificationHandler.class.getName());
+        process = builder.start();
+
+        boolean finished = completed.await(30, TimeUnit.SECONDS);
+        process.destroy();
+        process.waitFor(5, TimeUnit.SECONDS);
+        String log = Files.readString(output);
+        Files.delete(output);
+
+        assertTrue(finished, "Not every invocation completed:\n" + log);
+        assertEquals(Map.of(), errors, log);
+        assertEquals(FIXTURES.size(), responses.size());
+        assertTrue(log.contains("Bounce received"), log);
+        assertTrue(log.contains("Complaint received"), log);
+        assertTrue(log.contains("Delivery received"), log);
+        assertFalse(log.contains("Failed to handle message"), log);
+    }
+
+    private void handleRuntimeApi(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (path.endsWith("/invocation/next")) {
+            Invocation invocation;
+            try {
+                invocation = invocations.take();
+            } catch (InterruptedException e) {
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Lambda-Runtime-Aws-Request-Id", invocation.requestId());
+            exchange.getResponseHeaders().add("Lambda-Runtime-Deadline-Ms",
+                    Long.toString(System.currentTimeMillis() + 30000));
+            exchange.getResponseHeaders().add("Lambda-Runtime-Invoked-Function-Arn",
+                    "arn:aws:lambda:us-east-1:123456789012:function:ses-notification-handler");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            respond(exchange, 200, invocation.event());
+            return;
+        }
+
+        if (path.endsWith("/response")) {
+            responses.put(requestId(path), body);
+            completed.countDown();
+        } else if (path.endsWith("/init/error")) {
+            errors.put("init", body);
+            while (completed.getCount() > 0) {
+                completed.countDown();
+            }
+        } else if (path.endsWith("/error")) {
+            errors.put(requestId(path), body);
+            completed.countDown();
+        }
+        respond(exchange, 202, "{}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String requestId(String path) {
+        String[] segments = path.split("/");
+        return segments[segments.length - 2];
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private byte[] createEvent(String fixture) throws IOException {
+        ObjectNode sns = mapper.createObjectNode()
+                .put("Type", "Notification")
+                .put("MessageId", UUID.randomUUID().toString())
+                .put("TopicArn", TOPIC_ARN)
+                .put("Message", ResourceReader.readResourceToString(fixture))
+                .put("Timestamp", "2024-01-01T00:00:00.000Z")
+                .put("SignatureVersion", "1")
+                .put("Signature", "EXAMPLE")
+                .put("SigningCertUrl", "https://sns.us-east-1.amazonaws.com/SimpleNotificationService.pem")
+                .put("UnsubscribeUrl", "https://sns.us-east-1.amazonaws.com/?Action=Unsubscribe");
+        sns.putObject("MessageAttributes");
+        ObjectNode record = mapper.createObjectNode()
+                .put("EventSource", "aws:sns")
+                .put("EventVersion", "1.0")
+                .put("EventSubscriptionArn", TOPIC_ARN + ":" + UUID.randomUUID());
+        record.set("Sns", sns);
+        ObjectNode event = mapper.createObjectNode();
+        event.putArray("Records").add(record);
+        return mapper.writeValueAsBytes(event);
+    }
+
+    private record Invocation(String requestId, byte[] event) { }
+}
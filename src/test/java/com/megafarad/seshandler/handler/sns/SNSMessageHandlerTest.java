@@ -0,0 +1,187 @@
+package com.megafarad.seshandler.handler.sns;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import com.megafarad.seshandler.handler.ses.AbstractSESNotificationHandler;
+import com.megafarad.seshandler.handler.ses.SESNotificationHandler;
+import com.megafarad.seshandler.metrics.Metrics;
+import com.megafarad.seshandler.metrics.MetricsSnapshot;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.utils.ResourceReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class SNSMessageHandlerTest {
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private SESNotificationHandler sesHandler;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(context.getLogger()).thenReturn(logger);
+        when(context.getRemainingTimeInMillis()).thenReturn(30000);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testSequentialProcessing() {
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 1, 1000);
+        handler.handleRequest(createEvent("bounce_with_dsn.json", "complaint_with_feedback.json", "delivery.json"),
+                context);
+        verify(sesHandler, times(3)).handleNotification(any(SESNotification.class), eq(context));
+        verify(sesHandler).flush(context);
+    }
+
+    @Test
+    public void testConcurrentProcessing() {
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 4, 1000);
+        handler.handleRequest(createEvent("bounce_with_dsn.json", "bounce_without_dsn.json",
+                "complaint_with_feedback.json", "complaint_without_feedback.json", "delivery.json"), context);
+        verify(sesHandler, times(5)).handleNotification(any(SESNotification.class), eq(context));
+    }
+
+    @Test
+    public void testFailedRecordDoesNotStopBatch() {
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 4, 1000);
+        SNSEvent event = createEvent("bounce_with_dsn.json", "delivery.json");
+        event.getRecords().add(0, new SNSEvent.SNSRecord().withSns(new SNSEvent.SNS().withMessage("not json")));
+        handler.handleRequest(event, context);
+        verify(sesHandler, times(2)).handleNotification(any(SESNotification.class), eq(context));
+        verify(logger).log(contains("Failed to handle message"));
+    }
+
+    @Test
+    public void testFlushFailureIsLogged() {
+        doThrow(new RuntimeException("1 email send(s) failed")).when(sesHandler).flush(context);
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 1, 1000);
+        handler.handleRequest(createEvent("delivery.json"), context);
+        verify(logger).log(contains("Failed to flush handler"));
+    }
+
+    @Test
+    public void testStopsWhenRemainingTimeBelowSafetyMargin() {
+        when(context.getRemainingTimeInMillis()).thenReturn(500);
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 4, 1000);
+        handler.handleRequest(createEvent("bounce_with_dsn.json", "delivery.json"), context);
+        verify(sesHandler, never()).handleNotification(any(SESNotification.class), any(Context.class));
+        verify(logger).log(contains("skipping 2 record(s)"));
+    }
+
+    @Test
+    public void testCheckpointPrimesHandler() throws Exception {
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 1, 1000);
+        handler.beforeCheckpoint(null);
+
+        verify(sesHandler).prime(argThat(notification -> "Bounce".equals(notification.notificationType())));
+        verify(sesHandler).prime(argThat(notification -> "Complaint".equals(notification.notificationType())));
+        verify(sesHandler).prime(argThat(notification -> "Delivery".equals(notification.notificationType())));
+        verify(sesHandler).beforeCheckpoint();
+        verify(sesHandler, never()).handleNotification(any(SESNotification.class), any(Context.class));
+    }
+
+    @Test
+    public void testRestoreTimeIsLoggedOnce() {
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 1, 1000);
+        handler.afterRestore(null);
+        verify(sesHandler).afterRestore();
+
+        handler.handleRequest(createEvent("delivery.json"), context);
+        handler.handleRequest(createEvent("delivery.json"), context);
+        verify(logger, times(1)).log(contains("Restored from snapshot: restore hooks took"));
+    }
+
+    @Test
+    public void testMetricsAreFlushedOncePerInvocation() {
+        when(context.getFunctionName()).thenReturn("ses-notification-handler");
+        List<MetricsSnapshot> published = new ArrayList<>();
+        Metrics metrics = new Metrics(published::add);
+        SNSMessageHandler handler = new SNSMessageHandler(new AbstractSESNotificationHandler(metrics) { }, 4, 1000,
+                metrics);
+        SNSEvent event = createEvent("bounce_with_dsn.json", "bounce_without_dsn.json", "delivery.json");
+        event.getRecords().add(new SNSEvent.SNSRecord().withSns(new SNSEvent.SNS().withMessage("not json")));
+        handler.handleRequest(event, context);
+
+        assertEquals(1, published.size());
+        MetricsSnapshot snapshot = published.getFirst();
+        assertEquals("ses-notification-handler", snapshot.functionName());
+        assertEquals(3, snapshot.distributions().get("ParseLatency").count());
+        assertEquals(3, snapshot.distributions().get("DispatchLatency").count());
+        assertEquals(1L, (long) snapshot.counters().get("ParseFailures"));
+        assertEquals(0L, (long) snapshot.counters().get("DispatchFailures"));
+        assertEquals(Map.of("Bounce", 2L, "Delivery", 1L), snapshot.notificationTypes());
+    }
+
+    @Test
+    public void testDispatchFailuresAreCounted() {
+        doThrow(new RuntimeException("boom")).when(sesHandler).handleNotification(any(SESNotification.class),
+                any(Context.class));
+        List<MetricsSnapshot> published = new ArrayList<>();
+        SNSMessageHandler handler = new SNSMessageHandler(sesHandler, 1, 1000, new Metrics(published::add));
+        handler.handleRequest(createEvent("delivery.json"), context);
+
+        assertEquals(1L, (long) published.getFirst().counters().get("DispatchFailures"));
+        verify(logger).log(contains("Failed to handle message"));
+    }
+
+    @Test
+    public void testIgnoredTypesAreSkippedBeforeParsing() {
+        List<MetricsSnapshot> published = new ArrayList<>();
+        Metrics metrics = new Metrics(published::add);
+        List<String> handled = new ArrayList<>();
+        SESNotificationHandler deliveriesOnly = new SESNotificationHandler() {
+            @Override
+            public void handleNotification(SESNotification notification, Context context) {
+                handled.add(notification.notificationType());
+            }
+
+            @Override
+            public boolean ignores(String notificationType) {
+                return !"Delivery".equals(notificationType);
+            }
+        };
+        SNSMessageHandler handler = new SNSMessageHandler(deliveriesOnly, 1, 1000, metrics);
+        SNSEvent event = createEvent("open_event.json", "delivery.json", "click_event.json");
+        event.getRecords().add(new SNSEvent.SNSRecord().withSns(new SNSEvent.SNS()
+                .withMessage("{\"eventType\":\"Open\",\"mail\":[\"not a mail object\"]}")));
+        handler.handleRequest(event, context);
+
+        assertEquals(List.of("Delivery"), handled);
+        MetricsSnapshot snapshot = published.getFirst();
+        assertEquals(3L, (long) snapshot.counters().get("SkippedNotifications"));
+        assertEquals(0L, (long) snapshot.counters().get("ParseFailures"));
+        assertEquals(1, snapshot.distributions().get("ParseLatency").count());
+    }
+
+    private SNSEvent createEvent(String... paths) {
+        return new SNSEvent().withRecords(Arrays.stream(paths)
+                .map(path -> new SNSEvent.SNSRecord()
+                        .withSns(new SNSEvent.SNS().withMessage(ResourceReader.readResourceToString(path))))
+                .collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,139 @@
+package com.megafarad.seshandler.handler.sqs;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megafarad.seshandler.handler.ses.SESNotificationHandler;
+import com.megafarad.seshandler.handler.sns.SNSMessageHandler;
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.utils.ResourceReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SQSMessageHandlerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private SESNotificationHandler sesHandler;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private LambdaLogger logger;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(context.getLogger()).thenReturn(logger);
+        when(context.getRemainingTimeInMillis()).thenReturn(30000);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testUnwrapsSnsEnvelopes() throws Exception {
+        SQSMessageHandler handler = new SQSMessageHandler(new SNSMessageHandler(sesHandler, 4, 1000));
+        SQSBatchResponse response = handler.handleRequest(createEvent(
+                message("1", envelope("bounce_with_dsn.json")),
+                message("2", envelope("complaint_with_feedback.json")),
+                message("3", ResourceReader.readResourceToString("delivery.json"))), context);
+
+        assertTrue(response.getBatchItemFailures().isEmpty());
+        verify(sesHandler).handleNotification(argThat(n -> "Bounce".equals(n.notificationType())), eq(context));
+        verify(sesHandler).handleNotification(argThat(n -> "Complaint".equals(n.notificationType())), eq(context));
+        verify(sesHandler).handleNotification(argThat(n -> "Delivery".equals(n.notificationType())), eq(context));
+        verify(sesHandler).flush(context);
+    }
+
+    @Test
+    public void testReportsOnlyFailedMessages() throws Exception {
+        doThrow(new RuntimeException("send failed")).when(sesHandler)
+                .handleNotification(argThat(n -> "Complaint".equals(n.notificationType())), any(Context.class));
+        SQSMessageHandler handler = new SQSMessageHandler(new SNSMessageHandler(sesHandler, 1, 1000));
+        SQSBatchResponse response = handler.handleRequest(createEvent(
+                message("1", envelope("bounce_with_dsn.json")),
+                message("2", "not json"),
+                message("3", envelope("complaint_without_feedback.json")),
+                message("4", envelope("delivery.json"))), context);
+
+        assertEquals(List.of("2", "3"), failedIds(response));
+        verify(sesHandler, times(3)).handleNotification(any(SESNotification.class), eq(context));
+    }
+
+    @Test
+    public void testReportsSkippedMessages() throws Exception {
+        when(context.getRemainingTimeInMillis()).thenReturn(500);
+        SQSMessageHandler handler = new SQSMessageHandler(new SNSMessageHandler(sesHandler, 4, 1000));
+        SQSBatchResponse response = handler.handleRequest(createEvent(
+                message("1", envelope("bounce_with_dsn.json")), message("2", envelope("delivery.json"))), context);
+
+        assertEquals(List.of("1", "2"), failedIds(response));
+    }
+
+    @Test
+    public void testFlushFailureReportsWholeBatch() throws Exception {
+        doThrow(new RuntimeException("1 email send(s) failed")).when(sesHandler).flush(context);
+        SQSMessageHandler handler = new SQSMessageHandler(new SNSMessageHandler(sesHandler, 1, 1000));
+        SQSBatchResponse response = handler.handleRequest(createEvent(
+                message("1", envelope("bounce_with_dsn.json")), message("2", envelope("delivery.json"))), context);
+
+        assertEquals(List.of("1", "2"), failedIds(response));
+    }
+
+    @Test
+    public void testUnwrap() throws Exception {
+        assertEquals("{\"notificationType\":\"Delivery\"}",
+                SQSMessageHandler.unwrap("{\"notificationType\":\"Delivery\"}"));
+        assertEquals("{\"notificationType\":\"Delivery\"}", SQSMessageHandler.unwrap(mapper.writeValueAsString(
+                Map.of("Type", "Notification", "Message", "{\"notificationType\":\"Delivery\"}",
+                        "MessageAttributes", Map.of("a", Map.of("Type", "String"))))));
+        assertEquals("not json", SQSMessageHandler.unwrap("not json"));
+        assertNull(SQSMessageHandler.unwrap(null));
+    }
+
+    private String envelope(String fixture) throws Exception {
+        return mapper.writeValueAsString(Map.of(
+                "Type", "Notification",
+                "MessageId", "22b80b92-fdea-4c2c-8f9d-bdfb0c7bf324",
+                "TopicArn", "arn:aws:sns:us-east-1:123456789012:ses-notifications",
+                "Message", ResourceReader.readResourceToString(fixture),
+                "Timestamp", "2024-01-01T00:00:00.000Z"));
+    }
+
+    private static SQSEvent.SQSMessage message(String id, String body) {
+        SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+        message.setMessageId(id);
+        message.setBody(body);
+        return message;
+    }
+
+    private static SQSEvent createEvent(SQSEvent.SQSMessage... messages) {
+        SQSEvent event = new SQSEvent();
+        event.setRecords(new ArrayList<>(List.of(messages)));
+        return event;
+    }
+
+    private static List<String> failedIds(SQSBatchResponse response) {
+        return response.getBatchItemFailures().stream().map(SQSBatchResponse.BatchItemFailure::getItemIdentifier)
+                .toList();
+    }
+}
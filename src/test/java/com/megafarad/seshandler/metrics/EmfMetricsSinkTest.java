@@ -0,0 +1,58 @@
+package com.megafarad.seshandler.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmfMetricsSinkTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testWritesEmbeddedMetricFormat() throws Exception {
+        List<String> lines = new ArrayList<>();
+        EmfMetricsSink sink = new EmfMetricsSink("Test", lines::add);
+        sink.publish(new MetricsSnapshot(1700000000000L, "handler",
+                Map.of("ParseLatency", new MetricsSnapshot.Distribution("Milliseconds", List.of(1.0, 2.0),
+                        List.of(3L, 1L), 0.5, 1.9, 4.0, 4)),
+                Map.of("ParseFailures", 1L), Map.of("Bounce", 4L)));
+
+        assertEquals(2, lines.size());
+        JsonNode stages = mapper.readTree(lines.get(0));
+        JsonNode directive = stages.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals(1700000000000L, stages.get("_aws").get("Timestamp").asLong());
+        assertEquals("Test", directive.get("Namespace").asText());
+        assertEquals("[[\"FunctionName\"]]", directive.get("Dimensions").toString());
+        assertEquals("handler", stages.get("FunctionName").asText());
+        assertEquals("ParseLatency", directive.get("Metrics").get(0).get("Name").asText());
+        assertEquals("Milliseconds", directive.get("Metrics").get(0).get("Unit").asText());
+        assertEquals("[1.0,2.0]", stages.get("ParseLatency").get("Values").toString());
+        assertEquals("[3,1]", stages.get("ParseLatency").get("Counts").toString());
+        assertEquals(4, stages.get("ParseLatency").get("Count").asLong());
+        assertEquals(1, stages.get("ParseFailures").asLong());
+
+        JsonNode notifications = mapper.readTree(lines.get(1));
+        assertEquals("[[\"FunctionName\",\"NotificationType\"]]",
+                notifications.get("_aws").get("CloudWatchMetrics").get(0).get("Dimensions").toString());
+        assertEquals("Bounce", notifications.get("NotificationType").asText());
+        assertEquals(4, notifications.get("Notifications").asLong());
+    }
+
+    @Test
+    public void testOmitsFunctionNameWhenUnknown() throws Exception {
+        EmfMetricsSink sink = new EmfMetricsSink("Test", line -> { });
+        List<String> documents = sink.format(new MetricsSnapshot(0, null, Map.of(), Map.of("SendFailures", 2L),
+                Map.of()));
+
+        assertEquals(1, documents.size());
+        JsonNode document = mapper.readTree(documents.getFirst());
+        assertEquals("[[]]", document.get("_aws").get("CloudWatchMetrics").get(0).get("Dimensions").toString());
+        assertNull(document.get("FunctionName"));
+    }
+}
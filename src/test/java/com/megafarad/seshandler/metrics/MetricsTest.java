@@ -0,0 +1,94 @@
+package com.megafarad.seshandler.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    private final List<MetricsSnapshot> published = new ArrayList<>();
+    private Metrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        metrics = new Metrics(published::add);
+    }
+
+    @Test
+    public void testFlushPublishesRecordedMetrics() {
+        metrics.recordLatency(Metrics.Stage.PARSE, TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.recordLatency(Metrics.Stage.PARSE, TimeUnit.MILLISECONDS.toNanos(8));
+        metrics.recordFailure(Metrics.Stage.SEND);
+        metrics.recordNotification("Bounce");
+        metrics.recordNotification("Bounce");
+        metrics.recordNotification("Delivery");
+        metrics.recordRenderedBytes(1024);
+        metrics.flush("handler");
+
+        assertEquals(1, published.size());
+        MetricsSnapshot snapshot = published.getFirst();
+        assertEquals("handler", snapshot.functionName());
+        MetricsSnapshot.Distribution parse = snapshot.distributions().get("ParseLatency");
+        assertEquals("Milliseconds", parse.unit());
+        assertEquals(2, parse.count());
+        assertEquals(2.0, parse.min(), 1e-9);
+        assertEquals(8.0, parse.max(), 1e-9);
+        assertEquals(10.0, parse.sum(), 1e-9);
+        assertEquals(List.of(1L, 1L), parse.counts());
+        assertFalse(snapshot.distributions().containsKey("SendLatency"));
+        assertEquals("Bytes", snapshot.distributions().get("RenderedBytes").unit());
+        assertEquals(1L, (long) snapshot.counters().get("SendFailures"));
+        assertEquals(0L, (long) snapshot.counters().get("ParseFailures"));
+        assertEquals(Map.of("Bounce", 2L, "Delivery", 1L), snapshot.notificationTypes());
+    }
+
+    @Test
+    public void testFlushResetsMetrics() {
+        metrics.recordNotification("Complaint");
+        metrics.flush("handler");
+        metrics.flush("handler");
+        assertEquals(1, published.size());
+
+        metrics.recordLatency(Metrics.Stage.RENDER, 1000);
+        metrics.flush("handler");
+        assertEquals(2, published.size());
+        assertEquals(Map.of(), published.get(1).notificationTypes());
+        assertEquals(1, published.get(1).distributions().get("RenderLatency").count());
+    }
+
+    @Test
+    public void testHistogramBucketsAreBounded() {
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordLatency(Metrics.Stage.SEND, (long) Math.pow(1.05, i));
+        }
+        metrics.flush(null);
+
+        MetricsSnapshot.Distribution send = published.getFirst().distributions().get("SendLatency");
+        assertTrue(send.values().size() <= 100);
+        assertEquals(1000L, send.counts().stream().mapToLong(Long::longValue).sum());
+        for (int i = 1; i < send.values().size(); i++) {
+            assertTrue(send.values().get(i) > send.values().get(i - 1));
+        }
+    }
+
+    @Test
+    public void testDisabledMetricsRecordNothing() {
+        Metrics disabled = Metrics.disabled();
+        disabled.recordNotification("Bounce");
+        disabled.flush("handler");
+        assertFalse(disabled.isEnabled());
+    }
+
+    @Test
+    public void testUtf8Length() {
+        assertEquals(0, Metrics.utf8Length(null));
+        assertEquals("héllo €𝄞".getBytes(java.nio.charset.StandardCharsets.UTF_8).length,
+                Metrics.utf8Length("héllo €𝄞"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.megafarad.seshandler.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+
+public class MailHeadersTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void lookupByNameIgnoresCase() {
+        MailHeaders headers = parseNotification("bounce_with_dsn.json").mail().headers();
+
+        Assertions.assertEquals("custom-message-ID", headers.value("message-id"));
+        Assertions.assertEquals("Hello", headers.value("SUBJECT"));
+        Assertions.assertNull(headers.value("X-Campaign-Id"));
+        Assertions.assertEquals(7, headers.size());
+        Assertions.assertEquals(new MailHeader("From", "\"John Doe\" <john@example.com>"), headers.getFirst());
+    }
+
+    @Test
+    public void repeatedHeadersResolveToLastOccurrence() throws JsonProcessingException {
+        MailHeaders headers = mapper.readValue(
+                "[{\"name\":\"Received\",\"value\":\"first\"},{\"name\":\"received\",\"value\":\"second\"}]",
+                MailHeaders.class);
+
+        Assertions.assertEquals("second", headers.value("Received"));
+        Assertions.assertEquals(List.of("first", "second"), headers.values("RECEIVED"));
+        Assertions.assertEquals(Map.of("Received", "second"), headers.asMap());
+    }
+
+    @Test
+    public void mapViewSupportsTemplateLookups() {
+        Map<String, String> headers = MailHeaders.of(List.of(new MailHeader("X-Campaign-Id", "spring-sale")))
+                .asMap();
+
+        Assertions.assertEquals("spring-sale", headers.get("x-campaign-id"));
+        Assertions.assertTrue(headers.containsKey("X-CAMPAIGN-ID"));
+        Assertions.assertFalse(headers.containsKey("Subject"));
+        Assertions.assertEquals(1, headers.size());
+    }
+
+    @Test
+    public void readerRetainsTheHeadersArrayAsWritten() throws IOException {
+        Mail mail = new SESNotificationReader(true).read("{\"notificationType\":\"Delivery\",\"mail\":{"
+                + "\"headers\":[{\"name\":\"Subject\",\"extra\":{\"a\":[1]},\"value\":\"Say \\\"hi\\\" \\u00e9\"}],"
+                + "\"messageId\":\"id\"}}").mail();
+
+        Assertions.assertEquals(List.of(new MailHeader("Subject", "Say \"hi\" \u00e9")), mail.headers());
+        Assertions.assertEquals("id", mail.messageId());
+    }
+
+    @Test
+    public void mailCanBeConstructedFromAListOfHeaders() {
+        Mail mail = new Mail(null, "id", null, null, null, null, null, List.of(), false,
+                List.of(new MailHeader("Subject", "Hello")), null);
+
+        Assertions.assertEquals("Hello", mail.headers().value("subject"));
+        Assertions.assertNull(mail.tags());
+    }
+
+    @Test
+    public void lazyHeadersEqualEagerHeaders() throws JsonProcessingException {
+        MailHeaders lazy = mapper.readValue("[{\"name\":\"Subject\",\"value\":\"Hello\"}]", MailHeaders.class);
+
+        Assertions.assertEquals(MailHeaders.of(List.of(new MailHeader("Subject", "Hello"))), lazy);
+        Assertions.assertEquals(List.of(new MailHeader("Subject", "Hello")), lazy);
+        Assertions.assertTrue(MailHeaders.empty().isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+package com.megafarad.seshandler.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megafarad.utils.ResourceReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class SESNotificationReaderTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final SESNotificationReader reader = new SESNotificationReader(true);
+
+    private final SESNotificationReader headerlessReader = new SESNotificationReader(false);
+
+    @Test
+    public void readBounceWithDSN() throws IOException {
+        assertMatchesDataBinding("bounce_with_dsn.json");
+    }
+
+    @Test
+    public void readBounceWithoutDSN() throws IOException {
+        assertMatchesDataBinding("bounce_without_dsn.json");
+    }
+
+    @Test
+    public void readComplaintWithFeedback() throws IOException {
+        assertMatchesDataBinding("complaint_with_feedback.json");
+    }
+
+    @Test
+    public void readComplaintWithoutFeedback() throws IOException {
+        assertMatchesDataBinding("complaint_without_feedback.json");
+    }
+
+    @Test
+    public void readDelivery() throws IOException {
+        assertMatchesDataBinding("delivery.json");
+    }
+
+    @Test
+    public void readOpenEvent() throws IOException {
+        SESNotification notification = assertMatchesDataBinding("open_event.json");
+        Assertions.assertEquals("Open", notification.notificationType());
+        Assertions.assertEquals("192.0.2.1", notification.open().ipAddress());
+        Assertions.assertEquals(List.of("ConfigSet"), notification.mail().tags().get("ses:configuration-set"));
+    }
+
+    @Test
+    public void readClickEvent() throws IOException {
+        SESNotification notification = assertMatchesDataBinding("click_event.json");
+        Assertions.assertEquals(List.of("samplevalue1"), notification.click().linkTags().get("samplekey1"));
+    }
+
+    @Test
+    public void readDeliveryDelayEvent() throws IOException {
+        SESNotification notification = assertMatchesDataBinding("delivery_delay_event.json");
+        Assertions.assertEquals("MailboxFull", notification.deliveryDelay().delayType());
+        Assertions.assertEquals("4.2.2", notification.deliveryDelay().delayedRecipients().getFirst().status());
+    }
+
+    @Test
+    public void readRenderingFailureEvent() throws IOException {
+        SESNotification notification = assertMatchesDataBinding("rendering_failure_event.json");
+        Assertions.assertEquals("Rendering Failure", notification.notificationType());
+        Assertions.assertEquals("MyTemplate", notification.renderingFailure().templateName());
+    }
+
+    @Test
+    public void readSubscriptionEvent() throws IOException {
+        SESNotification notification = assertMatchesDataBinding("subscription_event.json");
+        Assertions.assertTrue(notification.subscription().newTopicPreferences().unsubscribeAll());
+        Assertions.assertEquals("OptIn", notification.subscription().oldTopicPreferences()
+                .topicSubscriptionStatus().getFirst().subscriptionStatus());
+    }
+
+    @Test
+    public void readSendAndRejectEvents() throws IOException {
+        SESNotification send = reader.read("{\"eventType\":\"Send\",\"mail\":{\"messageId\":\"id\"},\"send\":{}}");
+        Assertions.assertEquals(new Send(), send.send());
+        SESNotification reject = reader.read("{\"eventType\":\"Reject\",\"reject\":{\"reason\":\"Bad content\"}}");
+        Assertions.assertEquals("Bad content", reject.reject().reason());
+        Assertions.assertEquals(bind("{\"eventType\":\"Reject\",\"reject\":{\"reason\":\"Bad content\"}}"), reject);
+    }
+
+    @Test
+    public void peekTypeReadsOnlyUpToTheType() throws IOException {
+        Assertions.assertEquals("Bounce",
+                reader.peekType(ResourceReader.readResourceToString("bounce_with_dsn.json")));
+        Assertions.assertEquals("Click", reader.peekType(ResourceReader.readResourceToString("click_event.json")));
+        Assertions.assertEquals("Open", reader.peekType("{\"mail\":{\"headers\":[{\"name\":\"eventType\","
+                + "\"value\":\"Send\"}]},\"eventType\":\"Open\",\"open\":"));
+        Assertions.assertNull(reader.peekType("{\"mail\":{}}"));
+        Assertions.assertThrows(IOException.class, () -> reader.peekType("[]"));
+    }
+
+    @Test
+    public void readSkipsUnknownFields() throws IOException {
+        SESNotification notification = reader.read(
+                "{\"eventSource\":{\"nested\":[1,2]},\"notificationType\":\"Delivery\",\"mail\":{\"tags\":{\"a\":[\"b\"]},\"messageId\":\"id\"}}");
+        Assertions.assertEquals("Delivery", notification.notificationType());
+        Assertions.assertEquals("id", notification.mail().messageId());
+    }
+
+    @Test
+    public void readRejectsInvalidDocument() {
+        Assertions.assertThrows(IOException.class, () -> reader.read("[]"));
+    }
+
+    private SESNotification assertMatchesDataBinding(String path) throws IOException {
+        String json = ResourceReader.readResourceToString(path);
+        SESNotification expected = bind(json);
+
+        Assertions.assertEquals(expected, reader.read(json));
+
+        SESNotification headerless = headerlessReader.read(json);
+        Assertions.assertNull(headerless.mail().headers());
+        Assertions.assertEquals(expected.mail().commonHeaders(), headerless.mail().commonHeaders());
+        Assertions.assertEquals(expected.bounce(), headerless.bounce());
+        Assertions.assertEquals(expected.complaint(), headerless.complaint());
+        Assertions.assertEquals(expected.delivery(), headerless.delivery());
+        return expected;
+    }
+
+    private SESNotification bind(String json) {
+        try {
+            return mapper.readValue(json, SESNotification.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.megafarad.seshandler.outbox;
+
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import com.megafarad.seshandler.sender.EmailAttachment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("outbox");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testPendingEntriesAreRecovered() {
+        WriteAheadLog log = WriteAheadLog.open(directory, 1 << 16, false);
+        assertTrue(log.recovered().isEmpty());
+        long first = log.append("from@example.com", "jane@example.com", new RenderedEmail("Bounce", "<p>é</p>", null),
+                List.of(new EmailAttachment("notification.json", "application/json", new byte[]{'{', '}'})));
+        long second = log.append("from@example.com", "richard@example.com", email("Complaint"), List.of());
+        long third = log.append("from@example.com", "jane@example.com", email("Delivery"), List.of());
+        log.complete(second);
+        log.complete(second);
+        assertEquals(2, log.pendingCount());
+        log.close();
+
+        WriteAheadLog reopened = WriteAheadLog.open(directory, 1 << 16, false);
+        List<OutboxEntry> recovered = reopened.recovered();
+        assertEquals(2, recovered.size());
+        OutboxEntry entry = recovered.getFirst();
+        assertEquals(first, entry.sequence());
+        assertEquals("jane@example.com", entry.to());
+        assertEquals(new RenderedEmail("Bounce", "<p>é</p>", null), entry.email());
+        assertEquals(1, entry.attachments().size());
+        assertEquals("application/json", entry.attachments().getFirst().contentType());
+        assertArrayEquals(new byte[]{'{', '}'}, entry.attachments().getFirst().content());
+        assertEquals(third, recovered.get(1).sequence());
+        assertEquals(email("Delivery"), recovered.get(1).email());
+        assertEquals(third + 1, reopened.append("from@example.com", "jane@example.com", email("Next"), List.of()));
+    }
+
+    @Test
+    public void testSegmentsAreDeletedOnceCompleted() throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(directory, 256, false);
+        long[] sequences = new long[20];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = log.append("from@example.com", "jane@example.com", email("Email " + i), List.of());
+        }
+        assertTrue(log.segmentCount() > 5);
+
+        for (int i = 1; i < sequences.length; i++) {
+            log.complete(sequences[i]);
+        }
+        assertTrue(log.segmentCount() > 5, "The oldest segment still holds a pending entry");
+        log.complete(sequences[0]);
+        assertEquals(1, log.segmentCount());
+        assertEquals(1, segmentFileCount());
+        log.close();
+
+        WriteAheadLog reopened = WriteAheadLog.open(directory, 256, false);
+        assertTrue(reopened.recovered().isEmpty());
+        assertEquals(sequences[19] + 1, reopened.append("from@example.com", "jane@example.com", email("Next"),
+                List.of()));
+    }
+
+    @Test
+    public void testLargeEmailGetsLargerSegment() {
+        WriteAheadLog log = WriteAheadLog.open(directory, 256, false);
+        String body = "x".repeat(10_000);
+        log.append("from@example.com", "jane@example.com", new RenderedEmail("Large", body, body), List.of());
+        log.close();
+
+        List<OutboxEntry> recovered = WriteAheadLog.open(directory, 256, false).recovered();
+        assertEquals(1, recovered.size());
+        assertEquals(body, recovered.getFirst().email().textBody());
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(directory, 1 << 16, false);
+        log.append("from@example.com", "jane@example.com", email("Kept"), List.of());
+        log.append("from@example.com", "jane@example.com", email("Torn"), List.of());
+        log.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".wal")).findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        int torn = new String(bytes, StandardCharsets.ISO_8859_1).lastIndexOf("Torn");
+        bytes[torn] = 'B';
+        Files.write(segment, bytes);
+
+        WriteAheadLog reopened = WriteAheadLog.open(directory, 1 << 16, false);
+        assertEquals(List.of(email("Kept")), reopened.recovered().stream().map(OutboxEntry::email).toList());
+        reopened.append("from@example.com", "jane@example.com", email("Appended"), List.of());
+        reopened.close();
+
+        assertEquals(List.of(email("Kept"), email("Appended")), WriteAheadLog.open(directory, 1 << 16, false)
+                .recovered().stream().map(OutboxEntry::email).toList());
+    }
+
+    @Test
+    public void testDirectoryIsLockedWhileOpen() {
+        WriteAheadLog log = WriteAheadLog.open(directory, 1 << 16, false);
+        log.append("from@example.com", "jane@example.com", email("Pending"), List.of());
+        assertThrows(IllegalStateException.class, () -> WriteAheadLog.open(directory, 1 << 16, false));
+        log.close();
+
+        WriteAheadLog reopened = WriteAheadLog.open(directory, 1 << 16, false);
+        assertEquals(List.of(email("Pending")), reopened.recovered().stream().map(OutboxEntry::email).toList());
+        reopened.close();
+    }
+
+    @Test
+    public void testForeignFileIsRejected() throws IOException {
+        Files.write(directory.resolve("00000000000000000000.wal"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+                13, 14, 15, 16});
+        assertThrows(RuntimeException.class, () -> WriteAheadLog.open(directory, 1 << 16, false));
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> WriteAheadLog.open(directory, 1 << 16, false));
+        assertFalse(exception instanceof IllegalStateException, "A failed open releases the lock");
+    }
+
+    private long segmentFileCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".wal")).count();
+        }
+    }
+
+    private static RenderedEmail email(String subject) {
+        return new RenderedEmail(subject, "<p>" + subject + "</p>", subject);
+    }
+}
@@ -0,0 +1,170 @@
+package com.megafarad.seshandler.rendering;
+
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.SESNotification;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+
+class CachingRenderingServiceTest {
+
+    private final PebbleEngine bodyEngine = new PebbleEngine.Builder().autoEscaping(true).build();
+
+    private final PebbleEngine stringEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
+
+    private final ProductionRenderingService production = new ProductionRenderingService();
+
+    @Test
+    public void testTemplateIsCachedByTheValuesItReads() {
+        CachingRenderingService service = new CachingRenderingService(production, 1_000_000, 100);
+        PebbleTemplate subject = stringEngine.getTemplate("{{ bounce.bounceType }} bounce from {{ mail.source }}");
+
+        SESNotification withDsn = parseNotification("bounce_with_dsn.json");
+        SESNotification withoutDsn = parseNotification("bounce_without_dsn.json");
+
+        Assertions.assertEquals("Permanent bounce from john@example.com",
+                service.render(subject, bounceContext(withDsn)));
+        Assertions.assertEquals("Permanent bounce from john@example.com",
+                service.render(subject, bounceContext(withoutDsn)));
+        Assertions.assertEquals(1, service.missCount());
+        Assertions.assertEquals(1, service.hitCount());
+
+        SESNotification transientBounce = new SESNotification("Bounce", withDsn.mail(),
+                new Bounce("Transient", "General", List.of(), null, null, null, null), null, null);
+        Assertions.assertEquals("Transient bounce from john@example.com",
+                service.render(subject, bounceContext(transientBounce)));
+        Assertions.assertEquals(2, service.missCount());
+    }
+
+    @Test
+    public void testConstantTemplateAlwaysHits() {
+        CachingRenderingService service = new CachingRenderingService(production, 1_000_000, 100);
+        PebbleTemplate subject = stringEngine.getTemplate("Bounce Email Notification");
+
+        service.render(subject, bounceContext(parseNotification("bounce_with_dsn.json")));
+        service.render(subject, bounceContext(parseNotification("bounce_without_dsn.json")));
+
+        Assertions.assertEquals(1, service.missCount());
+        Assertions.assertEquals(1, service.hitCount());
+    }
+
+    @Test
+    public void testBranchesAndLoopsAreTracked() {
+        CachingRenderingService service = new CachingRenderingService(production, 1_000_000, 100);
+        PebbleTemplate template = stringEngine.getTemplate(
+                "{% if bounce.reportingMTA is defined %}{{ bounce.reportingMTA }}{% else %}none{% endif %}:" +
+                "{% for recipient in bounce.bouncedRecipients %}{{ recipient.status }};{% endfor %}");
+
+        SESNotification withDsn = parseNotification("bounce_with_dsn.json");
+        SESNotification withoutDsn = parseNotification("bounce_without_dsn.json");
+
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertEquals(production.render(template, bounceContext(withDsn)),
+                    service.render(template, bounceContext(withDsn)));
+            Assertions.assertEquals(production.render(template, bounceContext(withoutDsn)),
+                    service.render(template, bounceContext(withoutDsn)));
+        }
+        Assertions.assertEquals(2, service.missCount());
+        Assertions.assertEquals(2, service.hitCount());
+    }
+
+    @Test
+    public void testCachedEmailsMatchUncachedEmails() {
+        CachingRenderingService service = new CachingRenderingService(production, 1_000_000, 100);
+        PebbleTemplate subject = stringEngine.getTemplate("Bounce Email Notification");
+        PebbleTemplate html = bodyEngine.getTemplate("templates/html-bounce-notification.peb");
+        PebbleTemplate text = bodyEngine.getTemplate("templates/text-bounce-notification.peb");
+
+        for (String fixture : List.of("bounce_with_dsn.json", "bounce_without_dsn.json", "bounce_with_dsn.json")) {
+            Map<String, Object> context = bounceContext(parseNotification(fixture));
+            Assertions.assertEquals(production.generateEmail(subject, html, text, context),
+                    service.generateEmail(subject, html, text, context));
+        }
+        Assertions.assertEquals(5, service.missCount());
+        Assertions.assertEquals(4, service.hitCount());
+    }
+
+    @Test
+    public void testBodiesAreRenderedConcurrentlyWhenParallel() {
+        List<Boolean> virtual = new CopyOnWriteArrayList<>();
+        ProductionRenderingService recording = new ProductionRenderingService() {
+            @Override
+            public String render(PebbleTemplate template, Map<String, Object> context) {
+                virtual.add(Thread.currentThread().isVirtual());
+                return super.render(template, context);
+            }
+        };
+        CachingRenderingService service = new CachingRenderingService(recording, 1_000_000, 100, true);
+        PebbleTemplate subject = stringEngine.getTemplate("Bounce Email Notification");
+        PebbleTemplate html = bodyEngine.getTemplate("templates/html-bounce-notification.peb");
+        PebbleTemplate text = bodyEngine.getTemplate("templates/text-bounce-notification.peb");
+
+        for (String fixture : List.of("bounce_with_dsn.json", "bounce_with_dsn.json")) {
+            Map<String, Object> context = bounceContext(parseNotification(fixture));
+            Assertions.assertEquals(production.generateEmail(subject, html, text, context),
+                    service.generateEmail(subject, html, text, context));
+        }
+        Assertions.assertEquals(3, service.missCount());
+        Assertions.assertEquals(3, service.hitCount());
+        Assertions.assertEquals(2, virtual.stream().filter(Boolean::booleanValue).count());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() {
+        CachingRenderingService service = new CachingRenderingService(production, 1_000_000, 2);
+        PebbleTemplate template = stringEngine.getTemplate("{{ value }}");
+
+        service.render(template, Map.of("value", "a"));
+        service.render(template, Map.of("value", "b"));
+        service.render(template, Map.of("value", "a"));
+        service.render(template, Map.of("value", "c"));
+
+        Assertions.assertEquals(2, service.size());
+        Assertions.assertEquals(1, service.evictionCount());
+        service.render(template, Map.of("value", "a"));
+        Assertions.assertEquals(2, service.hitCount());
+        service.render(template, Map.of("value", "b"));
+        Assertions.assertEquals(4, service.missCount());
+    }
+
+    @Test
+    public void testReadSetsOfEvictedTemplatesAreDropped() throws InterruptedException {
+        CachingRenderingService service = new CachingRenderingService(production, 1_000_000, 1);
+        PebbleEngine uncachedEngine = new PebbleEngine.Builder().loader(new StringLoader()).cacheActive(false).build();
+        Map<String, Object> context = bounceContext(parseNotification("bounce_with_dsn.json"));
+        for (int version = 0; version < 10; version++) {
+            service.render(uncachedEngine.getTemplate("Version " + version + ": {{ bounce.bounceType }}"), context);
+        }
+
+        for (int attempt = 0; attempt < 50 && service.templateCount() > 1; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, service.templateCount());
+    }
+
+    @Test
+    public void testEntriesAreBoundedBySize() {
+        CachingRenderingService service = new CachingRenderingService(production, 2_000, 100);
+        PebbleTemplate template = stringEngine.getTemplate("{{ value }}");
+
+        service.render(template, Map.of("value", "x".repeat(300)));
+        service.render(template, Map.of("value", "y".repeat(300)));
+        Assertions.assertEquals(1, service.size());
+
+        service.render(template, Map.of("value", "z".repeat(1_000)));
+        Assertions.assertEquals(1, service.size());
+    }
+
+    private static Map<String, Object> bounceContext(SESNotification notification) {
+        return Map.of("bounce", RecordMapView.of(notification.bounce()), "mail", RecordMapView.of(notification.mail()));
+    }
+}
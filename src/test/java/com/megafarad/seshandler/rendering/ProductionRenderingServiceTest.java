@@ -0,0 +1,83 @@
+package com.megafarad.seshandler.rendering;
+
+import com.megafarad.seshandler.model.SESNotification;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+
+class ProductionRenderingServiceTest {
+
+    private final PebbleEngine bodyEngine = new PebbleEngine.Builder().autoEscaping(true).build();
+
+    private final PebbleEngine stringEngine = new PebbleEngine.Builder().loader(new StringLoader()).build();
+
+    @Test
+    public void testParallelRenderingMatchesSequentialRendering() throws Exception {
+        ProductionRenderingService sequential = new ProductionRenderingService();
+        ProductionRenderingService parallel = new ProductionRenderingService(true);
+        PebbleTemplate subject = stringEngine.getTemplate("{{ bounce.bounceType }} Bounce");
+        PebbleTemplate html = bodyEngine.getTemplate("templates/html-bounce-notification.peb");
+        PebbleTemplate text = bodyEngine.getTemplate("templates/text-bounce-notification.peb");
+
+        for (String fixture : List.of("bounce_with_dsn.json", "bounce_without_dsn.json")) {
+            Map<String, Object> context = bounceContext(parseNotification(fixture));
+            RenderedEmail email = parallel.generateEmail(subject, html, text, context);
+
+            Assertions.assertEquals(sequential.generateEmail(subject, html, text, context), email);
+            StringWriter expected = new StringWriter();
+            html.evaluate(expected, context);
+            Assertions.assertEquals(expected.toString(), email.htmlBody());
+        }
+    }
+
+    @Test
+    public void testParallelRenderingPropagatesFailures() {
+        ProductionRenderingService parallel = new ProductionRenderingService(true);
+        PebbleTemplate subject = stringEngine.getTemplate("Subject");
+        PebbleTemplate failing = stringEngine.getTemplate("{{ 1 / value }}");
+
+        Assertions.assertThrows(RuntimeException.class,
+                () -> parallel.generateEmail(subject, failing, subject, Map.of("value", 0)));
+    }
+
+    @Test
+    public void testBufferCapacityFollowsOutputSize() throws Exception {
+        RenderBuffers buffers = new RenderBuffers();
+        PebbleTemplate template = stringEngine.getTemplate("{{ value }}");
+        Assertions.assertEquals(RenderBuffers.MIN_CAPACITY, buffers.capacityHint(template));
+
+        buffers.render(template, Map.of("value", "x".repeat(8_000)));
+        int grown = buffers.capacityHint(template);
+        Assertions.assertTrue(grown >= 8_000);
+
+        buffers.render(template, Map.of("value", "x"));
+        int decayed = buffers.capacityHint(template);
+        Assertions.assertTrue(decayed < grown && decayed > 4_000);
+
+        for (int i = 0; i < 100; i++) {
+            buffers.render(template, Map.of("value", "x"));
+        }
+        Assertions.assertEquals(RenderBuffers.MIN_CAPACITY, buffers.capacityHint(template));
+    }
+
+    @Test
+    public void testPooledBuffersDoNotLeakOutput() throws Exception {
+        RenderBuffers buffers = new RenderBuffers();
+        PebbleTemplate template = stringEngine.getTemplate("{{ value }}");
+
+        Assertions.assertEquals("first output", buffers.render(template, Map.of("value", "first output")));
+        Assertions.assertEquals("2nd", buffers.render(template, Map.of("value", "2nd")));
+    }
+
+    private static Map<String, Object> bounceContext(SESNotification notification) {
+        return Map.of("bounce", RecordMapView.of(notification.bounce()), "mail", RecordMapView.of(notification.mail()));
+    }
+}
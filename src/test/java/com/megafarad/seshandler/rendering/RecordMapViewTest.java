@@ -0,0 +1,74 @@
+package com.megafarad.seshandler.rendering;
+
+import com.megafarad.seshandler.model.Bounce;
+import com.megafarad.seshandler.model.Mail;
+import com.megafarad.seshandler.model.SESNotification;
+import io.pebbletemplates.pebble.PebbleEngine;
+import io.pebbletemplates.pebble.loader.StringLoader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+
+class RecordMapViewTest {
+
+    private final SESNotification notification = parseNotification("bounce_with_dsn.json");
+
+    @Test
+    public void exposesRecordComponentsByName() {
+        Map<String, Object> bounce = RecordMapView.of(notification.bounce());
+
+        Assertions.assertEquals("Permanent", bounce.get("bounceType"));
+        Assertions.assertEquals("127.0.2.0", bounce.get("remoteMtaIp"));
+        Assertions.assertTrue(bounce.containsKey("feedbackId"));
+        Assertions.assertNull(bounce.get("unknown"));
+        Assertions.assertEquals(7, bounce.size());
+    }
+
+    @Test
+    public void wrapsNestedRecordsListsAndHeaders() {
+        Map<String, Object> mail = RecordMapView.of(notification.mail());
+
+        List<?> destination = (List<?>) mail.get("destination");
+        Assertions.assertEquals("jane@example.com", destination.getFirst());
+
+        Map<?, ?> commonHeaders = (Map<?, ?>) mail.get("commonHeaders");
+        Assertions.assertEquals("Hello", commonHeaders.get("subject"));
+
+        Map<?, ?> headers = (Map<?, ?>) mail.get("headers");
+        Assertions.assertEquals("custom-message-ID", headers.get("Message-ID"));
+
+        List<?> recipients = (List<?>) RecordMapView.of(notification.bounce()).get("bouncedRecipients");
+        Assertions.assertEquals("5.1.1", ((Map<?, ?>) recipients.getFirst()).get("status"));
+    }
+
+    @Test
+    public void entriesMatchRecordComponents() {
+        Map<String, Object> bounce = RecordMapView.of(new Bounce("Transient", "General", List.of(),
+                "2016-01-27T14:59:38.237Z", "feedback", null, null));
+
+        Assertions.assertEquals(List.of("bounceType", "bounceSubType", "bouncedRecipients", "timestamp",
+                "feedbackId", "remoteMtaIp", "reportingMTA"), List.copyOf(bounce.keySet()));
+        Assertions.assertEquals(bounce, RecordMapView.of(new Bounce("Transient", "General", List.of(),
+                "2016-01-27T14:59:38.237Z", "feedback", null, null)));
+    }
+
+    @Test
+    public void resolvesTemplateExpressions() throws IOException {
+        PebbleEngine engine = new PebbleEngine.Builder().loader(new StringLoader()).autoEscaping(false).build();
+        Mail mail = notification.mail();
+        StringWriter writer = new StringWriter();
+
+        engine.getTemplate("{{ mail.commonHeaders.subject }}|{{ mail.headers['content-type'] }}|" +
+                        "{% for recipient in bounce.bouncedRecipients %}{{ recipient.emailAddress }}{% endfor %}|" +
+                        "{% if bounce.reportingMTA is defined %}defined{% endif %}")
+                .evaluate(writer, Map.of("mail", RecordMapView.of(mail), "bounce", RecordMapView.of(notification.bounce())));
+
+        Assertions.assertEquals("Hello|text/plain; charset=\"UTF-8\"|jane@example.com|defined", writer.toString());
+    }
+}
@@ -0,0 +1,101 @@
+package com.megafarad.seshandler.routing;
+
+import com.megafarad.seshandler.model.SESNotification;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteTableTest {
+
+    private final SESNotification bounce = parseNotification("bounce_with_dsn.json");
+    private final SESNotification complaint = parseNotification("complaint_with_feedback.json");
+    private final SESNotification delivery = parseNotification("delivery.json");
+
+    @Test
+    public void testMatchesFirstRouteInOrder() {
+        RouteTable table = RouteTable.compile(RoutingConfig.parse("""
+                {"routes": [
+                  {"name": "permanent", "notificationTypes": ["Bounce"], "bounceTypes": ["Permanent"],
+                   "actions": ["email"]},
+                  {"name": "bounces", "notificationTypes": ["Bounce"], "actions": ["log"]},
+                  {"name": "complaints", "notificationTypes": ["Complaint"], "actions": ["email"]},
+                  {"name": "everything", "actions": ["log"]}
+                ]}""").routes());
+
+        assertEquals(0, table.match(bounce));
+        assertEquals(2, table.match(complaint));
+        assertEquals(3, table.match(delivery));
+        assertEquals(3, table.match(new SESNotification("Open", delivery.mail(), null, null, null)));
+    }
+
+    @Test
+    public void testReturnsMinusOneWhenNoRouteMatches() {
+        RouteTable table = RouteTable.compile(List.of(
+                route("bounces", Set.of("Bounce"), null, null, null),
+                route("transient", null, Set.of("Transient"), null, null)));
+
+        assertEquals(-1, table.match(complaint));
+        assertEquals(-1, table.match(new SESNotification("Click", bounce.mail(), null, null, null)));
+        assertEquals(-1, RouteTable.compile(List.of()).match(bounce));
+    }
+
+    @Test
+    public void testRecipientDomainMatchesSubdomainsIgnoringCase() {
+        RouteTable table = RouteTable.compile(List.of(
+                route("other", null, null, Set.of("example.org"), null),
+                route("example", null, null, Set.of("EXAMPLE.com"), null)));
+
+        assertEquals(1, table.match(bounce));
+        assertEquals(1, table.match(delivery));
+        assertFalse(table.matchesHeaders());
+
+        RouteTable parent = RouteTable.compile(List.of(route("com", null, null, Set.of("com"), null)));
+        assertEquals(0, parent.match(complaint));
+        RouteTable unrelated = RouteTable.compile(List.of(route("ample", null, null, Set.of("ample.com"), null)));
+        assertEquals(-1, unrelated.match(complaint));
+    }
+
+    @Test
+    public void testHeaderValuesAreMatchedByName() {
+        RouteTable table = RouteTable.compile(List.of(
+                route("goodbye", null, null, null, Map.of("subject", Set.of("Goodbye"))),
+                route("hello", Set.of("Delivery"), null, null, Map.of("Subject", Set.of("Hello"))),
+                route("fallback", null, null, null, null)));
+
+        assertTrue(table.matchesHeaders());
+        assertEquals(1, table.match(delivery));
+        assertEquals(2, table.match(bounce));
+    }
+
+    @Test
+    public void testRoutesBeyondOneWordAreMatched() {
+        List<RouteDefinition> routes = new ArrayList<>();
+        for (int i = 0; i < 130; i++) {
+            routes.add(route("domain-" + i, null, null, Set.of("domain" + i + ".test"), null));
+        }
+        routes.add(route("example", Set.of("Complaint"), null, Set.of("example.com"), null));
+        RouteTable table = RouteTable.compile(routes);
+
+        assertEquals(130, table.match(complaint));
+        assertEquals(-1, table.match(bounce));
+    }
+
+    @Test
+    public void testRouteWithoutActionsIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RoutingConfig.parse("""
+                {"routes": [{"name": "empty", "actions": []}]}"""));
+        assertThrows(IllegalArgumentException.class, () -> RoutingConfig.parse("""
+                {"routes": [{"name": "typo", "notificationType": ["Bounce"], "actions": ["log"]}]}"""));
+    }
+
+    private static RouteDefinition route(String name, Set<String> types, Set<String> bounceTypes,
+                                         Set<String> domains, Map<String, Set<String>> headers) {
+        return new RouteDefinition(name, types, bounceTypes, domains, headers, List.of("log"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.megafarad.seshandler.routing;
+
+import com.megafarad.seshandler.model.Mail;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TenantIndexTest {
+
+    private final Mail mail = parseNotification("bounce_with_dsn.json").mail();
+    private final Mail event = parseNotification("click_event.json").mail();
+
+    @Test
+    public void testMatchesEveryTenantOfTheMail() {
+        TenantIndex index = TenantIndex.compile(TenantConfig.parse("""
+                {"tenants": [
+                  {"name": "identity", "sourceArns": ["arn:aws:ses:us-east-1:888888888888:identity/example.com"],
+                   "recipients": ["identity@example.com"]},
+                  {"name": "other-account", "sendingAccountIds": ["210987654321"],
+                   "recipients": ["other@example.com"]},
+                  {"name": "account", "sendingAccountIds": ["123456789012"], "recipients": ["account@example.com"]}
+                ]}""").tenants());
+
+        assertArrayEquals(new int[]{0, 2}, index.match(mail));
+        assertArrayEquals(new int[]{2}, index.match(event));
+        assertArrayEquals(new int[0], index.match(null));
+        assertFalse(index.matchesHeaders());
+    }
+
+    @Test
+    public void testSourceDomainMatchesSubdomainsIgnoringCase() {
+        TenantIndex index = TenantIndex.compile(List.of(
+                tenant("example", Set.of("EXAMPLE.com"), null, null),
+                tenant("ample", Set.of("ample.com"), null, null)));
+
+        assertArrayEquals(new int[]{0}, index.match(mail));
+        assertArrayEquals(new int[]{0}, index.match(withSource(mail, "Jane <jane@Mail.Example.com>")));
+        assertArrayEquals(new int[0], index.match(withSource(mail, "jane@example.org")));
+        assertArrayEquals(new int[0], index.match(withSource(mail, "no-domain@")));
+    }
+
+    @Test
+    public void testMatchesHeadersAndTags() {
+        TenantIndex index = TenantIndex.compile(List.of(
+                tenant("hello", null, Map.of("subject", Set.of("Hello")), null),
+                tenant("config-set", null, null, Map.of("ses:configuration-set", Set.of("ConfigSet"))),
+                tenant("other-tag", null, null, Map.of("team", Set.of("ConfigSet")))));
+
+        assertTrue(index.matchesHeaders());
+        assertArrayEquals(new int[]{0}, index.match(mail));
+        assertArrayEquals(new int[]{1}, index.match(event));
+    }
+
+    @Test
+    public void testMatchesBeyondSixtyFourTenants() {
+        List<TenantDefinition> tenants = new ArrayList<>();
+        for (int i = 0; i < 130; i++) {
+            tenants.add(tenant("tenant" + i, Set.of("tenant" + i + ".example.org"), null, null));
+        }
+        tenants.add(tenant("example", Set.of("example.com"), null, null));
+        tenants.add(tenant("com", Set.of("com"), null, null));
+        TenantIndex index = TenantIndex.compile(tenants);
+
+        assertArrayEquals(new int[]{130, 131}, index.match(mail));
+        assertArrayEquals(new int[]{70}, index.match(withSource(mail, "ops@tenant70.example.org")));
+    }
+
+    @Test
+    public void testInvalidTenantsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> TenantConfig.parse("""
+                {"tenants": [{"name": "none", "sourceDomains": ["example.com"]}]}"""));
+        assertThrows(IllegalArgumentException.class, () -> TenantConfig.parse("""
+                {"tenants": [{"name": "all", "recipients": ["ops@example.com"]}]}"""));
+        assertThrows(IllegalArgumentException.class, () -> TenantConfig.parse("""
+                {"tenants": [], "unknown": true}"""));
+        assertTrue(TenantConfig.parse("{}").tenants().isEmpty());
+    }
+
+    private static TenantDefinition tenant(String name, Set<String> sourceDomains, Map<String, Set<String>> headers,
+                                           Map<String, Set<String>> tags) {
+        return new TenantDefinition(name, null, null, sourceDomains, headers, tags, List.of(name + "@example.com"),
+                null, null, null);
+    }
+
+    private static Mail withSource(Mail mail, String source) {
+        return new Mail(mail.timestamp(), mail.messageId(), source, mail.sourceArn(), mail.sourceIp(),
+                mail.sendingAccountId(), mail.callerIdentity(), mail.destination(), mail.headersTruncated(),
+                mail.headers(), mail.commonHeaders(), mail.tags());
+    }
+}
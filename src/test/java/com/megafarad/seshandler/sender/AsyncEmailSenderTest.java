@@ -0,0 +1,87 @@
+package com.megafarad.seshandler.sender;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import software.amazon.awssdk.services.ses.SesAsyncClient;
+import software.amazon.awssdk.services.ses.model.SendEmailRequest;
+import software.amazon.awssdk.services.ses.model.SendEmailResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.*;
+
+public class AsyncEmailSenderTest {
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private SesAsyncClient sesClient;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testFlushWaitsForPendingSends() {
+        CompletableFuture<SendEmailResponse> response = new CompletableFuture<>();
+        when(sesClient.sendEmail(any(SendEmailRequest.class))).thenReturn(response);
+        AsyncEmailSender sender = new AsyncEmailSender(sesClient, 10);
+
+        sender.send("sender@example.com", "recipient@example.com", "Subject", "<p>Body</p>", "Body");
+
+        CompletableFuture<Void> flushed = CompletableFuture.runAsync(sender::flush);
+        Assertions.assertFalse(flushed.isDone());
+        response.complete(SendEmailResponse.builder().messageId("id").build());
+        flushed.join();
+        verify(sesClient).sendEmail(argThat((SendEmailRequest request) ->
+                request.destination().toAddresses().contains("recipient@example.com")));
+    }
+
+    @Test
+    public void testFlushReportsFailedSends() {
+        when(sesClient.sendEmail(any(SendEmailRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Throttling")));
+        AsyncEmailSender sender = new AsyncEmailSender(sesClient, 10);
+
+        sender.send("sender@example.com", "recipient@example.com", "Subject", "<p>Body</p>", "Body");
+        sender.send("sender@example.com", "recipient@example.com", "Subject", "<p>Body</p>", "Body");
+
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, sender::flush);
+        Assertions.assertEquals("2 email send(s) failed", exception.getMessage());
+        Assertions.assertEquals(1, exception.getSuppressed().length);
+
+        sender.flush();
+    }
+
+    @Test
+    public void testInFlightSendsAreBounded() throws Exception {
+        CompletableFuture<SendEmailResponse> first = new CompletableFuture<>();
+        when(sesClient.sendEmail(any(SendEmailRequest.class)))
+                .thenReturn(first)
+                .thenReturn(CompletableFuture.completedFuture(SendEmailResponse.builder().build()));
+        AsyncEmailSender sender = new AsyncEmailSender(sesClient, 1);
+
+        sender.send("sender@example.com", "recipient@example.com", "Subject", "<p>Body</p>", "Body");
+        Thread second = Thread.ofVirtual().start(() ->
+                sender.send("sender@example.com", "recipient@example.com", "Subject", "<p>Body</p>", "Body"));
+
+        Thread.sleep(200);
+        Assertions.assertTrue(second.isAlive());
+        verify(sesClient, times(1)).sendEmail(any(SendEmailRequest.class));
+
+        first.complete(SendEmailResponse.builder().build());
+        second.join();
+        sender.flush();
+        verify(sesClient, times(2)).sendEmail(any(SendEmailRequest.class));
+    }
+}
@@ -0,0 +1,79 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.metrics.Metrics;
+import com.megafarad.seshandler.outbox.WriteAheadLog;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmailSendersTest {
+
+    private Path root;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("outboxes");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testRateLimitedSendersShareOneBucket() {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        EmailSender delegate = (from, to, subject, htmlBody, textBody) -> delivered.add(to);
+        EmailSender first = EmailSenders.rateLimited(delegate, 4, 1, 0, 0, Metrics.disabled());
+        EmailSender second = EmailSenders.rateLimited(delegate, 4, 1, 0, 0, Metrics.disabled());
+
+        long start = System.nanoTime();
+        first.send("from", "jane@example.com", "subject", "html", "text");
+        second.send("from", "john@example.com", "subject", "html", "text");
+
+        assertEquals(List.of("jane@example.com", "john@example.com"), delivered);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200),
+                "The second sender waits for the token taken by the first one to be refilled");
+    }
+
+    @Test
+    public void testOutboxesOfEndedProcessesAreTakenOver() throws IOException {
+        WriteAheadLog ended = WriteAheadLog.open(root.resolve("outbox-ended"), 1 << 16, false);
+        ended.append("from", "jane@example.com", new RenderedEmail("subject", "html", "text"), List.of());
+        ended.close();
+        WriteAheadLog running = WriteAheadLog.open(root.resolve("outbox-running"), 1 << 16, false);
+        running.append("from", "john@example.com", new RenderedEmail("subject", "html", "text"), List.of());
+
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        EmailSender delegate = (from, to, subject, htmlBody, textBody) -> delivered.add(to);
+        OutboxEmailSender first = EmailSenders.openOutbox(delegate, root, 1 << 16, false, 10, 3, false);
+        OutboxEmailSender second = EmailSenders.openOutbox(delegate, root, 1 << 16, false, 10, 3, false);
+        first.flush();
+        second.flush();
+
+        assertEquals(List.of("jane@example.com"), delivered);
+        assertFalse(Files.exists(root.resolve("outbox-ended")));
+        try (Stream<Path> directories = Files.list(root)) {
+            assertEquals(3, directories.count());
+        }
+        first.close();
+        second.close();
+        running.close();
+    }
+}
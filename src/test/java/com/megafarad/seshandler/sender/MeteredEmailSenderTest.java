@@ -0,0 +1,81 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.metrics.Metrics;
+import com.megafarad.seshandler.metrics.MetricsSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MeteredEmailSenderTest {
+
+    private AutoCloseable closeable;
+
+    @Mock
+    private EmailSender delegate;
+
+    private final List<MetricsSnapshot> published = new ArrayList<>();
+    private Metrics metrics;
+    private MeteredEmailSender sender;
+
+    @BeforeEach
+    public void setUp() {
+        closeable = MockitoAnnotations.openMocks(this);
+        metrics = new Metrics(published::add);
+        sender = new MeteredEmailSender(delegate, metrics);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void testRecordsLatencyOfCompletedSends() {
+        when(delegate.sendAsync("from", "to", "subject", "html", "text"))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        sender.send("from", "to", "subject", "html", "text");
+
+        MetricsSnapshot snapshot = flush();
+        assertEquals(1, snapshot.distributions().get("SendLatency").count());
+        assertEquals(0L, (long) snapshot.counters().get("SendFailures"));
+    }
+
+    @Test
+    public void testRecordsFailuresOfSynchronousAndAsynchronousSends() {
+        doThrow(new RuntimeException("throttled")).when(delegate).sendAsync("from", "to", "subject", "html", "text");
+        assertThrows(RuntimeException.class, () -> sender.send("from", "to", "subject", "html", "text"));
+
+        doReturn(CompletableFuture.failedFuture(new RuntimeException("rejected"))).when(delegate)
+                .sendAsync("from", "to", "subject", "html", "text");
+        sender.send("from", "to", "subject", "html", "text");
+
+        MetricsSnapshot snapshot = flush();
+        assertEquals(2L, (long) snapshot.counters().get("SendFailures"));
+        assertNull(snapshot.distributions().get("SendLatency"));
+    }
+
+    @Test
+    public void testLifecycleIsForwarded() {
+        sender.flush();
+        sender.beforeCheckpoint();
+        sender.afterRestore();
+        verify(delegate).flush();
+        verify(delegate).beforeCheckpoint();
+        verify(delegate).afterRestore();
+    }
+
+    private MetricsSnapshot flush() {
+        metrics.flush("handler");
+        assertEquals(1, published.size());
+        return published.getFirst();
+    }
+}
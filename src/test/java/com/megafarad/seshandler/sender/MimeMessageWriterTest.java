@@ -0,0 +1,124 @@
+package com.megafarad.seshandler.sender;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MimeMessageWriterTest {
+
+    @Test
+    public void testBase64MatchesMimeEncoder() {
+        Random random = new Random(17);
+        MimeMessageWriter writer = new MimeMessageWriter(16);
+        for (int length = 0; length < 300; length++) {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < length) {
+                switch (random.nextInt(4)) {
+                    case 0 -> text.append((char) ('a' + random.nextInt(26)));
+                    case 1 -> text.append('é');
+                    case 2 -> text.append('€');
+                    default -> text.appendCodePoint(0x1F600 + random.nextInt(16));
+                }
+            }
+            byte[] utf8 = text.toString().getBytes(StandardCharsets.UTF_8);
+            String expected = Base64.getMimeEncoder().encodeToString(utf8) + (utf8.length > 0 ? "\r\n" : "");
+
+            writer.reset(0);
+            writer.base64Utf8(text);
+            assertEquals(expected, written(writer));
+
+            writer.reset(0);
+            writer.base64(utf8);
+            assertEquals(expected, written(writer));
+        }
+    }
+
+    @Test
+    public void testResetDiscardsUnfinishedBase64() {
+        MimeMessageWriter writer = new MimeMessageWriter(16);
+        String text = "a".repeat(100);
+        CharSequence failing = new CharSequence() {
+            @Override
+            public int length() {
+                return text.length();
+            }
+
+            @Override
+            public char charAt(int index) {
+                if (index == 58) {
+                    throw new IllegalStateException("Interrupted");
+                }
+                return text.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return text.subSequence(start, end);
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> writer.base64Utf8(failing));
+
+        writer.reset(0);
+        writer.base64(text.getBytes(StandardCharsets.US_ASCII));
+        assertEquals(Base64.getMimeEncoder().encodeToString(text.getBytes(StandardCharsets.US_ASCII)) + "\r\n",
+                written(writer));
+    }
+
+    @Test
+    public void testPlainHeaderIsWrittenAsIs() {
+        MimeMessageWriter writer = new MimeMessageWriter(16);
+        writer.header("Subject", "Bounce Email Notification");
+        assertEquals("Subject: Bounce Email Notification\r\n", written(writer));
+    }
+
+    @Test
+    public void testNonAsciiHeaderIsEncoded() {
+        String subject = "Zustellung fehlgeschlagen für Jürgen – ".repeat(4) + "😀";
+        MimeMessageWriter writer = new MimeMessageWriter(16);
+        writer.header("Subject", subject);
+
+        String header = written(writer);
+        for (String line : header.split("\r\n")) {
+            assertTrue(line.length() <= 78, line);
+        }
+        assertTrue(header.endsWith("\r\n"));
+        assertEquals(subject, decodeWords(header.substring("Subject: ".length(), header.length() - 2)));
+    }
+
+    @Test
+    public void testLineBreaksCannotInjectHeaders() {
+        MimeMessageWriter writer = new MimeMessageWriter(16);
+        writer.header("Subject", "Hello\r\nBcc: victim@example.com");
+        writer.addressHeader("To", "recipient@example.com\r\nBcc: victim@example.com");
+
+        for (String line : written(writer).split("\r\n")) {
+            assertFalse(line.startsWith("Bcc:"), line);
+        }
+    }
+
+    @Test
+    public void testAddressDisplayNameIsEncoded() {
+        MimeMessageWriter writer = new MimeMessageWriter(16);
+        writer.addressHeader("From", "Jürgen <sender@example.com>");
+        assertEquals("From: =?UTF-8?B?SsO8cmdlbg==?= <sender@example.com>\r\n", written(writer));
+    }
+
+    private static String written(MimeMessageWriter writer) {
+        return new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8);
+    }
+
+    private static String decodeWords(String value) {
+        StringBuilder decoded = new StringBuilder();
+        for (String word : value.split("\r\n ")) {
+            assertTrue(word.startsWith("=?UTF-8?B?") && word.endsWith("?="), word);
+            assertTrue(word.length() <= 75, word);
+            decoded.append(new String(Base64.getDecoder().decode(word.substring(10, word.length() - 2)),
+                    StandardCharsets.UTF_8));
+        }
+        return decoded.toString();
+    }
+}
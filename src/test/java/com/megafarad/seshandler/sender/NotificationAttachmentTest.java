@@ -0,0 +1,62 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.model.SESNotification;
+import com.megafarad.seshandler.model.SESNotificationReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationAttachmentTest {
+
+    @Test
+    public void testOf() {
+        assertEquals(NotificationAttachment.NONE, NotificationAttachment.of("none"));
+        assertEquals(NotificationAttachment.DSN, NotificationAttachment.of(" DSN "));
+        assertThrows(IllegalArgumentException.class, () -> NotificationAttachment.of("pdf"));
+    }
+
+    @Test
+    public void testJsonCanBeReadBack() throws IOException {
+        SESNotification notification = parseNotification("complaint_with_feedback.json");
+        List<EmailAttachment> attachments = NotificationAttachment.JSON.attachmentsFor(notification);
+
+        assertEquals(1, attachments.size());
+        SESNotification read = new SESNotificationReader(true)
+                .read(new String(attachments.getFirst().content(), StandardCharsets.UTF_8));
+        assertEquals(notification.complaint(), read.complaint());
+        assertEquals(notification.mail().messageId(), read.mail().messageId());
+        assertEquals(notification.mail().headers().size(), read.mail().headers().size());
+    }
+
+    @Test
+    public void testDeliveryStatusOfBounce() {
+        String report = NotificationAttachment.deliveryStatus(parseNotification("bounce_with_dsn.json"));
+        assertEquals("Reporting-MTA: dns; email.example.com\r\n"
+                + "X-SES-Message-ID: 00000138111222aa-33322211-cccc-cccc-cccc-ddddaaaa0680-000000\r\n"
+                + "\r\n"
+                + "Final-Recipient: rfc822; jane@example.com\r\n"
+                + "Action: failed\r\n"
+                + "Status: 5.1.1\r\n"
+                + "Remote-MTA: dns; 127.0.2.0\r\n"
+                + "Diagnostic-Code: smtp; 550 5.1.1 <jane@example.com>... User\r\n", report);
+    }
+
+    @Test
+    public void testDeliveryStatusOfDelivery() {
+        String report = NotificationAttachment.deliveryStatus(parseNotification("delivery.json"));
+        assertTrue(report.contains("Action: delivered\r\nStatus: 2.0.0\r\n"));
+        assertTrue(report.chars().allMatch(c -> c < 0x80));
+    }
+
+    @Test
+    public void testComplaintHasNoDeliveryStatus() {
+        assertEquals(List.of(),
+                NotificationAttachment.DSN.attachmentsFor(parseNotification("complaint_with_feedback.json")));
+        assertEquals(List.of(), NotificationAttachment.NONE.attachmentsFor(parseNotification("delivery.json")));
+    }
+}
@@ -0,0 +1,198 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.outbox.WriteAheadLog;
+import com.megafarad.seshandler.rendering.RenderedEmail;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboxEmailSenderTest {
+
+    private Path directory;
+    private OutboxEmailSender sender;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("outbox");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (sender != null) {
+            sender.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testEmailsAreSentInBackground() {
+        FailingEmailSender delegate = new FailingEmailSender(0);
+        sender = sender(delegate, 10, Duration.ofMillis(1));
+
+        for (int i = 0; i < 25; i++) {
+            sender.send("from", "recipient" + i, "subject", "html", "text");
+        }
+        sender.flush();
+
+        assertEquals(25, delegate.delivered.size());
+        assertEquals(0, sender.pendingCount());
+        assertTrue(delegate.flushes.get() >= 3, "Batches of at most 10 emails are flushed together");
+    }
+
+    @Test
+    public void testFailedSendsAreRetried() throws Exception {
+        FailingEmailSender delegate = new FailingEmailSender(2);
+        sender = sender(delegate, 5, Duration.ofMillis(1));
+
+        sender.sendAsync("from", "to", "subject", "html", "text").get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, delegate.attempts.get());
+        assertEquals(List.of("to"), delegate.delivered);
+        assertEquals(0, sender.pendingCount());
+        sender.flush();
+    }
+
+    @Test
+    public void testEmailIsGivenUpOnAfterMaxAttempts() {
+        FailingEmailSender delegate = new FailingEmailSender(Integer.MAX_VALUE);
+        sender = sender(delegate, 3, Duration.ofMillis(1));
+
+        CompletableFuture<Void> sent = sender.sendAsync("from", "to", "subject", "html", "text");
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> sent.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+        assertEquals(3, delegate.attempts.get());
+        assertEquals(0, sender.pendingCount());
+        assertThrows(RuntimeException.class, sender::flush);
+        sender.flush();
+    }
+
+    @Test
+    public void testUnsentEmailsAreSentAfterRestart() {
+        FailingEmailSender unavailable = new FailingEmailSender(Integer.MAX_VALUE);
+        sender = sender(unavailable, 5, Duration.ofHours(1));
+        sender.send("from", "jane@example.com", "subject", "html", "text",
+                List.of(new EmailAttachment("notification.json", "application/json", new byte[]{'{', '}'})));
+        sender.flush();
+        assertEquals(1, unavailable.attempts.get());
+        assertEquals(1, sender.pendingCount());
+        sender.close();
+        assertThrows(IllegalStateException.class, () -> sender.send("from", "to", "subject", "html", "text"));
+
+        FailingEmailSender available = new FailingEmailSender(0);
+        sender = sender(available, 5, Duration.ofHours(1));
+        sender.flush();
+        assertEquals(List.of("jane@example.com"), available.delivered);
+        assertEquals(1, available.attachments.get());
+        assertEquals(0, sender.pendingCount());
+    }
+
+    @Test
+    public void testEmailIsSettledWhenItCannotBeCompleted() throws IOException {
+        FailingEmailSender delegate = new FailingEmailSender(0);
+        // A segment fits the email, but not its completion, and the next segment cannot be created.
+        sender = new OutboxEmailSender(delegate, WriteAheadLog.open(directory, 92, false), 10, 3,
+                Duration.ofMillis(1));
+        Files.createDirectory(directory.resolve("00000000000000000001.wal"));
+
+        CompletableFuture<Void> sent = sender.sendAsync("from", "to", "subject", "html", "text");
+        RuntimeException exception = assertThrows(RuntimeException.class, sender::flush);
+        assertTrue(exception.getCause().getMessage().startsWith("Creating outbox segment failed"));
+        assertTrue(sent.isCompletedExceptionally());
+        assertEquals(List.of("to"), delegate.delivered);
+        assertEquals(1, sender.pendingCount());
+    }
+
+    @Test
+    public void testFlushAwaitsRetriesWhenConfigured() {
+        FailingEmailSender delegate = new FailingEmailSender(2);
+        sender = new OutboxEmailSender(delegate, WriteAheadLog.open(directory, 1 << 16, false), 10, 5,
+                Duration.ofMillis(50), true);
+
+        sender.send("from", "to", "subject", "html", "text");
+        sender.flush();
+
+        assertEquals(3, delegate.attempts.get());
+        assertEquals(List.of("to"), delegate.delivered);
+        assertEquals(0, sender.pendingCount());
+    }
+
+    @Test
+    public void testEmailsOfAnotherLogAreTakenOver() throws IOException {
+        Path other = Files.createDirectory(directory.resolve("other"));
+        WriteAheadLog left = WriteAheadLog.open(other, 1 << 16, false);
+        left.append("from", "jane@example.com", new RenderedEmail("subject", "html", "text"), List.of());
+        left.close();
+
+        FailingEmailSender delegate = new FailingEmailSender(0);
+        sender = new OutboxEmailSender(delegate, WriteAheadLog.open(directory.resolve("own"), 1 << 16, false), 10,
+                5, Duration.ofMillis(1));
+        assertEquals(1, sender.adopt(WriteAheadLog.open(other, 1 << 16, false)));
+        sender.flush();
+
+        assertEquals(List.of("jane@example.com"), delegate.delivered);
+        WriteAheadLog reopened = WriteAheadLog.open(other, 1 << 16, false);
+        assertTrue(reopened.recovered().isEmpty());
+        reopened.close();
+    }
+
+    private OutboxEmailSender sender(EmailSender delegate, int maxAttempts, Duration retryBaseDelay) {
+        return new OutboxEmailSender(delegate, WriteAheadLog.open(directory, 1 << 16, false), 10, maxAttempts,
+                retryBaseDelay);
+    }
+
+    /**
+     * An EmailSender whose first sends fail.
+     */
+    private static class FailingEmailSender implements EmailSender {
+
+        private final int failedSends;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger flushes = new AtomicInteger();
+        private final AtomicInteger attachments = new AtomicInteger();
+        private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+        FailingEmailSender(int failedSends) {
+            this.failedSends = failedSends;
+        }
+
+        @Override
+        public void send(String from, String to, String subject, String htmlBody, String textBody) {
+            if (attempts.incrementAndGet() <= failedSends) {
+                throw new IllegalStateException("Service unavailable");
+            }
+            delivered.add(to);
+        }
+
+        @Override
+        public CompletableFuture<Void> sendAsync(String from, String to, String subject, String htmlBody,
+                                                 String textBody, List<EmailAttachment> attachments) {
+            this.attachments.addAndGet(attachments.size());
+            send(from, to, subject, htmlBody, textBody);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.metrics.Metrics;
+import com.megafarad.seshandler.metrics.MetricsSnapshot;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ses.model.SesException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitedEmailSenderTest {
+
+    private final List<MetricsSnapshot> published = new ArrayList<>();
+    private final Metrics metrics = new Metrics(published::add);
+
+    @Test
+    public void testThrottledSendsAreRetried() {
+        ThrottlingEmailSender delegate = new ThrottlingEmailSender(2);
+        RateLimitedEmailSender sender = sender(delegate, 5, 10);
+
+        sender.send("from", "to", "subject", "html", "text");
+        sender.flush();
+
+        assertEquals(3, delegate.attempts.get());
+        assertEquals(Set.of("to"), delegate.delivered);
+        metrics.flush(null);
+        MetricsSnapshot snapshot = published.getFirst();
+        assertEquals(2L, (long) snapshot.counters().get("SendThrottles"));
+        assertEquals(2, snapshot.distributions().get("SendRetryQueueDepth").count());
+        assertEquals(3, snapshot.distributions().get("SendWaitTime").count());
+    }
+
+    @Test
+    public void testSendFailsAfterMaxRetries() {
+        ThrottlingEmailSender delegate = new ThrottlingEmailSender(Integer.MAX_VALUE);
+        RateLimitedEmailSender sender = sender(delegate, 2, 10);
+
+        SesException exception = assertThrows(SesException.class,
+                () -> sender.send("from", "to", "subject", "html", "text"));
+        assertTrue(exception.isThrottlingException());
+        assertEquals(3, delegate.attempts.get());
+        assertThrows(RuntimeException.class, sender::flush);
+    }
+
+    @Test
+    public void testSendFailsWhenRetryQueueIsFull() {
+        ThrottlingEmailSender delegate = new ThrottlingEmailSender(1);
+        RateLimitedEmailSender sender = sender(delegate, 5, 0);
+
+        assertThrows(SesException.class, () -> sender.send("from", "to", "subject", "html", "text"));
+        assertEquals(1, delegate.attempts.get());
+    }
+
+    @Test
+    public void testOtherFailuresAreNotRetried() {
+        EmailSender delegate = (from, to, subject, htmlBody, textBody) -> {
+            throw new IllegalArgumentException("Invalid address");
+        };
+        RateLimitedEmailSender sender = sender(delegate, 5, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> sender.send("from", "to", "subject", "html", "text"));
+        RuntimeException exception = assertThrows(RuntimeException.class, sender::flush);
+        assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        sender.flush();
+    }
+
+    @Test
+    public void testExhaustedQuotaIsNotRetried() {
+        assertTrue(RateLimitedEmailSender.isThrottling(throttling("Maximum sending rate exceeded.")));
+        assertFalse(RateLimitedEmailSender.isThrottling(throttling("Daily message quota exceeded.")));
+        assertFalse(RateLimitedEmailSender.isThrottling(new IllegalStateException()));
+    }
+
+    @Test
+    public void testConcurrentSendsAreDeliveredOnce() throws Exception {
+        ThrottlingEmailSender delegate = new ThrottlingEmailSender(20);
+        RateLimitedEmailSender sender = new RateLimitedEmailSender(delegate,
+                new TokenBucket(2000, 50, System::nanoTime), 10, 100, Duration.ofMillis(1), metrics);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                String to = "recipient" + i;
+                executor.submit(() -> sender.sendAsync("from", to, "subject", "html", "text"));
+            }
+        }
+        sender.flush();
+
+        assertEquals(200, delegate.delivered.size());
+        assertEquals(220, delegate.attempts.get());
+    }
+
+    @Test
+    public void testForwardsSnapStartHooks() {
+        AtomicInteger checkpoints = new AtomicInteger();
+        AtomicInteger restores = new AtomicInteger();
+        EmailSender delegate = new EmailSender() {
+            @Override
+            public void send(String from, String to, String subject, String htmlBody, String textBody) {
+            }
+
+            @Override
+            public void beforeCheckpoint() {
+                checkpoints.incrementAndGet();
+            }
+
+            @Override
+            public void afterRestore() {
+                restores.incrementAndGet();
+            }
+        };
+        RateLimitedEmailSender sender = sender(delegate, 5, 10);
+        sender.beforeCheckpoint();
+        sender.afterRestore();
+        assertEquals(1, checkpoints.get());
+        assertEquals(1, restores.get());
+    }
+
+    private RateLimitedEmailSender sender(EmailSender delegate, int maxRetries, int maxQueuedRetries) {
+        return new RateLimitedEmailSender(delegate, new TokenBucket(1000, 10, System::nanoTime), maxRetries,
+                maxQueuedRetries, Duration.ofMillis(1), metrics);
+    }
+
+    private static SesException throttling(String message) {
+        return (SesException) SesException.builder()
+                .message(message)
+                .statusCode(400)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("Throttling").errorMessage(message).build())
+                .build();
+    }
+
+    /**
+     * An EmailSender that rejects its first sends with a `Throttling` error, as SES does when the
+     * maximum send rate is exceeded.
+     */
+    private static class ThrottlingEmailSender implements EmailSender {
+
+        private final int throttledSends;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final Set<String> delivered = ConcurrentHashMap.newKeySet();
+
+        ThrottlingEmailSender(int throttledSends) {
+            this.throttledSends = throttledSends;
+        }
+
+        @Override
+        public void send(String from, String to, String subject, String htmlBody, String textBody) {
+            if (attempts.incrementAndGet() <= throttledSends) {
+                throw throttling("Maximum sending rate exceeded.");
+            }
+            assertTrue(delivered.add(to), "Delivered twice: " + to);
+        }
+    }
+}
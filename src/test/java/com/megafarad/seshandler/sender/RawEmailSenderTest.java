@@ -0,0 +1,124 @@
+package com.megafarad.seshandler.sender;
+
+import com.megafarad.seshandler.model.SESNotification;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ses.SesClient;
+import software.amazon.awssdk.services.ses.model.SendRawEmailRequest;
+import software.amazon.awssdk.services.ses.model.SendRawEmailResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static com.megafarad.utils.SESNotificationParser.parseNotification;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RawEmailSenderTest {
+
+    private final List<SendRawEmailRequest> requests = new ArrayList<>();
+    private final RawEmailSender sender = new RawEmailSender(new SesClient() {
+        @Override
+        public SendRawEmailResponse sendRawEmail(SendRawEmailRequest request) {
+            requests.add(request);
+            return SendRawEmailResponse.builder().messageId("id").build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "ses";
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+
+    @Test
+    public void testSendsMultipartAlternative() {
+        sender.send("sender@example.com", "recipient@example.com", "Subject", "<p>Grüße</p>", "Grüße");
+
+        assertEquals(1, requests.size());
+        SendRawEmailRequest request = requests.getFirst();
+        assertEquals("sender@example.com", request.source());
+        assertEquals(List.of("recipient@example.com"), request.destinations());
+
+        String message = request.rawMessage().data().asUtf8String();
+        assertTrue(message.startsWith("From: sender@example.com\r\nTo: recipient@example.com\r\n"
+                + "Subject: Subject\r\nMIME-Version: 1.0\r\nContent-Type: multipart/alternative; boundary=\""));
+        String boundary = boundary(message, "multipart/alternative");
+        List<String> parts = parts(message, boundary);
+        assertEquals(2, parts.size());
+        assertTrue(parts.get(0).startsWith("Content-Type: text/plain; charset=UTF-8\r\n"));
+        assertEquals("Grüße", decodeBody(parts.get(0)));
+        assertTrue(parts.get(1).startsWith("Content-Type: text/html; charset=UTF-8\r\n"));
+        assertEquals("<p>Grüße</p>", decodeBody(parts.get(1)));
+        assertTrue(message.endsWith("--" + boundary + "--\r\n"));
+    }
+
+    @Test
+    public void testPooledBuffersDoNotLeakBetweenMessages() {
+        sender.send("sender@example.com", "recipient@example.com", "First", "<p>" + "x".repeat(10_000) + "</p>",
+                "x".repeat(10_000));
+        sender.send("sender@example.com", "recipient@example.com", "Second", "<p>short</p>", "short");
+
+        String second = requests.get(1).rawMessage().data().asUtf8String();
+        List<String> parts = parts(second, boundary(second, "multipart/alternative"));
+        assertEquals("short", decodeBody(parts.get(0)));
+        assertEquals("<p>short</p>", decodeBody(parts.get(1)));
+        assertFalse(second.contains("First"));
+    }
+
+    @Test
+    public void testAttachesNotificationAndDeliveryStatus() {
+        SESNotification notification = parseNotification("bounce_with_dsn.json");
+        List<EmailAttachment> attachments = new ArrayList<>(NotificationAttachment.DSN.attachmentsFor(notification));
+        attachments.addAll(NotificationAttachment.JSON.attachmentsFor(notification));
+        sender.send("sender@example.com", "recipient@example.com", "Subject", "<p>Body</p>", "Body", attachments);
+
+        String message = requests.getFirst().rawMessage().data().asUtf8String();
+        List<String> parts = parts(message, boundary(message, "multipart/mixed"));
+        assertEquals(3, parts.size());
+        assertTrue(parts.get(0).startsWith("Content-Type: multipart/alternative;"));
+
+        String dsn = parts.get(1);
+        assertTrue(dsn.startsWith("Content-Type: message/delivery-status; name=\"delivery-status.txt\"\r\n"
+                + "Content-Disposition: attachment; filename=\"delivery-status.txt\"\r\n\r\n"
+                + "Reporting-MTA: dns; email.example.com\r\n"));
+        assertTrue(dsn.contains("\r\n\r\nFinal-Recipient: rfc822; jane@example.com\r\nAction: failed\r\n"
+                + "Status: 5.1.1\r\n"));
+
+        String json = parts.get(2);
+        assertTrue(json.startsWith("Content-Type: application/json; name=\"notification.json\"\r\n"));
+        assertTrue(decodeBody(json).contains("\"feedbackId\":\"" + notification.bounce().feedbackId() + "\""));
+    }
+
+    @Test
+    public void testSendAsyncKeepsAttachments() {
+        sender.sendAsync("sender@example.com", "recipient@example.com", "Subject", "<p>Body</p>", "Body",
+                NotificationAttachment.JSON.attachmentsFor(parseNotification("delivery.json"))).join();
+        assertTrue(requests.getFirst().rawMessage().data().asUtf8String().contains("multipart/mixed"));
+    }
+
+    private static String boundary(String message, String contentType) {
+        String prefix = "Content-Type: " + contentType + "; boundary=\"";
+        int start = message.indexOf(prefix) + prefix.length();
+        return message.substring(start, message.indexOf('"', start));
+    }
+
+    private static List<String> parts(String message, String boundary) {
+        List<String> parts = new ArrayList<>();
+        String body = message.substring(message.indexOf("--" + boundary + "\r\n") + boundary.length() + 4);
+        for (String part : body.split("(?m)^--" + boundary + "(--)?\r\n")) {
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+        }
+        return parts;
+    }
+
+    private static String decodeBody(String part) {
+        String body = part.substring(part.indexOf("\r\n\r\n") + 4);
+        return new String(Base64.getMimeDecoder().decode(body.trim()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,60 @@
+package com.megafarad.seshandler.sender;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketTest {
+
+    private long now;
+    private final TokenBucket bucket = new TokenBucket(10, 2, () -> now);
+
+    @Test
+    public void testBurstThenRate() {
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.reserve());
+
+        now += TimeUnit.SECONDS.toNanos(10);
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertTrue(bucket.reserve() > 0);
+    }
+
+    @Test
+    public void testThrottleHalvesRateOncePerSecond() {
+        bucket.onThrottle();
+        assertEquals(5, bucket.rate(), 1e-9);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.reserve());
+
+        bucket.onThrottle();
+        assertEquals(5, bucket.rate(), 1e-9);
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        bucket.onThrottle();
+        assertEquals(2.5, bucket.rate(), 1e-9);
+    }
+
+    @Test
+    public void testRateNeverDropsBelowMinimum() {
+        for (int i = 0; i < 20; i++) {
+            now += TimeUnit.SECONDS.toNanos(1);
+            bucket.onThrottle();
+        }
+        assertEquals(10.0 / 32, bucket.rate(), 1e-9);
+    }
+
+    @Test
+    public void testSuccessGrowsRateBackToMaximum() {
+        bucket.onThrottle();
+        bucket.onSuccess();
+        assertEquals(5.2, bucket.rate(), 1e-9);
+        for (int i = 0; i < 100; i++) {
+            bucket.onSuccess();
+        }
+        assertEquals(10, bucket.rate(), 1e-9);
+    }
+}
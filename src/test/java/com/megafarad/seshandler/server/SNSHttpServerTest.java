@@ -0,0 +1,182 @@
+package com.megafarad.seshandler.server;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megafarad.seshandler.handler.ses.SESNotificationHandler;
+import com.megafarad.seshandler.handler.sns.SNSMessageHandler;
+import com.megafarad.seshandler.model.SESNotification;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SNSHttpServerTest {
+
+    private static final String TOPIC_ARN = "arn:aws:sns:us-east-1:123456789012:ses-notifications";
+    private static final LambdaLogger SILENT = new LambdaLogger() {
+        @Override
+        public void log(String message) {
+        }
+
+        @Override
+        public void log(byte[] message) {
+        }
+    };
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<SESNotification> handled = new CopyOnWriteArrayList<>();
+    private final List<URI> confirmed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private volatile CountDownLatch release = new CountDownLatch(0);
+    private SNSHttpServer server;
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        server.close();
+    }
+
+    @Test
+    public void testNotificationIsHandledBeforeItIsAcknowledged() throws Exception {
+        startServer(Set.of(), 10);
+
+        HttpResponse<String> response = post(notification("bounce_with_dsn.json"));
+        assertEquals(200, response.statusCode());
+        assertEquals(1, handled.size());
+        assertEquals("Bounce", handled.get(0).notificationType());
+        assertEquals(200, client.send(HttpRequest.newBuilder(uri()).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    public void testSubscriptionIsConfirmedOnlyAtSns() throws Exception {
+        startServer(Set.of(), 10);
+
+        String subscribeUrl = "https://sns.us-east-1.amazonaws.com/?Action=ConfirmSubscription";
+        assertEquals(200, post(subscriptionConfirmation(subscribeUrl)).statusCode());
+        assertEquals(400, post(subscriptionConfirmation("https://sns.example.com/?Action=ConfirmSubscription"))
+                .statusCode());
+        assertEquals(400, post(subscriptionConfirmation("http://sns.us-east-1.amazonaws.com/")).statusCode());
+        assertEquals(List.of(URI.create(subscribeUrl)), confirmed);
+    }
+
+    @Test
+    public void testInvalidRequestsAreRejected() throws Exception {
+        startServer(Set.of("arn:aws:sns:us-east-1:123456789012:other"), 10);
+
+        assertEquals(403, post(notification("delivery.json")).statusCode());
+        assertEquals(400, post("not json").statusCode());
+        assertEquals(405, client.send(HttpRequest.newBuilder(uri()).PUT(HttpRequest.BodyPublishers.ofString("{}"))
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertTrue(handled.isEmpty());
+    }
+
+    @Test
+    public void testFullQueueIsRejectedWithRetryAfter() throws Exception {
+        release = new CountDownLatch(1);
+        startServer(Set.of(), 1);
+        CompletableFuture<HttpResponse<String>> first = postAsync(notification("delivery.json"));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<HttpResponse<String>> second = postAsync(notification("delivery.json"));
+        CompletableFuture<HttpResponse<String>> third = postAsync(notification("delivery.json"));
+        HttpResponse<String> rejected = CompletableFuture.anyOf(second, third).thenApply(
+                done -> second.isDone() ? second.join() : third.join()).get(5, TimeUnit.SECONDS);
+        assertEquals(503, rejected.statusCode());
+        assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+
+        release.countDown();
+        List<Integer> statuses = new ArrayList<>();
+        for (CompletableFuture<HttpResponse<String>> response : List.of(first, second, third)) {
+            statuses.add(response.get(5, TimeUnit.SECONDS).statusCode());
+        }
+        Collections.sort(statuses);
+        assertEquals(List.of(200, 200, 503), statuses);
+    }
+
+    @Test
+    public void testUnsignedMessagesAreRejectedWhenVerifying() throws Exception {
+        startServer(Set.of(), 10, new SNSSignatureVerifier(new CertificateCache(null, url -> {
+            throw new IOException("offline");
+        }, CertificateCache.SNS_HOSTS)));
+
+        assertEquals(403, post(notification("delivery.json")).statusCode());
+        assertTrue(handled.isEmpty());
+    }
+
+    private void startServer(Set<String> topicArns, int queueCapacity) throws IOException {
+        startServer(topicArns, queueCapacity, null);
+    }
+
+    private void startServer(Set<String> topicArns, int queueCapacity, SNSSignatureVerifier verifier)
+            throws IOException {
+        SESNotificationHandler sesHandler = new SESNotificationHandler() {
+            @Override
+            public void handleNotification(SESNotification notification, Context context) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.add(notification);
+            }
+        };
+        server = new SNSHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), "/sns",
+                new SNSMessageHandler(sesHandler, 1, 0),
+                requestId -> new LocalContext("test", requestId, Duration.ofSeconds(10), SILENT),
+                confirmed::add, verifier, topicArns, queueCapacity, 1, Duration.ofSeconds(10));
+        server.start();
+    }
+
+    private URI uri() {
+        return URI.create("http://localhost:" + server.port() + "/sns");
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        return client.send(request(body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CompletableFuture<HttpResponse<String>> postAsync(String body) {
+        return client.sendAsync(request(body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String body) {
+        return HttpRequest.newBuilder(uri()).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private static String notification(String fixture) throws IOException {
+        String message;
+        try (InputStream in = SNSHttpServerTest.class.getClassLoader().getResourceAsStream(fixture)) {
+            message = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        return new ObjectMapper().writeValueAsString(Map.of("Type", "Notification", "MessageId", "m-1",
+                "TopicArn", TOPIC_ARN, "Message", message));
+    }
+
+    private static String subscriptionConfirmation(String subscribeUrl) throws IOException {
+        return new ObjectMapper().writeValueAsString(Map.of("Type", "SubscriptionConfirmation",
+                "TopicArn", TOPIC_ARN, "Token", "token", "SubscribeURL", subscribeUrl));
+    }
+}
@@ -0,0 +1,210 @@
+package com.megafarad.seshandler.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Signs messages with the self-signed certificate in `sns_signing.p12`, generated with:
+ * `keytool -genkeypair -alias sns -keyalg RSA -keysize 2048 -dname "CN=sns.us-east-1.amazonaws.com"
+ * -validity 36500 -storetype PKCS12 -keystore sns_signing.p12 -storepass changeit`
+ */
+public class SNSSignatureVerifierTest {
+
+    private static final String CERT_URL = "https://sns.us-east-1.amazonaws.com/SimpleNotificationService-test.pem";
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private PrivateKey privateKey;
+    private byte[] pem;
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("sns_signing.p12")) {
+            keyStore.load(in, "changeit".toCharArray());
+        }
+        privateKey = (PrivateKey) keyStore.getKey("sns", "changeit".toCharArray());
+        Certificate certificate = keyStore.getCertificate("sns");
+        pem = ("-----BEGIN CERTIFICATE-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII))
+                        .encodeToString(certificate.getEncoded())
+                + "\n-----END CERTIFICATE-----\n").getBytes(StandardCharsets.US_ASCII);
+        directory = Files.createTempDirectory("sns-certificates");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testVersion1And2SignaturesAreVerified() throws Exception {
+        SNSSignatureVerifier verifier = new SNSSignatureVerifier(cache());
+
+        assertTrue(verifier.verify(sign(notification("{\"notificationType\":\"Bounce\"}", "1"), "SHA1withRSA")));
+        assertTrue(verifier.verify(sign(notification("{\"notificationType\":\"Bounce\"}", "2"), "SHA256withRSA")));
+        assertTrue(verifier.verify(sign(subscriptionConfirmation(), "SHA256withRSA")));
+    }
+
+    @Test
+    public void testTamperedOrUnsupportedMessagesAreRejected() throws Exception {
+        SNSSignatureVerifier verifier = new SNSSignatureVerifier(cache());
+        SNSEnvelope signed = sign(notification("{\"notificationType\":\"Bounce\"}", "2"), "SHA256withRSA");
+
+        assertFalse(verifier.verify(withMessage(signed, "{\"notificationType\":\"Delivery\"}")));
+        assertFalse(verifier.verify(sign(notification("{}", "2"), "SHA1withRSA")));
+        assertFalse(verifier.verify(sign(notification("{}", "3"), "SHA256withRSA")));
+        assertFalse(verifier.verify(notification("{}", "2")));
+        assertFalse(verifier.verify(withCertUrl(signed, "https://sns.example.com/cert.pem")));
+        assertFalse(verifier.verify(withCertUrl(signed, "http://sns.us-east-1.amazonaws.com/cert.pem")));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testCertificatesAreCachedInMemoryAndOnDisk() throws Exception {
+        SNSEnvelope signed = sign(notification("{}", "2"), "SHA256withRSA");
+        SNSSignatureVerifier verifier = new SNSSignatureVerifier(cache());
+        assertTrue(verifier.verify(signed));
+        assertTrue(verifier.verify(signed));
+        assertEquals(1, fetches.get());
+
+        assertTrue(new SNSSignatureVerifier(cache()).verify(signed));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testInvalidCertificateFails() {
+        CertificateCache cache = new CertificateCache(directory, url -> "not a certificate".getBytes(),
+                CertificateCache.SNS_HOSTS);
+        assertThrows(IOException.class, () -> cache.get(CERT_URL));
+        assertThrows(IllegalArgumentException.class, () -> cache.get("https://example.com/cert.pem"));
+    }
+
+    @Test
+    public void testUrlsWithPortsUserInfoQueriesOrFragmentsAreNotTrusted() {
+        CertificateCache cache = cache();
+        assertTrue(cache.trusts(CERT_URL));
+        assertFalse(cache.trusts("https://sns.us-east-1.amazonaws.com:8443/SimpleNotificationService-test.pem"));
+        assertFalse(cache.trusts("https://user@sns.us-east-1.amazonaws.com/SimpleNotificationService-test.pem"));
+        assertFalse(cache.trusts(CERT_URL + "?version=2"));
+        assertFalse(cache.trusts(CERT_URL + "#part"));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(CERT_URL + "?version=2"));
+        assertEquals(0, fetches.get());
+    }
+
+    @Test
+    public void testCachedCertificatesAreBounded() throws Exception {
+        CertificateCache cache = new CertificateCache(directory, url -> {
+            fetches.incrementAndGet();
+            return pem;
+        }, CertificateCache.SNS_HOSTS, 2);
+        for (int i = 1; i <= 3; i++) {
+            cache.get("https://sns.us-east-1.amazonaws.com/SimpleNotificationService-" + i + ".pem");
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    if (Files.getLastModifiedTime(file).toMillis() > 1_000_000) {
+                        Files.setLastModifiedTime(file, FileTime.fromMillis(i * 1000L));
+                    }
+                }
+            }
+        }
+        assertEquals(3, fetches.get());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+
+        cache.get("https://sns.us-east-1.amazonaws.com/SimpleNotificationService-3.pem");
+        assertEquals(3, fetches.get());
+        cache.get("https://sns.us-east-1.amazonaws.com/SimpleNotificationService-1.pem");
+        assertEquals(4, fetches.get());
+    }
+
+    @Test
+    public void testCanonicalString() {
+        assertEquals("""
+                Message
+                You have chosen to subscribe.
+                MessageId
+                m-1
+                SubscribeURL
+                https://sns.us-east-1.amazonaws.com/?Action=ConfirmSubscription
+                Timestamp
+                2025-01-01T00:00:00.000Z
+                Token
+                token
+                TopicArn
+                arn:aws:sns:us-east-1:123456789012:topic
+                Type
+                SubscriptionConfirmation
+                """, SNSSignatureVerifier.canonicalString(subscriptionConfirmation()));
+        assertEquals("Message\n{}\nMessageId\nm-1\nSubject\nHello\nTimestamp\n2025-01-01T00:00:00.000Z\n"
+                        + "TopicArn\narn:aws:sns:us-east-1:123456789012:topic\nType\nNotification\n",
+                SNSSignatureVerifier.canonicalString(withSubject(notification("{}", "1"), "Hello")));
+    }
+
+    private CertificateCache cache() {
+        return new CertificateCache(directory, url -> {
+            fetches.incrementAndGet();
+            return pem;
+        }, CertificateCache.SNS_HOSTS);
+    }
+
+    private SNSEnvelope sign(SNSEnvelope envelope, String algorithm) throws Exception {
+        Signature signature = Signature.getInstance(algorithm);
+        signature.initSign(privateKey);
+        signature.update(SNSSignatureVerifier.canonicalString(envelope).getBytes(StandardCharsets.UTF_8));
+        String signed = Base64.getEncoder().encodeToString(signature.sign());
+        return new SNSEnvelope(envelope.type(), envelope.messageId(), envelope.token(), envelope.topicArn(),
+                envelope.subject(), envelope.message(), envelope.timestamp(), envelope.signatureVersion(), signed,
+                envelope.signingCertUrl(), envelope.subscribeUrl(), envelope.unsubscribeUrl());
+    }
+
+    private static SNSEnvelope notification(String message, String signatureVersion) {
+        return new SNSEnvelope("Notification", "m-1", null, "arn:aws:sns:us-east-1:123456789012:topic", null,
+                message, "2025-01-01T00:00:00.000Z", signatureVersion, null, CERT_URL, null,
+                "https://sns.us-east-1.amazonaws.com/?Action=Unsubscribe");
+    }
+
+    private static SNSEnvelope subscriptionConfirmation() {
+        return new SNSEnvelope("SubscriptionConfirmation", "m-1", "token", "arn:aws:sns:us-east-1:123456789012:topic",
+                null, "You have chosen to subscribe.", "2025-01-01T00:00:00.000Z", "2", null, CERT_URL,
+                "https://sns.us-east-1.amazonaws.com/?Action=ConfirmSubscription", null);
+    }
+
+    private static SNSEnvelope withMessage(SNSEnvelope e, String message) {
+        return new SNSEnvelope(e.type(), e.messageId(), e.token(), e.topicArn(), e.subject(), message, e.timestamp(),
+                e.signatureVersion(), e.signature(), e.signingCertUrl(), e.subscribeUrl(), e.unsubscribeUrl());
+    }
+
+    private static SNSEnvelope withSubject(SNSEnvelope e, String subject) {
+        return new SNSEnvelope(e.type(), e.messageId(), e.token(), e.topicArn(), subject, e.message(), e.timestamp(),
+                e.signatureVersion(), e.signature(), e.signingCertUrl(), e.subscribeUrl(), e.unsubscribeUrl());
+    }
+
+    private static SNSEnvelope withCertUrl(SNSEnvelope e, String url) {
+        return new SNSEnvelope(e.type(), e.messageId(), e.token(), e.topicArn(), e.subject(), e.message(),
+                e.timestamp(), e.signatureVersion(), e.signature(), url, e.subscribeUrl(), e.unsubscribeUrl());
+    }
+}
@@ -0,0 +1,190 @@
+package com.megafarad.seshandler.suppression;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuppressionListTest {
+
+    private final MutableClock clock = new MutableClock();
+    private Path path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        path = Files.createTempFile("suppression", ".snapshot");
+        Files.delete(path);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testAddressesAreMatchedIgnoringCase() {
+        SuppressionList list = new SuppressionList(clock);
+        list.suppressAddress("Jane <Jane@Example.com>", SuppressionReason.BOUNCE, null);
+
+        Suppression suppression = list.lookup("jane@example.COM");
+        assertEquals(new Suppression("jane@example.com", SuppressionReason.BOUNCE, Suppression.NEVER), suppression);
+        assertFalse(suppression.isDomain());
+        assertFalse(list.isSuppressed("john@example.com"));
+    }
+
+    @Test
+    public void testDomainsCoverTheirSubdomains() {
+        SuppressionList list = new SuppressionList(clock);
+        list.suppressDomain("Example.com", SuppressionReason.MANUAL, null);
+
+        assertTrue(list.isSuppressed("jane@example.com"));
+        assertTrue(list.isSuppressed("jane@mail.example.com"));
+        assertTrue(list.lookup("jane@mail.example.com").isDomain());
+        assertFalse(list.isSuppressed("jane@ample.com"));
+        assertFalse(list.isSuppressed("jane@example.com.au"));
+
+        list.removeDomain("@example.com");
+        assertFalse(list.isSuppressed("jane@example.com"));
+    }
+
+    @Test
+    public void testSuppressionsExpire() {
+        SuppressionList list = new SuppressionList(clock);
+        list.suppressAddress("jane@example.com", SuppressionReason.BOUNCE, Duration.ofDays(1));
+        list.suppressAddress("jane@example.com", SuppressionReason.COMPLAINT, Duration.ofHours(1));
+        assertEquals(SuppressionReason.BOUNCE, list.lookup("jane@example.com").reason());
+
+        clock.advance(Duration.ofDays(1));
+        assertFalse(list.isSuppressed("jane@example.com"));
+        assertTrue(list.entries().isEmpty());
+    }
+
+    @Test
+    public void testSnapshotSurvivesReloading() {
+        SuppressionList list = SuppressionList.load(path, clock);
+        list.suppressAddress("jane@example.com", SuppressionReason.BOUNCE, Duration.ofDays(1));
+        list.suppressAddress("richard@example.com", SuppressionReason.COMPLAINT, null);
+        list.suppressDomain("example.org", SuppressionReason.MANUAL, Duration.ofHours(1));
+        assertTrue(list.hasChanges());
+        list.save(path);
+        assertFalse(list.hasChanges());
+
+        list.removeAddress("richard@example.com");
+        assertFalse(list.isSuppressed("richard@example.com"));
+        assertTrue(list.isSuppressed("jane@example.com"));
+
+        SuppressionList reloaded = SuppressionList.load(path, clock);
+        assertEquals(new Suppression("richard@example.com", SuppressionReason.COMPLAINT, Suppression.NEVER),
+                reloaded.lookup("richard@example.com"));
+        assertTrue(reloaded.isSuppressed("john@sub.example.org"));
+
+        list.save(path);
+        clock.advance(Duration.ofHours(2));
+        SuppressionSnapshot snapshot = SuppressionSnapshot.open(path);
+        assertEquals(2, snapshot.size());
+        assertNull(snapshot.get("richard@example.com"));
+        assertEquals(List.of("jane@example.com"),
+                SuppressionList.load(path, clock).entries().stream().map(Suppression::key).toList());
+    }
+
+    @Test
+    public void testChangesMadeWhileSavingAreKept() throws InterruptedException {
+        SuppressionList list = SuppressionList.load(path, clock);
+        int updates = 200_000;
+        AtomicInteger written = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= updates; i++) {
+                list.suppressAddress("jane@example.com", SuppressionReason.BOUNCE, Duration.ofSeconds(i));
+                written.set(i);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            long before = clock.millis() + Duration.ofSeconds(written.get()).toMillis();
+            list.save(path);
+            Suppression suppression = list.lookup("jane@example.com");
+            assertTrue(suppression == null ? before == clock.millis() : suppression.expiresAtMillis() >= before);
+        }
+        writer.join();
+
+        long latest = clock.millis() + Duration.ofSeconds(updates).toMillis();
+        assertEquals(latest, list.lookup("jane@example.com").expiresAtMillis());
+        list.save(path);
+        assertFalse(list.hasChanges());
+        assertEquals(latest, SuppressionList.load(path, clock).lookup("jane@example.com").expiresAtMillis());
+    }
+
+    @Test
+    public void testSnapshotHoldsManyKeys() {
+        List<Suppression> suppressions = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            suppressions.add(new Suppression("user" + i + "@example.com", SuppressionReason.BOUNCE, i + 1));
+        }
+        SuppressionSnapshot.write(path, suppressions, 42);
+        SuppressionSnapshot snapshot = SuppressionSnapshot.open(path);
+
+        assertEquals(5000, snapshot.size());
+        assertEquals(42, snapshot.createdAtMillis());
+        for (Suppression suppression : suppressions) {
+            assertEquals(suppression, snapshot.get(suppression.key()));
+        }
+        assertNull(snapshot.get("user5000@example.com"));
+        List<Suppression> read = new ArrayList<>();
+        snapshot.forEach(read::add);
+        assertEquals(5000, read.size());
+    }
+
+    @Test
+    public void testInvalidSnapshotIsRejected() throws IOException {
+        Files.writeString(path, "jane@example.com,BOUNCE,\n".repeat(2));
+        assertThrows(RuntimeException.class, () -> SuppressionSnapshot.open(path));
+    }
+
+    @Test
+    public void testExport() throws IOException {
+        SuppressionList list = new SuppressionList(clock);
+        list.suppressAddress("richard@example.com", SuppressionReason.COMPLAINT, null);
+        list.suppressDomain("example.org", SuppressionReason.MANUAL, Duration.ofDays(1));
+        StringBuilder out = new StringBuilder();
+        list.export(out);
+
+        assertEquals("@example.org,MANUAL,2025-01-02T00:00:00Z\nrichard@example.com,COMPLAINT,\n", out.toString());
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.megafarad.seshandler.templates;
+
+import com.megafarad.seshandler.rendering.CachingRenderingService;
+import com.megafarad.seshandler.rendering.ProductionRenderingService;
+import io.pebbletemplates.pebble.error.PebbleException;
+import io.pebbletemplates.pebble.template.PebbleTemplate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateStoreTest {
+
+    private final ProductionRenderingService renderingService = new ProductionRenderingService();
+    private Path directory;
+    private Instant modified = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("templates");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testTemplatesAreReloadedWhenTheirVersionChanges() throws IOException {
+        write("greeting.peb", "Hello {{ name }}");
+        try (TemplateStore store = createStore(10)) {
+            PebbleTemplate template = store.get("greeting.peb");
+            assertSame(template, store.get("greeting.peb"));
+            assertEquals("Hello Jane", render(template));
+
+            write("greeting.peb", "Bye {{ name }}!");
+            assertEquals("Hello Jane", render(template));
+            assertTrue(store.revalidate());
+            assertEquals("Bye Jane!", render(template));
+            assertFalse(store.revalidate());
+            assertEquals(1, store.reloadCount());
+        }
+    }
+
+    @Test
+    public void testIncludedTemplatesAreReloaded() throws IOException {
+        write("layouts/page.peb", "<p>{% include \"./part.peb\" %}</p>");
+        write("layouts/part.peb", "Hello {{ name }}");
+        try (TemplateStore store = createStore(10)) {
+            PebbleTemplate template = store.get("layouts/page.peb");
+            assertEquals("<p>Hello Jane</p>", render(template));
+
+            write("layouts/part.peb", "Bye {{ name }}");
+            assertTrue(store.revalidate());
+            assertEquals("<p>Bye Jane</p>", render(template));
+        }
+    }
+
+    @Test
+    public void testTemplateThatFailsToCompileKeepsItsPreviousVersion() throws IOException {
+        write("greeting.peb", "Hello {{ name }}");
+        try (TemplateStore store = createStore(10)) {
+            PebbleTemplate template = store.get("greeting.peb");
+
+            write("greeting.peb", "Hello {{ name");
+            assertFalse(store.revalidate());
+            assertEquals(1, store.reloadFailureCount());
+            assertEquals("Hello Jane", render(template));
+
+            write("greeting.peb", "Hi {{ name }}");
+            assertTrue(store.revalidate());
+            assertEquals("Hi Jane", render(template));
+            assertThrows(PebbleException.class, () -> store.get("missing.peb"));
+        }
+    }
+
+    @Test
+    public void testTemplatesMissingFromTheSourceAreReadFromTheClasspath() throws IOException {
+        try (TemplateStore store = createStore(10)) {
+            PebbleTemplate template = store.get("templates/text-bounce-notification.peb");
+            assertNotEquals("Overridden", render(template));
+
+            write("templates/text-bounce-notification.peb", "Overridden");
+            assertTrue(store.revalidate());
+            assertEquals("Overridden", render(template));
+        }
+        assertNull(new FileSystemTemplateSource(directory).version("../outside.peb"));
+    }
+
+    @Test
+    public void testReloadedTemplatesAreNotServedFromTheRenderCache() throws IOException {
+        write("greeting.peb", "Hello {{ name }}");
+        CachingRenderingService cache = new CachingRenderingService(renderingService, 1_000_000, 100);
+        try (TemplateStore store = createStore(10)) {
+            PebbleTemplate template = store.get("greeting.peb");
+            assertEquals("Hello Jane", cache.render(template, Map.of("name", "Jane")));
+            assertEquals("Hello Jane", cache.render(template, Map.of("name", "Jane")));
+            assertEquals(1, cache.hitCount());
+
+            write("greeting.peb", "Bye {{ name }}");
+            assertTrue(store.revalidate());
+            assertEquals("Bye Jane", cache.render(template, Map.of("name", "Jane")));
+        }
+    }
+
+    @Test
+    public void testCompiledTemplatesAreBounded() throws IOException {
+        write("a.peb", "A");
+        write("b.peb", "B");
+        write("c.peb", "C");
+        try (TemplateStore store = createStore(2)) {
+            PebbleTemplate a = store.get("a.peb");
+            store.get("b.peb");
+            store.get("c.peb");
+            assertEquals(1, store.evictionCount());
+            assertEquals("A", render(a));
+        }
+    }
+
+    @Test
+    public void testTemplatesAreRevalidatedInTheBackground() throws Exception {
+        write("greeting.peb", "Hello {{ name }}");
+        try (TemplateStore store = new TemplateStore(new FileSystemTemplateSource(directory), 10,
+                Duration.ofMillis(10))) {
+            PebbleTemplate template = store.get("greeting.peb");
+            write("greeting.peb", "Bye {{ name }}");
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (store.reloadCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("Bye Jane", render(template));
+        }
+    }
+
+    private TemplateStore createStore(int maxTemplates) {
+        return new TemplateStore(new FileSystemTemplateSource(directory), maxTemplates, Duration.ZERO);
+    }
+
+    private String render(PebbleTemplate template) {
+        return renderingService.render(template, Map.of("name", "Jane"));
+    }
+
+    /**
+     * Writes a template with a later modification time than the previous write, so that it gets a
+     * new version even on file systems with coarse timestamps.
+     */
+    private void write(String name, String content) throws IOException {
+        Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        modified = modified.plusSeconds(1);
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+    }
+}